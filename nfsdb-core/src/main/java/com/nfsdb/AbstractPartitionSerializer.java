@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+
+/**
+ * Base class of generated serializers. Generated classes are defined by their own class loader, which puts
+ * them in different runtime package, so they reach package-private column access of Partition through
+ * methods of this class.
+ */
+public abstract class AbstractPartitionSerializer implements PartitionSerializer {
+
+    protected static void appendColumn(Partition partition, Object obj, int i) throws JournalException {
+        partition.appendColumn(obj, i);
+    }
+
+    protected static void readColumn(Partition partition, long localRowID, Object obj, int i) {
+        partition.readColumn(localRowID, obj, i);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.Tx;
+import com.nfsdb.storage.TxLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Makes commits of journal durable on dedicated thread. Commit requests that arrive within commit window
+ * are coalesced and flushed to disk by single pass over files they touched. Files are flushed by their own
+ * file descriptors, so writer is free to carry on appending while flush is in progress.
+ * <p/>
+ * Transaction records of coalesced commits are written to transaction log only after their data is on disk.
+ * Transaction log is then forced and futures completed, which keeps ordering of synchronous durable commit.
+ */
+class GroupCommitFlusher {
+    private static final Logger LOGGER = Logger.getLogger(GroupCommitFlusher.class);
+    private final Object lock = new Object();
+    private final JournalWriter<?> writer;
+    private final File location;
+    private final long windowMillis;
+    private final Thread thread;
+    private Set<File> pendingDirs = new HashSet<>();
+    private ObjList<CompletableFuture<Void>> pendingFutures = new ObjList<>();
+    private ObjList<Tx> pendingTxs = new ObjList<>();
+    private Set<File> flushDirs = new HashSet<>();
+    private ObjList<CompletableFuture<Void>> flushFutures = new ObjList<>();
+    private ObjList<Tx> flushTxs = new ObjList<>();
+    private boolean running = true;
+    private boolean flushing = false;
+    private boolean draining = false;
+    private long flushCount = 0;
+    // commits queued after failed flush build on data that is not durable and are failed too
+    private volatile Throwable failure;
+    private volatile IOException injectedFailure;
+
+    GroupCommitFlusher(JournalWriter<?> writer, long windowMillis) {
+        this.writer = writer;
+        this.location = writer.getLocation();
+        this.windowMillis = windowMillis;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                GroupCommitFlusher.this.run();
+            }
+        }, "nfsdb-journal-flusher-" + location.getName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Waits until transaction records of all requested commits are written. Commit window is cut short.
+     * Writer calls this before it writes transaction log itself.
+     */
+    void awaitTx() {
+        synchronized (lock) {
+            if (pendingFutures.size() == 0 && !flushing) {
+                return;
+            }
+
+            draining = true;
+            lock.notifyAll();
+            try {
+                while (pendingFutures.size() > 0 || flushing) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                throw new JournalRuntimeException(e);
+            } finally {
+                draining = false;
+            }
+        }
+    }
+
+    long getFlushCount() {
+        synchronized (lock) {
+            return flushCount;
+        }
+    }
+
+    long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Makes next flush fail with given error. Used by tests to simulate disk failure.
+     *
+     * @param e error to fail flush with
+     */
+    void injectFailure(IOException e) {
+        this.injectedFailure = e;
+    }
+
+    /**
+     * Flushes outstanding requests and stops flusher thread.
+     */
+    void halt() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    /**
+     * Requests flush of files in partition directories and journal directory. Transaction record is written
+     * once these files are on disk.
+     *
+     * @param partitionDirs directories of partitions modified by commit
+     * @param tx            transaction record of commit, null when there is nothing to commit
+     * @return future, which completes when commit is durable
+     */
+    /**
+     * Accepts new commits after writer has rolled back commits that failed to flush.
+     */
+    void reset() {
+        failure = null;
+    }
+
+    CompletableFuture<Void> request(ObjList<File> partitionDirs, Tx tx) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        synchronized (lock) {
+            if (!running) {
+                future.completeExceptionally(new JournalException("Flusher is halted: %s", location));
+                return future;
+            }
+
+            for (int i = 0, n = partitionDirs.size(); i < n; i++) {
+                pendingDirs.add(partitionDirs.getQuick(i));
+            }
+            pendingFutures.add(future);
+            if (tx != null) {
+                pendingTxs.add(tx);
+            }
+            lock.notifyAll();
+        }
+        return future;
+    }
+
+    private static void force(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ch.force(false);
+        } catch (NoSuchFileException ignore) {
+            // file was removed after directory was listed, sealed partition replaces its column files
+        }
+    }
+
+    private void fail(Throwable e) {
+        for (int i = 0, n = flushFutures.size(); i < n; i++) {
+            flushFutures.getQuick(i).completeExceptionally(e);
+        }
+    }
+
+    private void flush() {
+        if (failure != null) {
+            fail(failure);
+            return;
+        }
+
+        long txAddress = writer.getTxAddress();
+        try {
+            // data first
+            for (File dir : flushDirs) {
+                forceFiles(dir, null);
+            }
+            forceFiles(location, TxLog.FILE_NAME);
+
+            IOException e = injectedFailure;
+            if (e != null) {
+                injectedFailure = null;
+                throw e;
+            }
+
+            // then transaction records
+            for (int i = 0, n = flushTxs.size(); i < n; i++) {
+                writer.writeTx(flushTxs.getQuick(i), false, false);
+            }
+            writer.forceTx();
+
+            for (int i = 0, n = flushFutures.size(); i < n; i++) {
+                flushFutures.getQuick(i).complete(null);
+            }
+
+            if (flushTxs.size() > 0) {
+                writer.onTxDurable(flushTxs.getLast());
+            }
+        } catch (IOException | RuntimeException e) {
+            // writer is already past these commits, it stays failed until commits are rolled back
+            LOGGER.error("Failed to flush %s: %s", location, e.getMessage());
+            failure = e;
+            writer.onFlushFailed(txAddress, e);
+            fail(e);
+        }
+    }
+
+    private void forceFiles(File dir, String exclude) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            // partition could have been removed since commit
+            return;
+        }
+
+        for (int i = 0; i < files.length; i++) {
+            File f = files[i];
+            if (f.isFile() && (exclude == null || !exclude.equals(f.getName())) && !f.getName().endsWith(".lock")) {
+                force(f);
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (running && pendingFutures.size() == 0) {
+                        lock.wait();
+                    }
+
+                    if (pendingFutures.size() == 0) {
+                        return;
+                    }
+
+                    // let more commits join this flush
+                    long deadline = System.currentTimeMillis() + windowMillis;
+                    long wait;
+                    while (running && !draining && (wait = deadline - System.currentTimeMillis()) > 0) {
+                        lock.wait(wait);
+                    }
+                } catch (InterruptedException e) {
+                    LOGGER.info("Flusher interrupted: %s", location);
+                    running = false;
+                }
+
+                Set<File> dirs = flushDirs;
+                flushDirs = pendingDirs;
+                pendingDirs = dirs;
+
+                ObjList<CompletableFuture<Void>> futures = flushFutures;
+                flushFutures = pendingFutures;
+                pendingFutures = futures;
+
+                ObjList<Tx> txs = flushTxs;
+                flushTxs = pendingTxs;
+                pendingTxs = txs;
+
+                flushing = true;
+                flushCount++;
+            }
+
+            try {
+                flush();
+            } finally {
+                flushDirs.clear();
+                flushFutures.clear();
+                flushTxs.clear();
+                synchronized (lock) {
+                    flushing = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
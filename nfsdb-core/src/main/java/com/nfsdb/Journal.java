@@ -57,6 +57,8 @@ public class Journal<T> implements Iterable<T>, Closeable {
     final ObjList<Partition<T>> partitions = new ObjList<>();
     // empty container for current transaction
     final Tx tx = new Tx();
+    // address of transaction this journal was last refreshed to
+    private long snapshotTxAddress;
     final JournalMetadata<T> metadata;
     private final File location;
     private final ObjObjHashMap<String, SymbolTable> symbolTableMap = new ObjObjHashMap<>();
@@ -529,15 +531,36 @@ public class Journal<T> implements Iterable<T>, Closeable {
 
     public boolean refresh() throws JournalException {
         if (txLog.head(tx)) {
+            snapshotTxAddress = tx.address;
             refreshInternal();
-            for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
-                symbolTables.getQuick(i).applyTx(tx.symbolTableSizes[i], tx.symbolTableIndexPointers[i]);
-            }
+            applySymbolTableTx();
             return true;
         }
         return false;
     }
 
+    /**
+     * Refreshes journal to transaction another instance of the same journal was refreshed to, which could be
+     * older than latest transaction. Threads scanning journal on behalf of a reader use this to see the same
+     * rows as the reader. Writers have no such snapshot, journal is refreshed to latest transaction instead.
+     *
+     * @param journal other instance of this journal
+     * @throws com.nfsdb.exceptions.JournalException if transaction cannot be applied
+     */
+    public void refresh(Journal journal) throws JournalException {
+        if ((journal.getMode() != JournalMode.READ && journal.getMode() != JournalMode.BULK_READ) || journal.snapshotTxAddress == 0) {
+            refresh();
+            return;
+        }
+
+        if (journal.snapshotTxAddress != snapshotTxAddress) {
+            txLog.read(journal.snapshotTxAddress, tx);
+            snapshotTxAddress = tx.address;
+            refreshInternal();
+            applySymbolTableTx();
+        }
+    }
+
     public JournalRecordSource rows() {
         return new JournalSource(
                 new JournalPartitionSource(this, true)
@@ -585,6 +608,12 @@ public class Journal<T> implements Iterable<T>, Closeable {
         return txIterator;
     }
 
+    private void applySymbolTableTx() throws JournalException {
+        for (int i = 0, sz = symbolTables.size(); i < sz; i++) {
+            symbolTables.getQuick(i).applyTx(tx.symbolTableSizes[i], tx.symbolTableIndexPointers[i], tx.symbolTableHashKeyCounts[i]);
+        }
+    }
+
     void closePartitions() {
         if (irregularPartition != null) {
             irregularPartition.close();
@@ -597,6 +626,7 @@ public class Journal<T> implements Iterable<T>, Closeable {
 
     void configure() throws JournalException {
         txLog.head(tx);
+        snapshotTxAddress = tx.address;
         configureColumns();
         configureSymbolTableSynonyms();
         configurePartitions();
@@ -610,7 +640,8 @@ public class Journal<T> implements Iterable<T>, Closeable {
                 int tabIndex = symbolTables.size();
                 int tabSize = tx.symbolTableSizes.length > tabIndex ? tx.symbolTableSizes[tabIndex] : 0;
                 long indexTxAddress = tx.symbolTableIndexPointers.length > tabIndex ? tx.symbolTableIndexPointers[tabIndex] : 0;
-                SymbolTable tab = new SymbolTable(meta.distinctCountHint, meta.avgSize, getMetadata().getTxCountHint(), location, meta.name, getMode(), tabSize, indexTxAddress, meta.noCache);
+                int hashKeyCount = tx.symbolTableHashKeyCounts != null && tx.symbolTableHashKeyCounts.length > tabIndex ? tx.symbolTableHashKeyCounts[tabIndex] : 0;
+                SymbolTable tab = new SymbolTable(meta.distinctCountHint, meta.avgSize, getMetadata().getTxCountHint(), location, meta.name, getMode(), tabSize, indexTxAddress, hashKeyCount, meta.noCache);
                 symbolTables.add(tab);
                 symbolTableMap.put(meta.name, tab);
                 meta.symbolTable = tab;
@@ -20,7 +20,6 @@ import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.storage.*;
-import com.nfsdb.utils.Hash;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.io.InputStream;
@@ -57,7 +56,12 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
             columns[i].commit();
 
             if (meta[i].indexed) {
-                indexProxies[i].getIndex().add((int) koTuple[i * 2], koTuple[i * 2 + 1]);
+                if (meta[i].type == ColumnType.STRING) {
+                    // string index looks up value by its full content, which is already in column
+                    indexProxies[i].getStringIndex().add(((VariableColumn) columns[i]).getFlyweightStr(koTuple[i * 2 + 1]), koTuple[i * 2 + 1]);
+                } else {
+                    indexProxies[i].getIndex().add((int) koTuple[i * 2], koTuple[i * 2 + 1]);
+                }
             }
         }
         partition.applyTx(Journal.TX_LIMIT_EVAL, null);
@@ -200,7 +204,6 @@ public class JournalEntryWriterImpl implements JournalEntryWriter {
 
     private void putString0(int index, CharSequence value) {
         if (meta[index].indexed) {
-            koTuple[index * 2] = value == null ? SymbolTable.VALUE_IS_NULL : Hash.boundedHash(value, meta[index].distinctCountHint);
             koTuple[index * 2 + 1] = ((VariableColumn) columns[index]).putStr(value);
         } else {
             ((VariableColumn) columns[index]).putStr(value);
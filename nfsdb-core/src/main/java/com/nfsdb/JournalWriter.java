@@ -16,10 +16,12 @@
 
 package com.nfsdb;
 
+import com.nfsdb.collections.ObjList;
 import com.nfsdb.collections.PeekingListIterator;
 import com.nfsdb.exceptions.IncompatibleJournalException;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.Constants;
 import com.nfsdb.factory.configuration.JournalConfiguration;
 import com.nfsdb.factory.configuration.JournalMetadata;
@@ -51,6 +53,8 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 @SuppressFBWarnings({"PATH_TRAVERSAL_IN", "EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
@@ -62,6 +66,7 @@ public class JournalWriter<T> extends Journal<T> {
     private final PeekingListIterator<T> peekingListIterator = new PeekingListIterator<>();
     private final MergingIterator<T> mergingIterator = new MergingIterator<>();
     private final JournalEntryWriterImpl journalEntryWriter;
+    private final ObjList<File> commitDirs = new ObjList<>();
     private Lock writeLock;
     private TxListener txListener;
     private boolean txActive = false;
@@ -74,6 +79,14 @@ public class JournalWriter<T> extends Journal<T> {
     private boolean doJournal = true;
     private Partition<T> appendPartition;
     private long appendTimestampHi = -1;
+    private boolean sealPartitions = false;
+    private int sealedPartitionCount = 0;
+    private GroupCommitFlusher flusher;
+    // partitions below this index have durable transaction record
+    private volatile int durablePartitionCount = 0;
+    // set by flusher thread when commits could not be made durable
+    private volatile Throwable flushFailure;
+    private volatile long durableTxAddress;
 
     public JournalWriter(JournalMetadata<T> metadata, JournalKey<T> key) throws JournalException {
         super(metadata, key);
@@ -111,6 +124,8 @@ public class JournalWriter<T> extends Journal<T> {
             throw new JournalException("Cannot append NULL to %s", this);
         }
 
+        checkFlushFailure();
+
         if (!txActive) {
             beginTx();
         }
@@ -154,16 +169,49 @@ public class JournalWriter<T> extends Journal<T> {
      * @throws com.nfsdb.exceptions.JournalException if there is an error
      */
     public void append(ResultSet<T> resultSet) throws JournalException {
-        if (isCompatible(resultSet.getJournal())) {
-            for (T obj : resultSet.bufferedIterator()) {
-                this.append(obj);
+        Journal<T> journal = resultSet.getJournal();
+        if (isCompatible(journal)) {
+            if (canCopyColumns(journal)) {
+                // copy runs of consecutive rows of the same partition
+                SymbolKeyMap[] symbolKeyMaps = createSymbolKeyMaps(journal);
+                for (int i = 0, n = resultSet.size(); i < n; ) {
+                    long rowID = resultSet.getRowID(i);
+                    int partitionIndex = Rows.toPartitionIndex(rowID);
+                    long lo = Rows.toLocalRowID(rowID);
+                    long hi = lo + 1;
+                    while (++i < n && resultSet.getRowID(i) == Rows.toRowID(partitionIndex, hi)) {
+                        hi++;
+                    }
+                    append(journal.getPartition(partitionIndex, true), lo, hi, symbolKeyMaps);
+                }
+            } else {
+                for (T obj : resultSet.bufferedIterator()) {
+                    this.append(obj);
+                }
             }
         } else {
             throw new JournalException("%s is incompatible with %s", this, resultSet.getJournal());
         }
     }
 
+    /**
+     * Copies all rows of journal to the end of this journal. When journals have compatible column layout
+     * rows are copied column by column as blocks of memory, otherwise each row is read into an object
+     * and appended.
+     *
+     * @param journal source journal
+     * @throws com.nfsdb.exceptions.JournalException if there is an error
+     */
     public void append(Journal<T> journal) throws JournalException {
+        if (canCopyColumns(journal)) {
+            SymbolKeyMap[] symbolKeyMaps = createSymbolKeyMaps(journal);
+            for (int i = 0, n = journal.getPartitionCount(); i < n; i++) {
+                Partition<T> partition = journal.getPartition(i, true);
+                append(partition, 0, partition.size(), symbolKeyMaps);
+            }
+            return;
+        }
+
         try (ConcurrentIterator<T> iterator = journal.concurrentIterator()) {
             for (T obj : iterator) {
                 append(obj);
@@ -186,10 +234,18 @@ public class JournalWriter<T> extends Journal<T> {
                 partitionCleaner = null;
             }
             try {
-                if (isCommitOnClose()) {
+                awaitTx();
+                if (flushFailure != null) {
+                    // commits that failed to flush are discarded
+                    rollback();
+                } else if (isCommitOnClose()) {
                     commit();
                     purgeUnusedTempPartitions(txLog);
                 }
+                if (flusher != null) {
+                    flusher.halt();
+                    flusher = null;
+                }
                 super.close();
                 if (writeLock != null) {
                     LockManager.release(writeLock);
@@ -221,6 +277,7 @@ public class JournalWriter<T> extends Journal<T> {
     void closePartitions() {
         super.closePartitions();
         appendPartition = null;
+        sealedPartitionCount = 0;
         appendTimestampHi = -1;
     }
 
@@ -265,6 +322,7 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public void commit(boolean force, long txn, long txPin) throws JournalException {
+        checkFlushFailure();
         if (txActive) {
             commit(force ? Tx.TX_FORCE : Tx.TX_NORMAL, txn, txPin);
             notifyTxListener();
@@ -274,7 +332,58 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public void commitDurable() throws JournalException {
-        commit(true, -1L, -1L);
+        if (flusher == null) {
+            commit(true, -1L, -1L);
+        } else {
+            try {
+                commitDurableAsync().get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new JournalException(e);
+            }
+        }
+    }
+
+    /**
+     * Commits transaction and returns without waiting for data to reach disk. When group commit is enabled
+     * disk flush is done by flusher thread together with other commits that arrive within commit window.
+     * Otherwise commit is made durable on calling thread.
+     * <p/>
+     * With group commit transaction record is written to transaction log by flusher thread only after data
+     * of transaction has been forced to disk, so commit becomes visible to readers when it is durable.
+     *
+     * @return future, which completes when commit is durable
+     * @throws com.nfsdb.exceptions.JournalException if commit fails
+     */
+    public CompletableFuture<Void> commitDurableAsync() throws JournalException {
+        if (flusher == null) {
+            commitDurable();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        checkFlushFailure();
+
+        commitDirs.clear();
+        Tx pending = null;
+        if (txActive) {
+            for (int i = Math.max(txPartitionIndex, 0), n = nonLagPartitionCount(); i < n; i++) {
+                commitDirs.add(getPartition(i, false).getPartitionDir());
+            }
+            Partition<T> lag = getIrregularPartition();
+            if (lag != null) {
+                commitDirs.add(lag.getPartitionDir());
+            }
+            pending = new Tx();
+            prepareTx(pending, Tx.TX_FORCE, -1L, -1L, false);
+            expireOpenFiles();
+            txActive = false;
+        }
+
+        CompletableFuture<Void> future = flusher.request(commitDirs, pending);
+        if (sealPartitions) {
+            // only partitions of durable transactions are sealed
+            sealPartitions(durablePartitionCount);
+        }
+        return future;
     }
 
     public void compact() throws JournalException {
@@ -307,6 +416,8 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     public JournalEntryWriter entryWriter(long timestamp) throws JournalException {
+        checkFlushFailure();
+
         if (!txActive) {
             beginTx();
         }
@@ -600,17 +711,61 @@ public class JournalWriter<T> extends Journal<T> {
         removeIrregularPartitionInternal();
     }
 
+    /**
+     * Discards uncommitted data. After failed group commit flush this also discards commits, which did not
+     * become durable, and makes writer usable again.
+     *
+     * @throws com.nfsdb.exceptions.JournalException if there is an error
+     */
     public void rollback() throws JournalException {
-        if (txActive) {
+        awaitTx();
+        if (flushFailure != null) {
+            rollbackFlushFailure();
+        } else if (txActive) {
             rollback0(txLog.getCurrentTxAddress(), false);
             txActive = false;
         }
     }
 
     public void rollback(long txn, long txPin) throws JournalException {
+        awaitTx();
+        if (flushFailure != null) {
+            rollbackFlushFailure();
+        }
         rollback0(txLog.findAddress(txn, txPin), true);
     }
 
+    /**
+     * When enabled, partitions that can no longer be appended to are compressed by background
+     * thread after commit. Sealed partitions are read-only.
+     *
+     * @param sealPartitions true to seal partitions
+     */
+    public void setSealPartitions(boolean sealPartitions) {
+        this.sealPartitions = sealPartitions;
+        if (sealPartitions && partitionCleaner == null) {
+            this.partitionCleaner = new PartitionCleaner(this, getLocation().getName());
+            this.partitionCleaner.start();
+        }
+    }
+
+    /**
+     * Enables group commit. Durable commits are flushed to disk by dedicated thread, which waits up to
+     * window milliseconds for more commits to join the flush. Negative window disables group commit.
+     *
+     * @param windowMillis commit window in milliseconds
+     */
+    public void setGroupCommitWindow(long windowMillis) {
+        if (flusher != null) {
+            flusher.halt();
+            flusher = null;
+        }
+
+        if (windowMillis > -1) {
+            flusher = new GroupCommitFlusher(this, windowMillis);
+        }
+    }
+
     public void setTxListener(TxListener txListener) {
         this.txListener = txListener;
     }
@@ -620,7 +775,9 @@ public class JournalWriter<T> extends Journal<T> {
         int partitionCount = getPartitionCount();
         for (int i = 0; i < partitionCount; i++) {
             Partition<T> partition = getPartition(i, true);
-            partition.truncate(0);
+            if (!partition.isSealed()) {
+                partition.truncate(0);
+            }
             partition.close();
             Files.deleteOrException(partition.getPartitionDir());
         }
@@ -635,20 +792,95 @@ public class JournalWriter<T> extends Journal<T> {
     }
 
     private void commit(byte command, long txn, long txPin) throws JournalException {
+        // records of asynchronous commits go first to keep transaction log in order
+        awaitTx();
+        checkFlushFailure();
+
         boolean force = command == Tx.TX_FORCE;
+        prepareTx(tx, command, txn, txPin, force);
+        writeTx(tx, txn != -1, force);
+
+        if (sealPartitions) {
+            sealPartitions(Integer.MAX_VALUE);
+        }
+    }
+
+    Partition<T> createTempPartition() throws JournalException {
+        return createTempPartition(Constants.TEMP_DIRECTORY_PREFIX + "." + System.currentTimeMillis() + "." + UUID.randomUUID());
+    }
+
+    void forceTx() {
+        synchronized (txLog) {
+            txLog.force();
+        }
+    }
+
+    GroupCommitFlusher getGroupCommitFlusher() {
+        return flusher;
+    }
+
+    long getTxAddress() {
+        return txLog.getCurrentTxAddress();
+    }
+
+    /**
+     * Called by flusher thread when it fails to make commits durable. In-memory state of writer is already past
+     * these commits, so writer rejects further appends and commits until it is rolled back.
+     *
+     * @param txAddress address of last durable transaction
+     * @param e         flush error
+     */
+    void onFlushFailed(long txAddress, Throwable e) {
+        this.durableTxAddress = txAddress;
+        this.flushFailure = e;
+    }
+
+    /**
+     * Called by flusher thread after transaction records of asynchronous commits are durable.
+     *
+     * @param tx last written transaction
+     */
+    void onTxDurable(Tx tx) {
+        if (tx.journalMaxRowID > 0) {
+            durablePartitionCount = Rows.toPartitionIndex(tx.journalMaxRowID);
+        }
+        notifyTxListener();
+    }
+
+    Partition<T> getAppendPartition() throws JournalException {
+        if (this.appendPartition != null) {
+            return appendPartition;
+        }
+
+        int count = nonLagPartitionCount();
+        if (count > 0) {
+            return appendPartition = getPartition(count - 1, true);
+        } else {
+            if (getMetadata().getPartitionType() != PartitionType.NONE) {
+                throw new JournalException("getAppendPartition() without timestamp on partitioned journal: %s", this);
+            }
+            return appendPartition = createPartition(new Interval((long) 0, getMetadata().getPartitionType()), 0);
+        }
+    }
+
+    /**
+     * Commits data of current transaction and fills in transaction record, except for pointer to previous
+     * transaction, which is assigned when record is written.
+     */
+    private void prepareTx(Tx tx, byte command, long txn, long txPin, boolean force) throws JournalException {
         Partition<T> partition = lastNonEmptyNonLag();
         Partition<T> lag = getIrregularPartition();
 
         tx.command = command;
         tx.txn = txn;
         tx.txPin = txPin;
-        tx.prevTxAddress = txLog.getCurrentTxAddress();
         tx.journalMaxRowID = partition == null ? -1 : Rows.toRowID(partition.getPartitionIndex(), partition.size());
         tx.lastPartitionTimestamp = partition == null || partition.getInterval() == null ? 0 : partition.getInterval().getLo();
         tx.lagSize = lag == null ? 0 : lag.open().size();
         tx.lagName = lag == null ? null : lag.getName();
         tx.symbolTableSizes = new int[getSymbolTableCount()];
         tx.symbolTableIndexPointers = new long[tx.symbolTableSizes.length];
+        tx.symbolTableHashKeyCounts = new int[tx.symbolTableSizes.length];
         for (int i = 0; i < tx.symbolTableSizes.length; i++) {
             SymbolTable tab = getSymbolTable(i);
             tab.commit();
@@ -657,6 +889,7 @@ public class JournalWriter<T> extends Journal<T> {
             }
             tx.symbolTableSizes[i] = tab.size();
             tx.symbolTableIndexPointers[i] = tab.getIndexTxAddress();
+            tx.symbolTableHashKeyCounts[i] = tab.getHashKeyCount();
         }
         tx.indexPointers = new long[getMetadata().getColumnCount()];
 
@@ -682,29 +915,41 @@ public class JournalWriter<T> extends Journal<T> {
             lag.getIndexPointers(tx.lagIndexPointers);
         }
 
-        txLog.write(tx, txn != -1);
-        if (force) {
-            txLog.force();
+    }
+
+    private void sealPartitions(int limit) throws JournalException {
+        // last partition is still being appended to
+        int n = Math.min(nonLagPartitionCount() - 1, limit);
+        if (sealedPartitionCount > n) {
+            // partitions were rolled back
+            sealedPartitionCount = Math.max(n, 0);
+        }
+        for (int i = sealedPartitionCount; i < n; i++) {
+            partitionCleaner.seal(getPartition(i, false).getPartitionDir());
+            sealedPartitionCount = i + 1;
         }
     }
 
-    Partition<T> createTempPartition() throws JournalException {
-        return createTempPartition(Constants.TEMP_DIRECTORY_PREFIX + "." + System.currentTimeMillis() + "." + UUID.randomUUID());
+    void writeTx(Tx tx, boolean manualTxn, boolean force) {
+        // transaction log is shared with flusher thread
+        synchronized (txLog) {
+            tx.prevTxAddress = txLog.getCurrentTxAddress();
+            txLog.write(tx, manualTxn);
+            if (force) {
+                txLog.force();
+            }
+        }
     }
 
-    Partition<T> getAppendPartition() throws JournalException {
-        if (this.appendPartition != null) {
-            return appendPartition;
+    private void awaitTx() {
+        if (flusher != null) {
+            flusher.awaitTx();
         }
+    }
 
-        int count = nonLagPartitionCount();
-        if (count > 0) {
-            return appendPartition = getPartition(count - 1, true);
-        } else {
-            if (getMetadata().getPartitionType() != PartitionType.NONE) {
-                throw new JournalException("getAppendPartition() without timestamp on partitioned journal: %s", this);
-            }
-            return appendPartition = createPartition(new Interval((long) 0, getMetadata().getPartitionType()), 0);
+    private void checkFlushFailure() throws JournalException {
+        if (flushFailure != null) {
+            throw new JournalException("Commit flush failed, rollback() is required: %s", flushFailure, this);
         }
     }
 
@@ -768,6 +1013,16 @@ public class JournalWriter<T> extends Journal<T> {
         txActive = false;
     }
 
+    private void rollbackFlushFailure() throws JournalException {
+        LOGGER.info("Journal %s is rolling back commits that failed to flush", metadata.getLocation());
+        rollback0(durableTxAddress, false);
+        txActive = false;
+        flushFailure = null;
+        if (flusher != null) {
+            flusher.reset();
+        }
+    }
+
     private void rollbackPartitionDirs() throws JournalException {
         File[] files = getLocation().listFiles(new FileFilter() {
             public boolean accept(File f) {
@@ -796,7 +1051,8 @@ public class JournalWriter<T> extends Journal<T> {
                 Files.deleteOrException(p.getPartitionDir());
                 partitions.remove(partitions.size() - 1);
             } else if (p.getPartitionIndex() == partitionIndex) {
-                p.open();
+                // partition becomes last and will be appended to
+                p.open().unseal();
                 p.truncate(tx.journalMaxRowID == -1 ? 0 : Rows.toLocalRowID(tx.journalMaxRowID));
                 break;
             } else {
@@ -830,6 +1086,72 @@ public class JournalWriter<T> extends Journal<T> {
         splitAppend(mergingIterator.$new(a, b, getTimestampComparator()), hard, soft, temp);
     }
 
+    private static long searchAfter(FixedColumn timestamps, long timestamp, long lo, long hi) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps.getLong(mid) > timestamp) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private void append(Partition<T> src, long lo, long hi, SymbolKeyMap[] symbolKeyMaps) throws JournalException {
+        if (lo >= hi) {
+            return;
+        }
+
+        checkFlushFailure();
+
+        if (!txActive) {
+            beginTx();
+        }
+
+        if (checkOrder) {
+            FixedColumn timestamps = src.getTimestampColumn();
+            while (lo < hi) {
+                long timestamp = timestamps.getLong(lo);
+
+                if (timestamp > appendTimestampHi) {
+                    switchAppendPartition(timestamp);
+                }
+
+                if (timestamp < appendTimestampLo) {
+                    throw new JournalException("Cannot insert records out of order. maxHardTimestamp=%d (%s), timestamp=%d (%s): %s"
+                            , appendTimestampLo, Dates.toString(appendTimestampLo), timestamp, Dates.toString(timestamp), this);
+                }
+
+                // rows up to the end of current append partition
+                long end = appendTimestampHi == Long.MAX_VALUE ? hi : searchAfter(timestamps, appendTimestampHi, lo, hi);
+                appendPartition.append(src, lo, end, symbolKeyMaps);
+                appendTimestampLo = timestamps.getLong(end - 1);
+                lo = end;
+            }
+        } else {
+            getAppendPartition().append(src, lo, hi, symbolKeyMaps);
+        }
+    }
+
+    private boolean canCopyColumns(Journal<T> that) {
+        return isCompatible(that)
+                && getMetadata().getTimestampIndex() == that.getMetadata().getTimestampIndex()
+                && (!checkOrder || getMetadata().getTimestampIndex() != -1);
+    }
+
+    private SymbolKeyMap[] createSymbolKeyMaps(Journal<T> that) {
+        JournalMetadata<T> meta = getMetadata();
+        SymbolKeyMap[] maps = new SymbolKeyMap[meta.getColumnCount()];
+        for (int i = 0; i < maps.length; i++) {
+            ColumnMetadata m = meta.getColumn(i);
+            if (m.type == ColumnType.SYMBOL) {
+                maps[i] = new SymbolKeyMap(that.getMetadata().getColumn(i).symbolTable, m.symbolTable, true);
+            }
+        }
+        return maps;
+    }
+
     private void switchAppendPartition(long timestamp) throws JournalException {
         boolean computeTimestampLo = appendPartition == null;
 
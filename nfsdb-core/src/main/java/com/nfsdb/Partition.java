@@ -19,6 +19,7 @@ package com.nfsdb;
 import com.nfsdb.collections.DirectInputStream;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalNoSuchFileException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.JournalMetadata;
@@ -30,7 +31,6 @@ import com.nfsdb.query.iterator.PartitionConcurrentIterator;
 import com.nfsdb.query.iterator.PartitionIterator;
 import com.nfsdb.storage.*;
 import com.nfsdb.utils.Dates;
-import com.nfsdb.utils.Hash;
 import com.nfsdb.utils.Interval;
 import com.nfsdb.utils.Unsafe;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -45,18 +45,22 @@ import java.util.concurrent.TimeUnit;
 @SuppressFBWarnings({"PL_PARALLEL_LISTS", "EXS_EXCEPTION_SOFTENING_NO_CONSTRAINTS"})
 public class Partition<T> implements Iterable<T>, Closeable {
     private static final Logger LOGGER = Logger.getLogger(Partition.class);
+    private static final int ZONE_MAP_BIT_HINT = 16;
     private final Journal<T> journal;
     private final ObjList<SymbolIndexProxy<T>> indexProxies = new ObjList<>();
     private final Interval interval;
     private final int columnCount;
     private final ColumnMetadata[] columnMetadata;
+    private final PartitionSerializer serializer;
     SymbolIndexProxy<T> sparseIndexProxies[];
     AbstractColumn[] columns;
+    ZoneMap[] zoneMaps;
     private int partitionIndex;
     private File partitionDir;
     private long lastAccessed = System.currentTimeMillis();
     private long txLimit;
     private FixedColumn timestampColumn;
+    private boolean sealed = false;
 
     Partition(Journal<T> journal, Interval interval, int partitionIndex, long txLimit, long[] indexTxAddresses) {
         JournalMetadata<T> meta = journal.getMetadata();
@@ -67,6 +71,7 @@ public class Partition<T> implements Iterable<T>, Closeable {
         this.columnCount = meta.getColumnCount();
         this.columnMetadata = new ColumnMetadata[columnCount];
         meta.copyColumnMetadata(columnMetadata);
+        this.serializer = meta.getSerializer();
         setPartitionDir(new File(this.journal.getLocation(), interval.getDirName(meta.getPartitionType())), indexTxAddresses);
     }
 
@@ -94,8 +99,13 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 if (Unsafe.arrayGet(columns, i) != null) {
                     Unsafe.arrayGet(columns, i).close();
                 }
+                if (Unsafe.arrayGet(zoneMaps, i) != null) {
+                    Unsafe.arrayGet(zoneMaps, i).close();
+                }
             }
             columns = null;
+            zoneMaps = null;
+            sealed = false;
             LOGGER.trace("Partition %s closed", partitionDir);
         }
 
@@ -129,10 +139,21 @@ public class Partition<T> implements Iterable<T>, Closeable {
         }
 
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
-            indexProxies.getQuick(i).getIndex().compact();
+            indexProxies.getQuick(i).compact();
         }
     }
 
+    /**
+     * Zone map of column, if one is maintained. Partition must be open.
+     *
+     * @param i column index
+     * @return zone map or null if column does not have one
+     */
+    public ZoneMap getZoneMap(int i) {
+        checkColumnIndex(i);
+        return Unsafe.arrayGet(zoneMaps, i);
+    }
+
     public AbstractColumn getAbstractColumn(int i) {
         checkColumnIndex(i);
         return Unsafe.arrayGet(columns, i);
@@ -165,16 +186,28 @@ public class Partition<T> implements Iterable<T>, Closeable {
         return ((VariableColumn) columns[columnIndex]).getFlyweightStr(localRowID);
     }
 
-    public KVIndex getIndexForColumn(String columnName) throws JournalException {
+    public BitmapIndex getBitmapIndexForColumn(String columnName) throws JournalException {
+        return getBitmapIndexForColumn(journal.getMetadata().getColumnIndex(columnName));
+    }
+
+    public BitmapIndex getBitmapIndexForColumn(final int columnIndex) throws JournalException {
+        return getIndexProxy(columnIndex).getBitmapIndex();
+    }
+
+    public SymbolIndex getIndexForColumn(String columnName) throws JournalException {
         return getIndexForColumn(journal.getMetadata().getColumnIndex(columnName));
     }
 
-    public KVIndex getIndexForColumn(final int columnIndex) throws JournalException {
-        SymbolIndexProxy h = sparseIndexProxies[columnIndex];
-        if (h == null) {
-            throw new JournalException("There is no index for column '%s' in %s", columnMetadata[columnIndex].name, this);
-        }
-        return h.getIndex();
+    public SymbolIndex getIndexForColumn(final int columnIndex) throws JournalException {
+        return getIndexProxy(columnIndex).getIndex();
+    }
+
+    public StringIndex getStringIndexForColumn(String columnName) throws JournalException {
+        return getStringIndexForColumn(journal.getMetadata().getColumnIndex(columnName));
+    }
+
+    public StringIndex getStringIndexForColumn(final int columnIndex) throws JournalException {
+        return getIndexProxy(columnIndex).getStringIndex();
     }
 
     public int getInt(long localRowID, int columnIndex) {
@@ -254,6 +287,17 @@ public class Partition<T> implements Iterable<T>, Closeable {
         return getTimestampColumn().bsearchEdge(timestamp, type, lo, hi);
     }
 
+    /**
+     * Partition is sealed when at least one of its fixed width columns is stored in compressed form.
+     * Sealed columns are read-only. State is determined when partition is opened, partition sealed
+     * after that reports as sealed once it is reopened. Closed partition is not sealed.
+     *
+     * @return true if partition is sealed
+     */
+    public boolean isSealed() {
+        return sealed;
+    }
+
     public boolean isOpen() {
         return columns != null;
     }
@@ -293,44 +337,61 @@ public class Partition<T> implements Iterable<T>, Closeable {
     }
 
     public void read(long localRowID, T obj) {
+        if (serializer != null && journal.getInactiveColumns().isEmpty()) {
+            serializer.read(localRowID, obj, columns, this);
+            return;
+        }
+
         for (int i = 0; i < columnCount; i++) {
-            ColumnMetadata m;
-            if (journal.getInactiveColumns().get(i) || (m = Unsafe.arrayGet(columnMetadata, i)).offset == 0) {
+            if (journal.getInactiveColumns().get(i) || Unsafe.arrayGet(columnMetadata, i).offset == 0) {
                 continue;
             }
+            readColumn(localRowID, obj, i);
+        }
+    }
 
-            switch (m.type) {
-                case BOOLEAN:
-                    Unsafe.getUnsafe().putBoolean(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getBool(localRowID));
-                    break;
-                case BYTE:
-                    Unsafe.getUnsafe().putByte(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getByte(localRowID));
-                    break;
-                case DOUBLE:
-                    Unsafe.getUnsafe().putDouble(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getDouble(localRowID));
-                    break;
-                case FLOAT:
-                    Unsafe.getUnsafe().putFloat(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getFloat(localRowID));
-                    break;
-                case INT:
-                    Unsafe.getUnsafe().putInt(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getInt(localRowID));
-                    break;
-                case LONG:
-                case DATE:
-                    Unsafe.getUnsafe().putLong(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getLong(localRowID));
-                    break;
-                case SHORT:
-                    Unsafe.getUnsafe().putShort(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getShort(localRowID));
-                    break;
-                case STRING:
-                    Unsafe.getUnsafe().putObject(obj, m.offset, ((VariableColumn) Unsafe.arrayGet(columns, i)).getStr(localRowID));
-                    break;
-                case SYMBOL:
-                    Unsafe.getUnsafe().putObject(obj, m.offset, m.symbolTable.value(((FixedColumn) Unsafe.arrayGet(columns, i)).getInt(localRowID)));
-                    break;
-                case BINARY:
-                    readBin(localRowID, obj, i, m);
-            }
+    /**
+     * Reads value of single column into object field. This is the slow path of read(long, T), it is also
+     * used by generated serializers for columns that are not copied directly.
+     *
+     * @param localRowID row id within partition
+     * @param obj        target object
+     * @param i          column index
+     */
+    void readColumn(long localRowID, Object obj, int i) {
+        ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+        switch (m.type) {
+            case BOOLEAN:
+                Unsafe.getUnsafe().putBoolean(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getBool(localRowID));
+                break;
+            case BYTE:
+                Unsafe.getUnsafe().putByte(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getByte(localRowID));
+                break;
+            case DOUBLE:
+                Unsafe.getUnsafe().putDouble(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getDouble(localRowID));
+                break;
+            case FLOAT:
+                Unsafe.getUnsafe().putFloat(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getFloat(localRowID));
+                break;
+            case INT:
+                Unsafe.getUnsafe().putInt(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getInt(localRowID));
+                break;
+            case LONG:
+            case DATE:
+                Unsafe.getUnsafe().putLong(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getLong(localRowID));
+                break;
+            case SHORT:
+                Unsafe.getUnsafe().putShort(obj, m.offset, ((FixedColumn) Unsafe.arrayGet(columns, i)).getShort(localRowID));
+                break;
+            case STRING:
+                Unsafe.getUnsafe().putObject(obj, m.offset, ((VariableColumn) Unsafe.arrayGet(columns, i)).getStr(localRowID));
+                break;
+            case SYMBOL:
+                Unsafe.getUnsafe().putObject(obj, m.offset, m.symbolTable.value(((FixedColumn) Unsafe.arrayGet(columns, i)).getInt(localRowID)));
+                break;
+            case BINARY:
+                readBin(localRowID, obj, i, m);
+                break;
         }
     }
 
@@ -359,12 +420,27 @@ public class Partition<T> implements Iterable<T>, Closeable {
     public void rebuildIndex(int columnIndex, int keyCountHint, int recordCountHint, int txCountHint) throws JournalException {
         final long time = LOGGER.isInfoEnabled() ? System.nanoTime() : 0L;
 
-        getIndexForColumn(columnIndex).close();
-
         File base = new File(partitionDir, columnMetadata[columnIndex].name);
+        if (columnMetadata[columnIndex].type == ColumnType.STRING) {
+            getIndexProxy(columnIndex).close();
+            StringIndex.delete(base);
+
+            try (StringIndex index = new StringIndex(base, (VariableColumn) getAbstractColumn(columnIndex), keyCountHint, recordCountHint, JournalMode.APPEND)) {
+                VariableColumn col = (VariableColumn) getAbstractColumn(columnIndex);
+                for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
+                    index.add(col.getFlyweightStr(localRowID), localRowID);
+                }
+            }
+
+            LOGGER.debug("REBUILT %s [%dms]", base, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time));
+            return;
+        }
+
+        getIndexForColumn(columnIndex).close();
         KVIndex.delete(base);
+        BitmapIndex.delete(base);
 
-        try (KVIndex index = new KVIndex(base, keyCountHint, recordCountHint, txCountHint, JournalMode.APPEND, 0)) {
+        try (SymbolIndex index = SymbolIndexProxy.openIndex(base, columnMetadata[columnIndex], keyCountHint, recordCountHint, txCountHint, JournalMode.APPEND, 0)) {
             FixedColumn col = getFixedWidthColumn(columnIndex);
             for (long localRowID = 0, sz = size(); localRowID < sz; localRowID++) {
                 index.add(col.getInt(localRowID), localRowID);
@@ -395,17 +471,7 @@ public class Partition<T> implements Iterable<T>, Closeable {
             return txLimit;
         }
 
-        long sz = 0;
-        for (int i = columns.length - 1; i > -1; i--) {
-            AbstractColumn c = Unsafe.arrayGet(columns, i);
-            if (c != null) {
-                sz = c.size();
-                break;
-            }
-        }
-
-        txLimit = sz;
-        return sz;
+        return txLimit = columnSize();
     }
 
     @Override
@@ -424,7 +490,11 @@ public class Partition<T> implements Iterable<T>, Closeable {
             try {
                 for (int n = 0, k = indexProxies.size(); n < k; n++) {
                     SymbolIndexProxy<T> proxy = indexProxies.getQuick(n);
-                    KVIndex index = proxy.getIndex();
+                    if (proxy.isString()) {
+                        indexRows(proxy, oldSize, newSize);
+                        continue;
+                    }
+                    SymbolIndex index = proxy.getIndex();
                     FixedColumn col = getFixedWidthColumn(proxy.getColumnIndex());
                     for (long i = oldSize; i < newSize; i++) {
                         index.add(col.getInt(i), i);
@@ -459,51 +529,56 @@ public class Partition<T> implements Iterable<T>, Closeable {
 
     void append(T obj) throws JournalException {
 
+        try {
+            if (serializer != null) {
+                serializer.append(obj, columns, this);
+            } else {
+                for (int i = 0; i < columnCount; i++) {
+                    appendColumn(obj, i);
+                    Unsafe.arrayGet(columns, i).commit();
+                }
+            }
+
+            applyTx(Journal.TX_LIMIT_EVAL, null);
+        } catch (Throwable e) {
+            ((JournalWriter) this.journal).rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends rows of compatible partition by copying column data. Symbol keys are translated to keys of
+     * this journal and column indexes are updated for the whole range once data is copied.
+     *
+     * @param src           source partition
+     * @param lo            first row to copy
+     * @param hi            row after last row to copy
+     * @param symbolKeyMaps key translations for symbol columns, indexed by column
+     * @throws com.nfsdb.exceptions.JournalException if data cannot be copied
+     */
+    void append(Partition<T> src, long lo, long hi, SymbolKeyMap[] symbolKeyMaps) throws JournalException {
+        // size() would cache tx limit and applyTx() below would then discard uncommitted index entries
+        long size = txLimit == Journal.TX_LIMIT_EVAL ? columnSize() : txLimit;
         try {
             for (int i = 0; i < columnCount; i++) {
-                ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
-                switch (m.type) {
-                    case INT:
-                        int v = Unsafe.getUnsafe().getInt(obj, m.offset);
-                        if (m.indexed) {
-                            sparseIndexProxies[i].getIndex().add(v % m.distinctCountHint, ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(v));
-                        } else {
-                            ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(v);
-                        }
-                        break;
-                    case STRING:
-                        String s = (String) Unsafe.getUnsafe().getObject(obj, m.offset);
-                        long offset = ((VariableColumn) Unsafe.arrayGet(columns, i)).putStr(s);
-                        if (m.indexed) {
-                            sparseIndexProxies[i].getIndex().add(
-                                    s == null ? SymbolTable.VALUE_IS_NULL : Hash.boundedHash(s, m.distinctCountHint)
-                                    , offset
-                            );
-                        }
-                        break;
+                AbstractColumn column = Unsafe.arrayGet(columns, i);
+                switch (Unsafe.arrayGet(columnMetadata, i).type) {
                     case SYMBOL:
-                        int key;
-                        String sym = (String) Unsafe.getUnsafe().getObject(obj, m.offset);
-                        if (sym == null) {
-                            key = SymbolTable.VALUE_IS_NULL;
-                        } else {
-                            key = m.symbolTable.put(sym);
-                        }
-                        if (m.indexed) {
-                            sparseIndexProxies[i].getIndex().add(key, ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(key));
-                        } else {
-                            ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(key);
-                        }
+                        ((FixedColumn) column).append((FixedColumn) src.getAbstractColumn(i), lo, hi, Unsafe.arrayGet(symbolKeyMaps, i));
                         break;
+                    case STRING:
                     case BINARY:
-                        appendBin(obj, i, m);
+                        ((VariableColumn) column).append((VariableColumn) src.getAbstractColumn(i), lo, hi);
                         break;
                     default:
-                        ((FixedColumn) Unsafe.arrayGet(columns, i)).copy(obj, m.offset);
+                        ((FixedColumn) column).append((FixedColumn) src.getAbstractColumn(i), lo, hi);
                         break;
                 }
+                column.commit();
+            }
 
-                Unsafe.arrayGet(columns, i).commit();
+            for (int i = 0, k = indexProxies.size(); i < k; i++) {
+                indexRows(indexProxies.getQuick(i), size, size + hi - lo);
             }
 
             applyTx(Journal.TX_LIMIT_EVAL, null);
@@ -513,7 +588,56 @@ public class Partition<T> implements Iterable<T>, Closeable {
         }
     }
 
-    private void appendBin(T obj, int i, ColumnMetadata meta) {
+    /**
+     * Appends value of object field to column without committing column. Generated serializers call this
+     * method through AbstractPartitionSerializer for string, symbol, binary and indexed columns.
+     *
+     * @param obj source object
+     * @param i   column index
+     * @throws com.nfsdb.exceptions.JournalException if column index cannot be updated
+     */
+    void appendColumn(Object obj, int i) throws JournalException {
+        ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+        switch (m.type) {
+            case INT:
+                int v = Unsafe.getUnsafe().getInt(obj, m.offset);
+                if (m.indexed) {
+                    sparseIndexProxies[i].getIndex().add(v % m.distinctCountHint, ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(v));
+                } else {
+                    ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(v);
+                }
+                break;
+            case STRING:
+                String s = (String) Unsafe.getUnsafe().getObject(obj, m.offset);
+                long offset = ((VariableColumn) Unsafe.arrayGet(columns, i)).putStr(s);
+                if (m.indexed) {
+                    sparseIndexProxies[i].getStringIndex().add(s, offset);
+                }
+                break;
+            case SYMBOL:
+                int key;
+                String sym = (String) Unsafe.getUnsafe().getObject(obj, m.offset);
+                if (sym == null) {
+                    key = SymbolTable.VALUE_IS_NULL;
+                } else {
+                    key = m.symbolTable.put(sym);
+                }
+                if (m.indexed) {
+                    sparseIndexProxies[i].getIndex().add(key, ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(key));
+                } else {
+                    ((FixedColumn) Unsafe.arrayGet(columns, i)).putInt(key);
+                }
+                break;
+            case BINARY:
+                appendBin(obj, i, m);
+                break;
+            default:
+                ((FixedColumn) Unsafe.arrayGet(columns, i)).copy(obj, m.offset);
+                break;
+        }
+    }
+
+    private void appendBin(Object obj, int i, ColumnMetadata meta) {
         ByteBuffer buf = (ByteBuffer) Unsafe.getUnsafe().getObject(obj, meta.offset);
         if (buf == null) {
             ((VariableColumn) Unsafe.arrayGet(columns, i)).putNull();
@@ -539,7 +663,17 @@ public class Partition<T> implements Iterable<T>, Closeable {
 
     void commit() throws JournalException {
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
-            indexProxies.getQuick(i).getIndex().commit();
+            indexProxies.getQuick(i).commit();
+        }
+
+        if (zoneMaps != null) {
+            for (int i = 0; i < zoneMaps.length; i++) {
+                ZoneMap zm = Unsafe.arrayGet(zoneMaps, i);
+                if (zm != null) {
+                    FixedColumn col = (FixedColumn) Unsafe.arrayGet(columns, i);
+                    zm.update(col, col.size());
+                }
+            }
         }
     }
 
@@ -563,7 +697,7 @@ public class Partition<T> implements Iterable<T>, Closeable {
 
     void force() throws JournalException {
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
-            indexProxies.getQuick(i).getIndex().force();
+            indexProxies.getQuick(i).force();
         }
 
         if (columns != null) {
@@ -572,6 +706,9 @@ public class Partition<T> implements Iterable<T>, Closeable {
                 if (column != null) {
                     column.force();
                 }
+                if (Unsafe.arrayGet(zoneMaps, i) != null) {
+                    Unsafe.arrayGet(zoneMaps, i).force();
+                }
             }
         }
     }
@@ -581,16 +718,25 @@ public class Partition<T> implements Iterable<T>, Closeable {
         return (FixedColumn) Unsafe.arrayGet(columns, i);
     }
 
+    private SymbolIndexProxy<T> getIndexProxy(int columnIndex) throws JournalException {
+        SymbolIndexProxy<T> h = sparseIndexProxies[columnIndex];
+        if (h == null) {
+            throw new JournalException("There is no index for column '%s' in %s", columnMetadata[columnIndex].name, this);
+        }
+        return h;
+    }
+
     void getIndexPointers(long[] pointers) throws JournalException {
         for (int i = 0, k = indexProxies.size(); i < k; i++) {
             SymbolIndexProxy<T> proxy = indexProxies.getQuick(i);
-            pointers[proxy.getColumnIndex()] = proxy.getIndex().getTxAddress();
+            pointers[proxy.getColumnIndex()] = proxy.getTxAddress();
         }
     }
 
     @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
     private void open0() throws JournalException {
         columns = new AbstractColumn[journal.getMetadata().getColumnCount()];
+        zoneMaps = new ZoneMap[columns.length];
 
         for (int i = 0; i < columns.length; i++) {
             switch (Unsafe.arrayGet(columnMetadata, i).type) {
@@ -611,16 +757,10 @@ public class Partition<T> implements Iterable<T>, Closeable {
                     );
                     break;
                 default:
-                    Unsafe.arrayPut(columns, i,
-                            new FixedColumn(
-                                    new MemoryFile(
-                                            new File(partitionDir, Unsafe.arrayGet(columnMetadata, i).name + ".d"),
-                                            Unsafe.arrayGet(columnMetadata, i).bitHint,
-                                            journal.getMode()
-                                    ),
-                                    Unsafe.arrayGet(columnMetadata, i).size
-                            )
-                    );
+                    FixedColumn column = openFixedColumn(Unsafe.arrayGet(columnMetadata, i));
+                    Unsafe.arrayPut(columns, i, column);
+                    Unsafe.arrayPut(zoneMaps, i, openZoneMap(Unsafe.arrayGet(columnMetadata, i)));
+                    sealed |= column instanceof SealedColumn;
             }
         }
 
@@ -628,9 +768,146 @@ public class Partition<T> implements Iterable<T>, Closeable {
         if (tsIndex > -1) {
             timestampColumn = getFixedWidthColumn(tsIndex);
         }
+
+        if (journal.getMode() == JournalMode.APPEND || journal.getMode() == JournalMode.BULK_APPEND) {
+            rebuildStringIndexes();
+        }
+    }
+
+    private FixedColumn openFixedColumn(ColumnMetadata m) throws JournalException {
+        File sealed = new File(partitionDir, m.name + PartitionSealer.SEALED_FILE_SUFFIX);
+        if (!sealed.exists()) {
+            try {
+                return new FixedColumn(new MemoryFile(new File(partitionDir, m.name + ".d"), m.bitHint, journal.getMode()), m.size);
+            } catch (JournalNoSuchFileException e) {
+                // column could have been sealed after we checked
+                if (!sealed.exists()) {
+                    throw e;
+                }
+            }
+        }
+
+        switch (journal.getMode()) {
+            case APPEND:
+            case BULK_APPEND:
+                // sealer leaves original column in place because it could be mapped by writer,
+                // which no longer holds it now that partition is being reopened
+                File data = new File(partitionDir, m.name + ".d");
+                if (data.exists() && !data.delete()) {
+                    LOGGER.info("Could not delete sealed column file: %s", data);
+                }
+                break;
+            default:
+                break;
+        }
+        return new SealedColumn(new MemoryFile(sealed, m.bitHint, journal.getMode()));
+    }
+
+    /**
+     * Turns sealed columns back into plain columns, so that they can be truncated or appended to. Writer seals
+     * partition again when it is no longer appended to.
+     */
+    void unseal() throws JournalException {
+        for (int i = 0; i < columns.length; i++) {
+            AbstractColumn c = Unsafe.arrayGet(columns, i);
+            if (!(c instanceof FixedColumn)) {
+                continue;
+            }
+
+            ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+            File z = new File(partitionDir, m.name + PartitionSealer.SEALED_FILE_SUFFIX);
+            File d = new File(partitionDir, m.name + ".d");
+
+            if (c instanceof SealedColumn) {
+                if (!d.exists()) {
+                    SealedColumn sc = (SealedColumn) c;
+                    File tmp = new File(partitionDir, m.name + ".d.tmp");
+                    try (FixedColumn dst = new FixedColumn(new MemoryFile(tmp, m.bitHint, JournalMode.APPEND), m.size)) {
+                        dst.append(sc, 0, sc.size());
+                        dst.commit();
+                        dst.force();
+                    }
+                    if (!tmp.renameTo(d)) {
+                        throw new JournalException("Cannot rename %s to %s", tmp, d);
+                    }
+                }
+                c.close();
+                Unsafe.arrayPut(columns, i, new FixedColumn(new MemoryFile(d, m.bitHint, journal.getMode()), m.size));
+            } else if (!z.exists()) {
+                continue;
+            }
+
+            // column could have been sealed after partition was opened, in which case plain column is still intact
+            if (!z.delete()) {
+                throw new JournalException("Cannot delete sealed column %s", z);
+            }
+            LOGGER.info("Unsealed %s", d);
+        }
+        sealed = false;
+        if (timestampColumn instanceof SealedColumn) {
+            timestampColumn = getFixedWidthColumn(journal.getMetadata().getTimestampIndex());
+        }
+    }
+
+    private ZoneMap openZoneMap(ColumnMetadata m) throws JournalException {
+        if (!ZoneMap.isSupported(m.type)) {
+            return null;
+        }
+
+        File f = new File(partitionDir, m.name + ".zm");
+        switch (journal.getMode()) {
+            case APPEND:
+            case BULK_APPEND:
+                break;
+            default:
+                // readers use zone maps of existing partitions only
+                if (!f.exists()) {
+                    return null;
+                }
+        }
+        return new ZoneMap(new MemoryFile(f, ZONE_MAP_BIT_HINT, journal.getMode()), m.type);
+    }
+
+    private long columnSize() {
+        for (int i = columns.length - 1; i > -1; i--) {
+            AbstractColumn c = Unsafe.arrayGet(columns, i);
+            if (c != null) {
+                return c.size();
+            }
+        }
+        return 0;
+    }
+
+    private void indexRows(SymbolIndexProxy<T> proxy, long lo, long hi) throws JournalException {
+        int i = proxy.getColumnIndex();
+        ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+        if (m.type == ColumnType.STRING) {
+            StringIndex index = proxy.getStringIndex();
+            VariableColumn vc = (VariableColumn) Unsafe.arrayGet(columns, i);
+            for (long r = lo; r < hi; r++) {
+                index.add(vc.getFlyweightStr(r), r);
+            }
+            return;
+        }
+
+        SymbolIndex index = proxy.getIndex();
+        switch (m.type) {
+            case INT:
+                FixedColumn ic = (FixedColumn) Unsafe.arrayGet(columns, i);
+                for (long r = lo; r < hi; r++) {
+                    index.add(ic.getInt(r) % m.distinctCountHint, r);
+                }
+                break;
+            default:
+                FixedColumn fc = (FixedColumn) Unsafe.arrayGet(columns, i);
+                for (long r = lo; r < hi; r++) {
+                    index.add(fc.getInt(r), r);
+                }
+                break;
+        }
     }
 
-    private void readBin(long localRowID, T obj, int i, ColumnMetadata m) {
+    private void readBin(long localRowID, Object obj, int i, ColumnMetadata m) {
         int size = ((VariableColumn) Unsafe.arrayGet(columns, i)).getBinSize(localRowID);
         ByteBuffer buf = (ByteBuffer) Unsafe.getUnsafe().getObject(obj, m.offset);
         if (size == -1) {
@@ -652,6 +929,18 @@ public class Partition<T> implements Iterable<T>, Closeable {
         }
     }
 
+    /**
+     * Indexes string columns of partition, which was written before strings were indexed by value.
+     */
+    private void rebuildStringIndexes() throws JournalException {
+        for (int i = 0; i < columnCount; i++) {
+            ColumnMetadata m = Unsafe.arrayGet(columnMetadata, i);
+            if (m.indexed && m.type == ColumnType.STRING && !getIndexProxy(i).getStringIndex().isComplete(size())) {
+                rebuildIndex(i);
+            }
+        }
+    }
+
     final void setPartitionDir(File partitionDir, long[] indexTxAddresses) {
         boolean create = partitionDir != null && !partitionDir.equals(this.partitionDir);
         this.partitionDir = partitionDir;
@@ -662,13 +951,17 @@ public class Partition<T> implements Iterable<T>, Closeable {
 
     void truncate(long newSize) throws JournalException {
         if (isOpen() && size() > newSize) {
+            unseal();
             for (int i = 0, k = indexProxies.size(); i < k; i++) {
-                indexProxies.getQuick(i).getIndex().truncate(newSize);
+                indexProxies.getQuick(i).truncate(newSize);
             }
             for (int i = 0; i < columns.length; i++) {
                 if (Unsafe.arrayGet(columns, i) != null) {
                     Unsafe.arrayGet(columns, i).truncate(newSize);
                 }
+                if (Unsafe.arrayGet(zoneMaps, i) != null) {
+                    Unsafe.arrayGet(zoneMaps, i).truncate(newSize);
+                }
             }
 
             commitColumns();
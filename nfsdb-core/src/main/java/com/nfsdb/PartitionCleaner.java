@@ -23,6 +23,7 @@ import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.utils.NamedDaemonThreadFactory;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.File;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -54,7 +55,15 @@ public class PartitionCleaner {
     }
 
     public void purge() {
-        ringBuffer.publish(ringBuffer.next());
+        long cursor = ringBuffer.next();
+        ringBuffer.get(cursor).partitionDir = null;
+        ringBuffer.publish(cursor);
+    }
+
+    public void seal(File partitionDir) {
+        long cursor = ringBuffer.next();
+        ringBuffer.get(cursor).partitionDir = partitionDir;
+        ringBuffer.publish(cursor);
     }
 
     public void start() {
@@ -18,6 +18,8 @@ package com.nfsdb;
 
 import com.lmax.disruptor.EventFactory;
 
+import java.io.File;
+
 class PartitionCleanerEvent {
     static final EventFactory<PartitionCleanerEvent> EVENT_FACTORY = new EventFactory<PartitionCleanerEvent>() {
         @Override
@@ -26,4 +28,6 @@ class PartitionCleanerEvent {
         }
     };
 
+    // partition to seal, null when event is purge request
+    File partitionDir;
 }
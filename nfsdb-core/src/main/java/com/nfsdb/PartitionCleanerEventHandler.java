@@ -31,6 +31,7 @@ class PartitionCleanerEventHandler implements EventHandler<PartitionCleanerEvent
     final CountDownLatch stopLatch = new CountDownLatch(1);
     private final JournalWriter writer;
     private TxLog txLog;
+    private boolean purgePending = false;
 
     public PartitionCleanerEventHandler(JournalWriter writer) {
         this.writer = writer;
@@ -38,8 +39,16 @@ class PartitionCleanerEventHandler implements EventHandler<PartitionCleanerEvent
 
     @Override
     public void onEvent(PartitionCleanerEvent event, long sequence, boolean endOfBatch) throws Exception {
-        if (endOfBatch) {
+        if (event.partitionDir != null) {
+            PartitionSealer.seal(event.partitionDir, writer.getMetadata());
+            event.partitionDir = null;
+        } else {
+            purgePending = true;
+        }
+
+        if (endOfBatch && purgePending) {
             writer.purgeUnusedTempPartitions(txLog);
+            purgePending = false;
         }
     }
 
@@ -48,17 +57,18 @@ class PartitionCleanerEventHandler implements EventHandler<PartitionCleanerEvent
         if (this.txLog != null) {
             this.txLog.close();
             this.txLog = null;
-            stopLatch.countDown();
         }
+        stopLatch.countDown();
     }
 
     @Override
     public void onStart() {
         try {
             this.txLog = new TxLog(writer.getLocation(), JournalMode.READ);
-            startLatch.countDown();
         } catch (JournalException e) {
             throw new JournalRuntimeException(e);
+        } finally {
+            startLatch.countDown();
         }
     }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.FixedColumn;
+import com.nfsdb.storage.MemoryFile;
+import com.nfsdb.storage.SealedColumn;
+
+import java.io.File;
+
+/**
+ * Rewrites fixed width columns of partition into compressed form. Column is first written into
+ * temporary file, which is then renamed to become sealed column. Original column file is left in place,
+ * because writer and readers could still have it mapped. Writer deletes it when it reopens partition.
+ */
+final class PartitionSealer {
+    static final String SEALED_FILE_SUFFIX = ".z";
+    private static final Logger LOGGER = Logger.getLogger(PartitionSealer.class);
+
+    private PartitionSealer() {
+    }
+
+    static void seal(File partitionDir, JournalMetadata<?> metadata) throws JournalException {
+        for (int i = 0, n = metadata.getColumnCount(); i < n; i++) {
+            ColumnMetadata m = metadata.getColumn(i);
+            switch (m.type) {
+                case STRING:
+                case BINARY:
+                    break;
+                default:
+                    sealColumn(partitionDir, m);
+            }
+        }
+    }
+
+    private static void sealColumn(File partitionDir, ColumnMetadata m) throws JournalException {
+        File data = new File(partitionDir, m.name + ".d");
+        File sealed = new File(partitionDir, m.name + SEALED_FILE_SUFFIX);
+        if (sealed.exists() || !data.exists()) {
+            return;
+        }
+
+        File tmp = new File(partitionDir, m.name + SEALED_FILE_SUFFIX + ".tmp");
+        try (
+                FixedColumn src = new FixedColumn(new MemoryFile(data, m.bitHint, JournalMode.READ), m.size);
+                MemoryFile dst = new MemoryFile(tmp, m.bitHint, JournalMode.APPEND)
+        ) {
+            SealedColumn.seal(src, m.type, dst, SealedColumn.DEFAULT_BLOCK_ROWS);
+            dst.force();
+        }
+
+        if (!tmp.renameTo(sealed)) {
+            throw new JournalException("Cannot rename %s to %s", tmp, sealed);
+        }
+        LOGGER.trace("Sealed %s", sealed);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.storage.AbstractColumn;
+
+/**
+ * Moves values between model object and partition columns. Implementations are generated for every column
+ * layout of model class by PartitionSerializerGenerator and have column access unrolled into straight-line code.
+ */
+public interface PartitionSerializer {
+
+    void append(Object obj, AbstractColumn[] columns, Partition partition) throws JournalException;
+
+    void read(long localRowID, Object obj, AbstractColumn[] columns, Partition partition);
+}
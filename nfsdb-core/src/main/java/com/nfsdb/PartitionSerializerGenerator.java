@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.BytecodeEmitter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates PartitionSerializer class for given column layout. Generated methods contain no loops or
+ * branches, fixed width values are copied between object fields and columns with field offsets inlined
+ * as constants. Variable length, symbol and indexed columns are delegated to Partition.
+ * <p/>
+ * Serializers are cached by model class and column layout, so that journals of the same model share
+ * single generated class instead of defining new class every time metadata is created.
+ */
+public final class PartitionSerializerGenerator {
+    private static final Logger LOGGER = Logger.getLogger(PartitionSerializerGenerator.class);
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    private static final ConcurrentHashMap<String, PartitionSerializer> CACHE = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = !"false".equals(System.getProperty("nfsdb.serializer.generate"));
+
+    private static final int ALOAD = 0x19;
+    private static final int LLOAD = 0x16;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int AALOAD = 0x32;
+    private static final int CHECKCAST = 0xc0;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int RETURN = 0xb1;
+
+    private static final String UNSAFE = "sun/misc/Unsafe";
+    private static final String FIXED_COLUMN = "com/nfsdb/storage/FixedColumn";
+    private static final String ABSTRACT_COLUMN = "com/nfsdb/storage/AbstractColumn";
+    private static final String PARTITION = "com/nfsdb/Partition";
+    private static final String SUPER_CLASS = "com/nfsdb/AbstractPartitionSerializer";
+
+    private final BytecodeEmitter emitter = new BytecodeEmitter();
+
+    private PartitionSerializerGenerator() {
+    }
+
+    /**
+     * Returns serializer for column layout of model class. Serializer is generated once for each layout.
+     *
+     * @param modelClass model class
+     * @param metadata   column metadata with resolved field offsets
+     * @return serializer instance or null if serializer cannot be generated or generation is disabled
+     */
+    public static PartitionSerializer generate(Class<?> modelClass, ColumnMetadata[] metadata) {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = layoutKey(modelClass, metadata);
+        PartitionSerializer serializer = CACHE.get(key);
+        if (serializer == null) {
+            serializer = generate0(metadata);
+            if (serializer != null) {
+                PartitionSerializer existing = CACHE.putIfAbsent(key, serializer);
+                if (existing != null) {
+                    serializer = existing;
+                }
+            }
+        }
+        return serializer;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        PartitionSerializerGenerator.enabled = enabled;
+    }
+
+    static int getCachedCount() {
+        return CACHE.size();
+    }
+
+    private static PartitionSerializer generate0(ColumnMetadata[] metadata) {
+        try {
+            String name = "com/nfsdb/GeneratedPartitionSerializer" + CLASS_COUNTER.incrementAndGet();
+            return (PartitionSerializer) new PartitionSerializerGenerator().assemble(name, metadata).newInstance();
+        } catch (Throwable e) {
+            LOGGER.info("Cannot generate serializer, using default: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isAppendInlined(ColumnMetadata m) {
+        switch (m.type) {
+            case STRING:
+            case SYMBOL:
+            case BINARY:
+                return false;
+            default:
+                return !m.indexed;
+        }
+    }
+
+    /**
+     * Generated code depends on type, field offset and index flag of each column, in column order.
+     */
+    private static String layoutKey(Class<?> modelClass, ColumnMetadata[] metadata) {
+        StringBuilder b = new StringBuilder(modelClass.getName());
+        for (int i = 0; i < metadata.length; i++) {
+            ColumnMetadata m = metadata[i];
+            b.append('|').append(m.type.ordinal()).append(':').append(m.offset).append(m.indexed ? ":i" : "");
+        }
+        return b.toString();
+    }
+
+    private static String unsafePutDescriptor(String type) {
+        return "(Ljava/lang/Object;J" + type + ")V";
+    }
+
+    private void aload(int index) {
+        emitter.op(ALOAD);
+        emitter.op(index);
+    }
+
+    private Class<?> assemble(String name, ColumnMetadata[] metadata) {
+        initCode();
+        emitter.method("<init>", "()V", 1, 1);
+        appendCode(metadata);
+        emitter.method("append", "(Ljava/lang/Object;[L" + ABSTRACT_COLUMN + ";L" + PARTITION + ";)V", 8, 4);
+        readCode(metadata);
+        emitter.method("read", "(JLjava/lang/Object;[L" + ABSTRACT_COLUMN + ";L" + PARTITION + ";)V", 8, 6);
+        // interfaces are inherited
+        return emitter.define(name, SUPER_CLASS);
+    }
+
+    private void appendCode(ColumnMetadata[] metadata) {
+        // locals: 0 - this, 1 - obj, 2 - columns, 3 - partition
+        int copy = emitter.methodRef(FIXED_COLUMN, "copy", "(Ljava/lang/Object;J)V");
+        int appendColumn = emitter.methodRef(SUPER_CLASS, "appendColumn", "(L" + PARTITION + ";Ljava/lang/Object;I)V");
+        int commit = emitter.methodRef(ABSTRACT_COLUMN, "commit", "()V");
+        int fixedColumn = emitter.classRef(FIXED_COLUMN);
+
+        for (int i = 0; i < metadata.length; i++) {
+            ColumnMetadata m = metadata[i];
+            if (isAppendInlined(m)) {
+                // ((FixedColumn) columns[i]).copy(obj, offset)
+                column(2, i, fixedColumn);
+                aload(1);
+                emitter.op(LDC2_W, emitter.longConst(m.offset));
+                emitter.op(INVOKEVIRTUAL, copy);
+            } else {
+                // appendColumn(partition, obj, i)
+                aload(3);
+                aload(1);
+                emitter.op(SIPUSH, i);
+                emitter.op(INVOKESTATIC, appendColumn);
+            }
+            // columns[i].commit()
+            column(2, i, -1);
+            emitter.op(INVOKEVIRTUAL, commit);
+        }
+        emitter.op(RETURN);
+    }
+
+    private void column(int columnsLocal, int i, int castClass) {
+        aload(columnsLocal);
+        emitter.op(SIPUSH, i);
+        emitter.op(AALOAD);
+        if (castClass != -1) {
+            emitter.op(CHECKCAST, castClass);
+        }
+    }
+
+    private void initCode() {
+        aload(0);
+        emitter.op(INVOKESPECIAL, emitter.methodRef(SUPER_CLASS, "<init>", "()V"));
+        emitter.op(RETURN);
+    }
+
+    private void readCode(ColumnMetadata[] metadata) {
+        // locals: 0 - this, 1,2 - localRowID, 3 - obj, 4 - columns, 5 - partition
+        int getUnsafe = emitter.methodRef("com/nfsdb/utils/Unsafe", "getUnsafe", "()L" + UNSAFE + ";");
+        int readColumn = emitter.methodRef(SUPER_CLASS, "readColumn", "(L" + PARTITION + ";JLjava/lang/Object;I)V");
+        int fixedColumn = emitter.classRef(FIXED_COLUMN);
+
+        for (int i = 0; i < metadata.length; i++) {
+            ColumnMetadata m = metadata[i];
+            if (m.offset == 0) {
+                continue;
+            }
+
+            String getter;
+            String type;
+            switch (m.type) {
+                case BOOLEAN:
+                    getter = "getBool";
+                    type = "Z";
+                    break;
+                case BYTE:
+                    getter = "getByte";
+                    type = "B";
+                    break;
+                case DOUBLE:
+                    getter = "getDouble";
+                    type = "D";
+                    break;
+                case FLOAT:
+                    getter = "getFloat";
+                    type = "F";
+                    break;
+                case INT:
+                    getter = "getInt";
+                    type = "I";
+                    break;
+                case LONG:
+                case DATE:
+                    getter = "getLong";
+                    type = "J";
+                    break;
+                case SHORT:
+                    getter = "getShort";
+                    type = "S";
+                    break;
+                default:
+                    // readColumn(partition, localRowID, obj, i)
+                    aload(5);
+                    emitter.op(LLOAD);
+                    emitter.op(1);
+                    aload(3);
+                    emitter.op(SIPUSH, i);
+                    emitter.op(INVOKESTATIC, readColumn);
+                    continue;
+            }
+
+            String put = "put" + (m.type == ColumnType.BOOLEAN ? "Boolean" : getter.substring(3));
+            if (m.type == ColumnType.DATE) {
+                put = "putLong";
+            }
+
+            // Unsafe.getUnsafe().putX(obj, offset, ((FixedColumn) columns[i]).getX(localRowID))
+            emitter.op(INVOKESTATIC, getUnsafe);
+            aload(3);
+            emitter.op(LDC2_W, emitter.longConst(m.offset));
+            column(4, i, fixedColumn);
+            emitter.op(LLOAD);
+            emitter.op(1);
+            emitter.op(INVOKEVIRTUAL, emitter.methodRef(FIXED_COLUMN, getter, "(J)" + type));
+            emitter.op(INVOKEVIRTUAL, emitter.methodRef(UNSAFE, put, unsafePutDescriptor(type)));
+        }
+        emitter.op(RETURN);
+    }
+}
@@ -20,7 +20,14 @@ import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.logging.Logger;
+import com.nfsdb.storage.BitmapIndex;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.IndexType;
 import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.StringIndex;
+import com.nfsdb.storage.SymbolIndex;
+import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.utils.Files;
 
 import java.io.Closeable;
 import java.io.File;
@@ -30,7 +37,10 @@ class SymbolIndexProxy<T> implements Closeable {
     private static final Logger LOGGER = Logger.getLogger(SymbolIndexProxy.class);
     private final Partition<T> partition;
     private final int columnIndex;
-    private KVIndex index;
+    private SymbolIndex index;
+    private StringIndex stringIndex;
+    // directory of string index built by reader, null when index is in partition directory
+    private File stringIndexDir;
     private long txAddress;
 
     SymbolIndexProxy(Partition<T> partition, int columnIndex, long txAddress) {
@@ -45,6 +55,15 @@ class SymbolIndexProxy<T> implements Closeable {
             index.close();
             index = null;
         }
+        if (stringIndex != null) {
+            LOGGER.trace("Closing " + this);
+            stringIndex.close();
+            stringIndex = null;
+        }
+        if (stringIndexDir != null) {
+            Files.delete(stringIndexDir);
+            stringIndexDir = null;
+        }
     }
 
     public int getColumnIndex() {
@@ -62,16 +81,129 @@ class SymbolIndexProxy<T> implements Closeable {
     public String toString() {
         return "SymbolIndexProxy{" +
                 "index=" + index +
+                ", stringIndex=" + stringIndex +
                 '}';
     }
 
-    KVIndex getIndex() throws JournalException {
+    void commit() throws JournalException {
+        // string index has no transaction
+        if (!isString()) {
+            getIndex().commit();
+        }
+    }
+
+    void compact() throws JournalException {
+        if (isString()) {
+            getStringIndex().compact();
+        } else {
+            getIndex().compact();
+        }
+    }
+
+    void force() throws JournalException {
+        if (isString()) {
+            getStringIndex().force();
+        } else {
+            getIndex().force();
+        }
+    }
+
+    BitmapIndex getBitmapIndex() throws JournalException {
+        SymbolIndex index = getIndex();
+        if (!(index instanceof BitmapIndex)) {
+            throw new JournalException("Column %s does not have bitmap index", getColumnMetadata().name);
+        }
+        return (BitmapIndex) index;
+    }
+
+    SymbolIndex getIndex() throws JournalException {
         if (index == null) {
+            if (isString()) {
+                throw new JournalException("Column %s has string index", getColumnMetadata().name);
+            }
             openIndex();
         }
         return index;
     }
 
+    /**
+     * Opens string index of partition. Writer brings index of partition written before strings were indexed
+     * by value up to date when partition is opened. Until then readers cannot use index in partition directory,
+     * they build their own copy in temporary directory instead and keep adding rows to it as partition grows.
+     */
+    StringIndex getStringIndex() throws JournalException {
+        if (stringIndex == null) {
+            ColumnMetadata m = getColumnMetadata();
+            if (!isString()) {
+                throw new JournalException("Column %s does not have string index", m.name);
+            }
+
+            JournalMode mode = partition.getJournal().getMode();
+            boolean writer = mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND;
+            if (writer || new File(partition.getPartitionDir(), m.name + ".sk").exists()) {
+                stringIndex = openStringIndex(new File(partition.getPartitionDir(), m.name), mode);
+                if (!writer && !stringIndex.isComplete(partition.size())) {
+                    stringIndex.close();
+                    stringIndex = null;
+                }
+            }
+
+            if (stringIndex == null) {
+                LOGGER.info("Partition %s does not have index of string column %s, indexing it in temporary directory", partition.getPartitionDir(), m.name);
+                stringIndexDir = Files.makeTempDir();
+                stringIndex = openStringIndex(new File(stringIndexDir, m.name), JournalMode.APPEND);
+            }
+        }
+
+        if (stringIndexDir != null) {
+            long n = partition.size();
+            if (stringIndex.size() > n) {
+                // transaction was rolled back
+                stringIndex.truncate(n);
+            }
+            VariableColumn col = (VariableColumn) partition.getAbstractColumn(columnIndex);
+            for (long r = stringIndex.size(); r < n; r++) {
+                stringIndex.add(col.getFlyweightStr(r), r);
+            }
+        }
+        return stringIndex;
+    }
+
+    /**
+     * String index has no transaction address, its pointer in transaction is always 0. Rows are appended
+     * to string index in ascending order, readers skip rows past partition size of their transaction.
+     */
+    long getTxAddress() throws JournalException {
+        return isString() ? 0 : getIndex().getTxAddress();
+    }
+
+    boolean isString() {
+        return getColumnMetadata().type == ColumnType.STRING;
+    }
+
+    void truncate(long size) throws JournalException {
+        if (isString()) {
+            getStringIndex().truncate(size);
+        } else {
+            getIndex().truncate(size);
+        }
+    }
+
+    private ColumnMetadata getColumnMetadata() {
+        return partition.getJournal().getMetadata().getColumn(columnIndex);
+    }
+
+    private StringIndex openStringIndex(File base, JournalMode mode) throws JournalException {
+        ColumnMetadata m = getColumnMetadata();
+        return new StringIndex(
+                base,
+                (VariableColumn) partition.getAbstractColumn(columnIndex),
+                m.distinctCountHint,
+                partition.getJournal().getMetadata().getRecordHint(),
+                mode
+        );
+    }
+
     private void openIndex() throws JournalException {
         JournalMetadata<T> meta = partition.getJournal().getMetadata();
         ColumnMetadata columnMetadata = meta.getColumn(columnIndex);
@@ -80,8 +212,9 @@ class SymbolIndexProxy<T> implements Closeable {
             throw new JournalException("There is no index for column: %s", columnMetadata.name);
         }
 
-        index = new KVIndex(
+        index = openIndex(
                 new File(partition.getPartitionDir(), columnMetadata.name),
+                columnMetadata,
                 columnMetadata.distinctCountHint,
                 meta.getRecordHint(),
                 meta.getTxCountHint(),
@@ -89,4 +222,11 @@ class SymbolIndexProxy<T> implements Closeable {
                 txAddress
         );
     }
+
+    static SymbolIndex openIndex(File base, ColumnMetadata m, int keyCountHint, int recordCountHint, int txCountHint, JournalMode mode, long txAddress) throws JournalException {
+        if (m.indexType == IndexType.BITMAP) {
+            return new BitmapIndex(base, keyCountHint, recordCountHint, txCountHint, mode, txAddress);
+        }
+        return new KVIndex(base, keyCountHint, recordCountHint, txCountHint, mode, txAddress);
+    }
 }
@@ -41,6 +41,7 @@ public class AssociativeCache<K, V> {
     private final int wmask;
     private final int ways;
     private final int bits;
+    private V evictedValue;
 
     public AssociativeCache(int initialCapacity) {
         this(8, initialCapacity);
@@ -82,6 +83,7 @@ public class AssociativeCache<K, V> {
         int firstCellIndex = (key.hashCode() & mask) << bits;
         int lastCellIndex = firstCellIndex + wmask;
         K oldKey = Unsafe.arrayGet(keys, lastCellIndex);
+        evictedValue = oldKey == null ? null : Unsafe.arrayGet(values, lastCellIndex);
         int toIndex = firstCellIndex + 1;
         System.arraycopy(keys, firstCellIndex, keys, toIndex, wmask);
         System.arraycopy(values, firstCellIndex, values, toIndex, wmask);
@@ -93,6 +95,15 @@ public class AssociativeCache<K, V> {
 
     public final void clear() {
         Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        evictedValue = null;
+    }
+
+    /**
+     * Value of key, which was evicted by last put(), null when put() did not evict anything.
+     */
+    public V getEvictedValue() {
+        return evictedValue;
     }
 
     public Iterator<Entry<K, V>> iterator() {
@@ -20,9 +20,15 @@ import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.utils.Numbers;
 import com.nfsdb.utils.Unsafe;
 
+import sun.nio.ch.DirectBuffer;
+
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class DirectPagedBuffer implements Closeable {
     private final int pageCapacity;
@@ -73,8 +79,8 @@ public class DirectPagedBuffer implements Closeable {
     }
 
     public void clear() {
-        cachePageLo = pages.get(0);
-        cachePageHi = cachePageLo + pageCapacity;
+        cachePageLo = 0;
+        cachePageHi = pageCapacity;
     }
 
     @Override
@@ -102,6 +108,10 @@ public class DirectPagedBuffer implements Closeable {
         return (cachePageLo += length) - length;
     }
 
+    public long getPageCapacity() {
+        return pageCapacity;
+    }
+
     public long getWriteOffsetWithChecks(long length) {
         if (cachePageLo + length > cachePageHi) {
             allocateAddressChecked(length);
@@ -109,6 +119,40 @@ public class DirectPagedBuffer implements Closeable {
         return (cachePageLo += length) - length;
     }
 
+    /**
+     * Replaces content of buffer with bytes read from channel. Bytes have to be written out by buffer
+     * of the same page capacity, so that offsets stay valid.
+     *
+     * @param channel channel to read from
+     * @param buf     direct byte buffer to copy bytes through
+     * @param len     number of bytes to read
+     * @throws IOException when channel cannot be read or has fewer bytes
+     */
+    public void readFrom(ReadableByteChannel channel, ByteBuffer buf, long len) throws IOException {
+        clear();
+        long bufAddress = ((DirectBuffer) buf).address();
+        long offset = 0;
+        while (offset < len) {
+            int n = (int) Math.min(Math.min(len - offset, getBlockLen(offset)), buf.capacity());
+            long writeOffset = getWriteOffsetQuick(n);
+            buf.position(0).limit(n);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) == -1) {
+                    throw new EOFException();
+                }
+            }
+            Unsafe.getUnsafe().copyMemory(bufAddress, toAddress(writeOffset), n);
+            offset += n;
+        }
+    }
+
+    /**
+     * @return number of bytes written to buffer, including unused ends of pages
+     */
+    public long size() {
+        return cachePageLo;
+    }
+
     public long toAddress(long offset) {
         return pages.get((int) (offset >> bits)) + (offset & mask);
     }
@@ -159,6 +203,30 @@ public class DirectPagedBuffer implements Closeable {
         }
     }
 
+    /**
+     * Writes content of buffer to channel.
+     *
+     * @param channel channel to write to
+     * @param buf     direct byte buffer to copy bytes through
+     * @return number of bytes written
+     * @throws IOException when channel cannot be written to
+     */
+    public long writeTo(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+        long bufAddress = ((DirectBuffer) buf).address();
+        long size = size();
+        long offset = 0;
+        while (offset < size) {
+            int n = (int) Math.min(Math.min(size - offset, getBlockLen(offset)), buf.capacity());
+            Unsafe.getUnsafe().copyMemory(toAddress(offset), bufAddress, n);
+            buf.position(0).limit(n);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            offset += n;
+        }
+        return size;
+    }
+
     private void allocateAddress() {
         cachePageLo = allocatePage();
         cachePageHi = cachePageLo + pageCapacity;
@@ -172,7 +240,11 @@ public class DirectPagedBuffer implements Closeable {
     }
 
     private long allocatePage() {
-        pages.add(Unsafe.getUnsafe().allocateMemory(pageCapacity));
-        return (pages.size() - 1) << bits;
+        // pages are kept when buffer is cleared, reuse them
+        int index = (int) ((cachePageLo + mask) >>> bits);
+        if (index == pages.size()) {
+            pages.add(Unsafe.getUnsafe().allocateMemory(pageCapacity));
+        }
+        return ((long) index) << bits;
     }
 }
@@ -46,7 +46,7 @@ public class DirectRecord extends AbstractRecord {
         int varColIndex = 0;
         for (int i = 0; i < offsets.length; i++) {
             ColumnType ct = metadata.getColumn(i).getType();
-            if (ct.size() != 0) {
+            if (!isVarLen(ct)) {
                 // Fixed columns.
                 fixedSize += ct.size();
                 offsets[i] = lastOffset;
@@ -56,7 +56,7 @@ public class DirectRecord extends AbstractRecord {
 
         // Init order of var len fields
         for (int i = 0; i < offsets.length; i++) {
-            if (metadata.getColumn(i).getType().size() == 0) {
+            if (isVarLen(metadata.getColumn(i).getType())) {
                 offsets[i] = -(varColIndex++);
             }
         }
@@ -170,7 +170,8 @@ public class DirectRecord extends AbstractRecord {
 
     @Override
     public String getSym(int col) {
-        return getStr(col).toString();
+        CharSequence cs = getFlyweightStr(col);
+        return cs == null ? null : cs.toString();
     }
 
     public int getFixedBlockLength() {
@@ -218,8 +219,9 @@ public class DirectRecord extends AbstractRecord {
                     writeAddress += 2;
                     break;
                 case SYMBOL:
-                    Unsafe.getUnsafe().putInt(writeAddress, record.getInt(i));
-                    writeAddress += 4;
+                    // symbol keys are local to journal, keep values
+                    writeString(headerAddress, record.getSym(i));
+                    headerAddress += 8;
                     break;
                 case DATE:
                     Unsafe.getUnsafe().putLong(writeAddress, record.getDate(i));
@@ -244,6 +246,10 @@ public class DirectRecord extends AbstractRecord {
         return recordStartOffset;
     }
 
+    private static boolean isVarLen(ColumnType type) {
+        return type.size() == 0 || type == ColumnType.SYMBOL;
+    }
+
     private long findAddress(int index) {
         return buffer.toAddress(findOffset(index));
     }
@@ -23,6 +23,9 @@ import com.nfsdb.utils.Unsafe;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 public class DirectRecordLinkedList extends AbstractImmutableIterator<Record> implements Closeable, RecordCursor<Record> {
     private final DirectPagedBuffer buffer;
@@ -34,6 +37,11 @@ public class DirectRecordLinkedList extends AbstractImmutableIterator<Record> im
         bufferRecord = new DirectRecord(recordMetadata, buffer);
     }
 
+    public DirectRecordLinkedList(RecordMetadata recordMetadata, int pageSize) {
+        this.buffer = new DirectPagedBuffer(pageSize);
+        bufferRecord = new DirectRecord(recordMetadata, buffer);
+    }
+
     public long append(Record record, long prevRecordOffset) {
         long recordAddressBegin = buffer.getWriteOffsetQuick(8 + bufferRecord.getFixedBlockLength());
         Unsafe.getUnsafe().putLong(buffer.toAddress(recordAddressBegin), prevRecordOffset);
@@ -65,4 +73,23 @@ public class DirectRecordLinkedList extends AbstractImmutableIterator<Record> im
     public void init(long offset) {
         this.readOffset = offset;
     }
+
+    /**
+     * Replaces content of list with bytes written out by {@link #writeTo(WritableByteChannel, ByteBuffer)}
+     * of list with the same page size. Offsets of records remain valid.
+     */
+    public void readFrom(ReadableByteChannel channel, ByteBuffer buf, long len) throws IOException {
+        buffer.readFrom(channel, buf, len);
+    }
+
+    /**
+     * @return number of bytes taken by records
+     */
+    public long size() {
+        return buffer.size();
+    }
+
+    public long writeTo(WritableByteChannel channel, ByteBuffer buf) throws IOException {
+        return buffer.writeTo(channel, buf);
+    }
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.collections;
+
+import com.nfsdb.utils.Numbers;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+
+/**
+ * Off-heap two-way map between int keys and character sequences.
+ * <p>
+ * Values are copied as UTF-16 chars into append-only memory block, each prefixed with its length. Values are
+ * looked up by open-addressing hash table of keys and keys are resolved to values via offset table. Neither
+ * lookups by CharSequence nor reads allocate objects: values are returned as flyweight {@link DirectCharSequence},
+ * which remains valid until next call to put() or clear().
+ */
+public class DirectSymbolCache implements Closeable {
+    public static final int NO_ENTRY = -1;
+    private static final double LOAD_FACTOR = 0.5;
+    private final DirectCharSequence flyweight = new DirectCharSequence();
+    // value chars
+    private long data;
+    private long dataCapacity;
+    private long dataSize;
+    // offset of value in data by key, -1 when key is not cached
+    private long offsets;
+    private int offsetCapacity;
+    // open-addressing table of keys, -1 is empty slot
+    private long slots;
+    private int mask;
+    private int free;
+    private int size;
+
+    public DirectSymbolCache(int capacity) {
+        int n = Numbers.ceilPow2((int) (Math.max(capacity, 8) / LOAD_FACTOR));
+        this.slots = allocInts(n);
+        this.mask = n - 1;
+        this.free = (int) (n * LOAD_FACTOR);
+        this.offsetCapacity = Math.max(capacity, 8);
+        this.offsets = Unsafe.getUnsafe().allocateMemory(offsetCapacity * 8L);
+        Unsafe.getUnsafe().setMemory(offsets, offsetCapacity * 8L, (byte) -1);
+        this.dataCapacity = Math.max(capacity, 8) * 16L;
+        this.data = Unsafe.getUnsafe().allocateMemory(dataCapacity);
+    }
+
+    public void clear() {
+        Unsafe.getUnsafe().setMemory(slots, (mask + 1) * 4L, (byte) -1);
+        Unsafe.getUnsafe().setMemory(offsets, offsetCapacity * 8L, (byte) -1);
+        free = (int) ((mask + 1) * LOAD_FACTOR);
+        dataSize = 0;
+        size = 0;
+    }
+
+    @Override
+    public void close() {
+        if (data != 0) {
+            Unsafe.getUnsafe().freeMemory(data);
+            data = 0;
+        }
+        if (offsets != 0) {
+            Unsafe.getUnsafe().freeMemory(offsets);
+            offsets = 0;
+        }
+        if (slots != 0) {
+            Unsafe.getUnsafe().freeMemory(slots);
+            slots = 0;
+        }
+    }
+
+    /**
+     * @return key of value or NO_ENTRY when value is not cached
+     */
+    public int get(CharSequence value) {
+        int len = value.length();
+        for (int slot = hash(value) & mask; ; slot = (slot + 1) & mask) {
+            int key = Unsafe.getUnsafe().getInt(slots + slot * 4L);
+            if (key == NO_ENTRY) {
+                return NO_ENTRY;
+            }
+            if (eq(key, value, len)) {
+                return key;
+            }
+        }
+    }
+
+    /**
+     * Caches value under key. Value must not be cached under another key already.
+     */
+    public void put(int key, CharSequence value) {
+        if (key < offsetCapacity && Unsafe.getUnsafe().getLong(offsets + key * 8L) != -1) {
+            return;
+        }
+
+        int len = value.length();
+        long offset = append(value, len);
+        setOffset(key, offset);
+
+        if (free == 0) {
+            rehash();
+        }
+
+        int slot = hashMem(offset, len) & mask;
+        while (Unsafe.getUnsafe().getInt(slots + slot * 4L) != NO_ENTRY) {
+            slot = (slot + 1) & mask;
+        }
+        Unsafe.getUnsafe().putInt(slots + slot * 4L, key);
+        free--;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return flyweight value of key or null when key is not cached
+     */
+    public CharSequence value(int key) {
+        if (key < 0 || key >= offsetCapacity) {
+            return null;
+        }
+        long offset = Unsafe.getUnsafe().getLong(offsets + key * 8L);
+        if (offset == -1) {
+            return null;
+        }
+        long lo = data + offset + 4;
+        return flyweight.init(lo, lo + Unsafe.getUnsafe().getInt(data + offset) * 2L);
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    private static long allocInts(int count) {
+        long address = Unsafe.getUnsafe().allocateMemory(count * 4L);
+        Unsafe.getUnsafe().setMemory(address, count * 4L, (byte) -1);
+        return address;
+    }
+
+    private static int hash(CharSequence value) {
+        // same as String.hashCode()
+        int h = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private long append(CharSequence value, int len) {
+        long need = dataSize + 4 + len * 2L;
+        if (need > dataCapacity) {
+            long cap = Math.max(need, dataCapacity * 2);
+            data = Unsafe.getUnsafe().reallocateMemory(data, cap);
+            dataCapacity = cap;
+        }
+
+        long offset = dataSize;
+        long p = data + offset;
+        Unsafe.getUnsafe().putInt(p, len);
+        p += 4;
+        for (int i = 0; i < len; i++, p += 2) {
+            Unsafe.getUnsafe().putChar(p, value.charAt(i));
+        }
+        dataSize = need;
+        return offset;
+    }
+
+    private boolean eq(int key, CharSequence value, int len) {
+        long p = data + Unsafe.getUnsafe().getLong(offsets + key * 8L);
+        if (Unsafe.getUnsafe().getInt(p) != len) {
+            return false;
+        }
+        p += 4;
+        for (int i = 0; i < len; i++, p += 2) {
+            if (Unsafe.getUnsafe().getChar(p) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashMem(long offset, int len) {
+        int h = 0;
+        for (long p = data + offset + 4, hi = p + len * 2L; p < hi; p += 2) {
+            h = 31 * h + Unsafe.getUnsafe().getChar(p);
+        }
+        return mix(h);
+    }
+
+    private void rehash() {
+        int n = (mask + 1) * 2;
+        long old = slots;
+        int oldCapacity = mask + 1;
+
+        slots = allocInts(n);
+        mask = n - 1;
+        free = (int) (n * LOAD_FACTOR) - size;
+
+        for (int i = 0; i < oldCapacity; i++) {
+            int key = Unsafe.getUnsafe().getInt(old + i * 4L);
+            if (key != NO_ENTRY) {
+                long offset = Unsafe.getUnsafe().getLong(offsets + key * 8L);
+                int slot = hashMem(offset, Unsafe.getUnsafe().getInt(data + offset)) & mask;
+                while (Unsafe.getUnsafe().getInt(slots + slot * 4L) != NO_ENTRY) {
+                    slot = (slot + 1) & mask;
+                }
+                Unsafe.getUnsafe().putInt(slots + slot * 4L, key);
+            }
+        }
+        Unsafe.getUnsafe().freeMemory(old);
+    }
+
+    private void setOffset(int key, long offset) {
+        if (key >= offsetCapacity) {
+            int cap = Math.max(key + 1, offsetCapacity * 2);
+            offsets = Unsafe.getUnsafe().reallocateMemory(offsets, cap * 8L);
+            Unsafe.getUnsafe().setMemory(offsets + offsetCapacity * 8L, (cap - offsetCapacity) * 8L, (byte) -1);
+            offsetCapacity = cap;
+        }
+        Unsafe.getUnsafe().putLong(offsets + key * 8L, offset);
+    }
+}
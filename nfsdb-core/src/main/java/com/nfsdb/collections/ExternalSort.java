@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.collections;
+
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Unsafe;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Sorts fixed width entries made of one or more key longs followed by payload long. Keys are compared
+ * as unsigned values, first key being the most significant. Signed values are turned into keys via
+ * {@link #signedKey(long)} and {@link #doubleKey(double)}.
+ * <p>
+ * Entries are accumulated in off-heap buffer, which is sorted by LSD radix sort. When buffer is full
+ * it is spilled to temporary file as sorted run. Runs are then merged as entries are read back.
+ * Entries with equal keys are ordered by optional {@link TieBreaker}.
+ */
+public class ExternalSort implements Closeable {
+    public static final long DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int IO_BLOCK_ENTRIES = 4096;
+
+    private final int keyCount;
+    private final int entrySize;
+    private final long maxCapacity;
+    private final File tempDir;
+    private final TieBreaker tieBreaker;
+    private final ObjList<Run> runs = new ObjList<>();
+    private final ByteBuffer ioBuffer;
+    private long address;
+    private long scratch;
+    private long capacity;
+    private long size;
+    private long totalSize;
+    private long[] ties;
+    private long[] tiesTmp;
+    private int heap[];
+    private int heapSize;
+
+    public ExternalSort(int keyCount) {
+        this(keyCount, DEFAULT_MEMORY_BUDGET, null, null);
+    }
+
+    /**
+     * @param keyCount     number of key longs in each entry
+     * @param memoryBudget amount of off-heap memory in bytes sort can use before spilling to disk
+     * @param tempDir      directory for sorted runs, null for system default
+     * @param tieBreaker   comparator for payloads of entries with equal keys, can be null
+     */
+    public ExternalSort(int keyCount, long memoryBudget, File tempDir, TieBreaker tieBreaker) {
+        this.keyCount = keyCount;
+        this.entrySize = (keyCount + 1) * 8;
+        this.maxCapacity = Math.max(2, memoryBudget / (2 * entrySize));
+        this.tempDir = tempDir;
+        this.tieBreaker = tieBreaker;
+        this.ioBuffer = ByteBuffer.allocateDirect(IO_BLOCK_ENTRIES * entrySize);
+    }
+
+    public static long doubleKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    public static long signedKey(long value) {
+        return value ^ Long.MIN_VALUE;
+    }
+
+    public void add(long[] keys, long payload) {
+        if (size == capacity) {
+            if (capacity < maxCapacity) {
+                grow();
+            } else {
+                spill();
+            }
+        }
+        long p = address + size * entrySize;
+        for (int i = 0; i < keyCount; i++) {
+            Unsafe.getUnsafe().putLong(p, keys[i]);
+            p += 8;
+        }
+        Unsafe.getUnsafe().putLong(p, payload);
+        size++;
+        totalSize++;
+    }
+
+    public void clear() {
+        for (int i = 0, n = runs.size(); i < n; i++) {
+            runs.getQuick(i).close();
+        }
+        runs.clear();
+        heapSize = 0;
+        size = 0;
+        totalSize = 0;
+    }
+
+    @Override
+    public void close() {
+        clear();
+        if (address != 0) {
+            Unsafe.getUnsafe().freeMemory(address);
+            Unsafe.getUnsafe().freeMemory(scratch);
+            address = 0;
+            scratch = 0;
+            capacity = 0;
+        }
+        ByteBuffers.release(ioBuffer);
+    }
+
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    public boolean hasNext() {
+        return heapSize > 0;
+    }
+
+    /**
+     * @return payload of next entry in sort order
+     */
+    public long next() {
+        Run run = runs.getQuick(heap[0]);
+        long payload = Unsafe.getUnsafe().getLong(run.entry + keyCount * 8);
+        if (!run.next()) {
+            heap[0] = heap[--heapSize];
+        }
+        siftDown(0);
+        return payload;
+    }
+
+    public long size() {
+        return totalSize;
+    }
+
+    /**
+     * Completes input. Entries can be read back via {@link #hasNext()} and {@link #next()}.
+     */
+    public void sort() {
+        sortBuffer();
+        runs.add(new MemoryRun(address, size));
+
+        int n = runs.size();
+        if (heap == null || heap.length < n) {
+            heap = new int[n];
+        }
+        heapSize = 0;
+        for (int i = 0; i < n; i++) {
+            if (runs.getQuick(i).next()) {
+                heap[heapSize++] = i;
+            }
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    private int compare(long a, long b) {
+        for (int i = 0; i < keyCount; i++) {
+            int r = Long.compareUnsigned(Unsafe.getUnsafe().getLong(a + i * 8), Unsafe.getUnsafe().getLong(b + i * 8));
+            if (r != 0) {
+                return r;
+            }
+        }
+        return tieBreaker == null ? 0 : tieBreaker.compare(Unsafe.getUnsafe().getLong(a + keyCount * 8), Unsafe.getUnsafe().getLong(b + keyCount * 8));
+    }
+
+    private void grow() {
+        long c = capacity == 0 ? Math.min(INITIAL_CAPACITY, maxCapacity) : Math.min(capacity * 2, maxCapacity);
+        long a = Unsafe.getUnsafe().allocateMemory(c * entrySize);
+        if (address != 0) {
+            Unsafe.getUnsafe().copyMemory(address, a, size * entrySize);
+            Unsafe.getUnsafe().freeMemory(address);
+            Unsafe.getUnsafe().freeMemory(scratch);
+        }
+        address = a;
+        scratch = Unsafe.getUnsafe().allocateMemory(c * entrySize);
+        capacity = c;
+    }
+
+    private boolean keysEqual(long a, long b) {
+        for (int i = 0; i < keyCount; i++) {
+            if (Unsafe.getUnsafe().getLong(a + i * 8) != Unsafe.getUnsafe().getLong(b + i * 8)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void mergeSort(long[] src, long[] dst, int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(dst, src, lo, mid);
+        mergeSort(dst, src, mid, hi);
+        for (int i = lo, l = lo, r = mid; i < hi; i++) {
+            if (r >= hi || (l < mid && tieBreaker.compare(src[l], src[r]) <= 0)) {
+                dst[i] = src[l++];
+            } else {
+                dst[i] = src[r++];
+            }
+        }
+    }
+
+    private void radixSort() {
+        final int keyBytes = keyCount * 8;
+        final long[] counts = new long[keyBytes * 256];
+        final long hi = address + size * entrySize;
+
+        // histograms of all key bytes are collected in one pass
+        for (long p = address; p < hi; p += entrySize) {
+            for (int b = 0; b < keyBytes; b++) {
+                counts[(b << 8) + (Unsafe.getUnsafe().getByte(p + b) & 0xff)]++;
+            }
+        }
+
+        long src = address;
+        long dst = scratch;
+        // least significant byte of key is first in memory, least significant key is last
+        for (int k = keyCount - 1; k >= 0; k--) {
+            for (int b = 0; b < 8; b++) {
+                int offset = k * 8 + b;
+                int base = offset << 8;
+
+                boolean trivial = false;
+                long sum = 0;
+                for (int i = 0; i < 256; i++) {
+                    long c = counts[base + i];
+                    if (c == size) {
+                        trivial = true;
+                        break;
+                    }
+                    counts[base + i] = sum;
+                    sum += c;
+                }
+
+                if (trivial) {
+                    continue;
+                }
+
+                for (long p = src, lim = src + size * entrySize; p < lim; p += entrySize) {
+                    int v = base + (Unsafe.getUnsafe().getByte(p + offset) & 0xff);
+                    long d = dst + (counts[v]++) * entrySize;
+                    for (int i = 0; i < entrySize; i += 8) {
+                        Unsafe.getUnsafe().putLong(d + i, Unsafe.getUnsafe().getLong(p + i));
+                    }
+                }
+
+                long t = src;
+                src = dst;
+                dst = t;
+            }
+        }
+
+        if (src != address) {
+            scratch = address;
+            address = src;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= heapSize) {
+                return;
+            }
+            int m = l;
+            int r = l + 1;
+            if (r < heapSize && compare(runs.getQuick(heap[r]).entry, runs.getQuick(heap[l]).entry) < 0) {
+                m = r;
+            }
+            if (compare(runs.getQuick(heap[m]).entry, runs.getQuick(heap[i]).entry) >= 0) {
+                return;
+            }
+            int t = heap[i];
+            heap[i] = heap[m];
+            heap[m] = t;
+            i = m;
+        }
+    }
+
+    private void sortBuffer() {
+        if (size < 2) {
+            return;
+        }
+
+        radixSort();
+
+        if (tieBreaker != null) {
+            sortTies();
+        }
+    }
+
+    private void sortTies() {
+        final int payloadOffset = keyCount * 8;
+        long lo = 0;
+        while (lo < size) {
+            long pLo = address + lo * entrySize;
+            long hi = lo + 1;
+            while (hi < size && keysEqual(pLo, address + hi * entrySize)) {
+                hi++;
+            }
+
+            int n = (int) (hi - lo);
+            if (n > 1) {
+                if (ties == null || ties.length < n) {
+                    ties = new long[n];
+                    tiesTmp = new long[n];
+                }
+                for (int i = 0; i < n; i++) {
+                    ties[i] = tiesTmp[i] = Unsafe.getUnsafe().getLong(pLo + i * entrySize + payloadOffset);
+                }
+                mergeSort(tiesTmp, ties, 0, n);
+                for (int i = 0; i < n; i++) {
+                    Unsafe.getUnsafe().putLong(pLo + i * entrySize + payloadOffset, ties[i]);
+                }
+            }
+            lo = hi;
+        }
+    }
+
+    private void spill() {
+        sortBuffer();
+        try {
+            File file = File.createTempFile("nfsdb-sort", ".run", tempDir);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                FileChannel channel = raf.getChannel();
+                long bufAddress = ((DirectBuffer) ioBuffer).address();
+                long len = size * entrySize;
+                long p = address;
+                while (len > 0) {
+                    int n = (int) Math.min(len, ioBuffer.capacity());
+                    Unsafe.getUnsafe().copyMemory(p, bufAddress, n);
+                    ioBuffer.position(0).limit(n);
+                    while (ioBuffer.hasRemaining()) {
+                        channel.write(ioBuffer);
+                    }
+                    p += n;
+                    len -= n;
+                }
+            }
+            runs.add(new FileRun(file));
+            size = 0;
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot spill sorted run", e);
+        }
+    }
+
+    public interface TieBreaker {
+        int compare(long payloadA, long payloadB);
+    }
+
+    private static abstract class Run {
+        long entry;
+
+        abstract void close();
+
+        abstract boolean next();
+    }
+
+    private class MemoryRun extends Run {
+        private final long hi;
+        private long p;
+
+        private MemoryRun(long address, long size) {
+            this.p = address - entrySize;
+            this.hi = address + size * entrySize;
+        }
+
+        @Override
+        void close() {
+        }
+
+        @Override
+        boolean next() {
+            p += entrySize;
+            entry = p;
+            return p < hi;
+        }
+    }
+
+    private class FileRun extends Run {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final ByteBuffer buffer;
+        private final long bufAddress;
+        private long p;
+        private long hi;
+
+        private FileRun(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "r");
+            this.buffer = ByteBuffer.allocateDirect(IO_BLOCK_ENTRIES * entrySize);
+            this.bufAddress = ((DirectBuffer) buffer).address();
+            this.p = this.hi = bufAddress;
+        }
+
+        @Override
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException ignore) {
+                // file is removed anyway
+            }
+            ByteBuffers.release(buffer);
+            Files.delete(file);
+        }
+
+        @Override
+        boolean next() {
+            p += entrySize;
+            if (p >= hi) {
+                try {
+                    FileChannel channel = raf.getChannel();
+                    buffer.clear();
+                    while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                        // fill buffer
+                    }
+                } catch (IOException e) {
+                    throw new JournalRuntimeException("Cannot read sorted run", e);
+                }
+                p = bufAddress;
+                hi = bufAddress + buffer.position();
+            }
+            entry = p;
+            return p < hi;
+        }
+    }
+}
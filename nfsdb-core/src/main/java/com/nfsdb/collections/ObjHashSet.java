@@ -80,6 +80,7 @@ public class ObjHashSet<T> {
 
     public final void clear() {
         Arrays.fill(keys, noEntryValue);
+        free = capacity;
         list.clear();
     }
 
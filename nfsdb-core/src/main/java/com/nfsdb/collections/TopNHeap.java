@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.collections;
+
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+
+/**
+ * Keeps first N entries in sort order out of unbounded input. Entries have the same layout as in
+ * {@link ExternalSort}: key longs compared as unsigned values followed by payload long. Entries with
+ * equal keys are ordered by optional {@link ExternalSort.TieBreaker} and then by payload.
+ * <p>
+ * Entries are held in off-heap binary max-heap of at most N entries, so input of M entries is
+ * processed in O(M log N) time and constant memory.
+ */
+public class TopNHeap implements Closeable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int keyCount;
+    private final int entrySize;
+    private final long limit;
+    private final ExternalSort.TieBreaker tieBreaker;
+    private long address;
+    private long tmp;
+    private long capacity;
+    private long size;
+    private long pos;
+    private long hi;
+
+    /**
+     * @param keyCount   number of key longs in each entry
+     * @param limit      number of entries to keep
+     * @param tieBreaker comparator for payloads of entries with equal keys, can be null
+     */
+    public TopNHeap(int keyCount, long limit, ExternalSort.TieBreaker tieBreaker) {
+        this.keyCount = keyCount;
+        this.entrySize = (keyCount + 1) * 8;
+        this.limit = limit;
+        this.tieBreaker = tieBreaker;
+        this.tmp = Unsafe.getUnsafe().allocateMemory(entrySize * 2);
+    }
+
+    public void add(long[] keys, long payload) {
+        if (size < limit) {
+            if (size == capacity) {
+                grow();
+            }
+            put(address + size * entrySize, keys, payload);
+            siftUp(size++);
+        } else if (limit > 0) {
+            put(tmp, keys, payload);
+            // heap root is the last of entries kept so far
+            if (compare(tmp, address) < 0) {
+                Unsafe.getUnsafe().copyMemory(tmp, address, entrySize);
+                siftDown(0, size);
+            }
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        pos = 0;
+        hi = 0;
+    }
+
+    @Override
+    public void close() {
+        clear();
+        if (address != 0) {
+            Unsafe.getUnsafe().freeMemory(address);
+            address = 0;
+            capacity = 0;
+        }
+        if (tmp != 0) {
+            Unsafe.getUnsafe().freeMemory(tmp);
+            tmp = 0;
+        }
+    }
+
+    public boolean hasNext() {
+        return pos < hi;
+    }
+
+    /**
+     * @return payload of next entry in sort order
+     */
+    public long next() {
+        return Unsafe.getUnsafe().getLong(address + (pos++) * entrySize + keyCount * 8);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Completes input. Kept entries are sorted in place and can be read back via {@link #hasNext()} and {@link #next()}.
+     */
+    public void sort() {
+        for (long n = size - 1; n > 0; n--) {
+            swap(address, address + n * entrySize);
+            siftDown(0, n);
+        }
+        pos = 0;
+        hi = size;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        close();
+        super.finalize();
+    }
+
+    private int compare(long a, long b) {
+        for (int i = 0; i < keyCount; i++) {
+            int r = Long.compareUnsigned(Unsafe.getUnsafe().getLong(a + i * 8), Unsafe.getUnsafe().getLong(b + i * 8));
+            if (r != 0) {
+                return r;
+            }
+        }
+
+        long pa = Unsafe.getUnsafe().getLong(a + keyCount * 8);
+        long pb = Unsafe.getUnsafe().getLong(b + keyCount * 8);
+        int r = tieBreaker == null ? 0 : tieBreaker.compare(pa, pb);
+        return r != 0 ? r : Long.compare(pa, pb);
+    }
+
+    private void grow() {
+        long c = capacity == 0 ? Math.min(INITIAL_CAPACITY, limit) : Math.min(capacity * 2, limit);
+        long a = Unsafe.getUnsafe().allocateMemory(c * entrySize);
+        if (address != 0) {
+            Unsafe.getUnsafe().copyMemory(address, a, size * entrySize);
+            Unsafe.getUnsafe().freeMemory(address);
+        }
+        address = a;
+        capacity = c;
+    }
+
+    private void put(long p, long[] keys, long payload) {
+        for (int i = 0; i < keyCount; i++) {
+            Unsafe.getUnsafe().putLong(p, keys[i]);
+            p += 8;
+        }
+        Unsafe.getUnsafe().putLong(p, payload);
+    }
+
+    private void siftDown(long i, long n) {
+        while (true) {
+            long l = 2 * i + 1;
+            if (l >= n) {
+                return;
+            }
+            long m = l;
+            long r = l + 1;
+            if (r < n && compare(address + r * entrySize, address + l * entrySize) > 0) {
+                m = r;
+            }
+            long pi = address + i * entrySize;
+            long pm = address + m * entrySize;
+            if (compare(pm, pi) <= 0) {
+                return;
+            }
+            swap(pi, pm);
+            i = m;
+        }
+    }
+
+    private void siftUp(long i) {
+        while (i > 0) {
+            long parent = (i - 1) / 2;
+            long pi = address + i * entrySize;
+            long pp = address + parent * entrySize;
+            if (compare(pi, pp) <= 0) {
+                return;
+            }
+            swap(pi, pp);
+            i = parent;
+        }
+    }
+
+    private void swap(long a, long b) {
+        long t = tmp + entrySize;
+        Unsafe.getUnsafe().copyMemory(a, t, entrySize);
+        Unsafe.getUnsafe().copyMemory(b, a, entrySize);
+        Unsafe.getUnsafe().copyMemory(t, b, entrySize);
+    }
+}
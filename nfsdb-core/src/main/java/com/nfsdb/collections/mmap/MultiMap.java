@@ -97,13 +97,30 @@ public class MultiMap extends DirectMemoryStructure {
         kPos = kStart;
         free = (int) (keyCapacity * loadFactor);
         size = 0;
-        offsets.clear((byte) -1);
+        offsets.zero(-1);
     }
 
     public RecordCursor<Record> getCursor() {
         return recordSource.init(kStart, size);
     }
 
+    /**
+     * @return offset past last entry
+     */
+    public long getEntriesSize() {
+        return kPos - kStart;
+    }
+
+    /**
+     * Reads first key column of entry, first key column must be LONG.
+     *
+     * @param offset offset of entry, which is below {@link #getEntriesSize()}
+     * @return value of first key column
+     */
+    public long getFirstLongKey(long offset) {
+        return Unsafe.getUnsafe().getLong(kStart + offset + keyDataOffset);
+    }
+
     public RecordMetadata getMetadata() {
         return metadata;
     }
@@ -151,6 +168,24 @@ public class MultiMap extends DirectMemoryStructure {
         return keyWriter.init();
     }
 
+    /**
+     * Adds entry of map with the same key and value columns to this map. Values of entry are combined with
+     * values of matching entry of this map by merger. Entries are stored in order they were added, first entry
+     * is at offset 0.
+     *
+     * @param other  map to merge entry of
+     * @param offset offset of entry in other map
+     * @param merger combines values
+     * @return offset of next entry of other map
+     */
+    public long mergeEntry(MultiMap other, long offset, MapValuesMerger merger) {
+        long p = other.kStart + offset;
+        int len = Unsafe.getUnsafe().getInt(p);
+        MapValues target = getOrCreateValues(keyWriter().putKey(p, len));
+        merger.merge(other.values.init(p, false), target);
+        return offset + len;
+    }
+
     public int size() {
         return size;
     }
@@ -218,8 +253,8 @@ public class MultiMap extends DirectMemoryStructure {
         int capacity = keyCapacity << 1;
         mask = capacity - 1;
         LongList pointers = new LongList(capacity);
-        pointers.zero((byte) -1);
         pointers.setPos(capacity);
+        pointers.zero(-1);
 
         for (int i = 0, k = this.offsets.size(); i < k; i++) {
             long offset = this.offsets.get(i);
@@ -401,6 +436,14 @@ public class MultiMap extends DirectMemoryStructure {
             return this;
         }
 
+        private KeyWriter putKey(long entry, int len) {
+            // key offsets are relative to start of entry, so key block can be copied as is
+            checkSize(len - keyDataOffset);
+            Unsafe.getUnsafe().copyMemory(entry + keyBlockOffset, startAddr + keyBlockOffset, len - keyBlockOffset);
+            appendAddr = startAddr + len;
+            return this;
+        }
+
         private void checkSize(int size) {
             if (appendAddr + size > kLimit) {
                 resize();
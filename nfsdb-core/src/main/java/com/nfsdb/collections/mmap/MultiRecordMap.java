@@ -62,6 +62,7 @@ public class MultiRecordMap implements Closeable {
 
     public void clear() {
         map.clear();
+        records.clear();
     }
 
     @Override
@@ -76,6 +77,13 @@ public class MultiRecordMap implements Closeable {
         return records;
     }
 
+    /**
+     * @return number of bytes taken by records stored in map
+     */
+    public long getRecordsSize() {
+        return records.size();
+    }
+
     public static class Builder {
         private final List<RecordColumnMetadata> keyColumns = new ArrayList<>();
         private RecordMetadata metadata;
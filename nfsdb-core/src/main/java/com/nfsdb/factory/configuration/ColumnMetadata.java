@@ -18,6 +18,7 @@ package com.nfsdb.factory.configuration;
 
 import com.nfsdb.storage.ColumnType;
 import com.nfsdb.storage.HugeBuffer;
+import com.nfsdb.storage.IndexType;
 import com.nfsdb.storage.SymbolTable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -29,6 +30,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
     public int size;
     public int avgSize = Constants.DEFAULT_STRING_AVG_SIZE;
     public boolean indexed;
+    public IndexType indexType = IndexType.KV;
     public int bitHint;
     public int indexBitHint;
     public int distinctCountHint;
@@ -43,6 +45,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
         this.size = from.size;
         this.avgSize = from.avgSize;
         this.indexed = from.indexed;
+        this.indexType = from.indexType;
         this.bitHint = from.bitHint;
         this.indexBitHint = from.indexBitHint;
         this.distinctCountHint = from.distinctCountHint;
@@ -58,6 +61,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
         result = 31 * result + size;
         result = 31 * result + avgSize;
         result = 31 * result + (indexed ? 1 : 0);
+        result = 31 * result + indexType.hashCode();
         result = 31 * result + bitHint;
         result = 31 * result + indexBitHint;
         result = 31 * result + distinctCountHint;
@@ -77,6 +81,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
                 && distinctCountHint == that.distinctCountHint
                 && indexBitHint == that.indexBitHint
                 && indexed == that.indexed
+                && indexType == that.indexType
                 && noCache == that.noCache
                 && size == that.size
                 && name.equals(that.name)
@@ -94,6 +99,7 @@ public class ColumnMetadata implements RecordColumnMetadata {
                 ", size*=" + size +
                 ", avgSize=" + avgSize +
                 ", indexed=" + indexed +
+                ", indexType=" + indexType +
                 ", bitHint=" + bitHint +
                 ", indexBitHint=" + indexBitHint +
                 ", distinctCountHint=" + distinctCountHint +
@@ -17,6 +17,7 @@
 package com.nfsdb.factory.configuration;
 
 import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.IndexType;
 
 public class GenericSymbolBuilder extends AbstractGenericMetadataBuilder {
     public GenericSymbolBuilder(JournalStructure parent, ColumnMetadata meta) {
@@ -30,6 +31,12 @@ public class GenericSymbolBuilder extends AbstractGenericMetadataBuilder {
         return this;
     }
 
+    public GenericSymbolBuilder index(IndexType type) {
+        this.meta.indexed = true;
+        this.meta.indexType = type;
+        return this;
+    }
+
     public GenericSymbolBuilder noCache() {
         this.meta.noCache = true;
         return this;
@@ -17,6 +17,8 @@
 package com.nfsdb.factory.configuration;
 
 import com.nfsdb.JournalKey;
+import com.nfsdb.PartitionSerializer;
+import com.nfsdb.PartitionSerializerGenerator;
 import com.nfsdb.PartitionType;
 import com.nfsdb.collections.ObjIntHashMap;
 import com.nfsdb.exceptions.JournalConfigurationException;
@@ -24,6 +26,7 @@ import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.exceptions.NoSuchColumnException;
 import com.nfsdb.ql.RecordMetadata;
 import com.nfsdb.storage.HugeBuffer;
+import com.nfsdb.storage.IndexType;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 
@@ -51,6 +54,7 @@ public class JournalMetadata<T> implements RecordMetadata {
     private final int lag;
     private final boolean partialMapping;
     private final JournalKey<T> key;
+    private final PartitionSerializer serializer;
 
     public JournalMetadata(
             String id
@@ -89,8 +93,10 @@ public class JournalMetadata<T> implements RecordMetadata {
         this.partialMapping = partialMapping;
         if (modelClass != null) {
             this.key = new JournalKey<>(modelClass, location);
+            this.serializer = PartitionSerializerGenerator.generate(modelClass, this.columnMetadata);
         } else {
             this.key = new JournalKey<>(id);
+            this.serializer = null;
         }
     }
 
@@ -120,9 +126,16 @@ public class JournalMetadata<T> implements RecordMetadata {
         ioBlockTxCount = buf.getInt();
         keyColumn = buf.getStr();
         lag = buf.getInt();
+        // index types were added after metadata format was fixed, they follow rest of metadata
+        if (buf.getPos() < buf.getAppendOffset()) {
+            for (int i = 0; i < columnCount; i++) {
+                columnMetadata[i].indexType = IndexType.valueOf(buf.getStr());
+            }
+        }
         constructor = null;
         partialMapping = false;
         this.key = new JournalKey<>(id);
+        this.serializer = null;
     }
 
     public void copyColumnMetadata(ColumnMetadata[] meta) {
@@ -204,6 +217,15 @@ public class JournalMetadata<T> implements RecordMetadata {
         return ioBlockRecordCount;
     }
 
+    /**
+     * Serializer generated for model class or null when journal is generic or serializer could not be generated.
+     *
+     * @return serializer instance or null
+     */
+    public PartitionSerializer getSerializer() {
+        return serializer;
+    }
+
     public int getTimestampIndex() {
         return timestampColumnIndex;
     }
@@ -233,6 +255,7 @@ public class JournalMetadata<T> implements RecordMetadata {
                     || thisM.size != thatM.size
                     || thisM.distinctCountHint != thatM.distinctCountHint
                     || thisM.indexed != thatM.indexed
+                    || (thisM.indexed && thisM.indexType != thatM.indexType)
                     || (thisM.sameAs == null && thatM.sameAs != null)
                     || (thisM.sameAs != null && !thisM.sameAs.equals(thatM.sameAs))
                     ) {
@@ -299,6 +322,9 @@ public class JournalMetadata<T> implements RecordMetadata {
         buf.put(ioBlockTxCount);
         buf.put(keyColumn);
         buf.put(lag);
+        for (int i = 0; i < columnMetadata.length; i++) {
+            buf.put(columnMetadata[i].indexType.name());
+        }
         buf.setAppendOffset(buf.getPos());
     }
 
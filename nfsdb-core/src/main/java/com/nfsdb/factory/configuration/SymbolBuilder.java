@@ -18,6 +18,7 @@ package com.nfsdb.factory.configuration;
 
 import com.nfsdb.exceptions.JournalConfigurationException;
 import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.IndexType;
 
 public class SymbolBuilder<T> extends AbstractMetadataBuilder<T> {
     public SymbolBuilder(JournalMetadataBuilder<T> parent, ColumnMetadata meta) {
@@ -34,6 +35,12 @@ public class SymbolBuilder<T> extends AbstractMetadataBuilder<T> {
         return this;
     }
 
+    public SymbolBuilder<T> index(IndexType type) {
+        this.meta.indexed = true;
+        this.meta.indexType = type;
+        return this;
+    }
+
     public SymbolBuilder<T> noCache() {
         this.meta.noCache = true;
         return this;
@@ -21,6 +21,14 @@ import com.nfsdb.factory.configuration.ColumnMetadata;
 
 public interface AggregatorFunction {
 
+    /**
+     * Aggregates record into values. Parallel aggregation calls this method from several threads at once,
+     * each of them with its own values, so implementation must not change its own state here. State of
+     * function is set up by {@link #prepareSource(RecordSource)} and {@link #mapColumn(int, int)} only.
+     *
+     * @param rec    record
+     * @param values aggregate values
+     */
     void calculate(Record rec, MapValues values);
 
     /**
@@ -57,6 +65,17 @@ public interface AggregatorFunction {
      */
     void mapColumn(int k, int i);
 
+    /**
+     * Combines partial aggregate into values. Partial aggregates are computed over disjoint
+     * and contiguous ranges of records and merged in order of these ranges, so partial
+     * always comes from records that follow records already aggregated in values.
+     * Values that are new have to be initialised from partial.
+     *
+     * @param partial partial aggregate
+     * @param values  aggregate values
+     */
+    void merge(MapValues partial, MapValues values);
+
     /**
      * Callback to give implementation opportunity to resolve column names to their indexes.
      *
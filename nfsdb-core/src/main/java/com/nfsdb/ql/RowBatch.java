@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql;
+
+import com.nfsdb.Partition;
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Rows of single partition that are processed together by vectorized expressions. Selection vector
+ * holds indexes of rows that passed filter.
+ */
+public class RowBatch {
+    public static final int CAPACITY = 1024;
+    public final long rows[] = new long[CAPACITY];
+    public final int selection[] = new int[CAPACITY];
+    public Partition partition;
+    public int size;
+    public int selected;
+    /**
+     * True when rows of batch follow each other, so that rows[i] == rows[0] + i.
+     */
+    public boolean consecutive;
+
+    public boolean add(long row) {
+        if (size == 0) {
+            consecutive = true;
+        } else if (consecutive && row != rows[size - 1] + 1) {
+            consecutive = false;
+        }
+        rows[size++] = row;
+        return size < CAPACITY;
+    }
+
+    public void clear() {
+        size = 0;
+        selected = 0;
+    }
+
+    /**
+     * Fills selection vector with indexes of non-zero values of boolean vector.
+     *
+     * @param address address of vector of 8-byte boolean values
+     */
+    public void select(long address) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            selection[n] = i;
+            // branch-free, index is kept when value is non-zero
+            n += (int) Unsafe.getUnsafe().getLong(address + (((long) i) << 3)) & 1;
+        }
+        selected = n;
+    }
+}
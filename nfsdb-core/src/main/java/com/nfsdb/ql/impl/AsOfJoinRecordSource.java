@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Journal;
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.mmap.MapValues;
+import com.nfsdb.collections.mmap.MultiMap;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.ql.*;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Rows;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+
+import static com.nfsdb.ql.impl.KeyWriterHelper.setKey;
+
+/**
+ * Joins every master record to the latest slave record with the same key, timestamp of which is not
+ * greater than timestamp of master record. Both sources have to be in timestamp order. Sources are walked
+ * together and only row id and timestamp of last slave record for each key are kept in off-heap map,
+ * so memory use depends on number of distinct keys rather than on number of slave records.
+ * <p/>
+ * Window limits how far back slave record can be. Master records that have no matching slave record
+ * are joined to nulls.
+ */
+public class AsOfJoinRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    private static final int ROWID = 0;
+    private static final int TIMESTAMP = 1;
+
+    private final RecordSource<? extends Record> masterSource;
+    private final JournalRecordSource slaveSource;
+    private final int masterTimestampIndex;
+    private final int slaveTimestampIndex;
+    private final long window;
+    private final SplitRecordMetadata metadata;
+    private final SplitRecord currentRecord;
+    private final JournalRecord slaveRecord;
+    private final ObjList<ColumnType> masterKeyTypes = new ObjList<>();
+    private final ObjList<ColumnType> slaveKeyTypes = new ObjList<>();
+    private final IntList masterKeyIndex = new IntList();
+    private final IntList slaveKeyIndex = new IntList();
+    private MultiMap map;
+    private RecordCursor<? extends Record> masterCursor;
+    private RecordCursor<JournalRecord> slaveCursor;
+    private JournalRecord pendingSlave;
+    private Journal slaveJournal;
+    private int slavePartitionIndex;
+    // last slave row when there are no key columns
+    private long lastRowId;
+    private long lastTimestamp;
+
+    /**
+     * @param masterSource    records to join, in timestamp order
+     * @param masterName      name to qualify master column names with
+     * @param masterTimestamp name of timestamp column of master source
+     * @param masterKeys      names of key columns of master source
+     * @param slaveSource     records to join to, in timestamp order
+     * @param slaveName       name to qualify slave column names with
+     * @param slaveTimestamp  name of timestamp column of slave source
+     * @param slaveKeys       names of key columns of slave source, types have to match master keys
+     * @param window          maximum difference between master and slave timestamps in milliseconds,
+     *                        Long.MAX_VALUE for unlimited
+     */
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    public AsOfJoinRecordSource(
+            RecordSource<? extends Record> masterSource,
+            String masterName,
+            String masterTimestamp,
+            ObjList<String> masterKeys,
+            JournalRecordSource slaveSource,
+            String slaveName,
+            String slaveTimestamp,
+            ObjList<String> slaveKeys,
+            long window) {
+        this.masterSource = masterSource;
+        this.slaveSource = slaveSource;
+        RecordMetadata mm = masterSource.getMetadata();
+        RecordMetadata sm = slaveSource.getMetadata();
+        this.masterTimestampIndex = mm.getColumnIndex(masterTimestamp);
+        this.slaveTimestampIndex = sm.getColumnIndex(slaveTimestamp);
+        this.window = window;
+        this.metadata = new SplitRecordMetadata(mm, masterName, sm, slaveName);
+        this.currentRecord = new SplitRecord(metadata, mm.getColumnCount());
+        this.slaveRecord = new JournalRecord(sm);
+
+        if (masterKeys.size() != slaveKeys.size()) {
+            throw new JournalRuntimeException("Key column count mismatch: %d != %d", masterKeys.size(), slaveKeys.size());
+        }
+
+        if (masterKeys.size() > 0) {
+            MultiMap.Builder builder = new MultiMap.Builder();
+            for (int i = 0, n = masterKeys.size(); i < n; i++) {
+                int mi = mm.getColumnIndex(masterKeys.getQuick(i));
+                int si = sm.getColumnIndex(slaveKeys.getQuick(i));
+                masterKeyIndex.add(mi);
+                masterKeyTypes.add(mm.getColumn(mi).getType());
+                slaveKeyIndex.add(si);
+                slaveKeyTypes.add(sm.getColumn(si).getType());
+                builder.keyColumn(sm.getColumn(si));
+            }
+            builder.valueColumn(new ColumnMetadata().setName("$rowid").setType(ColumnType.LONG));
+            builder.valueColumn(new ColumnMetadata().setName("$timestamp").setType(ColumnType.DATE));
+            this.map = builder.build();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (map != null) {
+            map.close();
+            map = null;
+        }
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    @Override
+    public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.masterCursor = masterSource.prepareCursor(factory);
+        this.slaveCursor = slaveSource.prepareCursor(factory);
+        clear();
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        masterSource.reset();
+        slaveSource.reset();
+        clear();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!masterCursor.hasNext()) {
+            return false;
+        }
+
+        Record master = masterCursor.next();
+        long timestamp = master.getDate(masterTimestampIndex);
+        advanceSlave(timestamp);
+        currentRecord.setA(master);
+
+        long rowId;
+        long slaveTimestamp;
+        if (map == null) {
+            rowId = lastRowId;
+            slaveTimestamp = lastTimestamp;
+        } else {
+            MultiMap.KeyWriter key = map.keyWriter();
+            for (int i = 0, n = masterKeyIndex.size(); i < n; i++) {
+                setKey(key, master, masterKeyTypes.getQuick(i), masterKeyIndex.getQuick(i));
+            }
+            MapValues values = map.getValues(key);
+            rowId = values == null ? -1 : values.getLong(ROWID);
+            slaveTimestamp = values == null ? 0 : values.getLong(TIMESTAMP);
+        }
+
+        currentRecord.setB(rowId == -1 || timestamp - slaveTimestamp > window ? null : slaveRecord(rowId));
+        return true;
+    }
+
+    @SuppressFBWarnings({"IT_NO_SUCH_ELEMENT"})
+    @Override
+    public SplitRecord next() {
+        return currentRecord;
+    }
+
+    @Override
+    public String toString() {
+        return "AsOfJoinRecordSource{" +
+                "masterSource=" + masterSource +
+                ", slaveSource=" + slaveSource +
+                ", window=" + window +
+                '}';
+    }
+
+    /**
+     * Reads slave records up to and including given timestamp. First slave record past the timestamp
+     * is held until master catches up with it.
+     */
+    private void advanceSlave(long timestamp) {
+        while (true) {
+            if (pendingSlave == null) {
+                if (!slaveCursor.hasNext()) {
+                    return;
+                }
+                pendingSlave = slaveCursor.next();
+            }
+
+            long ts = pendingSlave.getDate(slaveTimestampIndex);
+            if (ts > timestamp) {
+                return;
+            }
+
+            long rowId = Rows.toRowID(pendingSlave.partition.getPartitionIndex(), pendingSlave.rowid);
+            if (map == null) {
+                lastRowId = rowId;
+                lastTimestamp = ts;
+            } else {
+                MultiMap.KeyWriter key = map.keyWriter();
+                for (int i = 0, n = slaveKeyIndex.size(); i < n; i++) {
+                    setKey(key, pendingSlave, slaveKeyTypes.getQuick(i), slaveKeyIndex.getQuick(i));
+                }
+                MapValues values = map.getOrCreateValues(key);
+                values.putLong(ROWID, rowId);
+                values.putLong(TIMESTAMP, ts);
+            }
+            slaveJournal = pendingSlave.partition.getJournal();
+            pendingSlave = null;
+        }
+    }
+
+    private void clear() {
+        if (map != null) {
+            map.clear();
+        }
+        pendingSlave = null;
+        lastRowId = -1;
+        slavePartitionIndex = -1;
+    }
+
+    private JournalRecord slaveRecord(long rowId) {
+        int partitionIndex = Rows.toPartitionIndex(rowId);
+        if (partitionIndex != slavePartitionIndex) {
+            try {
+                slaveRecord.partition = slaveJournal.getPartition(partitionIndex, true);
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+            slavePartitionIndex = partitionIndex;
+        }
+        slaveRecord.rowid = Rows.toLocalRowID(rowId);
+        return slaveRecord;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjHashSet;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.ql.PartitionSlice;
+import com.nfsdb.ql.RowCursor;
+import com.nfsdb.storage.BitmapIndex;
+import com.nfsdb.storage.BitmapIndexCursor;
+import com.nfsdb.storage.SymbolTable;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Returns rows where each of bitmap indexed symbol columns has one of its listed values. Bitmaps of values of
+ * same column are combined and bitmaps of columns are intersected, so rows are never read to be filtered.
+ */
+@SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
+public class BitmapIndexRowSource extends AbstractRowSource {
+    private final ObjList<String> columns = new ObjList<>();
+    private final ObjList<ObjList<String>> values = new ObjList<>();
+    private final ObjList<IntList> keys = new ObjList<>();
+    private final BitmapIndexCursor cursor = new BitmapIndexCursor();
+    private final int columnIndexes[];
+    private boolean resolved = false;
+
+    public BitmapIndexRowSource(ObjList<String> columns, ObjList<ObjHashSet<String>> values) {
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            this.columns.add(columns.getQuick(i));
+            ObjHashSet<String> v = values.getQuick(i);
+            ObjList<String> l = new ObjList<>(v.size());
+            for (int k = 0, m = v.size(); k < m; k++) {
+                l.add(v.get(k));
+            }
+            this.values.add(l);
+            this.keys.add(new IntList(v.size()));
+        }
+        this.columnIndexes = new int[columns.size()];
+    }
+
+    @Override
+    public void configure(JournalMetadata metadata) {
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            columnIndexes[i] = metadata.getColumnIndex(columns.getQuick(i));
+        }
+    }
+
+    @Override
+    public RowCursor prepareCursor(PartitionSlice slice) {
+        try {
+            if (!resolved) {
+                resolveKeys(slice);
+            }
+
+            cursor.clear();
+            for (int i = 0, n = columns.size(); i < n; i++) {
+                if (i > 0) {
+                    cursor.and();
+                }
+                BitmapIndex index = slice.partition.getBitmapIndexForColumn(columnIndexes[i]);
+                IntList k = keys.getQuick(i);
+                for (int j = 0, m = k.size(); j < m; j++) {
+                    int key = k.getQuick(j);
+                    if (key > -1) {
+                        cursor.of(index, key);
+                    }
+                }
+            }
+            cursor.prepare(slice.lo, slice.calcHi ? slice.partition.open().size() : slice.hi + 1);
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        resolved = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return cursor.hasNext();
+    }
+
+    @Override
+    public long next() {
+        return cursor.next();
+    }
+
+    private void resolveKeys(PartitionSlice slice) {
+        for (int i = 0, n = columns.size(); i < n; i++) {
+            SymbolTable symbolTable = slice.partition.getJournal().getSymbolTable(columns.getQuick(i));
+            ObjList<String> v = values.getQuick(i);
+            IntList k = keys.getQuick(i);
+            k.clear();
+            for (int j = 0, m = v.size(); j < m; j++) {
+                k.add(symbolTable.getQuick(v.getQuick(j)));
+            }
+        }
+        resolved = true;
+    }
+}
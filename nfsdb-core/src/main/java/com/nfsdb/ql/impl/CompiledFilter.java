@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Partition;
+import com.nfsdb.ql.ops.VirtualColumn;
+
+/**
+ * Base class of filters generated by FilterCompiler.
+ */
+public abstract class CompiledFilter {
+    /**
+     * Parts of filter expression that were not compiled. Generated code evaluates them as usual.
+     */
+    protected VirtualColumn[] columns;
+
+    public abstract boolean eval(Partition partition, long localRowID);
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AssociativeCache;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.ql.ops.*;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.BytecodeEmitter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles filter expression into class with single eval() method. Reads of DOUBLE and INT columns
+ * are inlined as FixedColumn calls, arithmetic, comparisons and logical operators become bytecode
+ * instructions and constant sub-expressions are folded. Expressions compiler does not know are called
+ * through VirtualColumn interface, so any filter can be compiled.
+ * <p/>
+ * Expressions of the same shape, that is the same operators, columns and literal values, compile to the same
+ * code. Compiled classes are cached by their code, so that executing query again does not define new class.
+ */
+public final class FilterCompiler {
+    private static final Logger LOGGER = Logger.getLogger(FilterCompiler.class);
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+    private static final AssociativeCache<ByteBuffer, Class<?>> CACHE = new AssociativeCache<>(8, 64);
+    private static volatile boolean enabled = !"false".equals(System.getProperty("nfsdb.filter.compile"));
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int LLOAD_2 = 0x20;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int AALOAD = 0x32;
+    private static final int IADD = 0x60;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IFGE = 0x9c;
+    private static final int IFLE = 0x9e;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLE = 0xa4;
+    private static final int GOTO = 0xa7;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final String COMPILED_FILTER = "com/nfsdb/ql/impl/CompiledFilter";
+    private static final String VIRTUAL_COLUMN = "com/nfsdb/ql/ops/VirtualColumn";
+    private static final String FIXED_COLUMN = "com/nfsdb/storage/FixedColumn";
+    private static final String PARTITION = "com/nfsdb/Partition";
+
+    private final BytecodeEmitter emitter = new BytecodeEmitter();
+    private final ObjList<VirtualColumn> columns = new ObjList<>();
+    private int inlined;
+
+    private FilterCompiler() {
+    }
+
+    /**
+     * Compiles filter expression.
+     *
+     * @param filter boolean expression, columns of which are indexed as columns of partition
+     * @return compiled filter or null if compilation is disabled or none of the expression can be compiled
+     */
+    public static CompiledFilter compile(VirtualColumn filter) {
+        if (!enabled || filter.getType() != ColumnType.BOOLEAN) {
+            return null;
+        }
+
+        try {
+            FilterCompiler compiler = new FilterCompiler();
+            compiler.assemble(filter);
+            if (compiler.inlined == 0) {
+                return null;
+            }
+
+            ByteBuffer shape = compiler.emitter.shape();
+            Class<?> clazz;
+            synchronized (CACHE) {
+                clazz = CACHE.get(shape);
+            }
+
+            if (clazz == null) {
+                clazz = compiler.emitter.define("com/nfsdb/ql/impl/GeneratedFilter" + CLASS_COUNTER.incrementAndGet(), COMPILED_FILTER);
+                synchronized (CACHE) {
+                    CACHE.put(shape, clazz);
+                }
+            }
+
+            CompiledFilter f = (CompiledFilter) clazz.newInstance();
+            f.columns = new VirtualColumn[compiler.columns.size()];
+            for (int i = 0, n = compiler.columns.size(); i < n; i++) {
+                f.columns[i] = compiler.columns.getQuick(i);
+            }
+            return f;
+        } catch (Throwable e) {
+            LOGGER.info("Cannot compile filter, using interpreter: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        FilterCompiler.enabled = enabled;
+    }
+
+    /**
+     * Literal expressions have the same value for every row and can be evaluated at compile time.
+     * Parameters are not literals, their values can change between executions.
+     */
+    private static boolean isLiteral(VirtualColumn vc) {
+        if (vc instanceof DoubleConstant || vc instanceof IntConstant || vc instanceof BooleanConstant) {
+            return true;
+        }
+        return vc instanceof AbstractBinaryOperator
+                && isLiteral(((AbstractBinaryOperator) vc).getLhs())
+                && isLiteral(((AbstractBinaryOperator) vc).getRhs());
+    }
+
+    private static int depth(VirtualColumn vc) {
+        if (vc instanceof AbstractBinaryOperator) {
+            return 1 + Math.max(depth(((AbstractBinaryOperator) vc).getLhs()), depth(((AbstractBinaryOperator) vc).getRhs()));
+        }
+        return 1;
+    }
+
+    private void assemble(VirtualColumn filter) {
+        // locals: 0 - this
+        emitter.op(ALOAD_0);
+        emitter.op(INVOKESPECIAL, emitter.methodRef(COMPILED_FILTER, "<init>", "()V"));
+        emitter.op(RETURN);
+        emitter.method("<init>", "()V", 1, 1);
+
+        // locals: 0 - this, 1 - partition, 2,3 - localRowID
+        bool(filter);
+        emitter.op(IRETURN);
+        // operand stack holds at most one pending double per level of expression, plus arguments of column read
+        emitter.method("eval", "(L" + PARTITION + ";J)Z", 2 * depth(filter) + 6, 4);
+    }
+
+    private void bool(VirtualColumn vc) {
+        if (isLiteral(vc)) {
+            emitter.op(vc.getBool() ? ICONST_1 : ICONST_0);
+            return;
+        }
+
+        if (vc instanceof AndOperator || vc instanceof OrOperator) {
+            // short-circuit evaluation, same as interpreter
+            int jump = vc instanceof AndOperator ? IFEQ : IFNE;
+            bool(((AbstractBinaryOperator) vc).getLhs());
+            int first = emitter.branch(jump);
+            bool(((AbstractBinaryOperator) vc).getRhs());
+            int second = emitter.branch(jump);
+            booleanResult(first, second, jump == IFNE);
+            inlined++;
+        } else if (vc instanceof DoubleGreaterThanOperator) {
+            binary((AbstractBinaryOperator) vc, ColumnType.DOUBLE, DCMPL);
+            booleanResult(emitter.branch(IFLE), -1, false);
+        } else if (vc instanceof DoubleLessThanOperator) {
+            binary((AbstractBinaryOperator) vc, ColumnType.DOUBLE, DCMPG);
+            booleanResult(emitter.branch(IFGE), -1, false);
+        } else if (vc instanceof IntGreaterThanOperator) {
+            binary((AbstractBinaryOperator) vc, ColumnType.INT, -1);
+            booleanResult(emitter.branch(IF_ICMPLE), -1, false);
+        } else if (vc instanceof IntEqualsOperator) {
+            binary((AbstractBinaryOperator) vc, ColumnType.INT, -1);
+            booleanResult(emitter.branch(IF_ICMPNE), -1, false);
+        } else {
+            fallback(vc, "getBool", "Z");
+        }
+    }
+
+    private void binary(AbstractBinaryOperator o, ColumnType operandType, int opcode) {
+        value(o.getLhs(), operandType);
+        value(o.getRhs(), operandType);
+        if (opcode != -1) {
+            emitter.op(opcode);
+        }
+        inlined++;
+    }
+
+    /**
+     * Pushes boolean result of preceding jumps. Jumps go to "true" or "false" value depending on jumpValue.
+     */
+    private void booleanResult(int first, int second, boolean jumpValue) {
+        emitter.op(jumpValue ? ICONST_0 : ICONST_1);
+        int end = emitter.branch(GOTO);
+        emitter.patch(first);
+        if (second != -1) {
+            emitter.patch(second);
+        }
+        emitter.op(jumpValue ? ICONST_1 : ICONST_0);
+        emitter.patch(end);
+    }
+
+    private void column(int columnIndex, String getter, String type) {
+        // ((FixedColumn) partition.getAbstractColumn(columnIndex)).getX(localRowID)
+        emitter.op(ALOAD_1);
+        emitter.op(SIPUSH, columnIndex);
+        emitter.op(INVOKEVIRTUAL, emitter.methodRef(PARTITION, "getAbstractColumn", "(I)Lcom/nfsdb/storage/AbstractColumn;"));
+        emitter.op(CHECKCAST, emitter.classRef(FIXED_COLUMN));
+        emitter.op(LLOAD_2);
+        emitter.op(INVOKEVIRTUAL, emitter.methodRef(FIXED_COLUMN, getter, "(J)" + type));
+        inlined++;
+    }
+
+    private void fallback(VirtualColumn vc, String getter, String type) {
+        // columns[k].getX()
+        int k = columns.size();
+        columns.add(vc);
+        emitter.op(ALOAD_0);
+        emitter.op(GETFIELD, emitter.fieldRef(COMPILED_FILTER, "columns", "[L" + VIRTUAL_COLUMN + ";"));
+        emitter.op(SIPUSH, k);
+        emitter.op(AALOAD);
+        emitter.op(INVOKEINTERFACE, emitter.interfaceMethodRef(VIRTUAL_COLUMN, getter, "()" + type));
+        emitter.op(1);
+        emitter.op(0);
+    }
+
+    /**
+     * Pushes value of expression read as given type, which is what parent operator reads it as.
+     */
+    private void value(VirtualColumn vc, ColumnType type) {
+        boolean dbl = type == ColumnType.DOUBLE;
+        if (isLiteral(vc)) {
+            if (dbl) {
+                emitter.op(LDC2_W, emitter.doubleConst(vc.getDouble()));
+            } else {
+                emitter.op(LDC_W, emitter.intConst(vc.getInt()));
+            }
+            return;
+        }
+
+        if (vc instanceof RecordSourceColumn && vc.getType() == type) {
+            column(((RecordSourceColumn) vc).getIndex(), dbl ? "getDouble" : "getInt", dbl ? "D" : "I");
+        } else if (dbl && vc instanceof AddDoubleOperator) {
+            binary((AbstractBinaryOperator) vc, type, DADD);
+        } else if (dbl && vc instanceof MinusDoubleOperator) {
+            binary((AbstractBinaryOperator) vc, type, DSUB);
+        } else if (dbl && vc instanceof MultDoubleOperator) {
+            binary((AbstractBinaryOperator) vc, type, DMUL);
+        } else if (dbl && vc instanceof DivDoubleOperator) {
+            binary((AbstractBinaryOperator) vc, type, DDIV);
+        } else if (!dbl && vc instanceof AddIntOperator) {
+            binary((AbstractBinaryOperator) vc, type, IADD);
+        } else {
+            fallback(vc, dbl ? "getDouble" : "getInt", dbl ? "D" : "I");
+        }
+    }
+}
@@ -16,9 +16,14 @@
 
 package com.nfsdb.ql.impl;
 
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.ql.*;
+import com.nfsdb.ql.ops.VectorColumn;
 import com.nfsdb.ql.ops.VirtualColumn;
+import com.nfsdb.storage.ZoneMap;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public class FilteredRowSource extends AbstractRowSource implements RecordSourceState {
 
@@ -26,6 +31,16 @@ public class FilteredRowSource extends AbstractRowSource implements RecordSource
     private final VirtualColumn filter;
     private RowCursor underlying;
     private JournalRecord rec;
+    private ZoneMapFilter zoneMapFilter;
+    private boolean skipSlice;
+    private long sliceHi;
+    private long block;
+    private boolean blockMatches;
+    private CompiledFilter compiledFilter;
+    private boolean filterCompiled = false;
+    private VectorColumn vectorFilter;
+    private RowBatch batch;
+    private int selectionPos;
 
     public FilteredRowSource(RowSource delegate, VirtualColumn filter) {
         this.delegate = delegate;
@@ -37,12 +52,44 @@ public class FilteredRowSource extends AbstractRowSource implements RecordSource
         this.delegate.configure(metadata);
         this.filter.configureSource(this);
         this.rec = new JournalRecord(metadata);
+        this.zoneMapFilter = ZoneMapFilter.create(filter);
+        // filter is vectorized whenever its top level operator allows, compiler takes filters vectorizer cannot handle
+        this.vectorFilter = VectorFilter.create(filter, rec);
+        if (vectorFilter != null) {
+            if (batch == null) {
+                this.batch = new RowBatch();
+            }
+        } else if (!filterCompiled) {
+            // compiled filter does not depend on metadata, filter is compiled once for all executions
+            this.compiledFilter = FilterCompiler.compile(filter);
+            this.filterCompiled = true;
+        }
     }
 
+    @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
     @Override
     public RowCursor prepareCursor(PartitionSlice slice) {
-        this.underlying = delegate.prepareCursor(slice);
         this.rec.partition = slice.partition;
+        this.block = -1;
+        if (batch != null) {
+            batch.clear();
+            selectionPos = 0;
+        }
+        if (zoneMapFilter != null) {
+            try {
+                zoneMapFilter.of(slice.partition.open());
+                sliceHi = slice.calcHi ? slice.partition.size() - 1 : slice.hi;
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+
+            // none of the blocks can match, do not bother scanning slice
+            skipSlice = !zoneMapFilter.matchesAny(slice.lo, sliceHi);
+            if (skipSlice) {
+                return this;
+            }
+        }
+        this.underlying = delegate.prepareCursor(slice);
         return this;
     }
 
@@ -58,9 +105,21 @@ public class FilteredRowSource extends AbstractRowSource implements RecordSource
 
     @Override
     public boolean hasNext() {
+        if (skipSlice) {
+            return false;
+        }
+
+        if (vectorFilter != null) {
+            return nextSelected();
+        }
+
         while (underlying.hasNext()) {
-            rec.rowid = underlying.next();
-            if (filter.getBool()) {
+            long row = underlying.next();
+            if (zoneMapFilter != null && !blockMatches(row)) {
+                continue;
+            }
+            rec.rowid = row;
+            if (compiledFilter == null ? filter.getBool() : compiledFilter.eval(rec.partition, row)) {
                 return true;
             }
         }
@@ -76,4 +135,58 @@ public class FilteredRowSource extends AbstractRowSource implements RecordSource
     public String toString() {
         return "FilteredRowSource{}";
     }
+
+    boolean isVectorized() {
+        return vectorFilter != null;
+    }
+
+    /**
+     * Fills batch with rows of underlying cursor and evaluates filter for all of them at once.
+     *
+     * @return false when underlying cursor is exhausted
+     */
+    private boolean evaluateBatch() {
+        batch.clear();
+        selectionPos = 0;
+        while (underlying.hasNext()) {
+            long row = underlying.next();
+            if (zoneMapFilter != null && !blockMatches(row)) {
+                continue;
+            }
+            if (!batch.add(row)) {
+                break;
+            }
+        }
+
+        if (batch.size == 0) {
+            return false;
+        }
+
+        batch.partition = rec.partition;
+        batch.select(vectorFilter.evaluate(batch));
+        return true;
+    }
+
+    private boolean nextSelected() {
+        do {
+            if (selectionPos < batch.selected) {
+                rec.rowid = batch.rows[batch.selection[selectionPos++]];
+                return true;
+            }
+        } while (evaluateBatch());
+        return false;
+    }
+
+    private boolean blockMatches(long row) {
+        if (row > sliceHi) {
+            return true;
+        }
+
+        long b = row >>> ZoneMap.BLOCK_BITS;
+        if (b != block) {
+            block = b;
+            blockMatches = zoneMapFilter.matches(b, sliceHi);
+        }
+        return blockMatches;
+    }
 }
@@ -0,0 +1,558 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.DirectRecordLinkedList;
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.mmap.MultiMap;
+import com.nfsdb.collections.mmap.MultiRecordMap;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.RecordColumnMetadata;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordMetadata;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Files;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.nfsdb.ql.impl.KeyWriterHelper.setKey;
+
+/**
+ * Hash join, which builds hash table on slave records while they fit memory budget. When budget is
+ * exceeded both slave and master records are partitioned by hash of join key into temporary files
+ * and joined one partition at a time. Spilled output is grouped by partition, otherwise output
+ * order is the same as that of {@link HashJoinRecordSource}.
+ * <p/>
+ * Partition, slave records of which still do not fit memory budget, is partitioned again by hash with
+ * different seed. Join fails when partition cannot be split any further, which is when all of its slave
+ * records share the same key hash or MAX_SPLIT_DEPTH is reached.
+ */
+public class GraceHashJoinRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    public static final long DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+    private static final int PARTITION_COUNT = 16;
+    private static final int MAX_SPLIT_DEPTH = 4;
+    private static final int PAGE_SIZE = 64 * 1024;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+    private final RecordSource<? extends Record> masterSource;
+    private final RecordSource<? extends Record> slaveSource;
+    private final SplitRecordMetadata metadata;
+    private final SplitRecord currentRecord;
+    private final ObjList<RecordColumnMetadata> masterColumns = new ObjList<>();
+    private final ObjList<RecordColumnMetadata> slaveColumns = new ObjList<>();
+    private final IntList masterColIndex = new IntList();
+    private final IntList slaveColIndex = new IntList();
+    private final long memoryBudget;
+    private final File tempDir;
+    private final ObjList<SpillFile> masterFiles = new ObjList<>();
+    private final ObjList<SpillFile> slaveFiles = new ObjList<>();
+    private final IntList depths = new IntList();
+    private final ByteBuffer ioBuffer;
+    private RecordCursor<? extends Record> slaveCursor;
+    private RecordCursor<? extends Record> masterCursor;
+    private MultiRecordMap hashTable;
+    private RecordCursor<? extends Record> hashTableCursor;
+    private DirectRecordLinkedList masterList;
+    private DirectRecordLinkedList slaveList;
+    private boolean spilled;
+    private int partition;
+    private long spillBytes;
+
+    public GraceHashJoinRecordSource(
+            RecordSource<? extends Record> masterSource,
+            ObjList<String> masterColumns,
+            RecordSource<? extends Record> slaveSource,
+            ObjList<String> slaveColumns) {
+        this(masterSource, masterColumns, slaveSource, slaveColumns, DEFAULT_MEMORY_BUDGET, null);
+    }
+
+    /**
+     * @param memoryBudget maximum number of bytes slave records can take in memory before join spills to disk
+     * @param tempDir      directory for partition files, null for system temp directory
+     */
+    @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
+    public GraceHashJoinRecordSource(
+            RecordSource<? extends Record> masterSource,
+            ObjList<String> masterColumns,
+            RecordSource<? extends Record> slaveSource,
+            ObjList<String> slaveColumns,
+            long memoryBudget,
+            File tempDir) {
+        this.masterSource = masterSource;
+        this.slaveSource = slaveSource;
+        this.memoryBudget = memoryBudget;
+        this.tempDir = tempDir;
+        this.metadata = new SplitRecordMetadata(masterSource.getMetadata(), slaveSource.getMetadata());
+        this.currentRecord = new SplitRecord(metadata, masterSource.getMetadata().getColumnCount());
+        this.ioBuffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+
+        RecordMetadata mm = masterSource.getMetadata();
+        for (int i = 0, k = masterColumns.size(); i < k; i++) {
+            int index = mm.getColumnIndex(masterColumns.getQuick(i));
+            this.masterColIndex.add(index);
+            this.masterColumns.add(mm.getColumn(index));
+        }
+
+        MultiRecordMap.Builder builder = new MultiRecordMap.Builder();
+        RecordMetadata sm = slaveSource.getMetadata();
+        for (int i = 0, k = slaveColumns.size(); i < k; i++) {
+            int index = sm.getColumnIndex(slaveColumns.getQuick(i));
+            this.slaveColIndex.add(index);
+            this.slaveColumns.add(sm.getColumn(index));
+            builder.keyColumn(sm.getColumn(index));
+        }
+        builder.setRecordMetadata(sm);
+        this.hashTable = builder.build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        deleteSpillFiles();
+        if (hashTable != null) {
+            hashTable.close();
+            hashTable = null;
+        }
+        if (masterList != null) {
+            masterList.close();
+            masterList = null;
+        }
+        if (slaveList != null) {
+            slaveList.close();
+            slaveList = null;
+        }
+        ByteBuffers.release(ioBuffer);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return number of bytes written to partition files by last cursor
+     */
+    public long getSpillBytes() {
+        return spillBytes;
+    }
+
+    @Override
+    public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.slaveCursor = slaveSource.prepareCursor(factory);
+        this.masterCursor = masterSource.prepareCursor(factory);
+        if (!buildHashTable()) {
+            // slave does not fit memory, start again and partition both sides
+            hashTable.clear();
+            slaveSource.reset();
+            this.slaveCursor = slaveSource.prepareCursor(factory);
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new JournalException("Cannot spill join partitions to %s", e, tempDir);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        hashTableCursor = null;
+        masterSource.reset();
+        slaveSource.reset();
+        hashTable.clear();
+        deleteSpillFiles();
+        spilled = false;
+        spillBytes = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hashTableCursor != null && hashTableCursor.hasNext()) {
+            currentRecord.setB(hashTableCursor.next());
+            return true;
+        }
+        return spilled ? hasNextSpilled() : hasNext0();
+    }
+
+    @SuppressFBWarnings({"IT_NO_SUCH_ELEMENT"})
+    @Override
+    public SplitRecord next() {
+        return currentRecord;
+    }
+
+    private static int hash(Record r, ColumnType type, int index) {
+        switch (type) {
+            case BOOLEAN:
+                return r.getBool(index) ? 1 : 0;
+            case BYTE:
+                return r.get(index);
+            case DOUBLE:
+                return hash(Double.doubleToLongBits(r.getDouble(index)));
+            case INT:
+                return r.getInt(index);
+            case LONG:
+                return hash(r.getLong(index));
+            case SHORT:
+                return r.getShort(index);
+            case FLOAT:
+                return Float.floatToIntBits(r.getFloat(index));
+            case STRING:
+                return hash(r.getFlyweightStr(index));
+            case SYMBOL:
+                // must agree with string hash, symbols can be joined to strings
+                return hash(r.getSym(index));
+            case DATE:
+                return hash(r.getDate(index));
+            default:
+                throw new JournalRuntimeException("Unsupported type: " + type);
+        }
+    }
+
+    private static int hash(long value) {
+        return (int) (value ^ (value >>> 32));
+    }
+
+    private static int hash(CharSequence value) {
+        if (value == null) {
+            return 0;
+        }
+        int h = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h = 31 * h + value.charAt(i);
+        }
+        return h;
+    }
+
+    private static int keyHash(Record r, ObjList<RecordColumnMetadata> columns, IntList columnIndex) {
+        int h = 0;
+        for (int i = 0, k = columns.size(); i < k; i++) {
+            h = 31 * h + hash(r, columns.getQuick(i).getType(), columnIndex.getQuick(i));
+        }
+        return h;
+    }
+
+    /**
+     * Scrambles hash with seed, so that records of one partition are spread over partitions of next level.
+     */
+    private static int mix(int h, int seed) {
+        h ^= seed * 0x9e3779b9;
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int partitionOf(int h, int depth) {
+        if (depth == 0) {
+            // spread high bits, low bits of string hashes are poorly distributed
+            h ^= (h >>> 16);
+        } else {
+            h = mix(h, depth);
+        }
+        return h & (PARTITION_COUNT - 1);
+    }
+
+    private void addPartitions(int depth) throws IOException {
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            masterFiles.add(new SpillFile(masterSource.getMetadata()));
+            slaveFiles.add(new SpillFile(slaveSource.getMetadata()));
+            depths.add(depth);
+        }
+    }
+
+    private boolean buildHashTable() {
+        for (Record r : slaveCursor) {
+            MultiMap.KeyWriter key = hashTable.claimKey();
+            for (int i = 0, k = slaveColumns.size(); i < k; i++) {
+                setKey(key, r, slaveColumns.getQuick(i).getType(), slaveColIndex.getQuick(i));
+            }
+            hashTable.add(key, r);
+            if (hashTable.getRecordsSize() > memoryBudget) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void deleteSpillFiles() {
+        for (int i = 0, n = masterFiles.size(); i < n; i++) {
+            SpillFile f = masterFiles.getQuick(i);
+            // partitions that were split are closed already
+            if (f != null) {
+                f.close();
+                slaveFiles.getQuick(i).close();
+            }
+        }
+        masterFiles.clear();
+        slaveFiles.clear();
+        depths.clear();
+    }
+
+    private boolean hasNext0() {
+        while (masterCursor.hasNext()) {
+            Record r = masterCursor.next();
+            currentRecord.setA(r);
+            if (probe(r)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasNextSpilled() {
+        try {
+            while (true) {
+                while (masterList.hasNext()) {
+                    Record r = masterList.next();
+                    currentRecord.setA(r);
+                    if (probe(r)) {
+                        return true;
+                    }
+                }
+
+                if ((partition == masterFiles.size() || !masterFiles.getQuick(partition).read(masterList)) && !nextPartition()) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            throw new JournalRuntimeException("Cannot read join partition", e);
+        }
+    }
+
+    private boolean nextPartition() throws IOException {
+        while (partition < masterFiles.size() - 1) {
+            partition++;
+            if (loadPartition()) {
+                return true;
+            }
+        }
+        partition = masterFiles.size();
+        return false;
+    }
+
+    /**
+     * Builds hash table of slave records of current partition. Partition that does not fit memory budget is
+     * split into partitions of next level, which are appended to list of partitions.
+     *
+     * @return false if partition has been split
+     */
+    private boolean loadPartition() throws IOException {
+        hashTable.clear();
+        masterList.init(-1);
+        SpillFile file = slaveFiles.getQuick(partition);
+        while (file.read(slaveList)) {
+            while (slaveList.hasNext()) {
+                Record r = slaveList.next();
+                MultiMap.KeyWriter key = hashTable.claimKey();
+                for (int i = 0, k = slaveColumns.size(); i < k; i++) {
+                    setKey(key, r, slaveColumns.getQuick(i).getType(), slaveColIndex.getQuick(i));
+                }
+                hashTable.add(key, r);
+                if (hashTable.getRecordsSize() > memoryBudget) {
+                    hashTable.clear();
+                    splitPartition();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean probe(Record r) {
+        MultiMap.KeyWriter key = hashTable.claimKey();
+        for (int i = 0, k = masterColumns.size(); i < k; i++) {
+            setKey(key, r, masterColumns.getQuick(i).getType(), masterColIndex.getQuick(i));
+        }
+
+        hashTableCursor = hashTable.get(key);
+
+        if (hashTableCursor.hasNext()) {
+            currentRecord.setB(hashTableCursor.next());
+            return true;
+        }
+        return false;
+    }
+
+    private void spill() throws IOException {
+        if (masterList == null) {
+            masterList = new DirectRecordLinkedList(masterSource.getMetadata(), PAGE_SIZE);
+            slaveList = new DirectRecordLinkedList(slaveSource.getMetadata(), PAGE_SIZE);
+        }
+
+        addPartitions(0);
+
+        for (Record r : slaveCursor) {
+            slaveFiles.getQuick(partitionOf(keyHash(r, slaveColumns, slaveColIndex), 0)).write(r);
+        }
+
+        for (Record r : masterCursor) {
+            masterFiles.getQuick(partitionOf(keyHash(r, masterColumns, masterColIndex), 0)).write(r);
+        }
+
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            masterFiles.getQuick(i).flip();
+            slaveFiles.getQuick(i).flip();
+        }
+
+        spilled = true;
+        partition = -1;
+        nextPartition();
+    }
+
+    private void splitPartition() throws IOException {
+        int depth = depths.getQuick(partition) + 1;
+        if (depth > MAX_SPLIT_DEPTH) {
+            throw new JournalRuntimeException("Join partition does not fit memory budget of %d bytes after %d splits", memoryBudget, MAX_SPLIT_DEPTH);
+        }
+
+        SpillFile master = masterFiles.getQuick(partition);
+        SpillFile slave = slaveFiles.getQuick(partition);
+        int lo = masterFiles.size();
+        addPartitions(depth);
+
+        boolean sameHash = true;
+        int firstHash = 0;
+        long count = 0;
+        slave.rewind();
+        while (slave.read(slaveList)) {
+            while (slaveList.hasNext()) {
+                Record r = slaveList.next();
+                int h = keyHash(r, slaveColumns, slaveColIndex);
+                if (count++ == 0) {
+                    firstHash = h;
+                } else if (h != firstHash) {
+                    sameHash = false;
+                }
+                slaveFiles.getQuick(lo + partitionOf(h, depth)).write(r);
+            }
+        }
+
+        while (master.read(masterList)) {
+            while (masterList.hasNext()) {
+                Record r = masterList.next();
+                masterFiles.getQuick(lo + partitionOf(keyHash(r, masterColumns, masterColIndex), depth)).write(r);
+            }
+        }
+        masterList.init(-1);
+
+        for (int i = lo, n = masterFiles.size(); i < n; i++) {
+            masterFiles.getQuick(i).flip();
+            slaveFiles.getQuick(i).flip();
+        }
+
+        master.close();
+        slave.close();
+        masterFiles.setQuick(partition, null);
+        slaveFiles.setQuick(partition, null);
+
+        if (sameHash) {
+            // no seed can split records of the same hash
+            throw new JournalRuntimeException("Join partition does not fit memory budget of %d bytes, all of its %d records have the same key hash", memoryBudget, count);
+        }
+    }
+
+    /**
+     * Temporary file of join partition. Records are buffered in linked list and written out in
+     * chunks of [length][offset of last record][list bytes].
+     */
+    private class SpillFile {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private final DirectRecordLinkedList records;
+        private long lastOffset = -1;
+
+        SpillFile(RecordMetadata metadata) throws IOException {
+            this.file = File.createTempFile("nfsdb-join", ".part", tempDir);
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            this.records = new DirectRecordLinkedList(metadata, PAGE_SIZE);
+        }
+
+        void close() {
+            try {
+                records.close();
+                raf.close();
+            } catch (IOException ignore) {
+                // file is deleted regardless
+            }
+            Files.delete(file);
+        }
+
+        /**
+         * Writes out buffered records and rewinds file for reading.
+         */
+        void flip() throws IOException {
+            flush();
+            records.close();
+            channel.position(0);
+        }
+
+        boolean read(DirectRecordLinkedList list) throws IOException {
+            if (channel.position() == channel.size()) {
+                return false;
+            }
+            ioBuffer.position(0).limit(16);
+            while (ioBuffer.hasRemaining()) {
+                channel.read(ioBuffer);
+            }
+            long len = ioBuffer.getLong(0);
+            long offset = ioBuffer.getLong(8);
+            list.readFrom(channel, ioBuffer, len);
+            list.init(offset);
+            return true;
+        }
+
+        void rewind() throws IOException {
+            channel.position(0);
+        }
+
+        void write(Record r) throws IOException {
+            lastOffset = records.append(r, lastOffset);
+            if (records.size() > PAGE_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (lastOffset == -1) {
+                return;
+            }
+            ioBuffer.position(0).limit(16);
+            ioBuffer.putLong(0, records.size());
+            ioBuffer.putLong(8, lastOffset);
+            while (ioBuffer.hasRemaining()) {
+                channel.write(ioBuffer);
+            }
+            spillBytes += 16 + records.writeTo(channel, ioBuffer);
+            records.clear();
+            lastOffset = -1;
+        }
+    }
+}
@@ -17,7 +17,9 @@
 package com.nfsdb.ql.impl;
 
 import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.DirectRecordLinkedList;
 import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.LongList;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.collections.mmap.MultiMap;
 import com.nfsdb.collections.mmap.MultiRecordMap;
@@ -28,6 +30,9 @@ import com.nfsdb.ql.Record;
 import com.nfsdb.ql.RecordCursor;
 import com.nfsdb.ql.RecordMetadata;
 import com.nfsdb.ql.RecordSource;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.SymbolKeyMap;
+import com.nfsdb.storage.SymbolTable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.io.Closeable;
@@ -35,7 +40,13 @@ import java.io.IOException;
 
 import static com.nfsdb.ql.impl.KeyWriterHelper.setKey;
 
+/**
+ * Joins master and slave records on equal key columns. When join key is single pair of symbol columns,
+ * slave symbol keys are translated into master symbol keys and slave records are chained by master key,
+ * so that master records are matched without hashing key values.
+ */
 public class HashJoinRecordSource extends AbstractImmutableIterator<Record> implements RecordSource<Record>, Closeable, RecordCursor<Record> {
+    private static final int SYMBOL_PAGE_SIZE = 4 * 1024 * 1024;
     private final RecordSource<? extends Record> masterSource;
     private final RecordSource<? extends Record> slaveSource;
     private final SplitRecordMetadata metadata;
@@ -44,10 +55,13 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
     private final ObjList<RecordColumnMetadata> slaveColumns = new ObjList<>();
     private final IntList masterColIndex = new IntList();
     private final IntList slaveColIndex = new IntList();
+    // symbol join: heads of slave record chains indexed by master symbol key + 1
+    private final LongList symbolHeads = new LongList();
     private RecordCursor<? extends Record> slaveCursor;
     private RecordCursor<? extends Record> masterCursor;
     private MultiRecordMap hashTable;
     private RecordCursor<? extends Record> hashTableCursor;
+    private DirectRecordLinkedList symbolRecords;
 
     @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
     public HashJoinRecordSource(
@@ -60,6 +74,9 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         this.metadata = new SplitRecordMetadata(masterSource.getMetadata(), slaveSource.getMetadata());
         this.currentRecord = new SplitRecord(metadata, masterSource.getMetadata().getColumnCount());
         this.hashTable = buildHashTable(masterSource, masterColumns, slaveSource, slaveColumns);
+        if (isSymbolJoin()) {
+            this.symbolRecords = new DirectRecordLinkedList(slaveSource.getMetadata(), SYMBOL_PAGE_SIZE);
+        }
     }
 
     @Override
@@ -68,6 +85,10 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
             hashTable.close();
             hashTable = null;
         }
+        if (symbolRecords != null) {
+            symbolRecords.close();
+            symbolRecords = null;
+        }
     }
 
     @Override
@@ -88,6 +109,10 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         hashTableCursor = null;
         masterSource.reset();
         hashTable.clear();
+        if (symbolRecords != null) {
+            symbolRecords.clear();
+            symbolHeads.clear();
+        }
     }
 
     @Override
@@ -129,6 +154,11 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
     }
 
     private void buildHashTable() {
+        if (symbolRecords != null) {
+            buildSymbolTable();
+            return;
+        }
+
         for (Record r : slaveCursor) {
             MultiMap.KeyWriter key = hashTable.claimKey();
             for (int i = 0, k = slaveColumns.size(); i < k; i++) {
@@ -138,7 +168,30 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         }
     }
 
+    private void buildSymbolTable() {
+        int slaveIndex = slaveColIndex.getQuick(0);
+        // master journal can get new symbols, so translation is not reused between cursors
+        SymbolKeyMap keyMap = new SymbolKeyMap(slaveColumns.getQuick(0).getSymbolTable(), masterColumns.getQuick(0).getSymbolTable(), false);
+        for (Record r : slaveCursor) {
+            int key = keyMap.get(r.getInt(slaveIndex));
+            if (key == SymbolTable.VALUE_NOT_FOUND) {
+                // value is not in master symbol table, no master record can match
+                continue;
+            }
+
+            int slot = key + 1;
+            while (symbolHeads.size() <= slot) {
+                symbolHeads.add(-1);
+            }
+            symbolHeads.setQuick(slot, symbolRecords.append(r, symbolHeads.getQuick(slot)));
+        }
+    }
+
     private boolean hasNext0() {
+        if (symbolRecords != null) {
+            return hasNextSymbol();
+        }
+
         while (masterCursor.hasNext()) {
 
             Record r = masterCursor.next();
@@ -159,4 +212,27 @@ public class HashJoinRecordSource extends AbstractImmutableIterator<Record> impl
         }
         return false;
     }
+
+    private boolean hasNextSymbol() {
+        int masterIndex = masterColIndex.getQuick(0);
+        while (masterCursor.hasNext()) {
+            Record r = masterCursor.next();
+            symbolRecords.init(symbolHeads.getQuiet(r.getInt(masterIndex) + 1));
+            if (symbolRecords.hasNext()) {
+                currentRecord.setA(r);
+                currentRecord.setB(symbolRecords.next());
+                hashTableCursor = symbolRecords;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSymbolJoin() {
+        return masterColumns.size() == 1
+                && masterColumns.getQuick(0).getType() == ColumnType.SYMBOL
+                && slaveColumns.getQuick(0).getType() == ColumnType.SYMBOL
+                && masterColumns.getQuick(0).getSymbolTable() != null
+                && slaveColumns.getQuick(0).getSymbolTable() != null;
+    }
 }
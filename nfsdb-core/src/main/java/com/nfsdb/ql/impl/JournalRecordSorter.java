@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Partition;
+import com.nfsdb.collections.ExternalSort;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.TopNHeap;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.ql.RecordMetadata;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.SymbolTable;
+import com.nfsdb.utils.Rows;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * Sorts journal records by list of columns. Column values are turned into fixed width keys, which
+ * are sorted together with global row ids by {@link ExternalSort}. Symbols are keyed by rank of their value and
+ * strings by their first characters. Records with equal string prefixes are ordered by complete values.
+ * Nulls come first in ascending order.
+ * <p>
+ * When sorter is limited to first N records, entries are kept in {@link TopNHeap} instead and
+ * records beyond N are discarded as they are added.
+ */
+public class JournalRecordSorter implements ExternalSort.TieBreaker, Closeable {
+    private final int[] columns;
+    private final boolean[] descending;
+    private final ColumnType[] types;
+    private final SymbolTable[] symbolTables;
+    private final int[][] ranks;
+    private final long[] keys;
+    private final int keyCount;
+    private final ExternalSort sort;
+    private final TopNHeap top;
+    private final ObjList<Partition> partitions = new ObjList<>();
+    private final JournalRecord left;
+    private final JournalRecord right;
+
+    public JournalRecordSorter(RecordMetadata metadata, int[] columns, boolean[] descending) {
+        this(metadata, columns, descending, ExternalSort.DEFAULT_MEMORY_BUDGET);
+    }
+
+    public JournalRecordSorter(RecordMetadata metadata, int[] columns, boolean[] descending, long memoryBudget) {
+        this(metadata, columns, descending, memoryBudget, -1);
+    }
+
+    /**
+     * @param limit number of records to keep, negative value to keep all records
+     */
+    public JournalRecordSorter(RecordMetadata metadata, int[] columns, boolean[] descending, long memoryBudget, long limit) {
+        this.columns = columns;
+        this.descending = descending;
+        this.types = new ColumnType[columns.length];
+        this.symbolTables = new SymbolTable[columns.length];
+        this.ranks = new int[columns.length][];
+        this.left = new JournalRecord(metadata);
+        this.right = new JournalRecord(metadata);
+
+        // string prefix is the last key, columns after it are compared by tie breaker
+        int n = columns.length;
+        for (int i = columns.length - 1; i >= 0; i--) {
+            types[i] = metadata.getColumn(columns[i]).getType();
+            switch (types[i]) {
+                case STRING:
+                    n = i + 1;
+                    break;
+                case BINARY:
+                    throw new JournalRuntimeException("Unsupported type: %s", types[i]);
+                default:
+                    break;
+            }
+        }
+        this.keyCount = n;
+        this.keys = new long[n];
+        ExternalSort.TieBreaker tieBreaker = types[n - 1] == ColumnType.STRING ? this : null;
+        if (limit < 0) {
+            this.sort = new ExternalSort(n, memoryBudget, null, tieBreaker);
+            this.top = null;
+        } else {
+            this.sort = null;
+            this.top = new TopNHeap(n, limit, tieBreaker);
+        }
+    }
+
+    private static long strKey(CharSequence cs) {
+        if (cs == null) {
+            return 0;
+        }
+
+        // non-null flag followed by three 17-bit chars, missing chars sort ahead of any char
+        long k = Long.MIN_VALUE;
+        for (int i = 0, n = Math.min(3, cs.length()); i < n; i++) {
+            k |= ((long) cs.charAt(i) + 1) << (34 - i * 17);
+        }
+        return k;
+    }
+
+    private static int[] ranks(SymbolTable symbolTable) {
+        int n = symbolTable.size();
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = symbolTable.value(i);
+        }
+        String[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        int[] ranks = new int[n];
+        for (int i = 0; i < n; i++) {
+            ranks[i] = Arrays.binarySearch(sorted, values[i]);
+        }
+        return ranks;
+    }
+
+    public void add(JournalRecord rec) {
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = key(rec, i);
+        }
+
+        int partitionIndex = rec.partition.getPartitionIndex();
+        if (partitions.getQuiet(partitionIndex) == null) {
+            partitions.extendAndSet(partitionIndex, rec.partition);
+        }
+        long rowId = Rows.toRowID(partitionIndex, rec.rowid);
+        if (top == null) {
+            sort.add(keys, rowId);
+        } else {
+            top.add(keys, rowId);
+        }
+    }
+
+    public void clear() {
+        if (top == null) {
+            sort.clear();
+        } else {
+            top.clear();
+        }
+        partitions.clear();
+    }
+
+    @Override
+    public void close() {
+        if (top == null) {
+            sort.close();
+        } else {
+            top.close();
+        }
+    }
+
+    @Override
+    public int compare(long rowIdA, long rowIdB) {
+        position(left, rowIdA);
+        position(right, rowIdB);
+        for (int i = keyCount - 1; i < columns.length; i++) {
+            int r;
+            if (types[i] == ColumnType.STRING) {
+                String a = left.getStr(columns[i]);
+                String b = right.getStr(columns[i]);
+                if (a == null) {
+                    r = b == null ? 0 : -1;
+                } else {
+                    r = b == null ? 1 : a.compareTo(b);
+                }
+                r = descending[i] ? -r : r;
+            } else {
+                r = Long.compareUnsigned(key(left, i), key(right, i));
+            }
+
+            if (r != 0) {
+                return r;
+            }
+        }
+        return 0;
+    }
+
+    public boolean hasNext() {
+        return top == null ? sort.hasNext() : top.hasNext();
+    }
+
+    /**
+     * @return global row id of next record in sort order
+     */
+    public long next() {
+        return top == null ? sort.next() : top.next();
+    }
+
+    /**
+     * Points record at row of given global row id. Row must have been added to this sorter.
+     */
+    public JournalRecord position(JournalRecord rec, long rowId) {
+        rec.partition = partitions.getQuick(Rows.toPartitionIndex(rowId));
+        rec.rowid = Rows.toLocalRowID(rowId);
+        return rec;
+    }
+
+    public void sort() {
+        if (top == null) {
+            sort.sort();
+        } else {
+            top.sort();
+        }
+    }
+
+    private long key(JournalRecord rec, int i) {
+        long k = key0(rec, i);
+        return descending[i] ? ~k : k;
+    }
+
+    private long key0(JournalRecord rec, int i) {
+        int col = columns[i];
+        switch (types[i]) {
+            case BOOLEAN:
+                return rec.getBool(col) ? 1 : 0;
+            case BYTE:
+                return ExternalSort.signedKey(rec.get(col));
+            case SHORT:
+                return ExternalSort.signedKey(rec.getShort(col));
+            case INT:
+                return ExternalSort.signedKey(rec.getInt(col));
+            case LONG:
+                return ExternalSort.signedKey(rec.getLong(col));
+            case DATE:
+                return ExternalSort.signedKey(rec.getDate(col));
+            case FLOAT:
+                return ExternalSort.doubleKey(rec.getFloat(col));
+            case DOUBLE:
+                return ExternalSort.doubleKey(rec.getDouble(col));
+            case STRING:
+                return strKey(rec.getFlyweightStr(col));
+            default:
+                return symKey(rec, i);
+        }
+    }
+
+    private long symKey(JournalRecord rec, int i) {
+        int symbolKey = rec.getInt(columns[i]);
+        if (symbolKey < 0) {
+            return 0;
+        }
+
+        int[] r = ranks[i];
+        if (r == null || symbolKey >= r.length) {
+            if (symbolTables[i] == null) {
+                symbolTables[i] = rec.partition.getJournal().getMetadata().getColumn(columns[i]).getSymbolTable();
+            }
+            ranks[i] = r = ranks(symbolTables[i]);
+        }
+        return r[symbolKey] + 1;
+    }
+}
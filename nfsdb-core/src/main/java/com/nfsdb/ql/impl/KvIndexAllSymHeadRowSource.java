@@ -27,7 +27,7 @@ import com.nfsdb.ql.RecordSourceState;
 import com.nfsdb.ql.RowCursor;
 import com.nfsdb.ql.ops.VirtualColumn;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public class KvIndexAllSymHeadRowSource extends AbstractRowSource implements RecordSourceState {
@@ -62,7 +62,7 @@ public class KvIndexAllSymHeadRowSource extends AbstractRowSource implements Rec
 
         try {
             Partition partition = rec.partition = slice.partition.open();
-            KVIndex index = partition.getIndexForColumn(column);
+            SymbolIndex index = partition.getIndexForColumn(column);
             long lo = slice.lo - 1;
             long hi = slice.calcHi ? partition.size() : slice.hi + 1;
             rows.clear();
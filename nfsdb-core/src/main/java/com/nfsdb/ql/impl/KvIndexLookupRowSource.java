@@ -23,7 +23,7 @@ import com.nfsdb.ql.PartitionSlice;
 import com.nfsdb.ql.RowCursor;
 import com.nfsdb.ql.ops.VirtualColumn;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
@@ -59,7 +59,7 @@ public class KvIndexLookupRowSource extends AbstractRowSource {
     @Override
     public RowCursor prepareCursor(PartitionSlice slice) {
         try {
-            KVIndex index = slice.partition.getIndexForColumn(columnIndex);
+            SymbolIndex index = slice.partition.getIndexForColumn(columnIndex);
             if (symbolKey == -2) {
                 symbolKey = slice.partition.getJournal().getSymbolTable(symbol).getQuick(valueFunction.getFlyweightStr());
             }
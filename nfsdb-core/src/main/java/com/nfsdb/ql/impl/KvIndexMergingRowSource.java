@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjHashSet;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.ql.PartitionSlice;
+import com.nfsdb.ql.RowCursor;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.IndexCursor;
+import com.nfsdb.storage.StringIndex;
+import com.nfsdb.storage.SymbolIndex;
+import com.nfsdb.storage.SymbolTable;
+import com.nfsdb.utils.Unsafe;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Returns rows of list of key values of indexed symbol or string column in row id order. Forward index
+ * cursor is opened for each value and cursors are merged by row id using off-heap binary min-heap of
+ * (row id, cursor) entries, so each row costs O(log N) for N values.
+ * <p>
+ * String values are looked up in string index of each partition, symbol values are resolved to keys once.
+ */
+@SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
+public class KvIndexMergingRowSource extends AbstractRowSource {
+    private static final int ENTRY_SIZE = 16;
+
+    private final String column;
+    private final ObjList<String> values = new ObjList<>();
+    private final IntList keys = new IntList();
+    private final ObjList<IndexCursor> cursors = new ObjList<>();
+    private final long address;
+    private int columnIndex;
+    private boolean string;
+    private long lo;
+    private long hi;
+    private int heapSize;
+
+    public KvIndexMergingRowSource(String column, ObjHashSet<String> values) {
+        this.column = column;
+        for (int i = 0, n = values.size(); i < n; i++) {
+            this.values.add(values.get(i));
+        }
+        this.address = Unsafe.getUnsafe().allocateMemory(Math.max(1, values.size()) * ENTRY_SIZE);
+    }
+
+    @Override
+    public void configure(JournalMetadata metadata) {
+        this.columnIndex = metadata.getColumnIndex(column);
+        ColumnMetadata m = metadata.getColumn(columnIndex);
+        this.string = m.type == ColumnType.STRING;
+    }
+
+    @Override
+    public RowCursor prepareCursor(PartitionSlice slice) {
+        try {
+            this.lo = slice.lo - 1;
+            this.hi = slice.calcHi ? slice.partition.open().size() : slice.hi + 1;
+
+            cursors.clear();
+            heapSize = 0;
+            if (string) {
+                StringIndex index = slice.partition.getStringIndexForColumn(columnIndex);
+                for (int i = 0, n = values.size(); i < n; i++) {
+                    addCursor(index.newCursor(values.getQuick(i)));
+                }
+            } else {
+                SymbolIndex index = slice.partition.getIndexForColumn(columnIndex);
+                if (keys.size() == 0) {
+                    resolveKeys(slice);
+                }
+
+                for (int i = 0, n = keys.size(); i < n; i++) {
+                    int key = keys.getQuick(i);
+                    if (key > -1) {
+                        addCursor(index.newFwdCursor(key));
+                    }
+                }
+            }
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        keys.clear();
+        heapSize = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return heapSize > 0;
+    }
+
+    @Override
+    public long next() {
+        long rowid = Unsafe.getUnsafe().getLong(address);
+        int c = (int) Unsafe.getUnsafe().getLong(address + 8);
+        long nxt = nextRowId(c);
+        if (nxt > -1) {
+            Unsafe.getUnsafe().putLong(address, nxt);
+        } else {
+            heapSize--;
+            copy(heapSize, 0);
+        }
+        siftDown();
+        return rowid;
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        Unsafe.getUnsafe().freeMemory(address);
+        super.finalize();
+    }
+
+    private void addCursor(IndexCursor cursor) {
+        int c = cursors.size();
+        cursors.add(cursor);
+        long rowid = nextRowId(c);
+        if (rowid > -1) {
+            push(rowid, c);
+        }
+    }
+
+    private void copy(int from, int to) {
+        Unsafe.getUnsafe().putLong(address + to * ENTRY_SIZE, Unsafe.getUnsafe().getLong(address + from * ENTRY_SIZE));
+        Unsafe.getUnsafe().putLong(address + to * ENTRY_SIZE + 8, Unsafe.getUnsafe().getLong(address + from * ENTRY_SIZE + 8));
+    }
+
+    /**
+     * @return next row id of cursor within slice or -1 when cursor is exhausted
+     */
+    private long nextRowId(int c) {
+        IndexCursor cursor = cursors.getQuick(c);
+        while (cursor.hasNext()) {
+            long rowid = cursor.next();
+            if (rowid <= lo) {
+                continue;
+            }
+
+            return rowid < hi ? rowid : -1;
+        }
+        return -1;
+    }
+
+    private void push(long rowid, int c) {
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (Unsafe.getUnsafe().getLong(address + parent * ENTRY_SIZE) <= rowid) {
+                break;
+            }
+            copy(parent, i);
+            i = parent;
+        }
+        Unsafe.getUnsafe().putLong(address + i * ENTRY_SIZE, rowid);
+        Unsafe.getUnsafe().putLong(address + i * ENTRY_SIZE + 8, c);
+    }
+
+    private void resolveKeys(PartitionSlice slice) {
+        SymbolTable symbolTable = slice.partition.getJournal().getSymbolTable(column);
+        for (int i = 0, n = values.size(); i < n; i++) {
+            keys.add(symbolTable.getQuick(values.getQuick(i)));
+        }
+    }
+
+    private void siftDown() {
+        if (heapSize < 2) {
+            return;
+        }
+
+        long rowid = Unsafe.getUnsafe().getLong(address);
+        long c = Unsafe.getUnsafe().getLong(address + 8);
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1;
+            if (l >= heapSize) {
+                break;
+            }
+            int m = l;
+            long ml = Unsafe.getUnsafe().getLong(address + l * ENTRY_SIZE);
+            if (l + 1 < heapSize) {
+                long r = Unsafe.getUnsafe().getLong(address + (l + 1) * ENTRY_SIZE);
+                if (r < ml) {
+                    m = l + 1;
+                    ml = r;
+                }
+            }
+            if (ml >= rowid) {
+                break;
+            }
+            copy(m, i);
+            i = m;
+        }
+        Unsafe.getUnsafe().putLong(address + i * ENTRY_SIZE, rowid);
+        Unsafe.getUnsafe().putLong(address + i * ENTRY_SIZE + 8, c);
+    }
+}
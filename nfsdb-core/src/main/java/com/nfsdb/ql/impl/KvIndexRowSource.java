@@ -24,7 +24,7 @@ import com.nfsdb.ql.KeySource;
 import com.nfsdb.ql.PartitionSlice;
 import com.nfsdb.ql.RowCursor;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
@@ -33,7 +33,7 @@ public class KvIndexRowSource extends AbstractRowSource {
     private final String symbol;
     private final KeySource keySource;
     private final boolean newCursor;
-    private KVIndex index;
+    private SymbolIndex index;
     private IndexCursor indexCursor;
     private KeyCursor keyCursor;
     private long lo;
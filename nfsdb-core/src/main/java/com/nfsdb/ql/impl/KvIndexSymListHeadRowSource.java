@@ -30,7 +30,7 @@ import com.nfsdb.ql.RecordSourceState;
 import com.nfsdb.ql.RowCursor;
 import com.nfsdb.ql.ops.VirtualColumn;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import com.nfsdb.storage.SymbolTable;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
@@ -68,7 +68,7 @@ public class KvIndexSymListHeadRowSource extends AbstractRowSource implements Re
 
         try {
             Partition partition = rec.partition = slice.partition.open();
-            KVIndex index = partition.getIndexForColumn(column);
+            SymbolIndex index = partition.getIndexForColumn(column);
             long lo = slice.lo - 1;
             long hi = slice.calcHi ? partition.size() : slice.hi + 1;
             rows.clear();
@@ -22,7 +22,7 @@ import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.ql.*;
 import com.nfsdb.ql.ops.VirtualColumn;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 
@@ -38,7 +38,7 @@ public class KvIndexTopRowSource extends AbstractRowSource implements RecordSour
     private final KeySource keySource;
     private JournalRecord rec;
 
-    private KVIndex index;
+    private SymbolIndex index;
     private KeyCursor keyCursor;
     private long lo;
     private long hi;
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+public class MillisTimestampSampler implements TimestampSampler {
+    private final long bucket;
+
+    public MillisTimestampSampler(long bucket) {
+        this.bucket = bucket;
+    }
+
+    @Override
+    public long nextTimestamp(long timestamp) {
+        return timestamp + bucket;
+    }
+
+    @Override
+    public long round(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, bucket);
+    }
+
+    @Override
+    public String toString() {
+        return "MillisTimestampSampler{" +
+                "bucket=" + bucket +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.utils.Dates;
+
+public class MonthTimestampSampler implements TimestampSampler {
+    private final int bucket;
+
+    public MonthTimestampSampler(int bucket) {
+        this.bucket = bucket;
+    }
+
+    @Override
+    public long nextTimestamp(long timestamp) {
+        return toMillis(months(timestamp) + bucket);
+    }
+
+    @Override
+    public long round(long timestamp) {
+        int m = months(timestamp);
+        // buckets are aligned to 1970-01
+        return toMillis(m - Math.floorMod(m, bucket));
+    }
+
+    private static int months(long timestamp) {
+        int y = Dates.getYear(timestamp);
+        return (y - 1970) * 12 + Dates.getMonthOfYear(timestamp, y, Dates.isLeapYear(y)) - 1;
+    }
+
+    private static long toMillis(int months) {
+        return Dates.toMillis(1970 + Math.floorDiv(months, 12), Math.floorMod(months, 12) + 1, 1);
+    }
+
+    @Override
+    public String toString() {
+        return "MonthTimestampSampler{" +
+                "bucket=" + bucket +
+                '}';
+    }
+}
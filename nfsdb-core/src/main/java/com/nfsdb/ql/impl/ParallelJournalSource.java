@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Journal;
+import com.nfsdb.Partition;
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.ql.*;
+import com.nfsdb.utils.NamedDaemonThreadFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scans partition slices on a pool of worker threads. Each worker has its own row source and its own
+ * journal instance, because partitions and columns cannot be read by multiple threads at once. Worker
+ * journals are refreshed to the transaction of the journal partition source reads, and slices are bounded by
+ * partition sizes of that journal, so workers never see rows the consumer does not. Worker journals are
+ * closed when cursor is exhausted or reset. Workers only collect row ids, records are read on the consuming thread.
+ * <p>
+ * When ordered, slices are returned in the order of partition source, so the result is the same as
+ * produced by {@link JournalSource}. Otherwise slices are returned as soon as they are scanned.
+ */
+public class ParallelJournalSource extends AbstractJournalSource implements JournalRecordSource, RandomAccessRecordCursor<JournalRecord>, Closeable {
+    private static final ExecutorService SERVICE = Executors.newCachedThreadPool(new NamedDaemonThreadFactory("nfsdb-ql-scan", true));
+    private final PartitionSource partitionSource;
+    private final ObjList<RowSource> rowSources;
+    private final boolean ordered;
+    private final JournalRecord rec = new JournalRecord(this);
+    private final ObjList<Slice> slices = new ObjList<>();
+    private final ObjList<Partition> partitions = new ObjList<>();
+    private final ObjList<Journal> journals = new ObjList<>();
+    private final ObjList<Future> futures = new ObjList<>();
+    private final LinkedBlockingQueue<Slice> completed = new LinkedBlockingQueue<>();
+    private final AtomicInteger nextSlice = new AtomicInteger();
+    private final Semaphore permits = new Semaphore(0);
+    private PartitionCursor partitionCursor;
+    private Journal snapshot;
+    private volatile boolean cancelled;
+    private int sliceCount;
+    private int consumed;
+    private Slice current;
+    private int currentRow;
+
+    /**
+     * @param partitionSource source of slices to scan
+     * @param rowSources      row sources, one for each worker. Number of row sources is degree of parallelism.
+     * @param ordered         true if slices have to be returned in partition source order
+     */
+    public ParallelJournalSource(PartitionSource partitionSource, ObjList<RowSource> rowSources, boolean ordered) {
+        super(partitionSource.getMetadata());
+        this.partitionSource = partitionSource;
+        this.rowSources = rowSources;
+        this.ordered = ordered;
+        for (int i = 0, n = rowSources.size(); i < n; i++) {
+            rowSources.getQuick(i).configure(partitionSource.getMetadata());
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    @Override
+    public JournalRecord getByRowId(long rowId) {
+        rec.rowid = rowId;
+        return rec;
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return this;
+    }
+
+    public int getParallelism() {
+        return rowSources.size();
+    }
+
+    @Override
+    public RandomAccessRecordCursor<JournalRecord> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        stop();
+        prepareSlices(factory);
+        prepareWorkers();
+        if (sliceCount == 0) {
+            return this;
+        }
+
+        int workers = rowSources.size();
+        completed.clear();
+        nextSlice.set(0);
+        consumed = 0;
+        current = null;
+        // workers cannot run too far ahead of consumer
+        permits.drainPermits();
+        permits.release(workers * 2);
+        for (int i = 0; i < workers; i++) {
+            futures.add(SERVICE.submit(new Worker(journals.getQuick(i), rowSources.getQuick(i))));
+        }
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        stop();
+        if (partitionCursor != null) {
+            partitionCursor.reset();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || currentRow >= current.rows.size()) {
+            if (current != null) {
+                current = null;
+                consumed++;
+                permits.release();
+            }
+
+            if (consumed >= sliceCount) {
+                stop();
+                return false;
+            }
+
+            current = take();
+            currentRow = 0;
+            rec.partition = partitions.getQuick(current.partitionIndex);
+        }
+        return true;
+    }
+
+    @Override
+    public JournalRecord next() {
+        rec.rowid = current.rows.getQuick(currentRow++);
+        return rec;
+    }
+
+    /**
+     * Splits slices into contiguous groups, one for each consumer, and scans groups on worker threads.
+     * Consumers are called on worker threads with records of worker's own journal. Method returns
+     * when all groups have been scanned.
+     *
+     * @param factory   reader factory
+     * @param consumers consumers of records, number of consumers should not exceed degree of parallelism
+     * @throws JournalException if journal cannot be read
+     */
+    public void scan(JournalReaderFactory factory, ObjList<? extends RecordConsumer> consumers) throws JournalException {
+        stop();
+        prepareSlices(factory);
+        prepareWorkers();
+
+        int groups = Math.min(consumers.size(), rowSources.size());
+        try {
+            for (int i = 0; i < groups; i++) {
+                futures.add(SERVICE.submit(new GroupScan(i, sliceCount * i / groups, sliceCount * (i + 1) / groups, consumers.getQuick(i))));
+            }
+            for (int i = 0, n = futures.size(); i < n; i++) {
+                futures.getQuick(i).get();
+            }
+        } catch (ExecutionException e) {
+            throw new JournalRuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new JournalRuntimeException(e);
+        } finally {
+            futures.clear();
+            closeJournals();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelJournalSource{" +
+                "partitionSource=" + partitionSource +
+                ", rowSources=" + rowSources +
+                ", ordered=" + ordered +
+                '}';
+    }
+
+    private void closeJournals() {
+        for (int i = 0, n = journals.size(); i < n; i++) {
+            journals.getQuick(i).close();
+        }
+        journals.clear();
+    }
+
+    private void prepareSlices(JournalReaderFactory factory) throws JournalException {
+        partitionCursor = partitionSource.prepareCursor(factory);
+        snapshot = null;
+        sliceCount = 0;
+        while (partitionCursor.hasNext()) {
+            PartitionSlice ps = partitionCursor.next();
+            Slice slice = slices.getQuiet(sliceCount);
+            if (slice == null) {
+                slices.extendAndSet(sliceCount, slice = new Slice());
+            }
+            slice.of(ps);
+            partitions.extendAndSet(slice.partitionIndex, ps.partition);
+            snapshot = ps.partition.getJournal();
+            sliceCount++;
+        }
+    }
+
+    private void prepareWorkers() throws JournalException {
+        if (sliceCount == 0) {
+            return;
+        }
+
+        JournalMetadata metadata = partitionSource.getMetadata();
+        for (int i = 0, n = rowSources.size(); i < n; i++) {
+            // journal binds symbol tables to its metadata, each worker journal needs metadata of its own
+            Journal journal = new Journal(new JournalStructure(metadata).build(), metadata.getKey());
+            journals.add(journal);
+            journal.refresh(snapshot);
+            rowSources.getQuick(i).reset();
+        }
+    }
+
+    private void stop() {
+        if (futures.size() == 0) {
+            closeJournals();
+            return;
+        }
+
+        cancelled = true;
+        // wake up workers waiting for consumer
+        permits.release(futures.size());
+        try {
+            for (int i = 0, n = futures.size(); i < n; i++) {
+                futures.getQuick(i).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new JournalRuntimeException(e);
+        } finally {
+            futures.clear();
+            cancelled = false;
+            closeJournals();
+        }
+    }
+
+    private Slice take() {
+        try {
+            Slice slice;
+            if (ordered) {
+                slice = slices.getQuick(consumed);
+                while (!slice.done) {
+                    completed.take();
+                }
+            } else {
+                slice = completed.take();
+            }
+
+            if (slice.error != null) {
+                throw new JournalRuntimeException(slice.error);
+            }
+            return slice;
+        } catch (InterruptedException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    public interface RecordConsumer {
+        void accept(JournalRecord rec);
+    }
+
+    private static class Slice {
+        private final LongList rows = new LongList();
+        private int partitionIndex;
+        private long lo;
+        private long hi;
+        private volatile boolean done;
+        private Throwable error;
+
+        private void of(PartitionSlice slice) {
+            this.partitionIndex = slice.partition.getPartitionIndex();
+            this.lo = slice.lo;
+            // workers are bounded by partition size as seen by consumer
+            this.hi = slice.calcHi ? slice.partition.size() - 1 : slice.hi;
+            this.rows.clear();
+            this.done = false;
+            this.error = null;
+        }
+    }
+
+    private class GroupScan implements Runnable {
+        private final int worker;
+        private final int lo;
+        private final int hi;
+        private final RecordConsumer consumer;
+
+        private GroupScan(int worker, int lo, int hi, RecordConsumer consumer) {
+            this.worker = worker;
+            this.lo = lo;
+            this.hi = hi;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void run() {
+            Journal journal = journals.getQuick(worker);
+            RowSource rowSource = rowSources.getQuick(worker);
+            PartitionSlice ps = new PartitionSlice();
+            JournalRecord rec = new JournalRecord(ParallelJournalSource.this);
+            try {
+                for (int i = lo; i < hi; i++) {
+                    Slice slice = slices.getQuick(i);
+                    ps.partition = journal.getPartition(slice.partitionIndex, true);
+                    ps.lo = slice.lo;
+                    ps.hi = slice.hi;
+                    ps.calcHi = false;
+                    RowCursor cursor = rowSource.prepareCursor(ps);
+                    if (cursor == null) {
+                        continue;
+                    }
+                    rec.partition = ps.partition;
+                    while (cursor.hasNext()) {
+                        rec.rowid = cursor.next();
+                        consumer.accept(rec);
+                    }
+                }
+            } catch (JournalException e) {
+                throw new JournalRuntimeException(e);
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final Journal journal;
+        private final RowSource rowSource;
+        private final PartitionSlice ps = new PartitionSlice();
+
+        private Worker(Journal journal, RowSource rowSource) {
+            this.journal = journal;
+            this.rowSource = rowSource;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                int n;
+                if (cancelled || (n = nextSlice.getAndIncrement()) >= sliceCount) {
+                    return;
+                }
+
+                Slice slice = slices.getQuick(n);
+                try {
+                    ps.partition = journal.getPartition(slice.partitionIndex, true);
+                    ps.lo = slice.lo;
+                    ps.hi = slice.hi;
+                    ps.calcHi = false;
+                    RowCursor cursor = rowSource.prepareCursor(ps);
+                    if (cursor != null) {
+                        while (cursor.hasNext()) {
+                            slice.rows.add(cursor.next());
+                        }
+                    }
+                } catch (Throwable e) {
+                    slice.error = e;
+                }
+                slice.done = true;
+                completed.add(slice);
+            }
+        }
+    }
+}
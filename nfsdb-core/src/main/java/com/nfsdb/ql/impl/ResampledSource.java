@@ -21,40 +21,63 @@ import com.nfsdb.collections.AbstractImmutableIterator;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.collections.mmap.MapRecordValueInterceptor;
 import com.nfsdb.collections.mmap.MapValues;
+import com.nfsdb.collections.mmap.MapValuesMerger;
 import com.nfsdb.collections.mmap.MultiMap;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.JournalReaderFactory;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.ql.*;
-import com.nfsdb.utils.Dates;
+import com.nfsdb.storage.ColumnType;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.Closeable;
+import java.util.Arrays;
+
 @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
-public class ResampledSource extends AbstractImmutableIterator<Record> implements GenericRecordSource, RecordCursor<Record> {
+public class ResampledSource extends AbstractImmutableIterator<Record> implements GenericRecordSource, RecordCursor<Record>, Closeable {
 
+    private final MultiMap.Builder builder;
     private final MultiMap map;
+    private final ObjList<PartialAggregator> partials = new ObjList<>();
+    private final MapValuesMerger merger = new MapValuesMerger() {
+        @Override
+        public void merge(MapValues partial, MapValues values) {
+            for (int i = 0, sz = aggregators.size(); i < sz; i++) {
+                aggregators.getQuick(i).merge(partial, values);
+            }
+        }
+    };
     private final RecordSource<? extends Record> recordSource;
     private final int[] keyIndices;
+    private final ColumnType[] keyTypes;
+    private final ColumnType[] sourceKeyTypes;
     private final int tsIndex;
     private final ObjList<AggregatorFunction> aggregators;
-    private final SampleBy sampleBy;
+    private final TimestampSampler sampler;
     private RecordCursor<? extends Record> recordCursor;
     private RecordCursor<Record> mapRecordSource;
     private Record nextRecord = null;
+    private long[] partialOffsets;
 
+    /**
+     * Key column types can differ from types of source columns in one case: SYMBOL column can be
+     * aggregated by STRING key, which is useful when metadata of record source has no symbol tables.
+     */
     @SuppressFBWarnings({"LII_LIST_INDEXED_ITERATING"})
     public ResampledSource(
             RecordSource<? extends Record> recordSource,
             ObjList<ColumnMetadata> keyColumns,
             ObjList<AggregatorFunction> aggregators,
             ColumnMetadata timestampMetadata,
-            SampleBy sampleBy
+            TimestampSampler sampler
     ) {
 
-        MultiMap.Builder builder = new MultiMap.Builder();
+        this.builder = new MultiMap.Builder();
         int keyColumnsSize = keyColumns.size();
         this.keyIndices = new int[keyColumnsSize];
+        this.keyTypes = new ColumnType[keyColumnsSize];
+        this.sourceKeyTypes = new ColumnType[keyColumnsSize];
         // define key columns
 
         RecordMetadata rm = recordSource.getMetadata();
@@ -64,6 +87,8 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
             ColumnMetadata cm = keyColumns.getQuick(i);
             builder.keyColumn(cm);
             keyIndices[i] = rm.getColumnIndex(cm.name);
+            keyTypes[i] = cm.getType();
+            sourceKeyTypes[i] = rm.getColumn(keyIndices[i]).getType();
         }
 
         this.aggregators = aggregators;
@@ -88,7 +113,16 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
 
         this.map = builder.build();
         this.recordSource = recordSource;
-        this.sampleBy = sampleBy;
+        this.sampler = sampler;
+    }
+
+    @Override
+    public void close() {
+        map.close();
+        for (int i = 0, n = partials.size(); i < n; i++) {
+            partials.getQuick(i).map.close();
+        }
+        partials.clear();
     }
 
     @Override
@@ -98,7 +132,14 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
 
     @Override
     public RecordCursor<Record> prepareCursor(JournalReaderFactory factory) throws JournalException {
-        this.recordCursor = recordSource.prepareCursor(factory);
+        if (recordSource instanceof ParallelJournalSource && ((ParallelJournalSource) recordSource).getParallelism() > 1) {
+            aggregateParallel((ParallelJournalSource) recordSource, factory);
+        } else {
+            this.recordCursor = recordSource.prepareCursor(factory);
+            this.mapRecordSource = null;
+            this.nextRecord = null;
+            this.partialOffsets = null;
+        }
         return this;
     }
 
@@ -106,11 +147,14 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
     public void reset() {
         recordSource.reset();
         map.clear();
+        partialOffsets = null;
     }
 
     @Override
     public boolean hasNext() {
-        return mapRecordSource != null && mapRecordSource.hasNext() || buildMap();
+        return mapRecordSource != null && mapRecordSource.hasNext()
+                || (recordCursor != null && buildMap())
+                || (partialOffsets != null && mergeBucket());
     }
 
     @Override
@@ -118,14 +162,17 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
         return mapRecordSource.next();
     }
 
-    private boolean buildMap() {
+    @Override
+    public String toString() {
+        return "ResampledSource{" +
+                "recordSource=" + recordSource +
+                ", sampler=" + sampler +
+                '}';
+    }
 
-        long current = 0;
-        long sample;
-        boolean first = true;
+    private boolean buildMap() {
         Record rec;
 
-
         map.clear();
 
         if (nextRecord != null) {
@@ -137,58 +184,19 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
             rec = recordCursor.next();
         }
 
-        do {
-            switch (sampleBy) {
-                case YEAR:
-                    sample = Dates.floorYYYY(rec.getLong(tsIndex));
-                    break;
-                case MONTH:
-                    sample = Dates.floorMM(rec.getLong(tsIndex));
-                    break;
-                case DAY:
-                    sample = Dates.floorDD(rec.getLong(tsIndex));
-                    break;
-                case HOUR:
-                    sample = Dates.floorHH(rec.getLong(tsIndex));
-                    break;
-                case MINUTE:
-                    sample = Dates.floorMI(rec.getLong(tsIndex));
-                    break;
-                default:
-                    sample = 0;
-            }
+        // bucket boundaries are computed once per bucket, records are only compared to them
+        long lo = sampler.round(rec.getLong(tsIndex));
+        long hi = sampler.nextTimestamp(lo);
 
-            if (first) {
-                current = sample;
-                first = false;
-            } else if (sample != current) {
+        do {
+            long ts = rec.getLong(tsIndex);
+            if (ts < lo || ts >= hi) {
                 nextRecord = rec;
                 break;
             }
 
             // we are inside of time window, compute aggregates
-            MultiMap.KeyWriter keyWriter = map.keyWriter();
-            keyWriter.putLong(sample);
-            for (int i = 0; i < keyIndices.length; i++) {
-                switch (recordSource.getMetadata().getColumn(i + 1).getType()) {
-                    case LONG:
-                        keyWriter.putLong(rec.getLong(keyIndices[i]));
-                        break;
-                    case INT:
-                        keyWriter.putInt(rec.getInt(keyIndices[i]));
-                        break;
-                    case STRING:
-                        keyWriter.putStr(rec.getStr(keyIndices[i]));
-                        break;
-                    case SYMBOL:
-                        keyWriter.putInt(rec.getInt(keyIndices[i]));
-                        break;
-                    default:
-                        throw new JournalRuntimeException("Unsupported type: " + recordSource.getMetadata().getColumn(i + 1).getType());
-                }
-            }
-            MapValues values = map.getOrCreateValues(keyWriter);
-
+            MapValues values = map.getOrCreateValues(writeKey(map, rec, lo));
             for (int i = 0, sz = aggregators.size(); i < sz; i++) {
                 aggregators.getQuick(i).calculate(rec, values);
             }
@@ -205,8 +213,117 @@ public class ResampledSource extends AbstractImmutableIterator<Record> implement
         return (mapRecordSource = map.getCursor()).hasNext();
     }
 
+    /**
+     * Aggregates contiguous groups of partition slices into partial maps on worker threads. Partial maps
+     * are merged later one bucket at a time, see mergeBucket(). Workers share aggregator functions,
+     * which is safe because AggregatorFunction.calculate() does not change state of function.
+     */
+    private void aggregateParallel(ParallelJournalSource source, JournalReaderFactory factory) throws JournalException {
+        for (int i = partials.size(), n = source.getParallelism(); i < n; i++) {
+            partials.add(new PartialAggregator(builder.build()));
+        }
+
+        for (int i = 0, n = partials.size(); i < n; i++) {
+            partials.getQuick(i).clear();
+        }
+
+        source.scan(factory, partials);
+
+        map.clear();
+        if (partialOffsets == null || partialOffsets.length != partials.size()) {
+            partialOffsets = new long[partials.size()];
+        } else {
+            Arrays.fill(partialOffsets, 0);
+        }
+        this.recordCursor = null;
+        this.nextRecord = null;
+        this.mapRecordSource = null;
+    }
+
+    /**
+     * Merges entries of earliest remaining bucket of all partial maps. Partial maps hold buckets in ascending
+     * order, because each of them aggregates ordered records, and are merged in group order. This keeps first
+     * and last values and order of keys the same as they are when records are aggregated sequentially, while
+     * only one bucket is held in merged map.
+     */
+    private boolean mergeBucket() {
+        map.clear();
+
+        long bucket = Long.MAX_VALUE;
+        for (int i = 0, n = partials.size(); i < n; i++) {
+            MultiMap m = partials.getQuick(i).map;
+            if (partialOffsets[i] < m.getEntriesSize()) {
+                bucket = Math.min(bucket, m.getFirstLongKey(partialOffsets[i]));
+            }
+        }
+
+        if (bucket == Long.MAX_VALUE) {
+            return false;
+        }
+
+        for (int i = 0, n = partials.size(); i < n; i++) {
+            MultiMap m = partials.getQuick(i).map;
+            long offset = partialOffsets[i];
+            while (offset < m.getEntriesSize() && m.getFirstLongKey(offset) == bucket) {
+                offset = map.mergeEntry(m, offset, merger);
+            }
+            partialOffsets[i] = offset;
+        }
+
+        return (mapRecordSource = map.getCursor()).hasNext();
+    }
+
+    private MultiMap.KeyWriter writeKey(MultiMap map, Record rec, long sample) {
+        MultiMap.KeyWriter keyWriter = map.keyWriter();
+        keyWriter.putLong(sample);
+        for (int i = 0; i < keyIndices.length; i++) {
+            switch (keyTypes[i]) {
+                case LONG:
+                    keyWriter.putLong(rec.getLong(keyIndices[i]));
+                    break;
+                case INT:
+                    keyWriter.putInt(rec.getInt(keyIndices[i]));
+                    break;
+                case STRING:
+                    keyWriter.putStr(sourceKeyTypes[i] == ColumnType.SYMBOL ? rec.getSym(keyIndices[i]) : rec.getStr(keyIndices[i]));
+                    break;
+                case SYMBOL:
+                    keyWriter.putInt(rec.getInt(keyIndices[i]));
+                    break;
+                default:
+                    throw new JournalRuntimeException("Unsupported type: " + keyTypes[i]);
+            }
+        }
+        return keyWriter;
+    }
+
+    private class PartialAggregator implements ParallelJournalSource.RecordConsumer {
+        private final MultiMap map;
+        private long lo;
+        private long hi;
+
+        private PartialAggregator(MultiMap map) {
+            this.map = map;
+        }
 
-    public enum SampleBy {
-        YEAR, MONTH, DAY, HOUR, MINUTE, SECOND
+        @Override
+        public void accept(JournalRecord rec) {
+            long ts = rec.getLong(tsIndex);
+            if (ts < lo || ts >= hi) {
+                lo = sampler.round(ts);
+                hi = sampler.nextTimestamp(lo);
+            }
+
+            MapValues values = map.getOrCreateValues(writeKey(map, rec, lo));
+            for (int i = 0, sz = aggregators.size(); i < sz; i++) {
+                aggregators.getQuick(i).calculate(rec, values);
+            }
+        }
+
+        private void clear() {
+            map.clear();
+            lo = Long.MAX_VALUE;
+            hi = Long.MIN_VALUE;
+        }
     }
 }
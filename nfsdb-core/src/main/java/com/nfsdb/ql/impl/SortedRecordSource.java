@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.collections.AbstractImmutableIterator;
+import com.nfsdb.collections.ExternalSort;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.ql.JournalRecordSource;
+import com.nfsdb.ql.RandomAccessRecordCursor;
+import com.nfsdb.ql.RecordMetadata;
+
+import java.util.Arrays;
+
+/**
+ * Implements ORDER BY. Records of underlying source are consumed when cursor is prepared and
+ * then returned in order of given columns. Sort spills to disk when its memory budget is exceeded.
+ * <p>
+ * With limit only first N records are kept in bounded heap of sort keys and row ids. Other columns
+ * are read from journal as sorted records are returned.
+ */
+public class SortedRecordSource extends AbstractImmutableIterator<JournalRecord> implements JournalRecordSource, RandomAccessRecordCursor<JournalRecord> {
+
+    private final JournalRecordSource recordSource;
+    private final JournalRecordSorter sorter;
+    private final int[] columns;
+    private final boolean[] descending;
+    private final long limit;
+    private RandomAccessRecordCursor<JournalRecord> cursor;
+    private JournalRecord rec;
+
+    public SortedRecordSource(JournalRecordSource recordSource, int[] columns, boolean[] descending) {
+        this(recordSource, columns, descending, -1);
+    }
+
+    /**
+     * @param limit number of records to return, negative value to return all records
+     */
+    public SortedRecordSource(JournalRecordSource recordSource, int[] columns, boolean[] descending, long limit) {
+        this.recordSource = recordSource;
+        this.columns = columns;
+        this.descending = descending;
+        this.limit = limit;
+        this.sorter = new JournalRecordSorter(recordSource.getMetadata(), columns, descending, ExternalSort.DEFAULT_MEMORY_BUDGET, limit);
+    }
+
+    @Override
+    public JournalRecord getByRowId(long rowId) {
+        return cursor.getByRowId(rowId);
+    }
+
+    @Override
+    public RecordMetadata getMetadata() {
+        return recordSource.getMetadata();
+    }
+
+    @Override
+    public RandomAccessRecordCursor<JournalRecord> prepareCursor(JournalReaderFactory factory) throws JournalException {
+        this.cursor = recordSource.prepareCursor(factory);
+        sorter.clear();
+        while (cursor.hasNext()) {
+            sorter.add(rec = cursor.next());
+        }
+        sorter.sort();
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        recordSource.reset();
+        sorter.clear();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return sorter.hasNext();
+    }
+
+    @Override
+    public JournalRecord next() {
+        return sorter.position(rec, sorter.next());
+    }
+
+    @Override
+    public String toString() {
+        return "SortedRecordSource{" +
+                "recordSource=" + recordSource +
+                ", columns=" + Arrays.toString(columns) +
+                ", descending=" + Arrays.toString(descending) +
+                ", limit=" + limit +
+                '}';
+    }
+}
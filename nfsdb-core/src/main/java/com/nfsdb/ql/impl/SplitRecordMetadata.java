@@ -44,6 +44,25 @@ public class SplitRecordMetadata implements RecordMetadata {
         }
     }
 
+    /**
+     * Creates metadata where columns can also be referred to by names qualified with source name,
+     * for example "quote.bid". Unqualified name that is present in both sources refers to column of a.
+     */
+    public SplitRecordMetadata(RecordMetadata a, String aName, RecordMetadata b, String bName) {
+        this(a, b);
+        int split = a.getColumnCount();
+        for (int i = split; i < columnCount; i++) {
+            if (a.invalidColumn(columns[i].getName())) {
+                continue;
+            }
+            columnIndices.put(columns[i].getName(), a.getColumnIndex(columns[i].getName()));
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            columnIndices.put((i < split ? aName : bName) + '.' + columns[i].getName(), i);
+        }
+    }
+
     @Override
     public RecordColumnMetadata getColumn(int index) {
         return columns[index];
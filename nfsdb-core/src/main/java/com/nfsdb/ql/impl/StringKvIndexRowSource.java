@@ -22,46 +22,60 @@ import com.nfsdb.exceptions.JournalRuntimeException;
 import com.nfsdb.factory.configuration.JournalMetadata;
 import com.nfsdb.ql.PartitionSlice;
 import com.nfsdb.ql.RowCursor;
+import com.nfsdb.ql.ops.VirtualColumn;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
-import com.nfsdb.storage.VariableColumn;
-import com.nfsdb.utils.Hash;
+import com.nfsdb.storage.StringIndex;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 public class StringKvIndexRowSource extends AbstractRowSource {
 
     private final String columnName;
     private final ObjHashSet<String> values;
-    private KVIndex index;
+    private final VirtualColumn valueFunction;
+    private StringIndex index;
     private IndexCursor indexCursor;
     private long lo;
     private long hi;
     private long rowid;
     private int valueIndex = 0;
-    private CharSequence currentValue;
-    private VariableColumn column;
-    private int bucketCount;
     private int columnIndex;
 
     public StringKvIndexRowSource(String columnName, ObjHashSet<String> values) {
         this.columnName = columnName;
         this.values = values;
+        this.valueFunction = null;
+    }
+
+    /**
+     * Looks up single value, which is read from value function every time cursor is prepared, so that
+     * parameter bound after query was compiled is used.
+     */
+    public StringKvIndexRowSource(String columnName, VirtualColumn valueFunction) {
+        this.columnName = columnName;
+        this.values = new ObjHashSet<>(1);
+        this.valueFunction = valueFunction;
     }
 
     @Override
     public void configure(JournalMetadata metadata) {
         this.columnIndex = metadata.getColumnIndex(columnName);
-        this.bucketCount = metadata.getColumn(columnIndex).distinctCountHint;
     }
 
     @SuppressFBWarnings({"EXS_EXCEPTION_SOFTENING_NO_CHECKED"})
     @Override
     public RowCursor prepareCursor(PartitionSlice slice) {
         try {
-            this.column = (VariableColumn) slice.partition.getAbstractColumn(columnIndex);
-            this.index = slice.partition.getIndexForColumn(columnName);
+            this.index = slice.partition.getStringIndexForColumn(columnIndex);
+            if (valueFunction != null) {
+                values.clear();
+                CharSequence value = valueFunction.getStr();
+                if (value != null) {
+                    values.add(value.toString());
+                }
+            }
 
             this.indexCursor = null;
+            this.valueIndex = 0;
             this.lo = slice.lo - 1;
             this.hi = slice.calcHi ? slice.partition.open().size() : slice.hi + 1;
         } catch (JournalException e) {
@@ -82,7 +96,7 @@ public class StringKvIndexRowSource extends AbstractRowSource {
         if (indexCursor != null && indexCursor.hasNext()) {
             do {
                 long r = indexCursor.next();
-                if (r > lo && r < hi && column.cmpStr(r, currentValue)) {
+                if (r > lo && r < hi) {
                     this.rowid = r;
                     return true;
                 }
@@ -99,15 +113,13 @@ public class StringKvIndexRowSource extends AbstractRowSource {
 
     private boolean hasNext0() {
         while (valueIndex < values.size()) {
-            CharSequence str = values.get(valueIndex++);
-            indexCursor = index.fwdCursor(Hash.boundedHash(str, bucketCount));
+            indexCursor = index.cursor(values.get(valueIndex++));
 
             while (indexCursor.hasNext()) {
                 long r = indexCursor.next();
 
-                if (r > lo && r < hi && column.cmpStr(r, str)) {
+                if (r > lo && r < hi) {
                     this.rowid = r;
-                    this.currentValue = str;
                     return true;
                 }
             }
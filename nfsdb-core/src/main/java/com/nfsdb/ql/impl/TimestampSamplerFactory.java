@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Numbers;
+
+public final class TimestampSamplerFactory {
+
+    private TimestampSamplerFactory() {
+    }
+
+    /**
+     * Creates sampler from interval definition, such as "15m". Interval is a positive number followed by
+     * one of the units: s - seconds, m - minutes, h - hours, d - days, M - months, y - years. Number can be
+     * omitted when it is 1.
+     *
+     * @param cs interval definition
+     * @return sampler or null if definition is invalid
+     */
+    public static TimestampSampler getInstance(CharSequence cs) {
+        int len = cs.length();
+        if (len == 0) {
+            return null;
+        }
+
+        int n;
+        if (len == 1) {
+            n = 1;
+        } else {
+            try {
+                n = Numbers.parseInt(cs, 0, len - 1);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        if (n < 1) {
+            return null;
+        }
+
+        switch (cs.charAt(len - 1)) {
+            case 's':
+                return new MillisTimestampSampler(n * Dates.SECOND_MILLIS);
+            case 'm':
+                return new MillisTimestampSampler(n * Dates.MINUTE_MILLIS);
+            case 'h':
+                return new MillisTimestampSampler(n * Dates.HOUR_MILLIS);
+            case 'd':
+                return new MillisTimestampSampler(n * Dates.DAY_MILLIS);
+            case 'M':
+                return new MonthTimestampSampler(n);
+            case 'y':
+                return new YearTimestampSampler(n);
+            default:
+                return null;
+        }
+    }
+}
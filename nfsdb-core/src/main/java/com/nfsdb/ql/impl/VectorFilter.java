@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.ql.RowBatch;
+import com.nfsdb.ql.ops.*;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Translates filter expression into tree of vector columns. Operators are vectorized only when their
+ * operands are of types scalar operator expects, so that results are the same. Expressions that cannot be
+ * vectorized are evaluated row by row and their values are fed to vectorized parent.
+ */
+final class VectorFilter {
+
+    private VectorFilter() {
+    }
+
+    /**
+     * Creates vectorized filter.
+     *
+     * @param filter filter expression
+     * @param rec    record filter expression is configured to read from
+     * @return vector of boolean values or null when top level operator cannot be vectorized
+     */
+    static VectorColumn create(VirtualColumn filter, JournalRecord rec) {
+        return isVectorOperator(filter) ? vectorize(filter, ColumnType.BOOLEAN, rec) : null;
+    }
+
+    private static boolean isVectorOperator(VirtualColumn vc) {
+        return vc instanceof AndOperator
+                || vc instanceof OrOperator
+                || vc instanceof DoubleGreaterThanOperator
+                || vc instanceof DoubleLessThanOperator
+                || vc instanceof IntGreaterThanOperator
+                || vc instanceof IntEqualsOperator;
+    }
+
+    private static VectorColumn operator(int op, VirtualColumn vc, ColumnType operandType, JournalRecord rec) {
+        AbstractBinaryOperator o = (AbstractBinaryOperator) vc;
+        return new VectorOperator(op, vectorize(o.getLhs(), operandType, rec), vectorize(o.getRhs(), operandType, rec));
+    }
+
+    /**
+     * @param vc   expression
+     * @param type type parent operator reads expression as
+     * @param rec  record for row by row evaluation
+     * @return vector of expression values
+     */
+    private static VectorColumn vectorize(VirtualColumn vc, ColumnType type, JournalRecord rec) {
+        if (vc instanceof RecordSourceColumn) {
+            if (vc.getType() == type && (type == ColumnType.DOUBLE || type == ColumnType.INT)) {
+                return new VectorColumnReader(((RecordSourceColumn) vc).getIndex(), type);
+            }
+            return new RowAdapter(vc, type, rec);
+        }
+
+        if (vc.isConstant()) {
+            return new VectorConstant(vc, type);
+        }
+
+        switch (type) {
+            case BOOLEAN:
+                if (vc instanceof AndOperator) {
+                    return operator(VectorOperator.AND, vc, ColumnType.BOOLEAN, rec);
+                } else if (vc instanceof OrOperator) {
+                    return operator(VectorOperator.OR, vc, ColumnType.BOOLEAN, rec);
+                } else if (vc instanceof DoubleGreaterThanOperator) {
+                    return operator(VectorOperator.GREATER_DOUBLE, vc, ColumnType.DOUBLE, rec);
+                } else if (vc instanceof DoubleLessThanOperator) {
+                    return operator(VectorOperator.LESS_DOUBLE, vc, ColumnType.DOUBLE, rec);
+                } else if (vc instanceof IntGreaterThanOperator) {
+                    return operator(VectorOperator.GREATER_INT, vc, ColumnType.INT, rec);
+                } else if (vc instanceof IntEqualsOperator) {
+                    return operator(VectorOperator.EQUAL_INT, vc, ColumnType.INT, rec);
+                }
+                break;
+            case DOUBLE:
+                if (vc instanceof AddDoubleOperator) {
+                    return operator(VectorOperator.ADD_DOUBLE, vc, ColumnType.DOUBLE, rec);
+                } else if (vc instanceof MinusDoubleOperator) {
+                    return operator(VectorOperator.MINUS_DOUBLE, vc, ColumnType.DOUBLE, rec);
+                } else if (vc instanceof MultDoubleOperator) {
+                    return operator(VectorOperator.MULT_DOUBLE, vc, ColumnType.DOUBLE, rec);
+                } else if (vc instanceof DivDoubleOperator) {
+                    return operator(VectorOperator.DIV_DOUBLE, vc, ColumnType.DOUBLE, rec);
+                }
+                break;
+            case INT:
+                if (vc instanceof AddIntOperator) {
+                    return operator(VectorOperator.ADD_INT, vc, ColumnType.INT, rec);
+                }
+                break;
+            default:
+                break;
+        }
+        return new RowAdapter(vc, type, rec);
+    }
+
+    /**
+     * Evaluates expression row by row.
+     */
+    private static class RowAdapter extends AbstractVectorColumn {
+        private final VirtualColumn column;
+        private final JournalRecord rec;
+
+        private RowAdapter(VirtualColumn column, ColumnType type, JournalRecord rec) {
+            super(type);
+            this.column = column;
+            this.rec = rec;
+        }
+
+        @Override
+        public long evaluate(RowBatch batch) {
+            long rows[] = batch.rows;
+            for (int i = 0, n = batch.size; i < n; i++) {
+                rec.rowid = rows[i];
+                long p = address + (((long) i) << 3);
+                switch (getType()) {
+                    case DOUBLE:
+                        Unsafe.getUnsafe().putDouble(p, column.getDouble());
+                        break;
+                    case INT:
+                        Unsafe.getUnsafe().putLong(p, column.getInt());
+                        break;
+                    default:
+                        Unsafe.getUnsafe().putLong(p, column.getBool() ? 1 : 0);
+                }
+            }
+            return address;
+        }
+    }
+}
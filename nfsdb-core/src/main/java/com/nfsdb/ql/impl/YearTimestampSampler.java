@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.utils.Dates;
+
+public class YearTimestampSampler implements TimestampSampler {
+    private final int bucket;
+
+    public YearTimestampSampler(int bucket) {
+        this.bucket = bucket;
+    }
+
+    @Override
+    public long nextTimestamp(long timestamp) {
+        int y = Dates.getYear(timestamp) + bucket;
+        return Dates.yearMillis(y, Dates.isLeapYear(y));
+    }
+
+    @Override
+    public long round(long timestamp) {
+        int y = Dates.getYear(timestamp);
+        // buckets are aligned to 1970
+        y -= Math.floorMod(y - 1970, bucket);
+        return Dates.yearMillis(y, Dates.isLeapYear(y));
+    }
+
+    @Override
+    public String toString() {
+        return "YearTimestampSampler{" +
+                "bucket=" + bucket +
+                '}';
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Partition;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.ql.ops.*;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.ZoneMap;
+
+/**
+ * Range conditions extracted from conjunction of filter terms. Conditions are checked against zone maps
+ * of partition to find out which blocks of rows cannot possibly satisfy the filter.
+ */
+final class ZoneMapFilter {
+    private static final int GREATER = 0;
+    private static final int LESS = 1;
+    private static final int EQUAL = 2;
+
+    private final ObjList<Condition> conditions = new ObjList<>();
+
+    private ZoneMapFilter() {
+    }
+
+    /**
+     * Creates zone map filter for given filter expression.
+     *
+     * @param filter   filter expression
+     * @return zone map filter or null if expression does not have terms that can use zone maps
+     */
+    static ZoneMapFilter create(VirtualColumn filter) {
+        ZoneMapFilter f = new ZoneMapFilter();
+        f.collect(filter);
+        return f.conditions.size() == 0 ? null : f;
+    }
+
+    /**
+     * Tests if block of rows can have rows matching filter.
+     *
+     * @param block block number
+     * @param hi    last row of partition slice
+     * @return false when no row in block can match
+     */
+    boolean matches(long block, long hi) {
+        for (int i = 0, n = conditions.size(); i < n; i++) {
+            if (!conditions.getQuick(i).matches(block, hi)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean matchesAny(long lo, long hi) {
+        if (hi < lo) {
+            return false;
+        }
+
+        for (long b = lo >>> ZoneMap.BLOCK_BITS, last = hi >>> ZoneMap.BLOCK_BITS; b <= last; b++) {
+            if (matches(b, hi)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void of(Partition partition) {
+        for (int i = 0, n = conditions.size(); i < n; i++) {
+            conditions.getQuick(i).of(partition);
+        }
+    }
+
+    private void add(VirtualColumn lhs, VirtualColumn rhs, int op, ColumnType type) {
+        if (lhs instanceof RecordSourceColumn && lhs.getType() == type && rhs.isConstant()) {
+            conditions.add(new Condition(((RecordSourceColumn) lhs).getIndex(), rhs, op, type == ColumnType.INT));
+        } else if (rhs instanceof RecordSourceColumn && rhs.getType() == type && lhs.isConstant()) {
+            conditions.add(new Condition(((RecordSourceColumn) rhs).getIndex(), lhs, op == EQUAL ? EQUAL : op == GREATER ? LESS : GREATER, type == ColumnType.INT));
+        }
+    }
+
+    private void collect(VirtualColumn vc) {
+        if (vc instanceof AndOperator) {
+            collect(((AndOperator) vc).getLhs());
+            collect(((AndOperator) vc).getRhs());
+        } else if (vc instanceof DoubleGreaterThanOperator) {
+            add(((AbstractBinaryOperator) vc).getLhs(), ((AbstractBinaryOperator) vc).getRhs(), GREATER, ColumnType.DOUBLE);
+        } else if (vc instanceof DoubleLessThanOperator) {
+            add(((AbstractBinaryOperator) vc).getLhs(), ((AbstractBinaryOperator) vc).getRhs(), LESS, ColumnType.DOUBLE);
+        } else if (vc instanceof IntGreaterThanOperator) {
+            add(((AbstractBinaryOperator) vc).getLhs(), ((AbstractBinaryOperator) vc).getRhs(), GREATER, ColumnType.INT);
+        } else if (vc instanceof IntEqualsOperator) {
+            add(((AbstractBinaryOperator) vc).getLhs(), ((AbstractBinaryOperator) vc).getRhs(), EQUAL, ColumnType.INT);
+        }
+    }
+
+    private static class Condition {
+        private final int columnIndex;
+        private final VirtualColumn value;
+        private final int op;
+        private final boolean integer;
+        private ZoneMap zoneMap;
+        private long longValue;
+        private double doubleValue;
+
+        private Condition(int columnIndex, VirtualColumn value, int op, boolean integer) {
+            this.columnIndex = columnIndex;
+            this.value = value;
+            this.op = op;
+            this.integer = integer;
+        }
+
+        private boolean matches(long block, long hi) {
+            if (zoneMap == null || !zoneMap.isCovered(block, hi)) {
+                return true;
+            }
+
+            if (integer) {
+                switch (op) {
+                    case GREATER:
+                        return zoneMap.getMaxLong(block) > longValue;
+                    case LESS:
+                        return zoneMap.getMinLong(block) < longValue;
+                    default:
+                        return zoneMap.getMinLong(block) <= longValue && longValue <= zoneMap.getMaxLong(block);
+                }
+            }
+
+            switch (op) {
+                case GREATER:
+                    return zoneMap.getMaxDouble(block) > doubleValue;
+                case LESS:
+                    return zoneMap.getMinDouble(block) < doubleValue;
+                default:
+                    return zoneMap.getMinDouble(block) <= doubleValue && doubleValue <= zoneMap.getMaxDouble(block);
+            }
+        }
+
+        private void of(Partition partition) {
+            this.zoneMap = partition.getZoneMap(columnIndex);
+            // constant can be a parameter, take its value for every partition
+            if (integer) {
+                this.longValue = value.getInt();
+            } else {
+                this.doubleValue = value.getDouble();
+            }
+        }
+    }
+}
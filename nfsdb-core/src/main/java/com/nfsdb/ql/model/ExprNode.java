@@ -52,6 +52,6 @@ public class ExprNode {
     }
 
     public enum NodeType {
-        OPERATION, CONSTANT, LITERAL, FUNCTION, CONTROL, SET_OPERATION
+        OPERATION, CONSTANT, LITERAL, FUNCTION, CONTROL, SET_OPERATION, PARAMETER
     }
 }
@@ -17,12 +17,18 @@
 package com.nfsdb.ql.model;
 
 import com.nfsdb.collections.ObjHashSet;
+import com.nfsdb.collections.ObjList;
 import com.nfsdb.ql.impl.IntervalSource;
 import com.nfsdb.utils.Dates;
 
 public class IntrinsicModel {
     public final ObjHashSet<String> keyValues = new ObjHashSet<>();
+    // bitmap indexed columns, which are intersected with key column, and their values
+    public final ObjList<String> bitmapColumns = new ObjList<>();
+    public final ObjList<ObjHashSet<String>> bitmapValues = new ObjList<>();
     public String keyColumn;
+    // name of parameter, which is the only key value, value is bound when query is executed
+    public String keyParameter;
     public long intervalLo = Long.MIN_VALUE;
     public long intervalHi = Long.MAX_VALUE;
     public ExprNode filter;
@@ -47,7 +53,10 @@ public class IntrinsicModel {
 
     public void reset() {
         keyColumn = null;
+        keyParameter = null;
         keyValues.clear();
+        bitmapColumns.clear();
+        bitmapValues.clear();
         clearInterval();
         filter = null;
         millis = Long.MIN_VALUE;
@@ -16,18 +16,37 @@
 
 package com.nfsdb.ql.model;
 
+import com.nfsdb.collections.IntList;
 import com.nfsdb.collections.ObjList;
 
 public class QueryModel {
+    public static final int ORDER_DIRECTION_ASCENDING = 0;
+    public static final int ORDER_DIRECTION_DESCENDING = 1;
     private final ObjList<QueryColumn> columns = new ObjList<>();
+    private final ObjList<ExprNode> orderBy = new ObjList<>();
+    private final IntList orderByDirection = new IntList();
+    private final ObjList<ExprNode> joinColumns = new ObjList<>();
     private ExprNode whereClause;
     private ExprNode journalName;
     private ExprNode latestBy;
+    private ExprNode sampleBy;
+    private ExprNode joinJournalName;
+    private ExprNode joinWindow;
+    private ExprNode limit;
+    private int parallelism = 1;
 
     public void addColumn(QueryColumn column) {
         columns.add(column);
     }
 
+    public void addJoinColumn(ExprNode node) {
+        joinColumns.add(node);
+    }
+
+    public void addOrderBy(ExprNode node, int direction) {
+        orderBy.add(node);
+        orderByDirection.add(direction);
+    }
 
     public ObjList<QueryColumn> getColumns() {
         return columns;
@@ -41,6 +60,31 @@ public class QueryModel {
         this.journalName = journalName;
     }
 
+    public ObjList<ExprNode> getJoinColumns() {
+        return joinColumns;
+    }
+
+    public ExprNode getJoinJournalName() {
+        return joinJournalName;
+    }
+
+    /**
+     * Sets journal to ASOF join to.
+     *
+     * @param joinJournalName name of journal
+     */
+    public void setJoinJournalName(ExprNode joinJournalName) {
+        this.joinJournalName = joinJournalName;
+    }
+
+    public ExprNode getJoinWindow() {
+        return joinWindow;
+    }
+
+    public void setJoinWindow(ExprNode joinWindow) {
+        this.joinWindow = joinWindow;
+    }
+
     public ExprNode getLatestBy() {
         return latestBy;
     }
@@ -49,6 +93,43 @@ public class QueryModel {
         this.latestBy = latestBy;
     }
 
+    public ExprNode getLimit() {
+        return limit;
+    }
+
+    public void setLimit(ExprNode limit) {
+        this.limit = limit;
+    }
+
+    public ObjList<ExprNode> getOrderBy() {
+        return orderBy;
+    }
+
+    public IntList getOrderByDirection() {
+        return orderByDirection;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets number of threads scanning journal partitions.
+     *
+     * @param parallelism degree of parallelism, values less than 2 disable parallel scan
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public ExprNode getSampleBy() {
+        return sampleBy;
+    }
+
+    public void setSampleBy(ExprNode sampleBy) {
+        this.sampleBy = sampleBy;
+    }
+
     public ExprNode getWhereClause() {
         return whereClause;
     }
@@ -17,5 +17,5 @@
 package com.nfsdb.ql.model;
 
 public enum StatementType {
-    CREATE_JOURNAL, QUERY_JOURNAL
+    CREATE_JOURNAL, QUERY_JOURNAL, EXPLAIN
 }
@@ -25,11 +25,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 @SuppressFBWarnings({"EI_EXPOSE_REP"})
 public abstract class AbstractSingleColumnAggregatorFunction implements AggregatorFunction {
     private final ColumnMetadata[] meta = new ColumnMetadata[1];
+    private final String sourceColumn;
     protected int recordIndex;
     protected int valueIndex;
 
     public AbstractSingleColumnAggregatorFunction(ColumnMetadata meta) {
         this.meta[0] = meta;
+        this.sourceColumn = meta.name;
     }
 
     @Override
@@ -44,6 +46,17 @@ public abstract class AbstractSingleColumnAggregatorFunction implements Aggregat
 
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
-        this.recordIndex = source.getMetadata().getColumnIndex(meta[0].name);
+        this.recordIndex = source.getMetadata().getColumnIndex(sourceColumn);
+    }
+
+    /**
+     * Renames column this function writes out. By default column has name of source column.
+     *
+     * @param name column name
+     * @return this function
+     */
+    public AbstractSingleColumnAggregatorFunction setName(String name) {
+        this.meta[0] = new ColumnMetadata().copy(meta[0]).setName(name);
+        return this;
     }
 }
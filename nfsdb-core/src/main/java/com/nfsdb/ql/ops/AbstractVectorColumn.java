@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.collections.DirectMemoryStructure;
+import com.nfsdb.ql.RowBatch;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Unsafe;
+
+public abstract class AbstractVectorColumn extends DirectMemoryStructure implements VectorColumn {
+    private final ColumnType type;
+
+    public AbstractVectorColumn(ColumnType type) {
+        this.type = type;
+        this.address = Unsafe.getUnsafe().allocateMemory(RowBatch.CAPACITY * 8);
+    }
+
+    @Override
+    public ColumnType getType() {
+        return type;
+    }
+}
@@ -28,6 +28,7 @@ import com.nfsdb.storage.ColumnType;
 public class AvgDoubleAggregationFunction implements AggregatorFunction, MapRecordValueInterceptor {
 
     private final ColumnMetadata sourceColumn;
+    private String name = "avg";
     private int columnIndex;
     private int countIdx;
     private int sumIdx;
@@ -58,7 +59,7 @@ public class AvgDoubleAggregationFunction implements AggregatorFunction, MapReco
         return new ColumnMetadata[]{
                 new ColumnMetadata().setName("$count").setType(ColumnType.LONG)
                 , new ColumnMetadata().setName("$sum").setType(ColumnType.DOUBLE)
-                , new ColumnMetadata().setName("avg").setType(ColumnType.DOUBLE)
+                , new ColumnMetadata().setName(name).setType(ColumnType.DOUBLE)
         };
     }
 
@@ -79,8 +80,30 @@ public class AvgDoubleAggregationFunction implements AggregatorFunction, MapReco
         }
     }
 
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putLong(countIdx, partial.getLong(countIdx));
+            values.putDouble(sumIdx, partial.getDouble(sumIdx));
+        } else {
+            values.putLong(countIdx, values.getLong(countIdx) + partial.getLong(countIdx));
+            values.putDouble(sumIdx, values.getDouble(sumIdx) + partial.getDouble(sumIdx));
+        }
+    }
+
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
         this.columnIndex = source.getMetadata().getColumnIndex(sourceColumn.name);
     }
+
+    /**
+     * Renames average column, which is "avg" by default.
+     *
+     * @param name column name
+     * @return this function
+     */
+    public AvgDoubleAggregationFunction setName(String name) {
+        this.name = name;
+        return this;
+    }
 }
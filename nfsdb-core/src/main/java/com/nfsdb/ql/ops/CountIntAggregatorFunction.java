@@ -38,6 +38,15 @@ public class CountIntAggregatorFunction extends AbstractSingleColumnAggregatorFu
         }
     }
 
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putInt(valueIndex, partial.getInt(valueIndex));
+        } else {
+            values.putInt(valueIndex, values.getInt(valueIndex) + partial.getInt(valueIndex));
+        }
+    }
+
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
         // do not call parent method, which will be trying to lookup column in record source.
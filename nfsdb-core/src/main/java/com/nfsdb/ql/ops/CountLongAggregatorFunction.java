@@ -37,6 +37,15 @@ public class CountLongAggregatorFunction extends AbstractSingleColumnAggregatorF
         }
     }
 
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putLong(valueIndex, partial.getLong(valueIndex));
+        } else {
+            values.putLong(valueIndex, values.getLong(valueIndex) + partial.getLong(valueIndex));
+        }
+    }
+
     @Override
     public void prepareSource(RecordSource<? extends Record> source) {
         // do not call parent method, which will be trying to lookup column in record source.
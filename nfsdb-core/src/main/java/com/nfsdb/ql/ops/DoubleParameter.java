@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.storage.ColumnType;
+
+public class DoubleParameter extends AbstractVirtualColumn {
+    private double value;
+
+    public DoubleParameter() {
+        super(ColumnType.DOUBLE);
+    }
+
+    @Override
+    public double getDouble() {
+        return value;
+    }
+
+    @Override
+    public float getFloat() {
+        return (float) value;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+}
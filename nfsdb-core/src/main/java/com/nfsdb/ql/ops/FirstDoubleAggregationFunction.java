@@ -32,4 +32,11 @@ public class FirstDoubleAggregationFunction extends AbstractSingleColumnAggregat
             values.putDouble(valueIndex, rec.getDouble(recordIndex));
         }
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putDouble(valueIndex, partial.getDouble(valueIndex));
+        }
+    }
 }
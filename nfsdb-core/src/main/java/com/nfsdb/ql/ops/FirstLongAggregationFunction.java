@@ -32,4 +32,11 @@ public class FirstLongAggregationFunction extends AbstractSingleColumnAggregator
             values.putLong(valueIndex, rec.getLong(recordIndex));
         }
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putLong(valueIndex, partial.getLong(valueIndex));
+        }
+    }
 }
@@ -30,4 +30,9 @@ public class LastDoubleAggregationFunction extends AbstractSingleColumnAggregato
     public void calculate(Record rec, MapValues values) {
         values.putDouble(valueIndex, rec.getDouble(recordIndex));
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        values.putDouble(valueIndex, partial.getDouble(valueIndex));
+    }
 }
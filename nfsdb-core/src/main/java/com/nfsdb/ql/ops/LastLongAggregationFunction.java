@@ -30,4 +30,9 @@ public class LastLongAggregationFunction extends AbstractSingleColumnAggregatorF
     public void calculate(Record rec, MapValues values) {
         values.putLong(valueIndex, rec.getLong(recordIndex));
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        values.putLong(valueIndex, partial.getLong(valueIndex));
+    }
 }
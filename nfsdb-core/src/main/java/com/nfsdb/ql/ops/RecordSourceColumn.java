@@ -79,6 +79,10 @@ public class RecordSourceColumn extends AbstractVirtualColumn {
         }
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public int getInt() {
         return state.currentRecord().getInt(index);
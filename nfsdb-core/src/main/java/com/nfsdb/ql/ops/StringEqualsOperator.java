@@ -27,6 +27,8 @@ public class StringEqualsOperator extends AbstractBinaryOperator {
 
     @Override
     public boolean getBool() {
-        return Chars.equals(lhs.getFlyweightStr(), rhs.getFlyweightStr());
+        CharSequence l = lhs.getFlyweightStr();
+        CharSequence r = rhs.getFlyweightStr();
+        return l == null ? r == null : r != null && Chars.equals(l, r);
     }
 }
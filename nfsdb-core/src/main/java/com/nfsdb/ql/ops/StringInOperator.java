@@ -39,7 +39,8 @@ public class StringInOperator extends AbstractVirtualColumn implements Function
 
     @Override
     public boolean getBool() {
-        return set.contains(lhs.getFlyweightStr());
+        CharSequence value = lhs.getFlyweightStr();
+        return value != null && set.contains(value);
     }
 
     @Override
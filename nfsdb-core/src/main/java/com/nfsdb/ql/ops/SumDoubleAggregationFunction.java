@@ -33,4 +33,13 @@ public class SumDoubleAggregationFunction extends AbstractSingleColumnAggregator
             values.putDouble(valueIndex, values.getDouble(valueIndex) + rec.getDouble(recordIndex));
         }
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putDouble(valueIndex, partial.getDouble(valueIndex));
+        } else {
+            values.putDouble(valueIndex, values.getDouble(valueIndex) + partial.getDouble(valueIndex));
+        }
+    }
 }
@@ -33,4 +33,13 @@ public class SumIntAggregationFunction extends AbstractSingleColumnAggregatorFun
             values.putInt(valueIndex, values.getInt(valueIndex) + rec.getInt(recordIndex));
         }
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putInt(valueIndex, partial.getInt(valueIndex));
+        } else {
+            values.putInt(valueIndex, values.getInt(valueIndex) + partial.getInt(valueIndex));
+        }
+    }
 }
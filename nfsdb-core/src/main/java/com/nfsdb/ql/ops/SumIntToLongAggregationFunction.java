@@ -34,4 +34,13 @@ public class SumIntToLongAggregationFunction extends AbstractSingleColumnAggrega
             values.putLong(valueIndex, values.getLong(valueIndex) + rec.getInt(recordIndex));
         }
     }
+
+    @Override
+    public void merge(MapValues partial, MapValues values) {
+        if (values.isNew()) {
+            values.putLong(valueIndex, partial.getLong(valueIndex));
+        } else {
+            values.putLong(valueIndex, values.getLong(valueIndex) + partial.getLong(valueIndex));
+        }
+    }
 }
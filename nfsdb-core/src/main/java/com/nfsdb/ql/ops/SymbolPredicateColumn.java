@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordSourceState;
+import com.nfsdb.storage.ColumnType;
+
+/**
+ * Evaluates boolean predicate, which depends on single symbol column, once per distinct symbol value.
+ * Outcome is remembered in bit set indexed by symbol key, so for every row predicate comes down to
+ * reading symbol key and testing its bit. Bits are filled in as keys are first seen, which takes care
+ * of symbols added to journal after predicate was created.
+ */
+public class SymbolPredicateColumn extends AbstractVirtualColumn {
+    private final RecordSourceColumn column;
+    private final VirtualColumn predicate;
+    private final SymbolValueColumn value;
+    private long[] known = new long[1];
+    private long[] matched = new long[1];
+    private boolean nullKnown;
+    private boolean nullMatched;
+
+    /**
+     * @param column    symbol column predicate depends on
+     * @param predicate predicate, which reads column via value placeholder
+     * @param value     placeholder passed to predicate instead of column
+     */
+    public SymbolPredicateColumn(RecordSourceColumn column, VirtualColumn predicate, SymbolValueColumn value) {
+        super(ColumnType.BOOLEAN);
+        this.column = column;
+        this.predicate = predicate;
+        this.value = value;
+    }
+
+    @Override
+    public void configureSource(RecordSourceState state) {
+        super.configureSource(state);
+        column.configureSource(state);
+    }
+
+    @Override
+    public boolean getBool() {
+        Record rec = state.currentRecord();
+        int key = rec.getInt(column.getIndex());
+
+        if (key < 0) {
+            if (!nullKnown) {
+                nullMatched = eval(null);
+                nullKnown = true;
+            }
+            return nullMatched;
+        }
+
+        int word = key >>> 6;
+        long bit = 1L << key;
+        if (word >= known.length) {
+            grow(word);
+        }
+
+        if ((known[word] & bit) == 0) {
+            if (eval(rec.getSym(column.getIndex()))) {
+                matched[word] |= bit;
+            }
+            known[word] |= bit;
+        }
+        return (matched[word] & bit) != 0;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return false;
+    }
+
+    private boolean eval(String symbol) {
+        value.setValue(symbol);
+        return predicate.getBool();
+    }
+
+    private void grow(int word) {
+        int n = Math.max(known.length * 2, word + 1);
+        long[] k = new long[n];
+        long[] m = new long[n];
+        System.arraycopy(known, 0, k, 0, known.length);
+        System.arraycopy(matched, 0, m, 0, matched.length);
+        known = k;
+        matched = m;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.RowBatch;
+import com.nfsdb.storage.ColumnType;
+
+/**
+ * Column that is evaluated for whole batch of rows at once. Values are written out to off-heap
+ * vector of 8-byte slots: DOUBLE values as doubles, INT values as longs and BOOLEAN values as
+ * longs 0 or 1.
+ */
+public interface VectorColumn {
+
+    /**
+     * @param batch rows to evaluate column for
+     * @return address of vector with batch.size values
+     */
+    long evaluate(RowBatch batch);
+
+    ColumnType getType();
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.RowBatch;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.FixedColumn;
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Reads values of DOUBLE or INT column for batch of rows. Consecutive rows of DOUBLE column are
+ * copied in one go.
+ */
+public class VectorColumnReader extends AbstractVectorColumn {
+    private final int index;
+
+    public VectorColumnReader(int index, ColumnType type) {
+        super(type);
+        this.index = index;
+    }
+
+    @Override
+    public long evaluate(RowBatch batch) {
+        FixedColumn column = (FixedColumn) batch.partition.getAbstractColumn(index);
+        long rows[] = batch.rows;
+        int n = batch.size;
+
+        switch (getType()) {
+            case DOUBLE:
+                if (batch.consecutive) {
+                    column.copyTo(rows[0], n, address);
+                } else {
+                    for (int i = 0; i < n; i++) {
+                        Unsafe.getUnsafe().putDouble(address + (((long) i) << 3), column.getDouble(rows[i]));
+                    }
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    Unsafe.getUnsafe().putLong(address + (((long) i) << 3), column.getInt(rows[i]));
+                }
+        }
+        return address;
+    }
+}
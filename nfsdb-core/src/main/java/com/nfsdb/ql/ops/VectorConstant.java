@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.RowBatch;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Vector of constant value. Value is taken for every batch because constant can be a parameter.
+ */
+public class VectorConstant extends AbstractVectorColumn {
+    private final VirtualColumn value;
+
+    public VectorConstant(VirtualColumn value, ColumnType type) {
+        super(type);
+        this.value = value;
+    }
+
+    @Override
+    public long evaluate(RowBatch batch) {
+        long v;
+        switch (getType()) {
+            case DOUBLE:
+                v = Double.doubleToRawLongBits(value.getDouble());
+                break;
+            case INT:
+                v = value.getInt();
+                break;
+            default:
+                v = value.getBool() ? 1 : 0;
+        }
+        for (int i = 0, n = batch.size; i < n; i++) {
+            Unsafe.getUnsafe().putLong(address + (((long) i) << 3), v);
+        }
+        return address;
+    }
+}
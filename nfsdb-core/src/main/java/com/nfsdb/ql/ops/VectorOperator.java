@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.ops;
+
+import com.nfsdb.ql.RowBatch;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.utils.Unsafe;
+
+/**
+ * Binary operator evaluated over vectors of operand values. Results are identical to those of scalar
+ * operators: arithmetic and comparisons are done on doubles or ints depending on operator and
+ * logical operators work on 0/1 values without branching.
+ */
+public class VectorOperator extends AbstractVectorColumn {
+    public static final int ADD_DOUBLE = 0;
+    public static final int MINUS_DOUBLE = 1;
+    public static final int MULT_DOUBLE = 2;
+    public static final int DIV_DOUBLE = 3;
+    public static final int ADD_INT = 4;
+    public static final int GREATER_DOUBLE = 5;
+    public static final int LESS_DOUBLE = 6;
+    public static final int GREATER_INT = 7;
+    public static final int EQUAL_INT = 8;
+    public static final int AND = 9;
+    public static final int OR = 10;
+
+    private final int op;
+    private final VectorColumn lhs;
+    private final VectorColumn rhs;
+
+    public VectorOperator(int op, VectorColumn lhs, VectorColumn rhs) {
+        super(op < ADD_INT ? ColumnType.DOUBLE : op == ADD_INT ? ColumnType.INT : ColumnType.BOOLEAN);
+        this.op = op;
+        this.lhs = lhs;
+        this.rhs = rhs;
+    }
+
+    @Override
+    public long evaluate(RowBatch batch) {
+        long l = lhs.evaluate(batch);
+        long r = rhs.evaluate(batch);
+        long hi = address + batch.size * 8L;
+
+        switch (op) {
+            case ADD_DOUBLE:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putDouble(p, Unsafe.getUnsafe().getDouble(l) + Unsafe.getUnsafe().getDouble(r));
+                }
+                break;
+            case MINUS_DOUBLE:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putDouble(p, Unsafe.getUnsafe().getDouble(l) - Unsafe.getUnsafe().getDouble(r));
+                }
+                break;
+            case MULT_DOUBLE:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putDouble(p, Unsafe.getUnsafe().getDouble(l) * Unsafe.getUnsafe().getDouble(r));
+                }
+                break;
+            case DIV_DOUBLE:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putDouble(p, Unsafe.getUnsafe().getDouble(l) / Unsafe.getUnsafe().getDouble(r));
+                }
+                break;
+            case ADD_INT:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, (int) (Unsafe.getUnsafe().getLong(l) + Unsafe.getUnsafe().getLong(r)));
+                }
+                break;
+            case GREATER_DOUBLE:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, Unsafe.getUnsafe().getDouble(l) > Unsafe.getUnsafe().getDouble(r) ? 1 : 0);
+                }
+                break;
+            case LESS_DOUBLE:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, Unsafe.getUnsafe().getDouble(l) < Unsafe.getUnsafe().getDouble(r) ? 1 : 0);
+                }
+                break;
+            case GREATER_INT:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, Unsafe.getUnsafe().getLong(l) > Unsafe.getUnsafe().getLong(r) ? 1 : 0);
+                }
+                break;
+            case EQUAL_INT:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, Unsafe.getUnsafe().getLong(l) == Unsafe.getUnsafe().getLong(r) ? 1 : 0);
+                }
+                break;
+            case AND:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, Unsafe.getUnsafe().getLong(l) & Unsafe.getUnsafe().getLong(r));
+                }
+                break;
+            default:
+                for (long p = address; p < hi; p += 8, l += 8, r += 8) {
+                    Unsafe.getUnsafe().putLong(p, Unsafe.getUnsafe().getLong(l) | Unsafe.getUnsafe().getLong(r));
+                }
+        }
+        return address;
+    }
+}
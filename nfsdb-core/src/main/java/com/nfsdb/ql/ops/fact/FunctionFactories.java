@@ -32,7 +32,7 @@ public final class FunctionFactories {
             return factory;
         } else {
             // special cases/intrinsic factories
-            if (Chars.equals("in", sig.name) && sig.paramTypes.getLast() == ColumnType.STRING) {
+            if (Chars.equals("in", sig.name) && (sig.paramTypes.getLast() == ColumnType.STRING || sig.paramTypes.getLast() == ColumnType.SYMBOL)) {
                 return STRING_IN_OPERATOR_FACTORY;
             }
         }
@@ -67,6 +67,8 @@ public final class FunctionFactories {
 
         factories.put(new Signature().setName("=").setParamCount(2).paramType(0, ColumnType.INT).paramType(1, ColumnType.INT), new IntEqualsOperatorFactory());
         factories.put(new Signature().setName("=").setParamCount(2).paramType(0, ColumnType.STRING).paramType(1, ColumnType.STRING), new StringEqualsOperatorFactory());
+        factories.put(new Signature().setName("=").setParamCount(2).paramType(0, ColumnType.SYMBOL).paramType(1, ColumnType.STRING), new StringEqualsOperatorFactory());
+        factories.put(new Signature().setName("=").setParamCount(2).paramType(0, ColumnType.STRING).paramType(1, ColumnType.SYMBOL), new StringEqualsOperatorFactory());
 
         factories.put(new Signature().setName("and").setParamCount(2).paramType(0, ColumnType.BOOLEAN).paramType(1, ColumnType.BOOLEAN), new AndOperatorFactory());
         factories.put(new Signature().setName("or").setParamCount(2).paramType(0, ColumnType.BOOLEAN).paramType(1, ColumnType.BOOLEAN), new OrOperatorFactory());
@@ -26,6 +26,7 @@ import java.util.Deque;
 public class ExprParser {
 
     private final TokenStream toks;
+    private int positionalParameterCount;
 
     public ExprParser(TokenStream toks) {
         this.toks = toks;
@@ -48,6 +49,7 @@ public class ExprParser {
 
     public void parseExpr(CharSequence in, ExprListener listener) throws ParserException {
         toks.setContent(in);
+        resetParameters();
         parseExpr(listener);
     }
 
@@ -156,6 +158,11 @@ public class ExprParser {
                     // If the token is a number, then add it to the output queue.
                     listener.onNode(new ExprNode(ExprNode.NodeType.CONSTANT, tok.toString(), 0, toks.position()));
                     break;
+                case '?':
+                case ':':
+                    thisBranch = Branch.CONSTANT;
+                    listener.onNode(new ExprNode(ExprNode.NodeType.PARAMETER, parameterName(tok), 0, toks.position()));
+                    break;
                 default:
                     Operator op;
                     if ((op = Operator.opMap.get(tok)) != null) {
@@ -231,6 +238,27 @@ public class ExprParser {
         }
     }
 
+    /**
+     * Positional parameters are numbered in order of appearance in text, which is reset with
+     * every new content.
+     */
+    void resetParameters() {
+        positionalParameterCount = 0;
+    }
+
+    private String parameterName(CharSequence tok) throws ParserException {
+        if (tok.charAt(0) == '?') {
+            if (tok.length() > 1) {
+                throw new ParserException(toks.position(), "Unexpected characters after ?");
+            }
+            return "?" + (++positionalParameterCount);
+        }
+
+        if (tok.length() < 2) {
+            throw new ParserException(toks.position(), "Parameter name expected");
+        }
+        return tok.toString();
+    }
 
     private enum Branch {
         NONE, COMMA, LEFT_BRACE, RIGHT_BRACE, CONSTANT, OPERATOR, LITERAL
@@ -27,6 +27,8 @@ import com.nfsdb.ql.impl.YearIntervalSource;
 import com.nfsdb.ql.model.ExprNode;
 import com.nfsdb.ql.model.IntrinsicModel;
 import com.nfsdb.ql.model.IntrinsicValue;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.IndexType;
 import com.nfsdb.utils.Chars;
 import com.nfsdb.utils.Dates;
 import com.nfsdb.utils.Interval;
@@ -78,10 +80,49 @@ public class IntrinsicExtractor {
                 node = stack.pollFirst();
             }
         }
+
+        if (preferredKeyColumn == null && model.keyColumn != null && model.keyParameter == null && isBitmapIndexed(m.getColumn(model.keyColumn))) {
+            addBitmapKeys(root, m);
+        }
         model.filter = collapseIntrinsicNodes(root);
         return model;
     }
 
+    private static boolean isBitmapIndexed(ColumnMetadata meta) {
+        return meta.type == ColumnType.SYMBOL && meta.indexed && meta.indexType == IndexType.BITMAP;
+    }
+
+    /**
+     * Conditions on bitmap indexed symbol columns other than key column are turned into bitmaps,
+     * which are intersected with bitmap of key column.
+     */
+    private void addBitmapKeys(ExprNode node, JournalMetadata m) {
+        if (node == null || node.intrinsicValue == IntrinsicValue.TRUE) {
+            return;
+        }
+
+        if ("and".equals(node.token)) {
+            addBitmapKeys(node.lhs, m);
+            addBitmapKeys(node.rhs, m);
+            return;
+        }
+
+        ObjHashSet<String> keys = new ObjHashSet<>();
+        String col = collectOrKeys(node, m, keys);
+        if (col == null || col.equals(model.keyColumn) || !isBitmapIndexed(m.getColumn(col))) {
+            return;
+        }
+
+        int i = model.bitmapColumns.indexOf(col);
+        if (i == -1) {
+            model.bitmapColumns.add(col);
+            model.bitmapValues.add(keys);
+        } else if (!model.bitmapValues.getQuick(i).replaceAllWithOverlap(keys)) {
+            model.intrinsicValue = IntrinsicValue.FALSE;
+        }
+        node.intrinsicValue = IntrinsicValue.TRUE;
+    }
+
     private boolean analyzeEquals(ExprNode node, JournalMetadata m) throws ParserException {
         return node.paramCount == 2 && (analyzeEquals0(node, node.lhs, node.rhs, m) || analyzeEquals0(node, node.rhs, node.lhs, m));
     }
@@ -119,7 +160,9 @@ public class IntrinsicExtractor {
 
                             boolean newColumn = true;
                             // check if we already have indexed column and it is of worse selectivity
+                            // constant keys take over parameter key
                             if (model.keyColumn != null
+                                    && model.keyParameter == null
                                     && (newColumn = !model.keyColumn.equals(a.token))
                                     && meta.distinctCountHint <= m.getColumn(model.keyColumn).distinctCountHint) {
                                 return false;
@@ -128,6 +171,7 @@ public class IntrinsicExtractor {
                             String value = Chars.stripQuotes(b.token);
                             if (newColumn) {
                                 model.keyColumn = a.token;
+                                model.keyParameter = null;
                                 model.keyValues.clear();
                                 model.keyValues.add(value);
                                 for (int n = 0, k = keyNodes.size(); n < k; n++) {
@@ -159,6 +203,10 @@ public class IntrinsicExtractor {
             }
 
         }
+
+        if (a.type == ExprNode.NodeType.LITERAL && b.type == ExprNode.NodeType.PARAMETER) {
+            return analyzeParameterKey(node, a, b, m);
+        }
         return false;
     }
 
@@ -276,6 +324,29 @@ public class IntrinsicExtractor {
     }
 
     private boolean analyzeListOfValues(String col, JournalMetadata meta, ExprNode node) {
+        int i = node.paramCount - 1;
+        ObjHashSet<String> keys = new ObjHashSet<>(i);
+
+        // collect and analyze values of indexed field
+        // if any of values is not an indexed constant - bail out
+        if (i == 1) {
+            if (node.rhs == null || node.rhs.type != ExprNode.NodeType.CONSTANT) {
+                return false;
+            }
+            keys.add(Chars.stripQuotes(node.rhs.token));
+        } else {
+            for (i--; i > -1; i--) {
+                ExprNode c = node.args.getQuick(i);
+                if (c.type != ExprNode.NodeType.CONSTANT) {
+                    return false;
+                }
+                keys.add(Chars.stripQuotes(c.token));
+            }
+        }
+        return analyzeKeys(col, meta, keys, node);
+    }
+
+    private boolean analyzeKeys(String col, JournalMetadata meta, ObjHashSet<String> keys, ExprNode node) {
         ColumnMetadata colMeta = meta.getColumn(col);
         if (colMeta.indexed) {
             boolean newColumn = true;
@@ -285,33 +356,14 @@ public class IntrinsicExtractor {
             }
 
             // check if we already have indexed column and it is of worse selectivity
+            // constant keys take over parameter key
             if (model.keyColumn != null
+                    && model.keyParameter == null
                     && (newColumn = !model.keyColumn.equals(col))
                     && colMeta.distinctCountHint <= meta.getColumn(model.keyColumn).distinctCountHint) {
                 return false;
             }
 
-
-            int i = node.paramCount - 1;
-            ObjHashSet<String> keys = new ObjHashSet<>(i);
-
-            // collect and analyze values of indexed field
-            // if any of values is not an indexed constant - bail out
-            if (i == 1) {
-                if (node.rhs == null || node.rhs.type != ExprNode.NodeType.CONSTANT) {
-                    return false;
-                }
-                keys.add(Chars.stripQuotes(node.rhs.token));
-            } else {
-                for (i--; i > -1; i--) {
-                    ExprNode c = node.args.getQuick(i);
-                    if (c.type != ExprNode.NodeType.CONSTANT) {
-                        return false;
-                    }
-                    keys.add(Chars.stripQuotes(c.token));
-                }
-            }
-
             // clear values if this is new column
             // and reset intrinsic values on nodes associated with old column
             if (newColumn) {
@@ -322,6 +374,7 @@ public class IntrinsicExtractor {
                 }
                 keyNodes.clear();
                 model.keyColumn = col;
+                model.keyParameter = null;
             } else {
                 // calculate overlap of values
                 if (!model.keyValues.replaceAllWithOverlap(keys)) {
@@ -336,6 +389,93 @@ public class IntrinsicExtractor {
         return false;
     }
 
+    /**
+     * OR-chain of equality and "in" conditions on the same symbol or string column is list of key values.
+     */
+    private boolean analyzeOr(ExprNode node, JournalMetadata meta) {
+        ObjHashSet<String> keys = new ObjHashSet<>();
+        String col = collectOrKeys(node, meta, keys);
+        if (col == null) {
+            return false;
+        }
+
+        switch (meta.getColumn(col).type) {
+            case SYMBOL:
+            case STRING:
+                return analyzeKeys(col, meta, keys, node);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Equality of indexed column and parameter becomes index lookup of key, which is bound when query is
+     * executed. Parameter key is taken only when there is no other key, it does not combine with key values
+     * and latest by.
+     */
+    private boolean analyzeParameterKey(ExprNode node, ExprNode col, ExprNode param, JournalMetadata m) throws ParserException {
+        if (m.invalidColumn(col.token)) {
+            throw new InvalidColumnException(col.position);
+        }
+
+        ColumnMetadata meta = m.getColumn(col.token);
+        if (!meta.indexed || (meta.type != ColumnType.SYMBOL && meta.type != ColumnType.STRING)
+                || preferredKeyColumn != null || model.keyColumn != null) {
+            return false;
+        }
+
+        model.keyColumn = col.token;
+        model.keyParameter = param.token;
+        keyNodes.add(node);
+        node.intrinsicValue = IntrinsicValue.TRUE;
+        return true;
+    }
+
+    /**
+     * @return name of column all branches of OR-chain compare with constants or null
+     */
+    private String collectOrKeys(ExprNode node, JournalMetadata meta, ObjHashSet<String> keys) {
+        if (node == null) {
+            return null;
+        }
+
+        switch (node.token) {
+            case "or":
+                String l = collectOrKeys(node.lhs, meta, keys);
+                String r = l == null ? null : collectOrKeys(node.rhs, meta, keys);
+                return r != null && r.equals(l) ? r : null;
+            case "=":
+                if (node.paramCount != 2 || node.lhs == null || node.rhs == null) {
+                    return null;
+                }
+                ExprNode col = node.lhs.type == ExprNode.NodeType.LITERAL ? node.lhs : node.rhs;
+                ExprNode val = col == node.lhs ? node.rhs : node.lhs;
+                if (col.type != ExprNode.NodeType.LITERAL || val.type != ExprNode.NodeType.CONSTANT || meta.invalidColumn(col.token)) {
+                    return null;
+                }
+                keys.add(Chars.stripQuotes(val.token));
+                return col.token;
+            case "in":
+                if (node.paramCount < 2) {
+                    return null;
+                }
+                ExprNode c = node.paramCount < 3 ? node.lhs : node.args.getLast();
+                if (c == null || c.type != ExprNode.NodeType.LITERAL || meta.invalidColumn(c.token)) {
+                    return null;
+                }
+                for (int i = node.paramCount - 2; i > -1; i--) {
+                    ExprNode v = node.paramCount < 3 ? node.rhs : node.args.getQuick(i);
+                    if (v == null || v.type != ExprNode.NodeType.CONSTANT) {
+                        return null;
+                    }
+                    keys.add(Chars.stripQuotes(v.token));
+                }
+                return c.token;
+            default:
+                return null;
+        }
+    }
+
     private ExprNode collapseIntrinsicNodes(ExprNode node) {
         if (node == null || node.intrinsicValue == IntrinsicValue.TRUE) {
             return null;
@@ -478,6 +618,8 @@ public class IntrinsicExtractor {
                 return analyzeLess(node, 0);
             case "=":
                 return analyzeEquals(node, m);
+            case "or":
+                return analyzeOr(node, m);
             default:
                 return false;
         }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.parser;
+
+import com.nfsdb.Journal;
+import com.nfsdb.Partition;
+import com.nfsdb.collections.LongList;
+import com.nfsdb.collections.ObjHashSet;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.StringIndex;
+import com.nfsdb.storage.SymbolIndex;
+import com.nfsdb.storage.SymbolTable;
+
+import java.io.Closeable;
+
+/**
+ * Row counts, timestamp ranges and index key counts of journal partitions. Statistics are kept by optimiser
+ * along with reader of journal and are refreshed only when reader moves to new transaction. Partitions are
+ * appended to only while they are last, so statistics of partitions before last one are kept too, only last
+ * partition and partitions added since are read again.
+ * <p>
+ * Index value counts are read on demand from partitions, which overlap query interval.
+ */
+final class JournalStatistics implements Closeable {
+    private final Journal journal;
+    private final LongList rowCounts = new LongList();
+    private final LongList minTimestamps = new LongList();
+    private final LongList maxTimestamps = new LongList();
+    private long txn = -1;
+    private long rowCount;
+    private int partitionCount;
+
+    JournalStatistics(Journal journal) {
+        this.journal = journal;
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+
+    /**
+     * Estimates number of rows with given key values within interval. Rows of partitions, which
+     * overlap interval partially, are assumed to be evenly distributed in time.
+     */
+    long estimateKeyRows(ColumnMetadata column, ObjHashSet<String> values, long lo, long hi) throws JournalException {
+        int columnIndex = journal.getMetadata().getColumnIndex(column.name);
+        double rows = 0;
+        for (int i = 0, n = rowCounts.size(); i < n; i++) {
+            double f = overlap(i, lo, hi);
+            if (f == 0) {
+                continue;
+            }
+
+            Partition p = journal.getPartition(i, true);
+            long count = 0;
+            if (column.type == ColumnType.STRING) {
+                StringIndex index = p.getStringIndexForColumn(columnIndex);
+                for (int k = 0, m = values.size(); k < m; k++) {
+                    count += index.getValueCount(values.get(k));
+                }
+            } else {
+                SymbolIndex index = p.getIndexForColumn(columnIndex);
+                SymbolTable tab = journal.getSymbolTable(column.name);
+                for (int k = 0, m = values.size(); k < m; k++) {
+                    int key = tab.getQuick(values.get(k));
+                    if (key > -1) {
+                        count += index.getValueCount(key);
+                    }
+                }
+            }
+            rows += count * f;
+        }
+        return (long) rows;
+    }
+
+    /**
+     * Estimates number of rows of key, which value is not known until query is executed, as average
+     * number of rows per distinct value.
+     */
+    long estimateParameterRows(ColumnMetadata column, long lo, long hi) {
+        int distinct = column.type == ColumnType.SYMBOL ? journal.getSymbolTable(column.name).size() : column.distinctCountHint;
+        return estimateRows(lo, hi) / Math.max(distinct, 1);
+    }
+
+    long estimateRows(long lo, long hi) {
+        double rows = 0;
+        for (int i = 0, n = rowCounts.size(); i < n; i++) {
+            rows += rowCounts.getQuick(i) * overlap(i, lo, hi);
+        }
+        return (long) rows;
+    }
+
+    int getPartitionCount() {
+        return partitionCount;
+    }
+
+    long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Moves reader to latest transaction and reads row counts and timestamp ranges of partitions, which
+     * could have changed since transaction statistics were collected for.
+     */
+    void refresh() throws JournalException {
+        journal.refresh();
+        if (journal.getTxn() == txn) {
+            return;
+        }
+        txn = journal.getTxn();
+
+        int n = journal.getPartitionCount();
+        int from = Math.max(0, Math.min(n, rowCounts.size()) - 1);
+        rowCounts.setPos(from);
+        minTimestamps.setPos(from);
+        maxTimestamps.setPos(from);
+
+        int timestampIndex = journal.getMetadata().getTimestampIndex();
+        for (int i = from; i < n; i++) {
+            Partition p = journal.getPartition(i, true);
+            long size = p.size();
+            rowCounts.add(size);
+            if (size == 0 || timestampIndex == -1) {
+                minTimestamps.add(Long.MIN_VALUE);
+                maxTimestamps.add(Long.MAX_VALUE);
+            } else {
+                minTimestamps.add(p.getLong(0, timestampIndex));
+                maxTimestamps.add(p.getLong(size - 1, timestampIndex));
+            }
+        }
+
+        rowCount = 0;
+        partitionCount = 0;
+        for (int i = 0; i < n; i++) {
+            long size = rowCounts.getQuick(i);
+            if (size > 0) {
+                rowCount += size;
+                partitionCount++;
+            }
+        }
+    }
+
+    private double overlap(int partition, long lo, long hi) {
+        if (rowCounts.getQuick(partition) == 0) {
+            return 0;
+        }
+
+        long min = minTimestamps.getQuick(partition);
+        long max = maxTimestamps.getQuick(partition);
+        if (max < lo || min > hi) {
+            return 0;
+        }
+
+        if (min >= lo && max <= hi) {
+            return 1;
+        }
+        double span = (double) max - min;
+        return span > 0 ? (Math.min(max, hi) - (double) Math.max(min, lo)) / span : 1;
+    }
+}
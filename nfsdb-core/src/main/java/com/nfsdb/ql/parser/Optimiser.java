@@ -17,13 +17,17 @@
 package com.nfsdb.ql.parser;
 
 import com.nfsdb.JournalKey;
+import com.nfsdb.collections.IntStack;
+import com.nfsdb.collections.ObjHashSet;
 import com.nfsdb.collections.ObjList;
+import com.nfsdb.collections.ObjObjHashMap;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.NoSuchColumnException;
 import com.nfsdb.factory.JournalFactory;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.factory.configuration.JournalConfiguration;
 import com.nfsdb.factory.configuration.JournalMetadata;
+import com.nfsdb.io.sink.StringSink;
 import com.nfsdb.ql.*;
 import com.nfsdb.ql.impl.*;
 import com.nfsdb.ql.model.*;
@@ -36,22 +40,79 @@ import com.nfsdb.utils.Interval;
 import com.nfsdb.utils.Numbers;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.io.Closeable;
 import java.util.ArrayDeque;
 
-public class Optimiser {
+public class Optimiser implements Closeable {
+    private static final int INDEX_ROW_COST = 4;
+    private static final double EQUALS_SELECTIVITY = 0.1;
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+    private static final double DEFAULT_SELECTIVITY = 0.5;
 
     private final ArrayDeque<VirtualColumn> stack = new ArrayDeque<>();
     private final IntrinsicExtractor intrinsicExtractor = new IntrinsicExtractor();
     private final JournalFactory factory;
+    // statistics of journals by location, each has its own reader
+    private final ObjObjHashMap<String, JournalStatistics> statistics = new ObjObjHashMap<>();
     private final VirtualColumnBuilder virtualColumnBuilderVisitor = new VirtualColumnBuilder();
     private final PostOrderTreeTraversalAlgo traversalAlgo = new PostOrderTreeTraversalAlgo();
+    // for every column on stack tells if column depends on parameters
+    private final IntStack parameterised = new IntStack();
+    private boolean lastParameterised;
+    private PreparedQuery preparedQuery;
+    private StringSink plan;
 
     public Optimiser(JournalFactory factory) {
         this.factory = factory;
     }
 
+    /**
+     * Closes readers, which journal statistics were collected by.
+     */
+    @Override
+    public void close() {
+        for (ObjObjHashMap.Entry<String, JournalStatistics> e : statistics) {
+            e.value.close();
+        }
+        statistics.clear();
+    }
+
+    /**
+     * Compiles query with bind parameters. Parameters are registered with returned prepared query.
+     */
+    public PreparedQuery prepare(QueryModel model) throws ParserException, JournalException {
+        PreparedQuery query = new PreparedQuery();
+        this.preparedQuery = query;
+        try {
+            query.setRecordSource(compile(model));
+        } finally {
+            this.preparedQuery = null;
+        }
+        return query;
+    }
+
+    /**
+     * Compiles query and describes access path chosen for it along with estimated row counts.
+     */
+    public String explain(QueryModel model) throws ParserException, JournalException {
+        plan = new StringSink();
+        try {
+            compile(model);
+            return plan.toString();
+        } finally {
+            plan = null;
+        }
+    }
+
     public RecordSource<? extends Record> compile(QueryModel model) throws ParserException, JournalException {
-        RecordSource<? extends Record> rs = createRecordSource(model);
+        JournalMetadata metadata = lookupMetadata(model.getJournalName());
+        if (model.getSampleBy() != null) {
+            return createLimit(model, createSampleBy(model, metadata, createRecordSource(model, metadata)));
+        }
+
+        RecordSource<? extends Record> rs = model.getJoinJournalName() == null
+                ? createOrderBy(model, createRecordSource(model, metadata))
+                : createAsOfJoin(model, metadata, createRecordSource(model, metadata));
         RecordMetadata meta = rs.getMetadata();
         ObjList<QueryColumn> columns = model.getColumns();
         ObjList<VirtualColumn> virtualColumns = new ObjList<>();
@@ -83,7 +144,165 @@ public class Optimiser {
         if (virtualColumns.size() > 0) {
             rs = new VirtualColumnRecordSource(rs, virtualColumns);
         }
-        return new SelectedColumnsRecordSource(rs, selectedColumns);
+        rs = new SelectedColumnsRecordSource(rs, selectedColumns);
+        // limit of ordered query is applied by sort
+        return model.getOrderBy().size() == 0 ? createLimit(model, rs) : rs;
+    }
+
+    private static VirtualColumn and(VirtualColumn keys, VirtualColumn filter) {
+        if (filter == null) {
+            return keys;
+        }
+
+        AndOperator and = new AndOperator();
+        and.setLhs(keys);
+        and.setRhs(filter);
+        return and;
+    }
+
+    /**
+     * Registers record source, which holds memory or threads, with prepared query, which releases them when closed.
+     */
+    private <T extends Closeable> T closeable(T source) {
+        if (preparedQuery != null) {
+            preparedQuery.addCloseable(source);
+        }
+        return source;
+    }
+
+    private AggregatorFunction createAggregator(ExprNode node, JournalMetadata metadata, String name) throws ParserException {
+        if (node.paramCount == 0) {
+            if (Chars.equals(node.token, "count")) {
+                return new CountLongAggregatorFunction(name);
+            }
+            throw new ParserException(node.position, "No such aggregate function: " + node.token);
+        }
+
+        if (node.paramCount > 1) {
+            throw new ParserException(node.position, "Too many arguments");
+        }
+
+        ExprNode arg = node.rhs;
+        if (arg.type != ExprNode.NodeType.LITERAL) {
+            throw new ParserException(arg.position, "Column name expected");
+        }
+
+        if (metadata.invalidColumn(arg.token)) {
+            throw new InvalidColumnException(arg.position);
+        }
+
+        ColumnMetadata m = metadata.getColumn(arg.token);
+        switch (node.token) {
+            case "sum":
+                switch (m.type) {
+                    case INT:
+                        return new SumIntToLongAggregationFunction(m).setName(name);
+                    case DOUBLE:
+                        return new SumDoubleAggregationFunction(m).setName(name);
+                    default:
+                        break;
+                }
+                break;
+            case "avg":
+                if (m.type == ColumnType.DOUBLE) {
+                    return new AvgDoubleAggregationFunction(m).setName(name);
+                }
+                break;
+            case "first":
+                switch (m.type) {
+                    case DOUBLE:
+                        return new FirstDoubleAggregationFunction(m).setName(name);
+                    case LONG:
+                    case DATE:
+                        return new FirstLongAggregationFunction(m).setName(name);
+                    default:
+                        break;
+                }
+                break;
+            case "last":
+                switch (m.type) {
+                    case DOUBLE:
+                        return new LastDoubleAggregationFunction(m).setName(name);
+                    case LONG:
+                    case DATE:
+                        return new LastLongAggregationFunction(m).setName(name);
+                    default:
+                        break;
+                }
+                break;
+            default:
+                throw new ParserException(node.position, "No such aggregate function: " + node.token);
+        }
+        throw new ParserException(arg.position, "Unsupported column type: " + m.type);
+    }
+
+    /**
+     * Joins records of journal to latest preceding records of join journal with the same values of
+     * join columns. Join columns have the same names in both journals.
+     */
+    @SuppressFBWarnings({"LEST_LOST_EXCEPTION_STACK_TRACE"})
+    private RecordSource<? extends Record> createAsOfJoin(QueryModel model, JournalMetadata metadata, JournalRecordSource master) throws ParserException, JournalException {
+        ExprNode joinNode = model.getJoinJournalName();
+        if (model.getOrderBy().size() > 0) {
+            throw new ParserException(model.getOrderBy().getQuick(0).position, "Order by is not supported with asof join");
+        }
+
+        if (model.getLatestBy() != null) {
+            throw new ParserException(model.getLatestBy().position, "Latest by is not supported with asof join");
+        }
+
+        JournalMetadata slaveMetadata = lookupMetadata(joinNode);
+        if (metadata.getTimestampIndex() == -1) {
+            throw new ParserException(model.getJournalName().position, "Journal has no timestamp column");
+        }
+
+        if (slaveMetadata.getTimestampIndex() == -1) {
+            throw new ParserException(joinNode.position, "Journal has no timestamp column");
+        }
+
+        ObjList<ExprNode> joinColumns = model.getJoinColumns();
+        ObjList<String> keys = new ObjList<>(joinColumns.size());
+        for (int i = 0, n = joinColumns.size(); i < n; i++) {
+            ExprNode node = joinColumns.getQuick(i);
+            if (node.type != ExprNode.NodeType.LITERAL) {
+                throw new ParserException(node.position, "Column name expected");
+            }
+
+            if (metadata.invalidColumn(node.token) || slaveMetadata.invalidColumn(node.token)) {
+                throw new InvalidColumnException(node.position);
+            }
+
+            ColumnType masterType = metadata.getColumn(node.token).type;
+            ColumnType slaveType = slaveMetadata.getColumn(node.token).type;
+            if (masterType == ColumnType.BINARY || (masterType != slaveType && !(isString(masterType) && isString(slaveType)))) {
+                throw new ParserException(node.position, "Cannot join " + masterType + " to " + slaveType);
+            }
+            keys.add(node.token);
+        }
+
+        long window = Long.MAX_VALUE;
+        ExprNode w = model.getJoinWindow();
+        if (w != null) {
+            try {
+                if (w.type != ExprNode.NodeType.CONSTANT || (window = Numbers.parseLong(w.token)) < 0) {
+                    throw new ParserException(w.position, "Window in milliseconds expected");
+                }
+            } catch (NumberFormatException e) {
+                throw new ParserException(w.position, "Window in milliseconds expected");
+            }
+        }
+
+        return closeable(new AsOfJoinRecordSource(
+                master,
+                model.getJournalName().token,
+                metadata.getTimestampMetadata().name,
+                keys,
+                new JournalSource(new JournalPartitionSource(slaveMetadata, true), new AllRowSource()),
+                joinNode.token,
+                slaveMetadata.getTimestampMetadata().name,
+                keys,
+                window
+        ));
     }
 
     private void createColumn(ExprNode node, RecordMetadata metadata) throws ParserException {
@@ -104,51 +323,139 @@ public class Optimiser {
                     case CONSTANT:
                         stack.addFirst(parseConstant(node));
                         break;
+                    case PARAMETER:
+                        // type of parameter is not known until it is used as function argument
+                        stack.addFirst(new UntypedParameter(node));
+                        parameterised.push(1);
+                        return;
                     default:
                         // lookup zero arg function from symbol table
                         stack.addFirst(lookupFunction(node, sig.setName(node.token).setParamCount(0)));
                 }
+                parameterised.push(0);
                 break;
             default:
                 args.ensureCapacity(argCount);
                 sig.setName(node.token).setParamCount(argCount);
+                int p = 0;
                 for (int n = argCount - 1; n > -1; n--) {
                     VirtualColumn c = stack.pollFirst();
                     if (c == null) {
                         throw new ParserException(node.position, "Too few arguments");
                     }
-                    sig.paramType(n, c.getType());
+                    p |= parameterised.pop();
                     args.setQuick(n, c);
                 }
+
+                for (int n = 0; n < argCount; n++) {
+                    VirtualColumn c = args.getQuick(n);
+                    if (c instanceof UntypedParameter) {
+                        args.setQuick(n, c = createParameter((UntypedParameter) c, args));
+                    }
+                    sig.paramType(n, c.getType());
+                }
+
                 f = lookupFunction(node, sig);
+                RecordSourceColumn symbolColumn = p == 0 ? dictionaryColumn(f, args, metadata) : null;
+                SymbolValueColumn symbolValue = symbolColumn == null ? null : new SymbolValueColumn();
                 int n = node.paramCount;
                 f.setArgCount(n);
                 for (int i = 0; i < n; i++) {
-                    f.setArg(i, args.getQuick(i));
+                    VirtualColumn c = args.getQuick(i);
+                    f.setArg(i, c == symbolColumn ? symbolValue : c);
                 }
-                stack.addFirst(f.isConstant() ? processConstantExpression(f) : f);
+
+                if (symbolColumn != null) {
+                    stack.addFirst(new SymbolPredicateColumn(symbolColumn, f, symbolValue));
+                } else {
+                    // values of parameters are not known at compile time
+                    stack.addFirst(f.isConstant() && p == 0 ? processConstantExpression(f) : f);
+                }
+                parameterised.push(p);
         }
     }
 
+    /**
+     * Parameter takes type of the first typed argument of function it is passed to.
+     */
     @SuppressFBWarnings({"SF_SWITCH_NO_DEFAULT"})
-    private RecordSource<? extends Record> createRecordSource(QueryModel model) throws JournalException, ParserException {
+    private VirtualColumn createParameter(UntypedParameter untyped, ObjList<VirtualColumn> args) throws ParserException {
+        ColumnType type = null;
+        for (int i = 0, n = args.size(); i < n && type == null; i++) {
+            VirtualColumn c = args.getQuick(i);
+            if (!(c instanceof UntypedParameter)) {
+                type = c.getType();
+            }
+        }
 
-        ExprNode readerNode = model.getJournalName();
-        if (readerNode.type != ExprNode.NodeType.LITERAL) {
-            throw new ParserException(readerNode.position, "Journal name expected");
+        if (type != null) {
+            VirtualColumn p = null;
+            switch (type) {
+                case INT:
+                    p = new IntParameter();
+                    break;
+                case DOUBLE:
+                    p = new DoubleParameter();
+                    break;
+                case STRING:
+                case SYMBOL:
+                    p = new StringParameter();
+                    break;
+            }
+
+            if (p != null) {
+                if (preparedQuery != null) {
+                    preparedQuery.addParameter(untyped.node.token, p);
+                }
+                return p;
+            }
         }
+        throw new ParserException(untyped.node.position, "Cannot infer parameter type");
+    }
 
-        JournalConfiguration configuration = factory.getConfiguration();
+    private RecordSource<? extends Record> createLimit(QueryModel model, RecordSource<? extends Record> rs) throws ParserException {
+        long limit = getLimit(model);
+        return limit < 0 ? rs : new TopRecordSource((int) Math.min(limit, Integer.MAX_VALUE), rs);
+    }
 
-        if (configuration.exists(readerNode.token) == JournalConfiguration.JournalExistenceCheck.DOES_NOT_EXIST) {
-            throw new ParserException(readerNode.position, "Journal does not exist");
+    private JournalRecordSource createOrderBy(QueryModel model, JournalRecordSource rs) throws ParserException {
+        ObjList<ExprNode> orderBy = model.getOrderBy();
+        int n = orderBy.size();
+        if (n == 0) {
+            return rs;
         }
 
-        if (configuration.exists(readerNode.token) == JournalConfiguration.JournalExistenceCheck.EXISTS_FOREIGN) {
-            throw new ParserException(readerNode.position, "Journal directory is of unknown format");
+        RecordMetadata meta = rs.getMetadata();
+        int columns[] = new int[n];
+        boolean descending[] = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            ExprNode node = orderBy.getQuick(i);
+            if (node.type != ExprNode.NodeType.LITERAL) {
+                throw new ParserException(node.position, "Column name expected");
+            }
+
+            if (meta.invalidColumn(node.token)) {
+                throw new InvalidColumnException(node.position);
+            }
+
+            columns[i] = meta.getColumnIndex(node.token);
+            if (meta.getColumn(columns[i]).getType() == ColumnType.BINARY) {
+                throw new ParserException(node.position, "Cannot order by binary column");
+            }
+            descending[i] = model.getOrderByDirection().getQuick(i) == QueryModel.ORDER_DIRECTION_DESCENDING;
         }
+        long limit = getLimit(model);
+        if (plan != null) {
+            if (limit < 0) {
+                plan.put("sort\n");
+            } else {
+                plan.put("top: ").put(limit).put('\n');
+            }
+        }
+        return new SortedRecordSource(rs, columns, descending, limit);
+    }
 
-        JournalMetadata metadata = factory.getOrCreateMetadata(new JournalKey<>(readerNode.token));
+    private JournalRecordSource createRecordSource(QueryModel model, JournalMetadata metadata) throws ParserException, JournalException {
 
         PartitionSource ps = new JournalPartitionSource(metadata, true);
         RowSource rs = null;
@@ -179,25 +486,11 @@ public class Optimiser {
         }
 
         ExprNode where = model.getWhereClause();
+        IntrinsicModel im = null;
+        VirtualColumn filter = null;
         if (where != null) {
-            IntrinsicModel im = intrinsicExtractor.extract(where, metadata, latestByCol);
-
-            VirtualColumn filter = im.filter != null ? createVirtualColumn(im.filter, metadata) : null;
-
-            if (filter != null) {
-                if (filter.getType() != ColumnType.BOOLEAN) {
-                    throw new ParserException(im.filter.position, "Boolean expression expected");
-                }
-
-                if (filter.isConstant()) {
-                    if (filter.getBool()) {
-                        // constant TRUE, no filtering needed
-                        filter = null;
-                    } else {
-                        im.intrinsicValue = IntrinsicValue.FALSE;
-                    }
-                }
-            }
+            im = intrinsicExtractor.extract(where, metadata, latestByCol);
+            filter = createFilter(im, metadata);
 
             if (im.intrinsicValue == IntrinsicValue.FALSE) {
                 ps = new NoOpJournalPartitionSource(metadata);
@@ -216,15 +509,169 @@ public class Optimiser {
                 if (im.intervalSource != null) {
                     ps = new MultiIntervalPartitionSource(ps, im.intervalSource);
                 }
+            }
+        }
+
+        boolean scanKeys = selectAccessPath(model, metadata, im, latestByCol);
+
+        // latest by row sources are not split between workers
+        int parallelism = latestByCol == null ? model.getParallelism() : 1;
+        if (parallelism < 2) {
+            return new JournalSource(ps, createRowSource(metadata, im, filter, latestByCol, scanKeys));
+        }
+
+        if (plan != null) {
+            plan.put("parallelism: ").put(parallelism).put('\n');
+        }
+
+        // each worker gets its own instance of filter and row source
+        ObjList<RowSource> rowSources = new ObjList<>(parallelism);
+        rowSources.add(createRowSource(metadata, im, filter, latestByCol, scanKeys));
+        for (int i = 1; i < parallelism; i++) {
+            rowSources.add(createRowSource(metadata, im, im == null ? null : createFilter(im, metadata), latestByCol, scanKeys));
+        }
+        // order of slices does not matter when rows are sorted afterwards
+        return closeable(new ParallelJournalSource(ps, rowSources, model.getOrderBy().size() == 0));
+    }
+
+    private VirtualColumn createFilter(IntrinsicModel im, JournalMetadata metadata) throws ParserException {
+        VirtualColumn filter = im.filter != null ? createVirtualColumn(im.filter, metadata) : null;
+
+        if (filter != null) {
+            if (filter.getType() != ColumnType.BOOLEAN) {
+                throw new ParserException(im.filter.position, "Boolean expression expected");
+            }
+
+            if (filter.isConstant() && !lastParameterised) {
+                if (filter.getBool()) {
+                    // constant TRUE, no filtering needed
+                    filter = null;
+                } else {
+                    im.intrinsicValue = IntrinsicValue.FALSE;
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Groups records by time buckets and by columns in select list. Timestamp column in select list
+     * is start of time bucket. Other columns have to be aggregate functions.
+     */
+    private RecordSource<? extends Record> createSampleBy(QueryModel model, JournalMetadata metadata, JournalRecordSource rs) throws ParserException {
+        ExprNode sampleBy = model.getSampleBy();
+        TimestampSampler sampler = sampleBy.type == ExprNode.NodeType.LITERAL || sampleBy.type == ExprNode.NodeType.CONSTANT
+                ? TimestampSamplerFactory.getInstance(sampleBy.token) : null;
+        if (sampler == null) {
+            throw new ParserException(sampleBy.position, "Invalid sample interval");
+        }
+
+        if (metadata.getTimestampIndex() == -1) {
+            throw new ParserException(sampleBy.position, "Journal has no timestamp column");
+        }
+
+        if (model.getOrderBy().size() > 0) {
+            throw new ParserException(model.getOrderBy().getQuick(0).position, "Order by is not supported with sample by");
+        }
+
+        if (model.getJoinJournalName() != null) {
+            throw new ParserException(model.getJoinJournalName().position, "Asof join is not supported with sample by");
+        }
+
+        ColumnMetadata timestamp = metadata.getTimestampMetadata();
+        ObjList<QueryColumn> columns = model.getColumns();
+        ObjList<ColumnMetadata> keyColumns = new ObjList<>();
+        ObjList<AggregatorFunction> aggregators = new ObjList<>();
+        ObjList<String> selectedColumns = new ObjList<>();
+        int columnSequence = 0;
+
+        for (int i = 0, k = columns.size(); i < k; i++) {
+            QueryColumn qc = columns.getQuick(i);
+            ExprNode node = qc.getAst();
+
+            switch (node.type) {
+                case LITERAL:
+                    if (metadata.invalidColumn(node.token)) {
+                        throw new InvalidColumnException(node.position);
+                    }
+
+                    if (!Chars.equals(node.token, timestamp.name)) {
+                        keyColumns.add(createSampleByKey(node, metadata.getColumn(node.token)));
+                    }
+                    selectedColumns.add(node.token);
+                    break;
+                case FUNCTION:
+                    String colName = qc.getName() == null ? "col" + columnSequence++ : qc.getName();
+                    aggregators.add(createAggregator(node, metadata, colName));
+                    selectedColumns.add(colName);
+                    break;
+                default:
+                    throw new ParserException(node.position, "Column name or aggregate function expected");
+            }
+        }
+
+        return new SelectedColumnsRecordSource(closeable(new ResampledSource(rs, keyColumns, aggregators, timestamp, sampler)), selectedColumns);
+    }
+
+    @SuppressFBWarnings({"SF_SWITCH_NO_DEFAULT"})
+    private ColumnMetadata createSampleByKey(ExprNode node, ColumnMetadata m) throws ParserException {
+        switch (m.type) {
+            case SYMBOL:
+                // query metadata has no symbol tables, so symbols are grouped by their values
+                return new ColumnMetadata().copy(m).setType(ColumnType.STRING);
+            case STRING:
+            case INT:
+            case LONG:
+                return m;
+        }
+        throw new ParserException(node.position, "Unsupported key column type: " + m.type);
+    }
 
+    private RowSource createBitmapRowSource(IntrinsicModel im) {
+        ObjList<String> columns = new ObjList<>();
+        ObjList<ObjHashSet<String>> values = new ObjList<>();
+        columns.add(im.keyColumn);
+        values.add(im.keyValues);
+        for (int i = 0, n = im.bitmapColumns.size(); i < n; i++) {
+            columns.add(im.bitmapColumns.getQuick(i));
+            values.add(im.bitmapValues.getQuick(i));
+        }
+        return new BitmapIndexRowSource(columns, values);
+    }
+
+    private RowSource createRecordSourceForListOfValues(IntrinsicModel im) {
+        if (im.keyParameter != null) {
+            return new KvIndexLookupRowSource(im.keyColumn, createKeyParameter(im));
+        }
+
+        if (im.keyValues.size() == 1) {
+            return new KvIndexLookupRowSource(im.keyColumn, new StringConstant(im.keyValues.getLast()));
+        }
+        // rows of all values are merged in time order
+        return new KvIndexMergingRowSource(im.keyColumn, im.keyValues);
+    }
+
+    @SuppressFBWarnings({"SF_SWITCH_NO_DEFAULT"})
+    private RowSource createRowSource(JournalMetadata metadata, IntrinsicModel im, VirtualColumn filter, String latestByCol, boolean scanKeys) throws ParserException {
+        RowSource rs = null;
+        if (im != null) {
+            if (im.intrinsicValue != IntrinsicValue.FALSE) {
                 if (latestByCol == null) {
-                    if (im.keyColumn != null) {
+                    if (scanKeys) {
+                        filter = createKeyFilter(im, metadata, filter);
+                    } else if (im.keyColumn != null) {
                         switch (metadata.getColumn(im.keyColumn).type) {
                             case SYMBOL:
-                                rs = createRecordSourceForListOfValues(im);
+                                rs = im.bitmapColumns.size() > 0 ? createBitmapRowSource(im) : createRecordSourceForListOfValues(im);
                                 break;
                             case STRING:
-                                rs = new StringKvIndexRowSource(im.keyColumn, im.keyValues);
+                                if (im.keyParameter != null) {
+                                    rs = new StringKvIndexRowSource(im.keyColumn, createKeyParameter(im));
+                                } else {
+                                    rs = im.keyValues.size() == 1
+                                            ? new StringKvIndexRowSource(im.keyColumn, im.keyValues)
+                                            : new KvIndexMergingRowSource(im.keyColumn, im.keyValues);
+                                }
                                 break;
                         }
                     }
@@ -243,34 +690,193 @@ public class Optimiser {
         } else if (latestByCol != null) {
             rs = new KvIndexAllSymHeadRowSource(latestByCol, null);
         }
+        return rs == null ? new AllRowSource() : rs;
+    }
+
+    /**
+     * Turns key values, which would otherwise be looked up in index, into filter of scanned rows.
+     */
+    private VirtualColumn createKeyFilter(IntrinsicModel im, JournalMetadata metadata, VirtualColumn filter) throws ParserException {
+        if (im.keyParameter != null) {
+            // parameter key is compared as string, symbol keys of value would change between executions
+            StringEqualsOperator eq = new StringEqualsOperator();
+            eq.setLhs(lookupColumn(new ExprNode(ExprNode.NodeType.LITERAL, im.keyColumn, 0, 0), metadata));
+            eq.setRhs(createKeyParameter(im));
+            return and(eq, filter);
+        }
 
-        return new JournalSource(ps, rs == null ? new AllRowSource() : rs);
+        filter = createKeyFilter(im.keyColumn, im.keyValues, metadata, filter);
+        for (int i = 0, n = im.bitmapColumns.size(); i < n; i++) {
+            filter = createKeyFilter(im.bitmapColumns.getQuick(i), im.bitmapValues.getQuick(i), metadata, filter);
+        }
+        return filter;
     }
 
-    private RowSource createRecordSourceForListOfValues(IntrinsicModel im) {
-        if (im.keyValues.size() == 1) {
-            return new KvIndexLookupRowSource(im.keyColumn, new StringConstant(im.keyValues.getLast()));
-        } else {
-            RowSource src = null;
-            for (int i = 0, k = im.keyValues.size(); i < k; i++) {
-                if (src == null) {
-                    src = new KvIndexLookupRowSource(im.keyColumn, new StringConstant(im.keyValues.get(i)), true);
-                } else {
-                    src = new MergingRowSource(src, new KvIndexLookupRowSource(im.keyColumn, new StringConstant(im.keyValues.get(i)), true));
+    private VirtualColumn createKeyFilter(String keyColumn, ObjHashSet<String> keyValues, JournalMetadata metadata, VirtualColumn filter) throws ParserException {
+        RecordSourceColumn column = lookupColumn(new ExprNode(ExprNode.NodeType.LITERAL, keyColumn, 0, 0), metadata);
+        SymbolValueColumn symbolValue = column.getType() == ColumnType.SYMBOL ? new SymbolValueColumn() : null;
+
+        StringInOperator in = new StringInOperator();
+        int n = keyValues.size();
+        in.setArgCount(n + 1);
+        for (int i = 0; i < n; i++) {
+            in.setArg(i, new StringConstant(keyValues.get(i)));
+        }
+        in.setArg(n, symbolValue == null ? column : symbolValue);
+
+        VirtualColumn keys = symbolValue == null ? in : new SymbolPredicateColumn(column, in, symbolValue);
+        return and(keys, filter);
+    }
+
+    /**
+     * Creates parameter, which is key value of index lookup, and registers it with prepared query.
+     */
+    private StringParameter createKeyParameter(IntrinsicModel im) {
+        StringParameter p = new StringParameter();
+        if (preparedQuery != null) {
+            preparedQuery.addParameter(im.keyParameter, p);
+        }
+        return p;
+    }
+
+    /**
+     * Compares cost of reading rows of key values through index with cost of scanning all rows in
+     * query interval. Index lookup reads only matching rows, but every row costs about as much as
+     * INDEX_ROW_COST rows read sequentially.
+     *
+     * @return true when keys are cheaper to filter out of scanned rows
+     */
+    private JournalStatistics getStatistics(JournalMetadata metadata) throws JournalException {
+        JournalStatistics stats = statistics.get(metadata.getLocation());
+        if (stats == null) {
+            statistics.put(metadata.getLocation(), stats = new JournalStatistics(factory.reader(metadata)));
+        }
+        stats.refresh();
+        return stats;
+    }
+
+    private boolean selectAccessPath(QueryModel model, JournalMetadata metadata, IntrinsicModel im, String latestByCol) throws JournalException {
+        boolean keyLookup = im != null && im.keyColumn != null && latestByCol == null && im.intrinsicValue != IntrinsicValue.FALSE;
+        if (!keyLookup && plan == null) {
+            return false;
+        }
+
+        long lo = im == null ? Long.MIN_VALUE : im.intervalLo;
+        long hi = im == null ? Long.MAX_VALUE : im.intervalHi;
+        boolean scanKeys = false;
+
+        JournalStatistics stats = getStatistics(metadata);
+        long rows = stats.estimateRows(lo, hi);
+
+        if (plan != null) {
+            plan.put("journal: ").put(model.getJournalName().token)
+                    .put(", partitions: ").put(stats.getPartitionCount())
+                    .put(", rows: ").put(stats.getRowCount()).put('\n');
+            if (lo > Long.MIN_VALUE || hi < Long.MAX_VALUE) {
+                plan.put("interval: estimated rows: ").put(rows).put('\n');
+            }
+        }
+
+        if (keyLookup) {
+            long keyRows;
+            if (im.keyParameter != null) {
+                keyRows = stats.estimateParameterRows(metadata.getColumn(im.keyColumn), lo, hi);
+                if (plan != null) {
+                    plan.put("index: ").put(im.keyColumn).put(" = ").put(im.keyParameter);
+                }
+            } else {
+                keyRows = stats.estimateKeyRows(metadata.getColumn(im.keyColumn), im.keyValues, lo, hi);
+                if (plan != null) {
+                    plan.put("index: ").put(im.keyColumn).put(" in ").put(im.keyValues.toString());
                 }
             }
-            return src;
+            if (plan != null) {
+                plan.put(", estimated rows: ").put(keyRows)
+                        .put(", cost: ").put(keyRows * INDEX_ROW_COST).put('\n');
+            }
+
+            // bitmaps of other columns are intersected with rows of keys, columns are assumed to be independent
+            for (int i = 0, n = im.bitmapColumns.size(); i < n; i++) {
+                long bitmapRows = stats.estimateKeyRows(metadata.getColumn(im.bitmapColumns.getQuick(i)), im.bitmapValues.getQuick(i), lo, hi);
+                keyRows = rows > 0 ? (long) ((double) keyRows * bitmapRows / rows) : 0;
+                if (plan != null) {
+                    plan.put("bitmap: ").put(im.bitmapColumns.getQuick(i)).put(" in ").put(im.bitmapValues.getQuick(i).toString())
+                            .put(", estimated rows: ").put(keyRows)
+                            .put(", cost: ").put(keyRows * INDEX_ROW_COST).put('\n');
+                }
+            }
+
+            scanKeys = keyRows * INDEX_ROW_COST > rows;
+            if (plan != null) {
+                plan.put("scan: estimated rows: ").put(rows).put(", cost: ").put(rows).put('\n');
+                rows = keyRows;
+            }
+        }
+
+        if (plan != null) {
+            plan.put("access path: ");
+            if (latestByCol != null) {
+                plan.put("latest by ").put(latestByCol);
+            } else {
+                plan.put(keyLookup && !scanKeys ? "index" : "scan");
+            }
+            plan.put('\n');
+
+            if (im != null && im.filter != null) {
+                double selectivity = selectivity(im.filter);
+                plan.put("filter: selectivity: ").put(selectivity, 3)
+                        .put(", estimated rows: ").put((long) (rows * selectivity)).put('\n');
+            }
         }
+        return scanKeys;
     }
 
     private VirtualColumn createVirtualColumn(ExprNode node, RecordMetadata metadata) throws ParserException {
         virtualColumnBuilderVisitor.metadata = metadata;
+        parameterised.clear();
         traversalAlgo.traverse(node, virtualColumnBuilderVisitor);
-        return stack.pollFirst();
+        VirtualColumn c = stack.pollFirst();
+        if (c instanceof UntypedParameter) {
+            throw new ParserException(node.position, "Cannot infer parameter type");
+        }
+        lastParameterised = parameterised.pop() == 1;
+        return c;
+    }
+
+    /**
+     * Guesses fraction of rows that pass filter from shape of filter expression.
+     */
+    private static double selectivity(ExprNode node) {
+        if (node.type == ExprNode.NodeType.OPERATION || node.type == ExprNode.NodeType.SET_OPERATION) {
+            switch (node.token) {
+                case "and":
+                    return selectivity(node.lhs) * selectivity(node.rhs);
+                case "or":
+                    double a = selectivity(node.lhs);
+                    double b = selectivity(node.rhs);
+                    return a + b - a * b;
+                case "=":
+                    return EQUALS_SELECTIVITY;
+                case ">":
+                case "<":
+                case ">=":
+                case "<=":
+                    return RANGE_SELECTIVITY;
+                case "in":
+                    return Math.min(1, EQUALS_SELECTIVITY * (node.paramCount - 1));
+                default:
+                    break;
+            }
+        }
+        return DEFAULT_SELECTIVITY;
+    }
+
+    private static boolean isString(ColumnType type) {
+        return type == ColumnType.STRING || type == ColumnType.SYMBOL;
     }
 
     @SuppressFBWarnings({"LEST_LOST_EXCEPTION_STACK_TRACE"})
-    private VirtualColumn lookupColumn(ExprNode node, RecordMetadata metadata) throws ParserException {
+    private RecordSourceColumn lookupColumn(ExprNode node, RecordMetadata metadata) throws ParserException {
         try {
             return new RecordSourceColumn(node.token, metadata);
         } catch (NoSuchColumnException e) {
@@ -278,6 +884,67 @@ public class Optimiser {
         }
     }
 
+    /**
+     * Finds symbol column, which is the only non-constant argument of boolean function. Such function can be
+     * evaluated once per symbol value instead of once per row. Only applies to filters, where symbol column
+     * is read from journal record and holds symbol key.
+     */
+    private static RecordSourceColumn dictionaryColumn(Function f, ObjList<VirtualColumn> args, RecordMetadata metadata) {
+        if (f.getType() != ColumnType.BOOLEAN || !(metadata instanceof JournalMetadata)) {
+            return null;
+        }
+
+        RecordSourceColumn column = null;
+        for (int i = 0, n = args.size(); i < n; i++) {
+            VirtualColumn c = args.getQuick(i);
+            if (c.isConstant()) {
+                continue;
+            }
+
+            if (column != null || !(c instanceof RecordSourceColumn) || c.getType() != ColumnType.SYMBOL) {
+                return null;
+            }
+            column = (RecordSourceColumn) c;
+        }
+        return column;
+    }
+
+    @SuppressFBWarnings({"LEST_LOST_EXCEPTION_STACK_TRACE"})
+    private long getLimit(QueryModel model) throws ParserException {
+        ExprNode n = model.getLimit();
+        if (n == null) {
+            return -1;
+        }
+
+        try {
+            long limit;
+            if (n.type != ExprNode.NodeType.CONSTANT || (limit = Numbers.parseLong(n.token)) < 0) {
+                throw new ParserException(n.position, "Row count expected");
+            }
+            return limit;
+        } catch (NumberFormatException e) {
+            throw new ParserException(n.position, "Row count expected");
+        }
+    }
+
+    private JournalMetadata lookupMetadata(ExprNode readerNode) throws ParserException, JournalException {
+        if (readerNode.type != ExprNode.NodeType.LITERAL) {
+            throw new ParserException(readerNode.position, "Journal name expected");
+        }
+
+        JournalConfiguration configuration = factory.getConfiguration();
+
+        if (configuration.exists(readerNode.token) == JournalConfiguration.JournalExistenceCheck.DOES_NOT_EXIST) {
+            throw new ParserException(readerNode.position, "Journal does not exist");
+        }
+
+        if (configuration.exists(readerNode.token) == JournalConfiguration.JournalExistenceCheck.EXISTS_FOREIGN) {
+            throw new ParserException(readerNode.position, "Journal directory is of unknown format");
+        }
+
+        return factory.getOrCreateMetadata(new JournalKey<>(readerNode.token));
+    }
+
     private Function lookupFunction(ExprNode node, Signature sig) throws ParserException {
         FunctionFactory f = FunctionFactories.find(sig);
         if (f == null) {
@@ -324,6 +991,20 @@ public class Optimiser {
         }
     }
 
+    private static class UntypedParameter extends AbstractVirtualColumn {
+        private final ExprNode node;
+
+        private UntypedParameter(ExprNode node) {
+            super(null);
+            this.node = node;
+        }
+
+        @Override
+        public boolean isConstant() {
+            return true;
+        }
+    }
+
     private class VirtualColumnBuilder implements PostOrderTreeTraversalAlgo.Visitor {
         private RecordMetadata metadata;
 
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.parser;
+
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalReaderFactory;
+import com.nfsdb.logging.Logger;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.ql.ops.DoubleParameter;
+import com.nfsdb.ql.ops.IntParameter;
+import com.nfsdb.ql.ops.StringParameter;
+import com.nfsdb.ql.ops.VirtualColumn;
+import com.nfsdb.utils.Chars;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Compiled query and its bind parameters. Named parameters are bound by name including colon,
+ * for example ":sym", positional parameters by their position starting with 1. Values stay bound
+ * between executions. Closing prepared query releases memory and threads held by its record sources.
+ * Prepared query is not thread-safe.
+ */
+public class PreparedQuery implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(PreparedQuery.class);
+    private final ObjList<String> names = new ObjList<>();
+    private final ObjList<Closeable> closeables = new ObjList<>();
+    private final ObjList<VirtualColumn> parameters = new ObjList<>();
+    private RecordSource<? extends Record> recordSource;
+    private boolean executed;
+
+    @Override
+    public void close() {
+        for (int i = 0, n = closeables.size(); i < n; i++) {
+            try {
+                closeables.getQuick(i).close();
+            } catch (IOException e) {
+                LOGGER.error("Cannot close %s: %s", closeables.getQuick(i), e.getMessage());
+            }
+        }
+        closeables.clear();
+    }
+
+    /**
+     * Resets record source after previous execution and prepares new cursor with currently
+     * bound parameter values.
+     */
+    public RecordCursor<? extends Record> execute(JournalReaderFactory factory) throws JournalException {
+        if (executed) {
+            recordSource.reset();
+        }
+        executed = true;
+        return recordSource.prepareCursor(factory);
+    }
+
+    public RecordSource<? extends Record> getRecordSource() {
+        return recordSource;
+    }
+
+    public PreparedQuery setParameter(String name, int value) {
+        boolean found = false;
+        for (int i = 0, n = names.size(); i < n; i++) {
+            if (Chars.equals(names.getQuick(i), name)) {
+                VirtualColumn p = parameters.getQuick(i);
+                if (p instanceof IntParameter) {
+                    ((IntParameter) p).setValue(value);
+                } else if (p instanceof DoubleParameter) {
+                    ((DoubleParameter) p).setValue(value);
+                } else {
+                    throw new JournalRuntimeException("Parameter %s is of type %s", name, p.getType());
+                }
+                found = true;
+            }
+        }
+        return checkFound(name, found);
+    }
+
+    public PreparedQuery setParameter(int position, int value) {
+        return setParameter("?" + position, value);
+    }
+
+    public PreparedQuery setParameter(String name, double value) {
+        boolean found = false;
+        for (int i = 0, n = names.size(); i < n; i++) {
+            if (Chars.equals(names.getQuick(i), name)) {
+                VirtualColumn p = parameters.getQuick(i);
+                if (p instanceof DoubleParameter) {
+                    ((DoubleParameter) p).setValue(value);
+                } else {
+                    throw new JournalRuntimeException("Parameter %s is of type %s", name, p.getType());
+                }
+                found = true;
+            }
+        }
+        return checkFound(name, found);
+    }
+
+    public PreparedQuery setParameter(int position, double value) {
+        return setParameter("?" + position, value);
+    }
+
+    public PreparedQuery setParameter(String name, String value) {
+        boolean found = false;
+        for (int i = 0, n = names.size(); i < n; i++) {
+            if (Chars.equals(names.getQuick(i), name)) {
+                VirtualColumn p = parameters.getQuick(i);
+                if (p instanceof StringParameter) {
+                    ((StringParameter) p).setValue(value);
+                } else {
+                    throw new JournalRuntimeException("Parameter %s is of type %s", name, p.getType());
+                }
+                found = true;
+            }
+        }
+        return checkFound(name, found);
+    }
+
+    public PreparedQuery setParameter(int position, String value) {
+        return setParameter("?" + position, value);
+    }
+
+    void addCloseable(Closeable closeable) {
+        closeables.add(closeable);
+    }
+
+    void addParameter(String name, VirtualColumn parameter) {
+        names.add(name);
+        parameters.add(parameter);
+    }
+
+    void setRecordSource(RecordSource<? extends Record> recordSource) {
+        this.recordSource = recordSource;
+    }
+
+    private PreparedQuery checkFound(String name, boolean found) {
+        if (!found) {
+            throw new JournalRuntimeException("No such parameter: %s", name);
+        }
+        return this;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.parser;
+
+import com.nfsdb.collections.AssociativeCache;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.JournalFactory;
+import com.nfsdb.ql.model.Statement;
+import com.nfsdb.ql.model.StatementType;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Bounded cache of prepared queries keyed by query text with whitespace outside of quotes
+ * collapsed. Queries that differ only by values of bind parameters share the same plan,
+ * which is re-executed after parameters are bound. Queries evicted from cache, cleared or remaining
+ * in cache when it is closed are closed. Cache is not thread-safe.
+ */
+public class QueryCache implements Closeable {
+    private final QueryParser parser = new QueryParser();
+    private final Optimiser optimiser;
+    private final AssociativeCache<String, PreparedQuery> cache;
+    private final StringBuilder normalised = new StringBuilder();
+    private long hitCount;
+    private long missCount;
+
+    public QueryCache(JournalFactory factory, int capacity) {
+        this.optimiser = new Optimiser(factory);
+        this.cache = new AssociativeCache<>(capacity);
+    }
+
+    public void clear() {
+        Iterator<AssociativeCache.Entry<String, PreparedQuery>> it = cache.iterator();
+        while (it.hasNext()) {
+            it.next().value.close();
+        }
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        clear();
+        optimiser.close();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public PreparedQuery prepare(CharSequence query) throws ParserException, JournalException {
+        String key = normalise(query);
+        PreparedQuery q = cache.get(key);
+        if (q != null) {
+            hitCount++;
+            return q;
+        }
+
+        missCount++;
+        parser.setContent(query);
+        Statement statement = parser.parse();
+        if (statement.getType() != StatementType.QUERY_JOURNAL) {
+            throw new ParserException(0, "Query expected");
+        }
+        q = optimiser.prepare(statement.getQueryModel());
+        if (cache.put(key, q) != null) {
+            cache.getEvictedValue().close();
+        }
+        return q;
+    }
+
+    private String normalise(CharSequence query) {
+        normalised.setLength(0);
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0, n = query.length(); i < n; i++) {
+            char c = query.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+
+            if (space && normalised.length() > 0) {
+                normalised.append(' ');
+            }
+            space = false;
+
+            if (quote == 0 && (c == '\'' || c == '"')) {
+                quote = c;
+            } else if (c == quote) {
+                quote = 0;
+            }
+            normalised.append(c);
+        }
+        return normalised.toString();
+    }
+}
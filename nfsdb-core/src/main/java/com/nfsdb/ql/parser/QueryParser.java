@@ -48,11 +48,17 @@ public class QueryParser {
             return parseQuery();
         }
 
-        throw err("create | select expected");
+        if (Chars.equals(tok, "explain")) {
+            expectTok(tok(), "select");
+            return new Statement(StatementType.EXPLAIN, parseQuery().getQueryModel());
+        }
+
+        throw err("create | select | explain expected");
     }
 
     public void setContent(CharSequence cs) {
         tokenStream.setContent(cs);
+        exprParser.resetParameters();
     }
 
     private ParserException err(String msg) {
@@ -94,6 +100,45 @@ public class QueryParser {
         return null;
     }
 
+    private void parseAsOfJoin(QueryModel model) throws ParserException {
+        expectTok(tok(), "join");
+        ExprNode journal = expr();
+        if (journal == null) {
+            throw err("Journal name expected");
+        }
+        model.setJoinJournalName(journal);
+
+        CharSequence tok = optionTok();
+
+        // expect [on column, ...]
+
+        if (tok != null && Chars.equals(tok, "on")) {
+            do {
+                ExprNode n = expr();
+                if (n == null) {
+                    throw err("Column name expected");
+                }
+                model.addJoinColumn(n);
+                tok = optionTok();
+            } while (tok != null && Chars.equals(tok, ','));
+        }
+
+        // expect [within millis]
+
+        if (tok != null && Chars.equals(tok, "within")) {
+            ExprNode n = expr();
+            if (n == null) {
+                throw err("Join window expected");
+            }
+            model.setJoinWindow(n);
+            tok = optionTok();
+        }
+
+        if (tok != null) {
+            tokenStream.unparse();
+        }
+    }
+
     private Statement parseCreateJournal() throws ParserException {
         JournalStructure structure = new JournalStructure(tok().toString());
         parseJournalFields(structure);
@@ -203,6 +248,46 @@ public class QueryParser {
         model.setLatestBy(expr());
     }
 
+    private void parseOrderBy(QueryModel model) throws ParserException {
+        expectTok(tok(), "by");
+        CharSequence tok;
+        do {
+            ExprNode n = expr();
+            if (n == null) {
+                throw err("Column name expected");
+            }
+
+            tok = optionTok();
+
+            if (tok != null && Chars.equals(tok, "desc")) {
+                model.addOrderBy(n, QueryModel.ORDER_DIRECTION_DESCENDING);
+                tok = optionTok();
+            } else {
+                if (tok != null && Chars.equals(tok, "asc")) {
+                    tok = optionTok();
+                }
+                model.addOrderBy(n, QueryModel.ORDER_DIRECTION_ASCENDING);
+            }
+        } while (tok != null && Chars.equals(tok, ','));
+
+        if (tok != null) {
+            tokenStream.unparse();
+        }
+    }
+
+    @SuppressFBWarnings({"LEST_LOST_EXCEPTION_STACK_TRACE"})
+    private void parseParallel(QueryModel model) throws ParserException {
+        try {
+            int parallelism = Numbers.parseInt(tok());
+            if (parallelism < 1) {
+                throw err("positive number expected");
+            }
+            model.setParallelism(parallelism);
+        } catch (NumberFormatException e) {
+            throw err("expected degree of parallelism (int)");
+        }
+    }
+
     private Statement parseQuery() throws ParserException {
 
         QueryModel model = new QueryModel();
@@ -213,9 +298,24 @@ public class QueryParser {
 
         model.setJournalName(expr());
 
+        CharSequence tok = optionTok();
+
+        // expect [asof join]
+
+        if (tok != null && Chars.equals(tok, "asof")) {
+            parseAsOfJoin(model);
+            tok = optionTok();
+        }
+
+        // expect [parallel n]
+
+        if (tok != null && Chars.equals(tok, "parallel")) {
+            parseParallel(model);
+            tok = optionTok();
+        }
+
         // expect [latest by]
 
-        CharSequence tok = optionTok();
 
         if (tok != null && Chars.equals(tok, "latest")) {
             parseLatestBy(model);
@@ -229,6 +329,31 @@ public class QueryParser {
             tok = optionTok();
         }
 
+        // expect [sample by]
+
+        if (tok != null && Chars.equals(tok, "sample")) {
+            parseSampleBy(model);
+            tok = optionTok();
+        }
+
+        // expect [order by]
+
+        if (tok != null && Chars.equals(tok, "order")) {
+            parseOrderBy(model);
+            tok = optionTok();
+        }
+
+        // expect [limit n]
+
+        if (tok != null && Chars.equals(tok, "limit")) {
+            ExprNode n = expr();
+            if (n == null) {
+                throw err("Row count expected");
+            }
+            model.setLimit(n);
+            tok = optionTok();
+        }
+
         if (tok != null) {
             throw new ParserException(tokenStream.position(), "Unexpected token: " + tok);
         }
@@ -236,6 +361,15 @@ public class QueryParser {
 
     }
 
+    private void parseSampleBy(QueryModel model) throws ParserException {
+        expectTok(tok(), "by");
+        ExprNode n = expr();
+        if (n == null) {
+            throw err("Sample interval expected");
+        }
+        model.setSampleBy(n);
+    }
+
     private void parseSelectColumns(QueryModel model) throws ParserException {
         CharSequence tok;
         while (true) {
@@ -85,7 +85,7 @@ public class TokenStream extends AbstractImmutableIterator<CharSequence> {
 
     @Override
     public boolean hasNext() {
-        return next != null || (content != null && _pos < _len);
+        return unparsed != null || next != null || (content != null && _pos < _len);
     }
 
     @Override
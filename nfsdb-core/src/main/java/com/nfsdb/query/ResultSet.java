@@ -17,18 +17,18 @@
 package com.nfsdb.query;
 
 import com.nfsdb.Journal;
-import com.nfsdb.Partition;
 import com.nfsdb.collections.DirectLongList;
 import com.nfsdb.exceptions.JournalException;
-import com.nfsdb.factory.configuration.ColumnMetadata;
+import com.nfsdb.ql.impl.JournalRecord;
+import com.nfsdb.ql.impl.JournalRecordSorter;
 import com.nfsdb.query.iterator.ConcurrentIterator;
 import com.nfsdb.query.iterator.ResultSetBufferedIterator;
 import com.nfsdb.query.iterator.ResultSetConcurrentIterator;
 import com.nfsdb.query.iterator.ResultSetIterator;
-import com.nfsdb.storage.SymbolTable;
 import com.nfsdb.utils.Rnd;
 import com.nfsdb.utils.Rows;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 public class ResultSet<T> implements Iterable<T> {
@@ -40,124 +40,6 @@ public class ResultSet<T> implements Iterable<T> {
         this.rowIDs = rowIDs;
     }
 
-    private static <T> int compare(Journal<T> journal, int[] columns, long rightRowID, long leftRowID) throws JournalException {
-        int result = 0;
-        long leftLocalRowID = Rows.toLocalRowID(leftRowID);
-        long rightLocalRowID = Rows.toLocalRowID(rightRowID);
-
-        Partition<T> leftPart = journal.getPartition(Rows.toPartitionIndex(leftRowID), true);
-        Partition<T> rightPart = journal.getPartition(Rows.toPartitionIndex(rightRowID), true);
-
-        for (int column : columns) {
-            ColumnMetadata meta = journal.getMetadata().getColumn(column);
-
-            String leftStr;
-            String rightStr;
-
-            switch (meta.type) {
-                case STRING:
-                    leftStr = leftPart.getStr(leftLocalRowID, column);
-                    rightStr = rightPart.getStr(rightLocalRowID, column);
-
-                    if (leftStr == null && rightStr == null) {
-                        result = 0;
-                    } else if (leftStr == null) {
-                        result = 1;
-                    } else if (rightStr == null) {
-                        result = -1;
-                    } else {
-                        result = rightStr.compareTo(leftStr);
-                    }
-                    break;
-                default:
-                    switch (meta.type) {
-                        case INT:
-                            result = compare(rightPart.getInt(rightLocalRowID, column), leftPart.getInt(leftLocalRowID, column));
-                            break;
-                        case LONG:
-                        case DATE:
-                            result = compare(rightPart.getLong(rightLocalRowID, column), leftPart.getLong(leftLocalRowID, column));
-                            break;
-                        case DOUBLE:
-                            result = compare(rightPart.getDouble(rightLocalRowID, column), leftPart.getDouble(leftLocalRowID, column));
-                            break;
-                        case FLOAT:
-                            result = compare(rightPart.getFloat(rightLocalRowID, column), leftPart.getFloat(leftLocalRowID, column));
-                            break;
-                        case SYMBOL:
-                            int leftSymIndex = leftPart.getInt(leftLocalRowID, column);
-                            int rightSymIndex = rightPart.getInt(rightLocalRowID, column);
-
-                            if (leftSymIndex == SymbolTable.VALUE_IS_NULL && rightSymIndex == SymbolTable.VALUE_IS_NULL) {
-                                result = 0;
-                            } else if (leftSymIndex == SymbolTable.VALUE_IS_NULL) {
-                                result = 1;
-                            } else if (rightSymIndex == SymbolTable.VALUE_IS_NULL) {
-                                result = -1;
-                            } else {
-                                leftStr = meta.symbolTable.value(leftSymIndex);
-                                rightStr = meta.symbolTable.value(rightSymIndex);
-
-                                if (leftStr == null || rightStr == null) {
-                                    throw new JournalException("Corrupt column [%s] !", meta);
-                                }
-
-                                result = rightStr.compareTo(leftStr);
-                            }
-                            break;
-                        default:
-                            throw new JournalException("Unsupported type: " + meta.type);
-                    }
-            }
-
-
-            if (result != 0) {
-                break;
-            }
-        }
-        return result;
-    }
-
-    private static int compare(long a, long b) {
-        if (a == b) {
-            return 0;
-        } else if (a > b) {
-            return 1;
-        } else {
-            return -1;
-        }
-    }
-
-    private static int compare(int a, int b) {
-        if (a == b) {
-            return 0;
-        } else if (a > b) {
-            return 1;
-        } else {
-            return -1;
-        }
-    }
-
-    private static int compare(double a, double b) {
-        if (a == b) {
-            return 0;
-        } else if (a > b) {
-            return 1;
-        } else {
-            return -1;
-        }
-    }
-
-    private static int compare(float a, float b) {
-        if (a == b) {
-            return 0;
-        } else if (a > b) {
-            return 1;
-        } else {
-            return -1;
-        }
-    }
-
     public ResultSetBufferedIterator<T> bufferedIterator() {
         return new ResultSetBufferedIterator<>(this);
     }
@@ -259,8 +141,22 @@ public class ResultSet<T> implements Iterable<T> {
 
     public ResultSet<T> sort(Order order, int... columnIndices) throws JournalException {
         int size = size();
-        if (size > 0) {
-            quickSort(order, 0, size - 1, columnIndices);
+        if (size > 1) {
+            boolean[] descending = new boolean[columnIndices.length];
+            Arrays.fill(descending, order == Order.DESC);
+            JournalRecord rec = new JournalRecord(journal.getMetadata());
+            try (JournalRecordSorter sorter = new JournalRecordSorter(journal.getMetadata(), columnIndices, descending)) {
+                for (int i = 0; i < size; i++) {
+                    long rowID = rowIDs.get(i);
+                    rec.partition = journal.getPartition(Rows.toPartitionIndex(rowID), true);
+                    rec.rowid = Rows.toLocalRowID(rowID);
+                    sorter.add(rec);
+                }
+                sorter.sort();
+                for (int i = 0; sorter.hasNext(); i++) {
+                    rowIDs.set(i, sorter.next());
+                }
+            }
         }
         return this;
     }
@@ -281,46 +177,6 @@ public class ResultSet<T> implements Iterable<T> {
         return new ResultSet<>(journal, this.rowIDs.subset(lo, hi));
     }
 
-    void quickSort(Order order, int lo, int hi, int... columnIndices) throws JournalException {
-
-        if (lo >= hi) {
-            return;
-        }
-
-        int pIndex = lo + (hi - lo) / 2;
-        long pivot = rowIDs.get(pIndex);
-
-        int multiplier = 1;
-
-        if (order == Order.DESC) {
-            multiplier = -1;
-        }
-
-        int i = lo;
-        int j = hi;
-
-        while (i <= j) {
-
-            while (multiplier * compare(journal, columnIndices, rowIDs.get(i), pivot) < 0) {
-                i++;
-            }
-
-            while (multiplier * compare(journal, columnIndices, pivot, rowIDs.get(j)) < 0) {
-                j--;
-            }
-
-            if (i <= j) {
-                long temp = rowIDs.get(i);
-                rowIDs.set(i, rowIDs.get(j));
-                rowIDs.set(j, temp);
-                i++;
-                j--;
-            }
-        }
-        quickSort(order, lo, j, columnIndices);
-        quickSort(order, i, hi, columnIndices);
-    }
-
     private int[] getColumnIndexes(String... columnNames) {
         int columnIndices[] = new int[columnNames.length];
         for (int i = 0, columnNamesLength = columnNames.length; i < columnNamesLength; i++) {
@@ -23,7 +23,7 @@ import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.query.UnorderedResultSetBuilder;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import com.nfsdb.utils.Interval;
 import com.nfsdb.utils.Rows;
 
@@ -32,8 +32,8 @@ public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
     private final ObjList<String> filterSymbols;
     private final IntList filterSymbolKeys;
     final private String symbol;
-    private KVIndex index;
-    private KVIndex[] searchIndices;
+    private SymbolIndex index;
+    private SymbolIndex[] searchIndices;
 
     public QueryAllResultSetBuilder(Interval interval, String symbol, IntList symbolKeys, ObjList<String> filterSymbols, IntList filterSymbolKeys) {
         super(interval);
@@ -53,7 +53,7 @@ public class QueryAllResultSetBuilder<T> extends UnorderedResultSetBuilder<T> {
             for (int i = 0, sz = symbolKeys.size(); i < sz; i++) {
                 if (index.contains(symbolKeys.getQuick(i))) {
                     int n = filterSymbols.size();
-                    searchIndices = new KVIndex[n];
+                    searchIndices = new SymbolIndex[n];
                     for (int k = 0; k < n; k++) {
                         searchIndices[k] = partition.getIndexForColumn(filterSymbols.get(k));
                     }
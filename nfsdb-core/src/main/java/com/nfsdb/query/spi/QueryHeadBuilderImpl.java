@@ -26,7 +26,7 @@ import com.nfsdb.query.UnorderedResultSet;
 import com.nfsdb.query.UnorderedResultSetBuilder;
 import com.nfsdb.query.api.QueryHeadBuilder;
 import com.nfsdb.storage.IndexCursor;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.SymbolIndex;
 import com.nfsdb.storage.SymbolTable;
 import com.nfsdb.utils.Interval;
 import com.nfsdb.utils.Rows;
@@ -69,7 +69,7 @@ public class QueryHeadBuilderImpl<T> implements QueryHeadBuilder<T> {
         //noinspection ConstantConditions
         return journal.iteratePartitionsDesc(
                 new UnorderedResultSetBuilder<T>(interval) {
-                    private final KVIndex filterKVIndexes[] = new KVIndex[filterSymbolKeys.size()];
+                    private final SymbolIndex filterKVIndexes[] = new SymbolIndex[filterSymbolKeys.size()];
                     private final DirectLongList filterSymbolRows[] = new DirectLongList[filterSymbolKeys.size()];
                     private IntList keys = zone1Keys;
                     private IntList remainingKeys = zone2Keys;
@@ -82,7 +82,7 @@ public class QueryHeadBuilderImpl<T> implements QueryHeadBuilder<T> {
 
                     @Override
                     public void read(long lo, long hi) throws JournalException {
-                        KVIndex index = partition.getIndexForColumn(symbolColumnIndex);
+                        SymbolIndex index = partition.getIndexForColumn(symbolColumnIndex);
 
                         boolean filterOk = true;
                         for (int i = 0; i < filterSymbols.size(); i++) {
@@ -17,6 +17,7 @@
 package com.nfsdb.storage;
 
 import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.utils.Unsafe;
 
 import java.io.Closeable;
 import java.nio.ByteBuffer;
@@ -29,6 +30,18 @@ public abstract class AbstractColumn implements Closeable {
         this.mappedFile = storage;
     }
 
+    static void copyMemory(MemoryFile src, long srcOffset, MemoryFile dst, long dstOffset, long len) {
+        while (len > 0) {
+            long srcAddress = src.getAddress(srcOffset, 1);
+            long dstAddress = dst.getAddress(dstOffset, 1);
+            long n = Math.min(len, Math.min(src.getAddressSize(srcOffset), dst.getAddressSize(dstOffset)));
+            Unsafe.getUnsafe().copyMemory(srcAddress, dstAddress, n);
+            srcOffset += n;
+            dstOffset += n;
+            len -= n;
+        }
+    }
+
     public void close() {
         mappedFile.close();
     }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.storage;
+
+import com.nfsdb.utils.Unsafe;
+
+import java.util.Arrays;
+
+/**
+ * Growable stream of bits. Bits are packed into 64-bit words most significant bit first.
+ */
+final class BitStream {
+    private long words[] = new long[64];
+    private long pos = 0;
+
+    static long read(long address, long bitPos, int bits) {
+        if (bits == 0) {
+            return 0;
+        }
+        int off = (int) (bitPos & 63);
+        long w = Unsafe.getUnsafe().getLong(address + ((bitPos >>> 6) << 3));
+        int hi = 64 - off;
+        if (bits <= hi) {
+            return (w << off) >>> (64 - bits);
+        }
+        long w1 = Unsafe.getUnsafe().getLong(address + ((bitPos >>> 6) << 3) + 8);
+        return ((w << off) >>> (64 - bits)) | (w1 >>> (64 - bits + hi));
+    }
+
+    void clear() {
+        Arrays.fill(words, 0, wordCount(), 0);
+        pos = 0;
+    }
+
+    long getBitCount() {
+        return pos;
+    }
+
+    long getWord(int index) {
+        return words[index];
+    }
+
+    int wordCount() {
+        return (int) ((pos + 63) >>> 6);
+    }
+
+    void write(long value, int bits) {
+        if (bits == 0) {
+            return;
+        }
+
+        if (bits < 64) {
+            value &= (1L << bits) - 1;
+        }
+
+        int index = (int) (pos >>> 6);
+        if (index + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+
+        int free = 64 - (int) (pos & 63);
+        if (bits <= free) {
+            words[index] |= value << (free - bits);
+        } else {
+            words[index] |= value >>> (bits - free);
+            words[index + 1] |= value << (64 - bits + free);
+        }
+        pos += bits;
+    }
+}
@@ -0,0 +1,740 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.storage;
+
+import com.nfsdb.JournalMode;
+import com.nfsdb.collections.DirectLongList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Numbers;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.File;
+
+/**
+ * Index of int keys to row IDs, which keeps rows of each key as compressed bitmap. It is much smaller than KVIndex
+ * for columns with few distinct values, where every key has large share of rows.
+ * <p>
+ * Row IDs are split into chunks of 65536 rows. Rows of key in one chunk are stored in container, which is either
+ * array of low 16 bits of row IDs or, when there are more than 4096 of them, bitmap of 1024 longs. Array
+ * containers start small and are copied into container twice the size when full. Containers of key are linked
+ * in chunk order, so that bitmaps of several keys can be combined chunk by chunk, see BitmapIndexCursor.
+ * <p>
+ * Key entries are copied for every transaction the same way as in KVIndex. Containers are only appended to or
+ * replaced by their larger copy, which keeps rows of older transactions readable. Row IDs of key have to be
+ * added in ascending order.
+ */
+public class BitmapIndex implements SymbolIndex {
+
+    /*
+        struct kdata {
+            long reserved
+            long offsetOfTxBlock
+            struct txBlock {
+                long keyBlockSize
+                long maxValue
+                struct entry {
+                    long offsetOfTailContainer
+                    long rowCount
+                    long offsetOfHeadContainer
+                    int cardinalityOfTailContainer
+                    int reserved
+                }
+            }
+        }
+
+        struct container {
+            long offsetOfNext
+            long offsetOfPrev
+            int chunk
+            int capacity, -1 for bitmap
+            int cardinality
+            int reserved
+            short values[capacity] or long words[1024]
+        }
+    */
+
+    static final int CHUNK_BITS = 16;
+    static final int WORD_COUNT = 1024;
+    private static final int ENTRY_SIZE = 32;
+    private static final int NEXT = 0;
+    private static final int PREV = 8;
+    private static final int CHUNK = 16;
+    private static final int CAPACITY = 20;
+    private static final int CARDINALITY = 24;
+    private static final int HEADER_SIZE = 32;
+    private static final int BITMAP = -1;
+    private static final int MIN_ARRAY_CAPACITY = 16;
+    private static final int MAX_ARRAY_CAPACITY = 4096;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private final RevCursor cachedCursor = new RevCursor();
+    private final FwdCursor fwdCursor = new FwdCursor();
+    private final MemoryFile kData;
+    private final MemoryFile cData;
+    private final int initialCapacity;
+    private final long keyBlockAddressOffset = 8;
+    private long firstEntryOffset;
+    private long keyBlockSize;
+    private long keyBlockSizeOffset;
+    private long maxValue;
+    private boolean startTx = true;
+
+    public BitmapIndex(File baseName, long keyCountHint, long recordCountHint, int txCountHint, JournalMode mode, long txAddress) throws JournalException {
+        int keyCount = (int) Math.min(Integer.MAX_VALUE, Math.max(keyCountHint, 1));
+        this.kData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".bk"), ByteBuffers.getBitHint(8, keyCount * txCountHint), mode);
+
+        if (kData.getAppendOffset() > 0) {
+            this.keyBlockSizeOffset = txAddress == 0 ? getLong(kData, keyBlockAddressOffset) : txAddress;
+            this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+            this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+        } else if (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND) {
+            this.keyBlockSizeOffset = 16;
+            this.keyBlockSize = 0;
+            this.maxValue = 0;
+            putLong(kData, 0, 0);
+            putLong(kData, keyBlockAddressOffset, keyBlockSizeOffset);
+            putLong(kData, keyBlockSizeOffset, keyBlockSize);
+            putLong(kData, keyBlockSizeOffset + 8, maxValue);
+            kData.setAppendOffset(8 + 8 + 8 + 8);
+        } else {
+            throw new JournalException("Cannot open uninitialized index in read-only mode");
+        }
+        this.firstEntryOffset = keyBlockSizeOffset + 16;
+
+        this.cData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".bc"), ByteBuffers.getBitHint(HEADER_SIZE + WORD_COUNT * 8, keyCount), mode);
+        if (cData.getAppendOffset() == 0 && (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND)) {
+            // offset 0 stands for "no container"
+            cData.setAppendOffset(8);
+        }
+
+        // expected number of rows of key in chunk
+        long n = Math.min(recordCountHint, 1 << CHUNK_BITS) / keyCount;
+        this.initialCapacity = n >= MAX_ARRAY_CAPACITY ? BITMAP : Math.max(MIN_ARRAY_CAPACITY, Numbers.ceilPow2((int) n));
+    }
+
+    public static void delete(File base) {
+        Files.delete(new File(base.getParentFile(), base.getName() + ".bk"));
+        Files.delete(new File(base.getParentFile(), base.getName() + ".bc"));
+    }
+
+    /**
+     * Adds row ID to bitmap of key. Row IDs of key must be added in ascending order.
+     *
+     * @param key   value of key
+     * @param value row ID
+     */
+    public void add(int key, long value) {
+
+        if (startTx) {
+            tx();
+        }
+
+        long keyOffset = getKeyOffset(key);
+
+        if (keyOffset >= firstEntryOffset + keyBlockSize) {
+            long oldSize = keyBlockSize;
+            keyBlockSize = keyOffset + ENTRY_SIZE - firstEntryOffset;
+            // zero out entries of keys we skipped
+            if (keyBlockSize - oldSize > ENTRY_SIZE) {
+                Unsafe.getUnsafe().setMemory(
+                        kData.getAddress(firstEntryOffset + oldSize, (int) (keyBlockSize - oldSize - ENTRY_SIZE))
+                        , keyBlockSize - oldSize - ENTRY_SIZE
+                        , (byte) 0
+                );
+            }
+        }
+
+        long address = kData.getAddress(keyOffset, ENTRY_SIZE);
+        long container = Unsafe.getUnsafe().getLong(address);
+        long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+        int cardinality = Unsafe.getUnsafe().getInt(address + 24);
+        int chunk = (int) (value >>> CHUNK_BITS);
+        int low = (int) (value & CHUNK_MASK);
+
+        if (container == 0 || chunkOf(container) != chunk) {
+            if (container != 0 && chunkOf(container) > chunk) {
+                throw new JournalRuntimeException("Row %d is added out of order to key %d", value, key);
+            }
+            container = allocateContainer(keyOffset, container, chunk, initialCapacity);
+            cardinality = 0;
+        } else {
+            int capacity = capacityOf(container);
+            if (capacity != BITMAP && cardinality == capacity) {
+                container = copyContainer(keyOffset, container, cardinality, capacity < MAX_ARRAY_CAPACITY ? capacity * 2 : BITMAP);
+            }
+        }
+
+        if (capacityOf(container) == BITMAP) {
+            long a = cData.getAddress(container + HEADER_SIZE + (low >>> 6) * 8, 8);
+            Unsafe.getUnsafe().putLong(a, Unsafe.getUnsafe().getLong(a) | (1L << low));
+        } else {
+            Unsafe.getUnsafe().putShort(cData.getAddress(container + HEADER_SIZE + cardinality * 2, 2), (short) low);
+        }
+        Unsafe.getUnsafe().putInt(cData.getAddress(container + CARDINALITY, 4), cardinality + 1);
+
+        address = kData.getAddress(keyOffset, ENTRY_SIZE);
+        Unsafe.getUnsafe().putLong(address + 8, rowCount + 1);
+        Unsafe.getUnsafe().putInt(address + 24, cardinality + 1);
+
+        if (maxValue <= value) {
+            maxValue = value + 1;
+        }
+    }
+
+    public void close() {
+        cData.close();
+        kData.close();
+    }
+
+    public void commit() {
+        if (!startTx) {
+            putLong(kData, keyBlockSizeOffset, keyBlockSize);
+            putLong(kData, keyBlockSizeOffset + 8, maxValue);
+            kData.setAppendOffset(firstEntryOffset + keyBlockSize);
+            putLong(kData, keyBlockAddressOffset, keyBlockSizeOffset);
+            startTx = true;
+        }
+    }
+
+    /**
+     * Removes empty space at end of index files.
+     *
+     * @throws JournalException
+     */
+    public void compact() throws JournalException {
+        kData.compact();
+        cData.compact();
+    }
+
+    public boolean contains(int key) {
+        return getValueCount(key) > 0;
+    }
+
+    public IndexCursor cursor(int key) {
+        return cachedCursor.setKey(key);
+    }
+
+    public void force() {
+        kData.force();
+        cData.force();
+    }
+
+    public IndexCursor fwdCursor(int key) {
+        return fwdCursor.setKey(key);
+    }
+
+    public long getTxAddress() {
+        return keyBlockSizeOffset;
+    }
+
+    public void setTxAddress(long txAddress) {
+        if (txAddress == 0) {
+            refresh();
+        } else {
+            this.keyBlockSizeOffset = txAddress;
+            this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+            this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+            this.firstEntryOffset = keyBlockSizeOffset + 16;
+        }
+    }
+
+    public int getValueCount(int key) {
+        long keyOffset = getKeyOffset(key);
+        if (keyOffset >= firstEntryOffset + keyBlockSize) {
+            return 0;
+        }
+        return (int) getLong(kData, keyOffset + 8);
+    }
+
+    /**
+     * Finds i-th row ID of key. Cost of lookup grows with number of chunks between i-th and last row ID.
+     *
+     * @param key value of key
+     * @param i   index of row ID
+     * @return row ID
+     */
+    public long getValueQuick(int key, int i) {
+        long address = keyAddressOrError(key);
+        long container = Unsafe.getUnsafe().getLong(address);
+        long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+        int cardinality = Unsafe.getUnsafe().getInt(address + 24);
+
+        if (i >= rowCount) {
+            throw new JournalRuntimeException("Index out of bounds: %d, max: %d", i, rowCount - 1);
+        }
+
+        long before = rowCount - cardinality;
+        while (i < before) {
+            container = prevOf(container);
+            before -= cardinalityOf(container);
+        }
+        return valueOf(container, (int) (i - before));
+    }
+
+    public DirectLongList getValues(int key) {
+        DirectLongList result = new DirectLongList();
+        getValues(key, result);
+        return result;
+    }
+
+    public void getValues(int key, DirectLongList values) {
+        int n = getValueCount(key);
+        values.reset(n);
+        values.setPos(n);
+        IndexCursor cursor = fwdCursor.setKey(key);
+        for (int i = 0; cursor.hasNext(); i++) {
+            values.set(i, cursor.next());
+        }
+    }
+
+    public long lastValue(int key) {
+        long address = keyAddressOrError(key);
+        return valueOf(Unsafe.getUnsafe().getLong(address), Unsafe.getUnsafe().getInt(address + 24) - 1);
+    }
+
+    public IndexCursor newFwdCursor(int key) {
+        return new FwdCursor().setKey(key);
+    }
+
+    public long size() {
+        return maxValue;
+    }
+
+    public void truncate(long size) {
+        long sz = 0;
+        for (long offset = firstEntryOffset, hi = firstEntryOffset + keyBlockSize; offset < hi; offset += ENTRY_SIZE) {
+            long address = kData.getAddress(offset, ENTRY_SIZE);
+            long container = Unsafe.getUnsafe().getLong(address);
+            long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+            int cardinality = Unsafe.getUnsafe().getInt(address + 24);
+
+            while (container != 0) {
+                int k = rank(container, cardinality, size);
+                if (k == 0) {
+                    // discard whole container
+                    rowCount -= cardinality;
+                    container = prevOf(container);
+                    cardinality = container == 0 ? 0 : cardinalityOf(container);
+                    continue;
+                }
+
+                if (k < cardinality) {
+                    rowCount -= cardinality - k;
+                    cardinality = k;
+                    if (capacityOf(container) == BITMAP) {
+                        clearFrom(container, (int) (size & CHUNK_MASK));
+                    }
+                    Unsafe.getUnsafe().putInt(cData.getAddress(container + CARDINALITY, 4), k);
+                }
+
+                long last = valueOf(container, k - 1);
+                if (last >= sz) {
+                    sz = last + 1;
+                }
+                break;
+            }
+
+            address = kData.getAddress(offset, ENTRY_SIZE);
+            Unsafe.getUnsafe().putLong(address, container);
+            Unsafe.getUnsafe().putLong(address + 8, rowCount);
+            Unsafe.getUnsafe().putInt(address + 24, cardinality);
+        }
+
+        maxValue = sz;
+        commit();
+    }
+
+    /**
+     * Keeps n lowest set bits of word.
+     */
+    static long keepLowest(long word, int n) {
+        while (Long.bitCount(word) > n) {
+            word &= ~Long.highestOneBit(word);
+        }
+        return word;
+    }
+
+    int cardinalityOf(long container) {
+        return Unsafe.getUnsafe().getInt(cData.getAddress(container + CARDINALITY, 4));
+    }
+
+    int chunkOf(long container) {
+        return Unsafe.getUnsafe().getInt(cData.getAddress(container + CHUNK, 4));
+    }
+
+    long headOf(int key) {
+        return getLong(kData, getKeyOffset(key) + 16);
+    }
+
+    long nextOf(long container) {
+        return getLong(cData, container + NEXT);
+    }
+
+    /**
+     * Sets bits of first n rows of container in words of chunk.
+     */
+    void orInto(long container, int n, long[] words) {
+        if (capacityOf(container) == BITMAP) {
+            for (int i = 0; i < WORD_COUNT && n > 0; i++) {
+                long w = getLong(cData, container + HEADER_SIZE + i * 8);
+                int c = Long.bitCount(w);
+                if (c > n) {
+                    w = keepLowest(w, n);
+                }
+                words[i] |= w;
+                n -= c;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                int low = getLow(container, i);
+                words[low >>> 6] |= 1L << low;
+            }
+        }
+    }
+
+    private long allocateContainer(long keyOffset, long prev, int chunk, int capacity) {
+        long size = HEADER_SIZE + (capacity == BITMAP ? WORD_COUNT * 8 : capacity * 2);
+        long container = cData.getAppendOffset();
+        cData.setAppendOffset(container + size);
+
+        long a = cData.getAddress(container, HEADER_SIZE);
+        Unsafe.getUnsafe().putLong(a + NEXT, 0);
+        Unsafe.getUnsafe().putLong(a + PREV, prev);
+        Unsafe.getUnsafe().putInt(a + CHUNK, chunk);
+        Unsafe.getUnsafe().putInt(a + CAPACITY, capacity);
+        Unsafe.getUnsafe().putInt(a + CARDINALITY, 0);
+        Unsafe.getUnsafe().putInt(a + CARDINALITY + 4, 0);
+        if (capacity == BITMAP) {
+            Unsafe.getUnsafe().setMemory(cData.getAddress(container + HEADER_SIZE, WORD_COUNT * 8), WORD_COUNT * 8, (byte) 0);
+        }
+
+        long address = kData.getAddress(keyOffset, ENTRY_SIZE);
+        Unsafe.getUnsafe().putLong(address, container);
+        if (prev == 0) {
+            Unsafe.getUnsafe().putLong(address + 16, container);
+        } else {
+            putLong(cData, prev + NEXT, container);
+        }
+        return container;
+    }
+
+    private int capacityOf(long container) {
+        return Unsafe.getUnsafe().getInt(cData.getAddress(container + CAPACITY, 4));
+    }
+
+    /**
+     * Clears bits from position lo to end of bitmap container.
+     */
+    private void clearFrom(long container, int lo) {
+        int w = lo >>> 6;
+        long a = cData.getAddress(container + HEADER_SIZE + w * 8, 8);
+        Unsafe.getUnsafe().putLong(a, Unsafe.getUnsafe().getLong(a) & ((1L << (lo & 63)) - 1));
+        for (w++; w < WORD_COUNT; w++) {
+            putLong(cData, container + HEADER_SIZE + w * 8, 0);
+        }
+    }
+
+    /**
+     * Replaces full array container with larger container, which takes its place in list of containers of key.
+     * Old container is left intact for readers of older transactions.
+     */
+    private long copyContainer(long keyOffset, long container, int cardinality, int capacity) {
+        long copy = allocateContainer(keyOffset, prevOf(container), chunkOf(container), capacity);
+        if (capacity == BITMAP) {
+            for (int i = 0; i < cardinality; i++) {
+                int low = getLow(container, i);
+                long a = cData.getAddress(copy + HEADER_SIZE + (low >>> 6) * 8, 8);
+                Unsafe.getUnsafe().putLong(a, Unsafe.getUnsafe().getLong(a) | (1L << low));
+            }
+        } else {
+            for (int i = 0; i < cardinality; i++) {
+                Unsafe.getUnsafe().putShort(cData.getAddress(copy + HEADER_SIZE + i * 2, 2), (short) getLow(container, i));
+            }
+        }
+        Unsafe.getUnsafe().putInt(cData.getAddress(copy + CARDINALITY, 4), cardinality);
+        return copy;
+    }
+
+    private long getKeyOffset(long key) {
+        return firstEntryOffset + (key + 1) * ENTRY_SIZE;
+    }
+
+    private long getLong(MemoryFile storage, long offset) {
+        return Unsafe.getUnsafe().getLong(storage.getAddress(offset, 8));
+    }
+
+    private int getLow(long container, int i) {
+        return Unsafe.getUnsafe().getShort(cData.getAddress(container + HEADER_SIZE + i * 2, 2)) & CHUNK_MASK;
+    }
+
+    private long keyAddressOrError(int key) {
+        long keyOffset = getKeyOffset(key);
+        if (keyOffset >= firstEntryOffset + keyBlockSize) {
+            throw new JournalRuntimeException("Key doesn't exist: %d", key);
+        }
+        return kData.getAddress(keyOffset, ENTRY_SIZE);
+    }
+
+    private long prevOf(long container) {
+        return getLong(cData, container + PREV);
+    }
+
+    private void putLong(MemoryFile storage, long offset, long value) {
+        Unsafe.getUnsafe().putLong(storage.getAddress(offset, 8), value);
+    }
+
+    /**
+     * @return number of first n rows of container, which are less than value
+     */
+    private int rank(long container, int n, long value) {
+        long base = (long) chunkOf(container) << CHUNK_BITS;
+        if (base >= value) {
+            return 0;
+        }
+        if (value - base > CHUNK_MASK) {
+            return n;
+        }
+
+        int lo = (int) (value - base);
+        int r = 0;
+        if (capacityOf(container) == BITMAP) {
+            for (int i = 0, w = lo >>> 6; i < w && r < n; i++) {
+                r += Long.bitCount(getLong(cData, container + HEADER_SIZE + i * 8));
+            }
+            if (r < n) {
+                r += Long.bitCount(getLong(cData, container + HEADER_SIZE + (lo >>> 6) * 8) & ((1L << (lo & 63)) - 1));
+            }
+        } else {
+            while (r < n && getLow(container, r) < lo) {
+                r++;
+            }
+        }
+        return Math.min(r, n);
+    }
+
+    private void refresh() {
+        commit();
+        this.keyBlockSizeOffset = getLong(kData, keyBlockAddressOffset);
+        this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
+        this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
+        this.firstEntryOffset = keyBlockSizeOffset + 16;
+    }
+
+    private void tx() {
+        if (startTx) {
+            long srcOffset = getLong(kData, keyBlockAddressOffset);
+            this.keyBlockSizeOffset = kData.getAppendOffset();
+            this.firstEntryOffset = keyBlockSizeOffset + 16;
+
+            long dstOffset = keyBlockSizeOffset;
+            int size = (int) (keyBlockSize + 8 + 8);
+            while (size > 0) {
+                long src = kData.getAddress(srcOffset, 1);
+                int srcLen = kData.getAddressSize(srcOffset);
+
+                long dst = kData.getAddress(dstOffset, 1);
+                int dstLen = kData.getAddressSize(dstOffset);
+
+                int len = Math.min(size, Math.min(srcLen, dstLen));
+                Unsafe.getUnsafe().copyMemory(src, dst, len);
+                size -= len;
+                srcOffset += len;
+                dstOffset += len;
+            }
+            keyBlockSize = dstOffset - firstEntryOffset;
+        }
+        startTx = false;
+    }
+
+    /**
+     * @return i-th row ID of container
+     */
+    private long valueOf(long container, int i) {
+        long base = (long) chunkOf(container) << CHUNK_BITS;
+        if (capacityOf(container) != BITMAP) {
+            return base | getLow(container, i);
+        }
+
+        for (int w = 0; w < WORD_COUNT; w++) {
+            long word = getLong(cData, container + HEADER_SIZE + w * 8);
+            int c = Long.bitCount(word);
+            if (i < c) {
+                for (; i > 0; i--) {
+                    word &= word - 1;
+                }
+                return base | (w << 6 | Long.numberOfTrailingZeros(word));
+            }
+            i -= c;
+        }
+        throw new JournalRuntimeException("Container has fewer rows than expected. Corrupt index? : %s", this);
+    }
+
+    private class FwdCursor implements IndexCursor {
+        private long size;
+        private long remaining;
+        private long container;
+        private int containerRemaining;
+        private long base;
+        private boolean bitmap;
+        private int pos;
+        private int wordIndex;
+        private long word;
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        public long next() {
+            if (containerRemaining == 0) {
+                of(nextOf(container));
+            }
+            containerRemaining--;
+            remaining--;
+
+            if (!bitmap) {
+                return base | getLow(container, pos++);
+            }
+
+            while (word == 0) {
+                word = getLong(cData, container + HEADER_SIZE + (++wordIndex) * 8);
+            }
+            int bit = Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            return base | (wordIndex << 6 | bit);
+        }
+
+        public long size() {
+            return size;
+        }
+
+        FwdCursor setKey(int key) {
+            this.size = 0;
+            this.remaining = 0;
+
+            if (key < 0) {
+                return this;
+            }
+
+            long keyOffset = getKeyOffset(key);
+            if (keyOffset >= firstEntryOffset + keyBlockSize) {
+                return this;
+            }
+
+            long address = kData.getAddress(keyOffset, ENTRY_SIZE);
+            this.size = this.remaining = Unsafe.getUnsafe().getLong(address + 8);
+            if (size > 0) {
+                of(Unsafe.getUnsafe().getLong(address + 16));
+            }
+            return this;
+        }
+
+        private void of(long container) {
+            this.container = container;
+            // tail container can have more rows than transaction we are reading
+            this.containerRemaining = (int) Math.min(cardinalityOf(container), remaining);
+            this.base = (long) chunkOf(container) << CHUNK_BITS;
+            this.bitmap = capacityOf(container) == BITMAP;
+            this.pos = 0;
+            this.wordIndex = -1;
+            this.word = 0;
+        }
+    }
+
+    private class RevCursor implements IndexCursor {
+        private long size;
+        private long remaining;
+        private long container;
+        private int containerRemaining;
+        private long base;
+        private boolean bitmap;
+        private int wordIndex;
+        private long word;
+
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        public long next() {
+            if (containerRemaining == 0) {
+                long prev = prevOf(container);
+                of(prev, cardinalityOf(prev));
+            }
+            remaining--;
+
+            if (!bitmap) {
+                return base | getLow(container, --containerRemaining);
+            }
+
+            containerRemaining--;
+            while (word == 0) {
+                word = getLong(cData, container + HEADER_SIZE + (--wordIndex) * 8);
+            }
+            long bit = Long.highestOneBit(word);
+            word &= ~bit;
+            return base | (wordIndex << 6 | Long.numberOfTrailingZeros(bit));
+        }
+
+        public long size() {
+            return size;
+        }
+
+        RevCursor setKey(int key) {
+            this.size = 0;
+            this.remaining = 0;
+
+            if (key < 0) {
+                return this;
+            }
+
+            long keyOffset = getKeyOffset(key);
+            if (keyOffset >= firstEntryOffset + keyBlockSize) {
+                return this;
+            }
+
+            long address = kData.getAddress(keyOffset, ENTRY_SIZE);
+            this.size = this.remaining = Unsafe.getUnsafe().getLong(address + 8);
+            if (size > 0) {
+                of(Unsafe.getUnsafe().getLong(address), Unsafe.getUnsafe().getInt(address + 24));
+            }
+            return this;
+        }
+
+        private void of(long container, int cardinality) {
+            this.container = container;
+            this.containerRemaining = cardinality;
+            this.base = (long) chunkOf(container) << CHUNK_BITS;
+            this.bitmap = capacityOf(container) == BITMAP;
+
+            if (bitmap) {
+                // bits above first "cardinality" rows belong to newer transactions, position cursor at last row we can see
+                int n = cardinality;
+                for (int w = 0; w < WORD_COUNT; w++) {
+                    long v = getLong(cData, container + HEADER_SIZE + w * 8);
+                    int c = Long.bitCount(v);
+                    if (c >= n) {
+                        this.wordIndex = w;
+                        this.word = keepLowest(v, n);
+                        return;
+                    }
+                    n -= c;
+                }
+            }
+        }
+    }
+}
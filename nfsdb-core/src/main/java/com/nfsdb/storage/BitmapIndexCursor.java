@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.storage;
+
+import com.nfsdb.collections.IntList;
+import com.nfsdb.collections.ObjList;
+
+import java.util.Arrays;
+
+/**
+ * Intersection of unions of bitmaps of keys. Keys are added to groups, rows of keys in same group are
+ * combined with OR and groups are combined with AND, for example:
+ * <pre>
+ * cursor.clear().of(side, buy).and().of(venue, a).of(venue, b).prepare(lo, hi)
+ * </pre>
+ * returns rows where side = buy and venue in (a, b). Bitmaps can belong to indexes of different columns of
+ * same partition.
+ * <p>
+ * Bitmaps are combined one chunk of 65536 rows at a time. Chunk is skipped without reading its containers
+ * when any group has no rows in it.
+ */
+public class BitmapIndexCursor implements IndexCursor {
+    private static final int EXHAUSTED = Integer.MAX_VALUE;
+    private final long words[] = new long[BitmapIndex.WORD_COUNT];
+    private final long groupWords[] = new long[BitmapIndex.WORD_COUNT];
+    private final ObjList<Walker> walkers = new ObjList<>();
+    private final IntList groups = new IntList();
+    private int walkerCount;
+    private long lo;
+    private long hi;
+    private int chunk;
+    private int hiChunk;
+    private long base;
+    private int wordIndex;
+    private long word;
+    private long size;
+
+    public BitmapIndexCursor() {
+        clear();
+    }
+
+    /**
+     * Starts new group of keys. Rows of groups are intersected.
+     *
+     * @return this cursor
+     */
+    public BitmapIndexCursor and() {
+        groups.add(walkerCount);
+        return this;
+    }
+
+    public BitmapIndexCursor clear() {
+        groups.clear();
+        groups.add(0);
+        walkerCount = 0;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (word == 0) {
+            if (++wordIndex == BitmapIndex.WORD_COUNT) {
+                if (!nextChunk()) {
+                    wordIndex--;
+                    return false;
+                }
+                wordIndex = 0;
+            }
+            word = words[wordIndex];
+        }
+        return true;
+    }
+
+    @Override
+    public long next() {
+        int bit = Long.numberOfTrailingZeros(word);
+        word &= word - 1;
+        return base | (wordIndex << 6 | bit);
+    }
+
+    /**
+     * Estimate of row count, which is number of rows of smallest group.
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Adds key to current group. Rows of keys in group are combined.
+     *
+     * @param index bitmap index of column
+     * @param key   value of key
+     * @return this cursor
+     */
+    public BitmapIndexCursor of(BitmapIndex index, int key) {
+        Walker w = walkers.getQuiet(walkerCount);
+        if (w == null) {
+            walkers.extendAndSet(walkerCount, w = new Walker());
+        }
+        w.index = index;
+        w.key = key;
+        walkerCount++;
+        return this;
+    }
+
+    /**
+     * Positions cursor before first row in lo..hi-1 range.
+     *
+     * @param lo first row ID, inclusive
+     * @param hi last row ID, exclusive
+     * @return this cursor
+     */
+    public BitmapIndexCursor prepare(long lo, long hi) {
+        this.lo = lo;
+        this.hi = hi;
+        this.chunk = (int) (lo >>> BitmapIndex.CHUNK_BITS) - 1;
+        this.hiChunk = hi > lo ? (int) ((hi - 1) >>> BitmapIndex.CHUNK_BITS) : -1;
+        this.wordIndex = BitmapIndex.WORD_COUNT - 1;
+        this.word = 0;
+
+        this.size = Long.MAX_VALUE;
+        for (int g = 0, n = groups.size(); g < n; g++) {
+            long s = 0;
+            for (int i = groups.getQuick(g), k = groupEnd(g); i < k; i++) {
+                s += walkers.getQuick(i).of(chunk + 1);
+            }
+            size = Math.min(size, s);
+        }
+        return this;
+    }
+
+    private int groupEnd(int g) {
+        return g + 1 < groups.size() ? groups.getQuick(g + 1) : walkerCount;
+    }
+
+    private boolean nextChunk() {
+        int c = chunk + 1;
+        int n = groups.size();
+
+        // find first chunk where every group has rows
+        boolean aligned = false;
+        while (!aligned) {
+            if (c > hiChunk) {
+                return false;
+            }
+            aligned = true;
+            for (int g = 0; g < n; g++) {
+                int min = EXHAUSTED;
+                for (int i = groups.getQuick(g), k = groupEnd(g); i < k; i++) {
+                    min = Math.min(min, walkers.getQuick(i).skipTo(c));
+                }
+                if (min == EXHAUSTED) {
+                    return false;
+                }
+                if (min > c) {
+                    c = min;
+                    aligned = false;
+                }
+            }
+        }
+
+        for (int g = 0; g < n; g++) {
+            long dst[] = g == 0 ? words : groupWords;
+            Arrays.fill(dst, 0);
+            for (int i = groups.getQuick(g), k = groupEnd(g); i < k; i++) {
+                walkers.getQuick(i).orInto(c, dst);
+            }
+            if (g > 0) {
+                for (int w = 0; w < BitmapIndex.WORD_COUNT; w++) {
+                    words[w] &= groupWords[w];
+                }
+            }
+        }
+
+        // clip rows outside of lo..hi-1
+        long chunkLo = (long) c << BitmapIndex.CHUNK_BITS;
+        if (lo > chunkLo) {
+            clearBelow((int) (lo - chunkLo));
+        }
+        if (hi - chunkLo <= (1 << BitmapIndex.CHUNK_BITS)) {
+            clearFrom((int) (hi - chunkLo));
+        }
+
+        this.chunk = c;
+        this.base = chunkLo;
+        return true;
+    }
+
+    private void clearBelow(int pos) {
+        int w = pos >>> 6;
+        Arrays.fill(words, 0, w, 0);
+        words[w] &= -1L << (pos & 63);
+    }
+
+    private void clearFrom(int pos) {
+        int w = pos >>> 6;
+        if (w < BitmapIndex.WORD_COUNT) {
+            words[w] &= (1L << (pos & 63)) - 1;
+            Arrays.fill(words, w + 1, BitmapIndex.WORD_COUNT, 0);
+        }
+    }
+
+    private static class Walker {
+        private BitmapIndex index;
+        private int key;
+        private long container;
+        private long remaining;
+        private int chunk;
+
+        /**
+         * Positions walker at first container of key at or after given chunk.
+         *
+         * @return number of rows from that container onwards
+         */
+        long of(int chunk) {
+            this.remaining = index.getValueCount(key);
+            if (remaining > 0) {
+                this.container = index.headOf(key);
+                this.chunk = index.chunkOf(container);
+            } else {
+                this.chunk = EXHAUSTED;
+            }
+            skipTo(chunk);
+            return remaining;
+        }
+
+        void orInto(int chunk, long[] words) {
+            if (this.chunk == chunk) {
+                index.orInto(container, (int) Math.min(index.cardinalityOf(container), remaining), words);
+            }
+        }
+
+        int skipTo(int chunk) {
+            while (this.chunk < chunk) {
+                remaining -= Math.min(index.cardinalityOf(container), remaining);
+                if (remaining == 0) {
+                    this.chunk = EXHAUSTED;
+                    break;
+                }
+                container = index.nextOf(container);
+                this.chunk = index.chunkOf(container);
+            }
+            return this.chunk;
+        }
+    }
+}
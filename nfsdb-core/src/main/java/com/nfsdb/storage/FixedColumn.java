@@ -26,6 +26,62 @@ public class FixedColumn extends AbstractColumn {
         this.width = width;
     }
 
+    /**
+     * Appends rows from lo (inclusive) to hi (exclusive) of column of same width. Data is copied as contiguous
+     * memory, page by page. Appended rows become visible after commit().
+     *
+     * @param src source column
+     * @param lo  first row to copy
+     * @param hi  row after last row to copy
+     */
+    public void append(FixedColumn src, long lo, long hi) {
+        long appendOffset = getOffset();
+        long len = (hi - lo) * width;
+        if (src instanceof SealedColumn) {
+            // sealed column memory is compressed, values have to be decoded one by one
+            long offset = appendOffset;
+            for (long r = lo; r < hi; r++) {
+                long address = mappedFile.getAddress(offset, width);
+                switch (width) {
+                    case 1:
+                        Unsafe.getUnsafe().putByte(address, src.getByte(r));
+                        break;
+                    case 2:
+                        Unsafe.getUnsafe().putShort(address, src.getShort(r));
+                        break;
+                    case 4:
+                        Unsafe.getUnsafe().putInt(address, src.getInt(r));
+                        break;
+                    default:
+                        Unsafe.getUnsafe().putLong(address, src.getLong(r));
+                        break;
+                }
+                offset += width;
+            }
+        } else {
+            copyMemory(src.mappedFile, src.getOffset(lo), mappedFile, appendOffset, len);
+        }
+        preCommit(appendOffset + len);
+    }
+
+    /**
+     * Appends symbol keys from lo (inclusive) to hi (exclusive) of another symbol column translating them
+     * with key map.
+     *
+     * @param src source column
+     * @param lo  first row to copy
+     * @param hi  row after last row to copy
+     * @param map translation of source keys to keys of this column
+     */
+    public void append(FixedColumn src, long lo, long hi, SymbolKeyMap map) {
+        long offset = getOffset();
+        for (long r = lo; r < hi; r++) {
+            Unsafe.getUnsafe().putInt(mappedFile.getAddress(offset, 4), map.get(src.getInt(r)));
+            offset += 4;
+        }
+        preCommit(offset);
+    }
+
     public long bsearchAny(long val, BSearchType type, long lo, long hi) {
         long _lo = lo;
         long _hi = hi;
@@ -78,6 +134,26 @@ public class FixedColumn extends AbstractColumn {
         return res;
     }
 
+    /**
+     * Copies values of consecutive rows to memory.
+     *
+     * @param lo      first row to copy
+     * @param count   number of rows to copy
+     * @param address memory to copy values to, it has to fit count * width bytes
+     */
+    public void copyTo(long lo, int count, long address) {
+        long offset = getOffset(lo);
+        long len = ((long) count) * width;
+        while (len > 0) {
+            long src = mappedFile.getAddress(offset, 1);
+            long n = Math.min(len, mappedFile.getAddressSize(offset));
+            Unsafe.getUnsafe().copyMemory(src, address, n);
+            offset += n;
+            address += n;
+            len -= n;
+        }
+    }
+
     public void copy(Object obj, long offset) {
         Unsafe.getUnsafe().copyMemory(obj, offset, null, getAddress(), width);
     }
@@ -163,6 +239,15 @@ public class FixedColumn extends AbstractColumn {
         Unsafe.getUnsafe().putShort(getAddress(), value);
     }
 
+    void appendLongs(FixedColumn src, long lo, long hi, long delta) {
+        long offset = getOffset();
+        for (long r = lo; r < hi; r++) {
+            Unsafe.getUnsafe().putLong(mappedFile.getAddress(offset, 8), src.getLong(r) + delta);
+            offset += 8;
+        }
+        preCommit(offset);
+    }
+
     long getAddress() {
         long appendOffset = mappedFile.getAppendOffset();
         preCommit(appendOffset + width);
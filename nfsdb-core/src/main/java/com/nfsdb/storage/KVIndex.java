@@ -25,35 +25,50 @@ import com.nfsdb.utils.Files;
 import com.nfsdb.utils.Numbers;
 import com.nfsdb.utils.Unsafe;
 
-import java.io.Closeable;
 import java.io.File;
 
-public class KVIndex implements Closeable {
+/**
+ * Index of int keys to lists of long values, typically row IDs.
+ * <p>
+ * Values of each key are stored in linked list of row blocks. Row blocks of key grow geometrically, starting
+ * from small block, so that rare keys do not waste space and frequent keys have few large blocks to hop
+ * through. Length of row block is stored in block trailer. Index files created before blocks were adaptive
+ * have fixed length of row block, which is stored in file header.
+ * <p>
+ * compact() rewrites values of every key, which spans more than one block, into single block, so that
+ * cursors of sealed partitions read values sequentially.
+ */
+public class KVIndex implements SymbolIndex {
 
     /*
         storage for row count and offset
-        block structure in kData is [int, long] for header and [long, long] for [offset, count]
+        block structure in kData is [long, long] for header and [long, long, long, long] for entries
         struct kdata{
-           int rowBlockSize
+           long rowBlockLen, negative when row blocks are adaptive
            long firstEntryOffset
            struct kdataEntry {
                  long offsetOfTail
                  long rowCount
+                 long offsetOfHead
+                 long rowCountOfTail, adaptive row blocks only
            }
         }
     */
 
     private static final int ENTRY_SIZE = 32;
+    private static final int MAX_INITIAL_ROW_BLOCK_LEN = 16;
+    private static final int MAX_ROW_BLOCK_LEN = 64 * 1024;
     private final RevIndexCursor cachedCursor = new RevIndexCursor();
     private final FwdIndexCursor fwdIndexCursor = new FwdIndexCursor();
-    private final int rowBlockSize;
+    // length of first row block for adaptive index, length of every row block otherwise
     private final int rowBlockLen;
+    private final boolean adaptive;
+    // size of row block trailer, offset of row block points to the end of trailer
+    private final int trailerSize;
     private final MemoryFile kData;
     // storage for rows
-    // block structure is [ rowid1, rowid2 ..., rowidn, prevBlockOffset]
+    // block structure is [ rowid1, rowid2 ..., rowidn, (rowBlockLen), nextBlockOffset, prevBlockOffset]
     private final MemoryFile rData;
-    private final int mask;
-    private final int bits;
     private long firstEntryOffset;
     private long keyBlockSize;
     private long keyBlockAddressOffset;
@@ -66,18 +81,20 @@ public class KVIndex implements Closeable {
         this.kData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".k"), ByteBuffers.getBitHint(8, keyCount * txCountHint), mode);
         this.keyBlockAddressOffset = 8;
 
+        int l = (int) (recordCountHint / keyCount);
+        int hintLen = l < 1 ? 1 : Numbers.ceilPow2(l);
+        long len;
         if (kData.getAppendOffset() > 0) {
-            this.rowBlockLen = (int) getLong(kData, 0);
+            len = getLong(kData, 0);
             this.keyBlockSizeOffset = txAddress == 0 ? getLong(kData, keyBlockAddressOffset) : txAddress;
             this.keyBlockSize = getLong(kData, keyBlockSizeOffset);
             this.maxValue = getLong(kData, keyBlockSizeOffset + 8);
         } else if (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND) {
-            int l = (int) (recordCountHint / keyCount);
-            this.rowBlockLen = l < 1 ? 1 : Numbers.ceilPow2(l);
+            len = -Math.min(MAX_INITIAL_ROW_BLOCK_LEN, hintLen);
             this.keyBlockSizeOffset = 16;
             this.keyBlockSize = 0;
             this.maxValue = 0;
-            putLong(kData, 0, this.rowBlockLen); // 8
+            putLong(kData, 0, len); // 8
             putLong(kData, keyBlockAddressOffset, keyBlockSizeOffset); // 8
             putLong(kData, keyBlockSizeOffset, keyBlockSize); // 8
             putLong(kData, keyBlockSizeOffset + 8, maxValue); // 8
@@ -86,13 +103,11 @@ public class KVIndex implements Closeable {
             throw new JournalException("Cannot open uninitialized index in read-only mode");
         }
 
-        // x & mask = x % rowBlockLen
-        this.mask = rowBlockLen - 1;
-        // x >>> bits = x / rowBlockLen
-        this.bits = 31 - Integer.numberOfLeadingZeros(rowBlockLen);
+        this.adaptive = len < 0;
+        this.rowBlockLen = (int) Math.abs(len);
+        this.trailerSize = adaptive ? 24 : 16;
         this.firstEntryOffset = keyBlockSizeOffset + 16;
-        this.rowBlockSize = rowBlockLen * 8 + 16;
-        this.rData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".r"), ByteBuffers.getBitHint(rowBlockSize, keyCount), mode);
+        this.rData = new MemoryFile(new File(baseName.getParentFile(), baseName.getName() + ".r"), ByteBuffers.getBitHint(hintLen * 8 + trailerSize, keyCount), mode);
     }
 
     public static void delete(File base) {
@@ -135,12 +150,23 @@ public class KVIndex implements Closeable {
         long address = kData.getAddress(keyOffset, ENTRY_SIZE);
         long rowBlockOffset = Unsafe.getUnsafe().getLong(address);
         long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+        int len = 0;
+        int cellIndex = 0;
+
+        if (rowBlockOffset != 0) {
+            len = blockLen(rowBlockOffset);
+            cellIndex = tailRowCount(address, rowCount);
+        }
 
-        int cellIndex = (int) (rowCount & mask);
-        if (rowBlockOffset == 0 || cellIndex == 0) {
-            rowBlockOffset = allocateRowBlock(address, rowBlockOffset);
+        if (rowBlockOffset == 0 || cellIndex == len) {
+            len = rowBlockOffset == 0 || !adaptive ? rowBlockLen : Math.max(len, Math.min(len * 2, MAX_ROW_BLOCK_LEN));
+            rowBlockOffset = allocateRowBlock(address, rowBlockOffset, len);
+            cellIndex = 0;
+        }
+        putLong(rData, rowsOffset(rowBlockOffset, len) + 8 * cellIndex, value);
+        if (adaptive) {
+            Unsafe.getUnsafe().putLong(address + 24, cellIndex + 1);
         }
-        Unsafe.getUnsafe().putLong(rData.getAddress(rowBlockOffset - rowBlockSize + 8 * cellIndex, 8), value);
         Unsafe.getUnsafe().putLong(address + 8, rowCount + 1);
 
         if (maxValue <= value) {
@@ -167,12 +193,19 @@ public class KVIndex implements Closeable {
     }
 
     /**
-     * Removes empty space at end of index files. This is useful if your chosen file copy routine does not support
-     * sparse files, e.g. where size of file content significantly smaller then file size in directory catalogue.
+     * Rewrites values of every key, which spans more than one row block, into single row block and then
+     * removes empty space at end of index files. Rewritten blocks are appended to row file and committed
+     * as new transaction, so readers of earlier transactions can still read blocks they refer to.
+     * <p>
+     * Removing empty space is useful if your chosen file copy routine does not support sparse files,
+     * e.g. where size of file content significantly smaller then file size in directory catalogue.
      *
      * @throws JournalException
      */
     public void compact() throws JournalException {
+        if (adaptive) {
+            compactRows();
+        }
         kData.compact();
         rData.compact();
     }
@@ -258,22 +291,20 @@ public class KVIndex implements Closeable {
             throw new JournalRuntimeException("Index out of bounds: %d, max: %d", i, rowCount - 1);
         }
 
-        int rowBlockCount = (int) ((rowCount >>> bits) + 1);
-        if ((rowCount & mask) == 0) {
-            rowBlockCount--;
-        }
+        // number of values in blocks before current one
+        long before = rowCount - tailRowCount(address, rowCount);
+        int len = blockLen(rowBlockOffset);
 
-        int targetBlock = i >>> bits;
-        int cellIndex = i & mask;
-
-        while (targetBlock < --rowBlockCount) {
-            rowBlockOffset = getLong(rData, rowBlockOffset - 8);
+        while (i < before) {
+            rowBlockOffset = prevBlock(rowBlockOffset);
             if (rowBlockOffset == 0) {
                 throw new JournalRuntimeException("Count doesn't match number of row blocks. Corrupt index? : %s", this);
             }
+            len = blockLen(rowBlockOffset);
+            before -= len;
         }
 
-        return getLong(rData, rowBlockOffset - rowBlockSize + 8 * cellIndex);
+        return getLong(rData, rowsOffset(rowBlockOffset, len) + 8 * (i - before));
     }
 
     /**
@@ -310,30 +341,14 @@ public class KVIndex implements Closeable {
             return;
         }
         long address = kData.getAddress(keyOffset, ENTRY_SIZE);
-        long rowBlockOffset = Unsafe.getUnsafe().getLong(address);
         long rowCount = Unsafe.getUnsafe().getLong(address + 8);
 
         values.reset((int) rowCount);
         values.setPos((int) rowCount);
 
-        int rowBlockCount = (int) (rowCount >>> bits) + 1;
-        int len = (int) (rowCount & mask);
-        if (len == 0) {
-            rowBlockCount--;
-            len = rowBlockLen;
-        }
-
-        for (int i = rowBlockCount - 1; i >= 0; i--) {
-            address = rData.getAddress(rowBlockOffset - rowBlockSize, rowBlockSize);
-            int z = i << bits;
-            for (int k = 0; k < len; k++) {
-                values.set(z + k, Unsafe.getUnsafe().getLong(address));
-                address += 8;
-            }
-            if (i > 0) {
-                rowBlockOffset = Unsafe.getUnsafe().getLong(address + (rowBlockLen - len) * 8 + 8);
-            }
-            len = rowBlockLen;
+        FwdIndexCursor cursor = fwdIndexCursor.setKey(key);
+        for (int i = 0; cursor.hasNext(); i++) {
+            values.set(i, cursor.next());
         }
     }
 
@@ -350,8 +365,7 @@ public class KVIndex implements Closeable {
         long address = keyAddressOrError(key);
         long rowBlockOffset = Unsafe.getUnsafe().getLong(address);
         long rowCount = Unsafe.getUnsafe().getLong(address + 8);
-        int cellIndex = (int) ((rowCount - 1) & mask);
-        return getLong(rData, rowBlockOffset - rowBlockSize + 8 * cellIndex);
+        return getLong(rData, rowsOffset(rowBlockOffset, blockLen(rowBlockOffset)) + 8 * (tailRowCount(address, rowCount) - 1));
     }
 
     public FwdIndexCursor newFwdCursor(int key) {
@@ -377,22 +391,17 @@ public class KVIndex implements Closeable {
             long keyBlockAddress = kData.getAddress(offset, ENTRY_SIZE);
             long rowBlockOffset = Unsafe.getUnsafe().getLong(keyBlockAddress);
             long rowCount = Unsafe.getUnsafe().getLong(keyBlockAddress + 8);
-            int len = (int) (rowCount & mask);
+            int len = rowBlockOffset == 0 ? 0 : tailRowCount(keyBlockAddress, rowCount);
 
-            if (len == 0) {
-                len = rowBlockLen;
-            }
             while (rowBlockOffset > 0) {
-                long rowAddress = rData.getAddress(rowBlockOffset - rowBlockSize, rowBlockSize);
-                long addr = rowAddress;
+                long rows = rowsOffset(rowBlockOffset, blockLen(rowBlockOffset));
                 int pos = 0;
                 long max = -1;
                 while (pos < len) {
-                    long v = Unsafe.getUnsafe().getLong(addr);
+                    long v = getLong(rData, rows + pos * 8);
                     if (v >= size) {
                         break;
                     }
-                    addr += 8;
                     pos++;
                     max = v;
                 }
@@ -403,16 +412,20 @@ public class KVIndex implements Closeable {
 
                 if (pos == 0) {
                     // discard whole block
-                    rowBlockOffset = Unsafe.getUnsafe().getLong(rowAddress + rowBlockSize - 8);
+                    rowBlockOffset = prevBlock(rowBlockOffset);
                     rowCount -= len;
-                    len = rowBlockLen;
+                    len = rowBlockOffset == 0 ? 0 : blockLen(rowBlockOffset);
                 } else {
                     rowCount -= len - pos;
+                    len = pos;
                     break;
                 }
             }
             Unsafe.getUnsafe().putLong(keyBlockAddress, rowBlockOffset);
             Unsafe.getUnsafe().putLong(keyBlockAddress + 8, rowCount);
+            if (adaptive) {
+                Unsafe.getUnsafe().putLong(keyBlockAddress + 24, len);
+            }
             offset += ENTRY_SIZE;
         }
 
@@ -420,20 +433,72 @@ public class KVIndex implements Closeable {
         commit();
     }
 
-    private long allocateRowBlock(long address, long rowBlockOffset) {
+    private long allocateRowBlock(long address, long rowBlockOffset, int len) {
         long prevBlockOffset = rowBlockOffset;
-        rowBlockOffset = rData.getAppendOffset() + rowBlockSize;
+        rowBlockOffset = rData.getAppendOffset() + len * 8L + trailerSize;
         rData.setAppendOffset(rowBlockOffset);
-        Unsafe.getUnsafe().putLong(rData.getAddress(rowBlockOffset - 8, 8), prevBlockOffset);
+        putLong(rData, rowBlockOffset - 8, prevBlockOffset);
+        putLong(rData, rowBlockOffset - 16, 0);
+        if (adaptive) {
+            putLong(rData, rowBlockOffset - 24, len);
+        }
         Unsafe.getUnsafe().putLong(address, rowBlockOffset);
         if (prevBlockOffset == 0) {
             Unsafe.getUnsafe().putLong(address + 16, rowBlockOffset);
         } else {
-            Unsafe.getUnsafe().putLong(rData.getAddress(prevBlockOffset - 16, 8), rowBlockOffset);
+            putLong(rData, prevBlockOffset - 16, rowBlockOffset);
         }
         return rowBlockOffset;
     }
 
+    private int blockLen(long rowBlockOffset) {
+        return adaptive ? (int) getLong(rData, rowBlockOffset - 24) : rowBlockLen;
+    }
+
+    private void compactRows() {
+        // key block is copied to new location when transaction starts, so entries are addressed relative to it
+        for (long o = 0; o < keyBlockSize; o += ENTRY_SIZE) {
+            long address = kData.getAddress(firstEntryOffset + o, ENTRY_SIZE);
+            long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+            if (rowCount > 0 && blockLen(Unsafe.getUnsafe().getLong(address + 16)) < rowCount) {
+                if (startTx) {
+                    tx();
+                }
+                compactKey(firstEntryOffset + o);
+            }
+        }
+        commit();
+    }
+
+    private void compactKey(long keyOffset) {
+        long address = kData.getAddress(keyOffset, ENTRY_SIZE);
+        long rowCount = Unsafe.getUnsafe().getLong(address + 8);
+        long block = Unsafe.getUnsafe().getLong(address + 16);
+
+        long target = rData.getAppendOffset() + rowCount * 8 + trailerSize;
+        rData.setAppendOffset(target);
+        putLong(rData, target - 8, 0);
+        putLong(rData, target - 16, 0);
+        putLong(rData, target - 24, rowCount);
+
+        long dst = target - trailerSize - rowCount * 8;
+        long n = 0;
+        while (n < rowCount) {
+            int len = blockLen(block);
+            long src = rowsOffset(block, len);
+            for (int i = 0; i < len && n < rowCount; i++, n++) {
+                putLong(rData, dst, getLong(rData, src + i * 8));
+                dst += 8;
+            }
+            block = getLong(rData, block - 16);
+        }
+
+        address = kData.getAddress(keyOffset, ENTRY_SIZE);
+        Unsafe.getUnsafe().putLong(address, target);
+        Unsafe.getUnsafe().putLong(address + 16, target);
+        Unsafe.getUnsafe().putLong(address + 24, rowCount);
+    }
+
     long getKeyOffset(long key) {
         return firstEntryOffset + (key + 1) * ENTRY_SIZE;
     }
@@ -450,6 +515,10 @@ public class KVIndex implements Closeable {
         return kData.getAddress(keyOffset, ENTRY_SIZE);
     }
 
+    private long prevBlock(long rowBlockOffset) {
+        return getLong(rData, rowBlockOffset - 8);
+    }
+
     private void putLong(MemoryFile storage, long offset, long value) {
         Unsafe.getUnsafe().putLong(storage.getAddress(offset, 8), value);
     }
@@ -462,6 +531,20 @@ public class KVIndex implements Closeable {
         this.firstEntryOffset = keyBlockSizeOffset + 16;
     }
 
+    private long rowsOffset(long rowBlockOffset, int len) {
+        return rowBlockOffset - trailerSize - len * 8L;
+    }
+
+    /**
+     * @return number of values in last row block of key
+     */
+    private int tailRowCount(long address, long rowCount) {
+        if (adaptive) {
+            return (int) Unsafe.getUnsafe().getLong(address + 24);
+        }
+        int n = (int) (rowCount % rowBlockLen);
+        return n == 0 && rowCount > 0 ? rowBlockLen : n;
+    }
     private void tx() {
         if (startTx) {
             this.keyBlockSizeOffset = kData.getAppendOffset();
@@ -491,17 +574,17 @@ public class KVIndex implements Closeable {
     }
 
     private class RevIndexCursor implements IndexCursor {
-        private int remainingBlockCount;
-        private int remainingRowCount;
+        private long remainingRowCount;
+        private int blockRowCount;
         private long size;
-        private long address;
+        private long rowBlockOffset;
+        private long rows;
 
         public boolean hasNext() {
-            return this.remainingRowCount > 0 || this.remainingBlockCount > 0;
+            return this.remainingRowCount > 0;
         }
 
         public RevIndexCursor setKey(int key) {
-            this.remainingBlockCount = 0;
             this.remainingRowCount = 0;
 
             if (key < 0) {
@@ -517,32 +600,25 @@ public class KVIndex implements Closeable {
                     return this;
                 }
 
-                int k = (int) (size & mask);
-                if (k == 0) {
-                    remainingBlockCount = (int) (this.size >>> bits) - 1;
-                    remainingRowCount = rowBlockLen;
-                } else {
-                    remainingBlockCount = (int) (this.size >>> bits);
-                    remainingRowCount = k;
-                }
-                this.address = rData.getAddress(Unsafe.getUnsafe().getLong(addr) - rowBlockSize, rowBlockSize);
+                this.remainingRowCount = size;
+                this.blockRowCount = tailRowCount(addr, size);
+                this.rowBlockOffset = Unsafe.getUnsafe().getLong(addr);
+                this.rows = rowsOffset(rowBlockOffset, blockLen(rowBlockOffset));
             }
 
             return this;
         }
 
         public long next() {
-            if (remainingRowCount > 0) {
-                return Unsafe.getUnsafe().getLong(address + ((--this.remainingRowCount) << 3));
-            } else {
-                remainingBlockCount--;
-                this.address = rData.getAddress(Unsafe.getUnsafe().getLong(address + (rowBlockLen << 3) + 8) - rowBlockSize, rowBlockSize);
-                this.remainingRowCount = mask;
-                return Unsafe.getUnsafe().getLong(address + (this.remainingRowCount << 3));
+            if (blockRowCount == 0) {
+                rowBlockOffset = prevBlock(rowBlockOffset);
+                blockRowCount = blockLen(rowBlockOffset);
+                rows = rowsOffset(rowBlockOffset, blockRowCount);
             }
+            remainingRowCount--;
+            return getLong(rData, rows + 8L * (--blockRowCount));
         }
 
-
         public long size() {
             return size;
         }
@@ -551,7 +627,10 @@ public class KVIndex implements Closeable {
     private class FwdIndexCursor implements IndexCursor {
         private long rowCount;
         private long size;
-        private long address;
+        private long rowBlockOffset;
+        private long rows;
+        private int blockRowCount;
+        private int blockRow;
 
         public FwdIndexCursor setKey(int key) {
             this.rowCount = 0;
@@ -573,8 +652,10 @@ public class KVIndex implements Closeable {
                 return this;
             }
 
-            this.rowCount = 0;
-            this.address = rData.getAddress(Unsafe.getUnsafe().getLong(addr + 16) - rowBlockSize, rowBlockSize);
+            this.rowBlockOffset = Unsafe.getUnsafe().getLong(addr + 16);
+            this.blockRowCount = blockLen(rowBlockOffset);
+            this.rows = rowsOffset(rowBlockOffset, blockRowCount);
+            this.blockRow = 0;
             return this;
         }
 
@@ -583,15 +664,16 @@ public class KVIndex implements Closeable {
         }
 
         public long next() {
-            int r = (int) (rowCount++ & mask);
-            long v = Unsafe.getUnsafe().getLong(address + (r << 3));
-            if (r == mask) {
-                this.address = rData.getAddress(Unsafe.getUnsafe().getLong(address + (rowBlockLen << 3)) - rowBlockSize, rowBlockSize);
+            if (blockRow == blockRowCount) {
+                rowBlockOffset = getLong(rData, rowBlockOffset - 16);
+                blockRowCount = blockLen(rowBlockOffset);
+                rows = rowsOffset(rowBlockOffset, blockRowCount);
+                blockRow = 0;
             }
-            return v;
+            rowCount++;
+            return getLong(rData, rows + 8L * (blockRow++));
         }
 
-
         public long size() {
             return size;
         }
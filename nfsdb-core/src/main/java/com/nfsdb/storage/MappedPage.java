@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.storage;
+
+final class MappedPage {
+    final MemoryFile file;
+    final int index;
+    final boolean stitch;
+    final long size;
+    MappedPage prev;
+    MappedPage next;
+    volatile boolean evicted;
+    // set without manager lock, stale value only affects eviction order
+    boolean referenced;
+
+    MappedPage(MemoryFile file, int index, boolean stitch, long size) {
+        this.file = file;
+        this.index = index;
+        this.stitch = stitch;
+        this.size = size;
+    }
+}
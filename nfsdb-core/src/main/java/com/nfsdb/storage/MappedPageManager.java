@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.storage;
+
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.logging.Logger;
+
+/**
+ * Process-wide accounting of memory mapped pages. Every {@link MemoryFile} registers pages it maps with this
+ * manager. When total size of mapped pages exceeds configured budget pages are evicted in clock (second chance)
+ * order. Access to already mapped page only sets its reference bit without taking manager lock. Eviction scan
+ * clears reference bits and moves referenced pages to the head of the list instead of evicting them.
+ * <p/>
+ * Pages are never evicted while they are current page of their file. Pages owned by thread that is performing
+ * eviction are unmapped immediately. Pages owned by other threads are marked as evicted and are unmapped by owner
+ * thread the next time it maps or switches page. Because of this actual mapped size can temporarily exceed budget.
+ * Victims are chosen under manager lock, but forced and unmapped outside of it, so that slow flush of one file
+ * does not stall page mapping of every other file in the process.
+ * <p/>
+ * Budget is unlimited by default, which preserves behaviour of mapping pages until file is closed.
+ */
+public final class MappedPageManager {
+
+    private static final Logger LOGGER = Logger.getLogger(MappedPageManager.class);
+    private static final Object lock = new Object();
+    // clock list, eviction scan starts at tail
+    private static MappedPage head;
+    private static MappedPage tail;
+    private static int pageCount;
+    private static volatile long budget = Long.MAX_VALUE;
+    private static long mappedBytes;
+    private static long pendingBytes;
+    private static long mapCount;
+    private static long unmapCount;
+    private static long evictionCount;
+
+    private MappedPageManager() {
+    }
+
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets maximum number of bytes all memory files can have mapped at any time. Budget is checked on
+     * next page map.
+     *
+     * @param bytes positive number of bytes, Long.MAX_VALUE to disable eviction
+     */
+    public static void setBudget(long bytes) {
+        if (bytes < 1) {
+            throw new JournalRuntimeException("Invalid mapped memory budget: %d", bytes);
+        }
+        synchronized (lock) {
+            budget = bytes;
+        }
+    }
+
+    public static long getEvictionCount() {
+        synchronized (lock) {
+            return evictionCount;
+        }
+    }
+
+    public static long getMapCount() {
+        synchronized (lock) {
+            return mapCount;
+        }
+    }
+
+    public static long getMappedBytes() {
+        synchronized (lock) {
+            return mappedBytes;
+        }
+    }
+
+    public static long getUnmapCount() {
+        synchronized (lock) {
+            return unmapCount;
+        }
+    }
+
+    public static void resetCounters() {
+        synchronized (lock) {
+            mapCount = 0;
+            unmapCount = 0;
+            evictionCount = 0;
+        }
+    }
+
+    private static ObjList<MappedPage> evict(MappedPage keep) {
+        Thread thread = Thread.currentThread();
+        ObjList<MappedPage> victims = null;
+        MappedPage p = tail;
+        // two rounds of the clock are enough to clear all reference bits
+        int scan = 2 * pageCount;
+        while (p != null && scan-- > 0 && mappedBytes - pendingBytes > budget) {
+            MappedPage prev = p.prev;
+            if (p != keep && !p.file.isCurrent(p)) {
+                if (p.referenced) {
+                    // second chance
+                    p.referenced = false;
+                    unlink(p);
+                    link(p);
+                } else {
+                    unlink(p);
+                    evictionCount++;
+                    if (p.file.getOwner() == thread) {
+                        if (victims == null) {
+                            victims = new ObjList<>();
+                        }
+                        victims.add(p);
+                        mappedBytes -= p.size;
+                        unmapCount++;
+                    } else {
+                        p.evicted = true;
+                        pendingBytes += p.size;
+                        p.file.setEvictionPending();
+                    }
+                }
+            }
+            p = prev;
+        }
+
+        if (mappedBytes - pendingBytes > budget) {
+            LOGGER.debug("Mapped memory budget exceeded: %d/%d bytes", mappedBytes, budget);
+        }
+        return victims;
+    }
+
+    private static void link(MappedPage page) {
+        page.prev = null;
+        page.next = head;
+        if (head != null) {
+            head.prev = page;
+        }
+        head = page;
+        if (tail == null) {
+            tail = page;
+        }
+        pageCount++;
+    }
+
+    static MappedPage map(MemoryFile file, int index, boolean stitch, long size) {
+        MappedPage page = new MappedPage(file, index, stitch, size);
+        ObjList<MappedPage> victims = null;
+        synchronized (lock) {
+            link(page);
+            mappedBytes += size;
+            mapCount++;
+            if (mappedBytes - pendingBytes > budget) {
+                victims = evict(page);
+            }
+        }
+
+        // victims are owned by this thread and no longer on LRU list,
+        // so they can be forced and unmapped without holding the lock
+        if (victims != null) {
+            for (int i = 0, n = victims.size(); i < n; i++) {
+                MappedPage p = victims.getQuick(i);
+                p.file.evict(p);
+            }
+        }
+        return page;
+    }
+
+    static void touch(MappedPage page) {
+        if (page.evicted) {
+            // page is back in use before owner got to unmap it
+            synchronized (lock) {
+                if (page.evicted) {
+                    page.evicted = false;
+                    pendingBytes -= page.size;
+                    link(page);
+                }
+            }
+        } else if (budget != Long.MAX_VALUE && !page.referenced) {
+            page.referenced = true;
+        }
+    }
+
+    static void unmap(MappedPage page) {
+        synchronized (lock) {
+            if (page.evicted) {
+                page.evicted = false;
+                pendingBytes -= page.size;
+            } else {
+                unlink(page);
+            }
+            mappedBytes -= page.size;
+            unmapCount++;
+        }
+    }
+
+    private static void unlink(MappedPage page) {
+        if (page.prev != null) {
+            page.prev.next = page.next;
+        } else {
+            head = page.next;
+        }
+
+        if (page.next != null) {
+            page.next.prev = page.prev;
+        } else {
+            tail = page.prev;
+        }
+        page.prev = page.next = null;
+        pageCount--;
+    }
+}
@@ -47,12 +47,16 @@ public class MemoryFile implements Closeable {
     private MappedByteBuffer offsetBuffer;
     private ObjList<MappedByteBuffer> buffers;
     private ObjList<ByteBufferWrapper> stitches;
+    private ObjList<MappedPage> bufferPages;
+    private ObjList<MappedPage> stitchPages;
     private MappedByteBuffer cachedBuffer;
     private long cachedBufferLo = -1;
     private long cachedBufferHi = -1;
     private long cachedAppendOffset = -1;
     private long cachedAddress;
     private long offsetDirectAddr;
+    private volatile Thread owner;
+    private volatile boolean evictionPending = false;
 
     public MemoryFile(File file, int bitHint, JournalMode mode) throws JournalException {
         this.file = file;
@@ -64,6 +68,8 @@ public class MemoryFile implements Closeable {
         open();
         this.buffers = new ObjList<>((int) (size() >>> bitHint) + 1);
         this.stitches = new ObjList<>(buffers.size());
+        this.bufferPages = new ObjList<>(buffers.size());
+        this.stitchPages = new ObjList<>(buffers.size());
     }
 
     @Override
@@ -179,6 +185,11 @@ public class MemoryFile implements Closeable {
 
     private MappedByteBuffer getBufferInternal(long offset, int size) {
 
+        owner = Thread.currentThread();
+        if (evictionPending) {
+            releaseEvicted();
+        }
+
         int bufferSize = 1 << bitHint;
         int index = (int) (offset >>> bitHint);
         long bufferOffset = ((long) index) << ((long) bitHint);
@@ -187,13 +198,14 @@ public class MemoryFile implements Closeable {
         MappedByteBuffer buffer = buffers.getQuiet(index);
 
         if (buffer != null && buffer.limit() < bufferPos) {
-            buffer = ByteBuffers.release(buffer);
+            buffer = releaseBuffer(index);
         }
 
         if (buffer == null) {
             buffer = mapBufferInternal(bufferOffset, bufferSize);
             assert bufferSize > 0;
             buffers.extendAndSet(index, buffer);
+            bufferPages.extendAndSet(index, MappedPageManager.map(this, index, false, buffer.limit()));
             switch (mode) {
                 case BULK_READ:
                 case BULK_APPEND:
@@ -203,19 +215,14 @@ public class MemoryFile implements Closeable {
                     cachedBufferLo = cachedBufferHi = -1;
                     int ssz = stitches.size();
                     for (int i = index - 1; i > -1; i--) {
-                        MappedByteBuffer b = buffers.getAndSetQuick(i, null);
-                        if (b != null) {
-                            ByteBuffers.release(b);
-                        }
-
+                        releaseBuffer(i);
                         if (i < ssz) {
-                            ByteBufferWrapper stitch = stitches.getAndSetQuick(i, null);
-                            if (stitch != null) {
-                                stitch.release();
-                            }
+                            releaseStitch(i);
                         }
                     }
             }
+        } else {
+            MappedPageManager.touch(bufferPages.getQuick(index));
         }
 
         buffer.position(bufferPos);
@@ -232,16 +239,17 @@ public class MemoryFile implements Closeable {
                 // it could be too small for the size
                 // if that's the case - discard the existing stitch and create a larger one.
                 if (bufferWrapper.getOffset() != stitchOffset || bufferWrapper.getByteBuffer().limit() < size) {
-                    bufferWrapper.release();
-                    bufferWrapper = null;
+                    bufferWrapper = releaseStitch(index);
                 } else {
                     bufferWrapper.getByteBuffer().rewind();
+                    MappedPageManager.touch(stitchPages.getQuick(index));
                 }
             }
 
             if (bufferWrapper == null) {
                 bufferWrapper = new ByteBufferWrapper(stitchOffset, mapBufferInternal(stitchOffset, size));
                 stitches.extendAndSet(index, bufferWrapper);
+                stitchPages.extendAndSet(index, MappedPageManager.map(this, index, true, size));
             }
 
             return bufferWrapper.getByteBuffer();
@@ -249,10 +257,47 @@ public class MemoryFile implements Closeable {
         return buffer;
     }
 
+    /**
+     * Unmaps page on behalf of MappedPageManager. Page accounting is done by the manager.
+     *
+     * @param page page to unmap
+     */
+    void evict(MappedPage page) {
+        if (page.stitch) {
+            stitchPages.setQuick(page.index, null);
+            stitches.getAndSetQuick(page.index, null).release();
+        } else {
+            bufferPages.setQuick(page.index, null);
+            MappedByteBuffer b = buffers.getAndSetQuick(page.index, null);
+            if (mode != JournalMode.READ && mode != JournalMode.BULK_READ) {
+                // pages of writable files are forced to keep commitDurable() promise
+                b.force();
+            }
+            ByteBuffers.release(b);
+        }
+    }
+
     String getFullFileName() {
         return this.file.getAbsolutePath();
     }
 
+    Thread getOwner() {
+        return owner;
+    }
+
+    boolean isCurrent(MappedPage page) {
+        MappedByteBuffer b = cachedBuffer;
+        if (b == null) {
+            return false;
+        }
+
+        if (page.stitch) {
+            ByteBufferWrapper w = stitches.getQuiet(page.index);
+            return w != null && w.getByteBuffer() == b;
+        }
+        return buffers.getQuiet(page.index) == b;
+    }
+
     private MappedByteBuffer mapBufferInternal(long offset, int size) {
         long actualOffset = offset + DATA_OFFSET;
 
@@ -283,6 +328,10 @@ public class MemoryFile implements Closeable {
         }
     }
 
+    void setEvictionPending() {
+        evictionPending = true;
+    }
+
     final void open() throws JournalException {
         String m;
         switch (mode) {
@@ -323,6 +372,57 @@ public class MemoryFile implements Closeable {
         }
     }
 
+    private MappedByteBuffer releaseBuffer(int index) {
+        MappedByteBuffer b = buffers.getAndSetQuick(index, null);
+        if (b != null) {
+            MappedPageManager.unmap(bufferPages.getAndSetQuick(index, null));
+            if (b == cachedBuffer) {
+                cachedBuffer = null;
+                cachedBufferLo = cachedBufferHi = -1;
+            }
+            ByteBuffers.release(b);
+        }
+        return null;
+    }
+
+    private void releaseEvicted() {
+        evictionPending = false;
+        for (int i = 0, k = bufferPages.size(); i < k; i++) {
+            MappedPage page = bufferPages.getQuick(i);
+            if (page != null && page.evicted) {
+                if (isCurrent(page)) {
+                    evictionPending = true;
+                } else {
+                    releaseBuffer(i);
+                }
+            }
+        }
+
+        for (int i = 0, k = stitchPages.size(); i < k; i++) {
+            MappedPage page = stitchPages.getQuick(i);
+            if (page != null && page.evicted) {
+                if (isCurrent(page)) {
+                    evictionPending = true;
+                } else {
+                    releaseStitch(i);
+                }
+            }
+        }
+    }
+
+    private ByteBufferWrapper releaseStitch(int index) {
+        ByteBufferWrapper w = stitches.getAndSetQuick(index, null);
+        if (w != null) {
+            MappedPageManager.unmap(stitchPages.getAndSetQuick(index, null));
+            if (w.getByteBuffer() == cachedBuffer) {
+                cachedBuffer = null;
+                cachedBufferLo = cachedBufferHi = -1;
+            }
+            w.release();
+        }
+        return null;
+    }
+
     private long size() throws JournalException {
         try {
             return channel.size();
@@ -333,21 +433,18 @@ public class MemoryFile implements Closeable {
 
     private void unmap() {
         for (int i = 0, k = buffers.size(); i < k; i++) {
-            MappedByteBuffer b = buffers.getQuick(i);
-            if (b != null) {
-                ByteBuffers.release(b);
-            }
+            releaseBuffer(i);
         }
         for (int i = 0, k = stitches.size(); i < k; i++) {
-            ByteBufferWrapper b = stitches.getQuick(i);
-            if (b != null) {
-                b.release();
-            }
+            releaseStitch(i);
         }
         cachedBuffer = null;
         cachedBufferLo = cachedBufferHi = -1;
         buffers.clear();
         stitches.clear();
+        bufferPages.clear();
+        stitchPages.clear();
+        evictionPending = false;
 
         offsetBuffer = ByteBuffers.release(offsetBuffer);
         assert offsetBuffer == null;
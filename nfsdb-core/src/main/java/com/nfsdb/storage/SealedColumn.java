@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.storage;
+
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.utils.Unsafe;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only fixed width column of sealed partition. Column values are stored in blocks of rows, each block
+ * is encoded depending on column type:
+ * <pre>
+ *     DATE, LONG               delta-of-delta
+ *     DOUBLE, FLOAT            XOR with previous value
+ *     INT, SYMBOL, SHORT, BYTE bit packing relative to block minimum
+ *     BOOLEAN
+ * </pre>
+ * Blocks that would not be smaller than raw values are stored as is. Block is decoded into off-heap buffer
+ * on first access to any of its rows, so sequential reads decode every block once.
+ * <p/>
+ * File layout:
+ * <pre>
+ *     int width
+ *     int block row count
+ *     long row count
+ *     long[block count + 1] block offsets
+ *     blocks, each starting with 8-byte encoding header and 8-byte aligned
+ * </pre>
+ */
+public class SealedColumn extends FixedColumn {
+    public static final int DEFAULT_BLOCK_ROWS = 4096;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int ENC_RAW = 0;
+    private static final int ENC_DELTA_OF_DELTA = 1;
+    private static final int ENC_XOR = 2;
+    private static final int ENC_BIT_PACK = 3;
+
+    private final long rowCount;
+    private final int blockRows;
+    private final long buffer;
+    private long cachedLo = 0;
+    private long cachedHi = 0;
+
+    public SealedColumn(MemoryFile mappedFile) {
+        super(mappedFile, Unsafe.getUnsafe().getInt(mappedFile.getAddress(0, 4)));
+        this.blockRows = Unsafe.getUnsafe().getInt(mappedFile.getAddress(4, 4));
+        this.rowCount = Unsafe.getUnsafe().getLong(mappedFile.getAddress(8, 8));
+        this.buffer = Unsafe.getUnsafe().allocateMemory(((long) blockRows) * width);
+    }
+
+    /**
+     * Encodes content of source column into target file. Target file must be empty.
+     *
+     * @param source    column to encode
+     * @param type      type of column values
+     * @param target    file to write encoded column to
+     * @param blockRows number of rows in block
+     */
+    public static void seal(FixedColumn source, ColumnType type, MemoryFile target, int blockRows) {
+        final long rowCount = source.size();
+        final int width = source.width;
+        final int blockCount = (int) ((rowCount + blockRows - 1) / blockRows);
+        final BitStream bits = new BitStream();
+
+        Unsafe.getUnsafe().putInt(target.getAddress(0, 4), width);
+        Unsafe.getUnsafe().putInt(target.getAddress(4, 4), blockRows);
+        Unsafe.getUnsafe().putLong(target.getAddress(8, 8), rowCount);
+
+        long offset = HEADER_SIZE + (blockCount + 1) * 8L;
+        for (int b = 0; b < blockCount; b++) {
+            Unsafe.getUnsafe().putLong(target.getAddress(HEADER_SIZE + b * 8L, 8), offset);
+
+            long lo = ((long) b) * blockRows;
+            int count = (int) Math.min(blockRows, rowCount - lo);
+            int enc = encode(source, type, lo, count, bits);
+            long rawSize = ((long) count) * width;
+
+            if (enc == ENC_RAW || bits.wordCount() * 8L >= rawSize) {
+                Unsafe.getUnsafe().putLong(target.getAddress(offset, 8), ENC_RAW);
+                offset += 8;
+                for (long r = lo, hi = lo + count; r < hi; r++) {
+                    copyValue(source, r, target.getAddress(offset, width));
+                    offset += width;
+                }
+                // keep blocks aligned
+                offset = (offset + 7) & ~7L;
+            } else {
+                Unsafe.getUnsafe().putLong(target.getAddress(offset, 8), enc);
+                offset += 8;
+                for (int i = 0, n = bits.wordCount(); i < n; i++) {
+                    Unsafe.getUnsafe().putLong(target.getAddress(offset, 8), bits.getWord(i));
+                    offset += 8;
+                }
+            }
+        }
+        Unsafe.getUnsafe().putLong(target.getAddress(HEADER_SIZE + blockCount * 8L, 8), offset);
+        target.setAppendOffset(offset);
+    }
+
+    @Override
+    public void close() {
+        Unsafe.getUnsafe().freeMemory(buffer);
+        super.close();
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void compact() {
+    }
+
+    @Override
+    public ByteBuffer getBuffer(long offset, int size) {
+        throw new JournalRuntimeException("Sealed column does not provide raw access: %s", mappedFile);
+    }
+
+    @Override
+    public void copyTo(long lo, int count, long address) {
+        long hi = lo + count;
+        while (lo < hi) {
+            long src = rowAddress(lo);
+            long n = Math.min(hi, cachedHi) - lo;
+            Unsafe.getUnsafe().copyMemory(src, address, n * width);
+            address += n * width;
+            lo += n;
+        }
+    }
+
+    @Override
+    public boolean getBool(long localRowID) {
+        return Unsafe.getUnsafe().getByte(rowAddress(localRowID)) == 1;
+    }
+
+    @Override
+    public byte getByte(long localRowID) {
+        return Unsafe.getUnsafe().getByte(rowAddress(localRowID));
+    }
+
+    @Override
+    public double getDouble(long localRowID) {
+        return Unsafe.getUnsafe().getDouble(rowAddress(localRowID));
+    }
+
+    @Override
+    public float getFloat(long localRowID) {
+        return Unsafe.getUnsafe().getFloat(rowAddress(localRowID));
+    }
+
+    @Override
+    public int getInt(long localRowID) {
+        return Unsafe.getUnsafe().getInt(rowAddress(localRowID));
+    }
+
+    @Override
+    public long getLong(long localRowID) {
+        return Unsafe.getUnsafe().getLong(rowAddress(localRowID));
+    }
+
+    public long getCompressedSize() {
+        return mappedFile.getAppendOffset();
+    }
+
+    @Override
+    public long getOffset() {
+        return rowCount * width;
+    }
+
+    @Override
+    public long size() {
+        return rowCount;
+    }
+
+    @Override
+    public void truncate(long size) {
+        if (size < rowCount) {
+            throw new JournalRuntimeException("Cannot truncate sealed column: %s", mappedFile);
+        }
+    }
+
+    @Override
+    public short getShort(long localRowID) {
+        return Unsafe.getUnsafe().getShort(rowAddress(localRowID));
+    }
+
+    @Override
+    long getAddress() {
+        throw new JournalRuntimeException("Sealed column is read-only: %s", mappedFile);
+    }
+
+    private static void copyValue(FixedColumn source, long row, long address) {
+        switch (source.width) {
+            case 1:
+                Unsafe.getUnsafe().putByte(address, source.getByte(row));
+                break;
+            case 2:
+                Unsafe.getUnsafe().putShort(address, source.getShort(row));
+                break;
+            case 4:
+                Unsafe.getUnsafe().putInt(address, source.getInt(row));
+                break;
+            default:
+                Unsafe.getUnsafe().putLong(address, source.getLong(row));
+                break;
+        }
+    }
+
+    private static int encode(FixedColumn source, ColumnType type, long lo, int count, BitStream bits) {
+        bits.clear();
+        switch (type) {
+            case DATE:
+            case LONG:
+                encodeDeltaOfDelta(source, lo, count, bits);
+                return ENC_DELTA_OF_DELTA;
+            case DOUBLE:
+            case FLOAT:
+                encodeXor(source, type, lo, count, bits);
+                return ENC_XOR;
+            case INT:
+            case SYMBOL:
+            case SHORT:
+            case BYTE:
+            case BOOLEAN:
+                encodeBitPack(source, lo, count, bits);
+                return ENC_BIT_PACK;
+            default:
+                return ENC_RAW;
+        }
+    }
+
+    private static void encodeBitPack(FixedColumn source, long lo, int count, BitStream bits) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (long r = lo, hi = lo + count; r < hi; r++) {
+            long v = intValue(source, r);
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+
+        int w = 64 - Long.numberOfLeadingZeros(max - min);
+        bits.write(min, 64);
+        bits.write(w, 7);
+        for (long r = lo, hi = lo + count; r < hi; r++) {
+            bits.write(intValue(source, r) - min, w);
+        }
+    }
+
+    private static void encodeDeltaOfDelta(FixedColumn source, long lo, int count, BitStream bits) {
+        long prev = source.getLong(lo);
+        long prevDelta = 0;
+        bits.write(prev, 64);
+        for (long r = lo + 1, hi = lo + count; r < hi; r++) {
+            long v = source.getLong(r);
+            long delta = v - prev;
+            long dod = delta - prevDelta;
+
+            if (dod == 0) {
+                bits.write(0, 1);
+            } else if (fits(dod, 7)) {
+                bits.write(2, 2);
+                bits.write(dod, 7);
+            } else if (fits(dod, 9)) {
+                bits.write(6, 3);
+                bits.write(dod, 9);
+            } else if (fits(dod, 12)) {
+                bits.write(14, 4);
+                bits.write(dod, 12);
+            } else if (fits(dod, 32)) {
+                bits.write(30, 5);
+                bits.write(dod, 32);
+            } else {
+                bits.write(31, 5);
+                bits.write(dod, 64);
+            }
+            prev = v;
+            prevDelta = delta;
+        }
+    }
+
+    private static void encodeXor(FixedColumn source, ColumnType type, long lo, int count, BitStream bits) {
+        long prev = xorValue(source, type, lo);
+        int prevLead = -1;
+        int prevTrail = 0;
+        bits.write(prev, 64);
+        for (long r = lo + 1, hi = lo + count; r < hi; r++) {
+            long v = xorValue(source, type, r);
+            long x = v ^ prev;
+            if (x == 0) {
+                bits.write(0, 1);
+            } else {
+                int lead = Long.numberOfLeadingZeros(x);
+                int trail = Long.numberOfTrailingZeros(x);
+                if (prevLead != -1 && lead >= prevLead && trail >= prevTrail) {
+                    bits.write(2, 2);
+                    bits.write(x >>> prevTrail, 64 - prevLead - prevTrail);
+                } else {
+                    bits.write(3, 2);
+                    bits.write(lead, 6);
+                    bits.write(63 - lead - trail, 6);
+                    bits.write(x >>> trail, 64 - lead - trail);
+                    prevLead = lead;
+                    prevTrail = trail;
+                }
+            }
+            prev = v;
+        }
+    }
+
+    private static boolean fits(long value, int bits) {
+        long limit = 1L << (bits - 1);
+        return value >= -limit && value < limit;
+    }
+
+    private static long intValue(FixedColumn source, long row) {
+        switch (source.width) {
+            case 1:
+                return source.getByte(row);
+            case 2:
+                return source.getShort(row);
+            default:
+                return source.getInt(row);
+        }
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static long xorValue(FixedColumn source, ColumnType type, long row) {
+        return type == ColumnType.FLOAT ? Float.floatToRawIntBits(source.getFloat(row)) & 0xffffffffL : Double.doubleToRawLongBits(source.getDouble(row));
+    }
+
+    private void decode(int block) {
+        long blockOffset = Unsafe.getUnsafe().getLong(mappedFile.getAddress(HEADER_SIZE + block * 8L, 8));
+        long blockEnd = Unsafe.getUnsafe().getLong(mappedFile.getAddress(HEADER_SIZE + block * 8L + 8, 8));
+        long address = mappedFile.getAddress(blockOffset, (int) (blockEnd - blockOffset));
+        int enc = (int) Unsafe.getUnsafe().getLong(address);
+        address += 8;
+
+        long lo = ((long) block) * blockRows;
+        int count = (int) Math.min(blockRows, rowCount - lo);
+
+        switch (enc) {
+            case ENC_DELTA_OF_DELTA:
+                decodeDeltaOfDelta(address, count);
+                break;
+            case ENC_XOR:
+                decodeXor(address, count);
+                break;
+            case ENC_BIT_PACK:
+                decodeBitPack(address, count);
+                break;
+            default:
+                Unsafe.getUnsafe().copyMemory(address, buffer, ((long) count) * width);
+                break;
+        }
+        cachedLo = lo;
+        cachedHi = lo + count;
+    }
+
+    private void decodeBitPack(long address, int count) {
+        long min = BitStream.read(address, 0, 64);
+        int w = (int) BitStream.read(address, 64, 7);
+        long pos = 71;
+        long p = buffer;
+        for (int i = 0; i < count; i++) {
+            long v = min + BitStream.read(address, pos, w);
+            pos += w;
+            switch (width) {
+                case 1:
+                    Unsafe.getUnsafe().putByte(p, (byte) v);
+                    break;
+                case 2:
+                    Unsafe.getUnsafe().putShort(p, (short) v);
+                    break;
+                default:
+                    Unsafe.getUnsafe().putInt(p, (int) v);
+                    break;
+            }
+            p += width;
+        }
+    }
+
+    private void decodeDeltaOfDelta(long address, int count) {
+        long v = BitStream.read(address, 0, 64);
+        long delta = 0;
+        long pos = 64;
+        Unsafe.getUnsafe().putLong(buffer, v);
+        for (int i = 1; i < count; i++) {
+            int n;
+            if (BitStream.read(address, pos++, 1) == 0) {
+                n = 0;
+            } else if (BitStream.read(address, pos++, 1) == 0) {
+                n = 7;
+            } else if (BitStream.read(address, pos++, 1) == 0) {
+                n = 9;
+            } else if (BitStream.read(address, pos++, 1) == 0) {
+                n = 12;
+            } else {
+                n = BitStream.read(address, pos++, 1) == 0 ? 32 : 64;
+            }
+
+            if (n > 0) {
+                delta += signExtend(BitStream.read(address, pos, n), n);
+                pos += n;
+            }
+            v += delta;
+            Unsafe.getUnsafe().putLong(buffer + i * 8L, v);
+        }
+    }
+
+    private void decodeXor(long address, int count) {
+        long v = BitStream.read(address, 0, 64);
+        long pos = 64;
+        int lead = 0;
+        int trail = 0;
+        putXorValue(0, v);
+        for (int i = 1; i < count; i++) {
+            if (BitStream.read(address, pos++, 1) == 1) {
+                if (BitStream.read(address, pos++, 1) == 1) {
+                    lead = (int) BitStream.read(address, pos, 6);
+                    trail = 63 - lead - (int) BitStream.read(address, pos + 6, 6);
+                    pos += 12;
+                }
+                int n = 64 - lead - trail;
+                v ^= BitStream.read(address, pos, n) << trail;
+                pos += n;
+            }
+            putXorValue(i, v);
+        }
+    }
+
+    private void putXorValue(int index, long v) {
+        if (width == 4) {
+            Unsafe.getUnsafe().putInt(buffer + index * 4L, (int) v);
+        } else {
+            Unsafe.getUnsafe().putLong(buffer + index * 8L, v);
+        }
+    }
+
+    private long rowAddress(long localRowID) {
+        if (localRowID < cachedLo || localRowID >= cachedHi) {
+            decode((int) (localRowID / blockRows));
+        }
+        return buffer + (localRowID - cachedLo) * width;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.storage;
+
+import com.nfsdb.JournalMode;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.utils.ByteBuffers;
+import com.nfsdb.utils.Files;
+import com.nfsdb.utils.Numbers;
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * Index of string column, which maps every distinct string to list of rows it occurs in.
+ * <p>
+ * Distinct strings are stored in entries file as (64-bit hash, first row, posting list) entries in order of
+ * their first occurrence. String values are not copied, they are compared to column value at first row of
+ * entry. Entries are looked up by open-addressing hash table of entry numbers, which is doubled once it is half
+ * full. Each table size has its own generation of slot file, so readers can keep using table they have mapped
+ * until they notice new generation in header.
+ * <p>
+ * Rows are appended to posting lists in ascending order. Readers do not need transaction address, rows beyond
+ * transaction are filtered out by comparing them to partition size.
+ */
+public class StringIndex implements Closeable {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // header
+    private static final int ENTRY_COUNT = 0;
+    private static final int SLOT_CAPACITY = 8;
+    private static final int GENERATION = 16;
+    private static final int USED_SLOTS = 24;
+    private static final int ROW_BLOCK_LEN = 32;
+    private static final int MAX_ROW = 40;
+    private static final int HEADER_SIZE = 64;
+    // entry
+    private static final int HASH = 0;
+    private static final int FIRST_ROW = 8;
+    private static final int HEAD = 16;
+    private static final int TAIL = 24;
+    private static final int COUNT = 32;
+    private static final int ENTRY_SIZE = 40;
+    private static final int MAX_ROW_BLOCK_LEN = 256;
+    private final File base;
+    private final VariableColumn column;
+    private final JournalMode mode;
+    private final MemoryFile entries;
+    private final MemoryFile rows;
+    private final int rowBlockLen;
+    private final int rowBlockSize;
+    private final Cursor cursor = new Cursor();
+    private MemoryFile slots;
+    private long generation;
+    private int mask;
+    // slot where last unsuccessful lookup ended, new entry goes there
+    private int freeSlot;
+
+    public StringIndex(File base, VariableColumn column, long keyCountHint, long recordCountHint, JournalMode mode) throws JournalException {
+        long keyCount = Math.max(keyCountHint, 1);
+        this.base = base;
+        this.column = column;
+        this.mode = mode;
+        this.entries = new MemoryFile(file(".sk"), ByteBuffers.getBitHint(ENTRY_SIZE, (int) Math.min(Integer.MAX_VALUE, keyCount)), mode);
+
+        if (entries.getAppendOffset() > 0) {
+            this.rowBlockLen = (int) getLong(entries, ROW_BLOCK_LEN);
+        } else if (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND) {
+            long l = recordCountHint / keyCount;
+            this.rowBlockLen = l < 1 ? 1 : Math.min(MAX_ROW_BLOCK_LEN, Numbers.ceilPow2((int) l));
+            Unsafe.getUnsafe().setMemory(entries.getAddress(0, HEADER_SIZE), HEADER_SIZE, (byte) 0);
+            putLong(entries, SLOT_CAPACITY, Numbers.ceilPow2((int) Math.min(1 << 30, Math.max(16, keyCount * 2))));
+            putLong(entries, ROW_BLOCK_LEN, rowBlockLen);
+            entries.setAppendOffset(HEADER_SIZE);
+        } else {
+            throw new JournalException("Cannot open uninitialized index in read-only mode");
+        }
+
+        this.rowBlockSize = rowBlockLen * 8 + 8;
+        this.rows = new MemoryFile(file(".sr"), ByteBuffers.getBitHint(rowBlockSize, (int) Math.min(Integer.MAX_VALUE, keyCount)), mode);
+        if (rows.getAppendOffset() < 8 && (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND)) {
+            // offset 0 marks end of posting list
+            rows.setAppendOffset(8);
+        }
+        openSlots();
+    }
+
+    public static void delete(File base) {
+        Files.delete(new File(base.getParentFile(), base.getName() + ".sk"));
+        Files.delete(new File(base.getParentFile(), base.getName() + ".sr"));
+        File files[] = base.getParentFile().listFiles();
+        if (files != null) {
+            String prefix = base.getName() + ".ss";
+            for (File f : files) {
+                if (f.getName().startsWith(prefix)) {
+                    Files.delete(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds row to posting list of value. Rows must be added in ascending order.
+     */
+    public void add(CharSequence value, long row) {
+        long hash = hash(value);
+        int e = find(value, hash);
+        if (e == -1) {
+            e = addEntry(hash, row);
+        }
+
+        long entry = entryAddress(e);
+        long count = Unsafe.getUnsafe().getLong(entry + COUNT);
+        int cell = (int) (count % rowBlockLen);
+        long block = Unsafe.getUnsafe().getLong(entry + TAIL);
+        if (block == 0 || cell == 0) {
+            long b = rows.getAppendOffset();
+            rows.setAppendOffset(b + rowBlockSize);
+            putLong(rows, b + rowBlockLen * 8, 0);
+            if (block == 0) {
+                Unsafe.getUnsafe().putLong(entry + HEAD, b);
+            } else {
+                putLong(rows, block + rowBlockLen * 8, b);
+            }
+            Unsafe.getUnsafe().putLong(entry + TAIL, block = b);
+        }
+        putLong(rows, block + cell * 8, row);
+        // count is published after row, so readers never see unwritten row
+        Unsafe.getUnsafe().putLong(entry + COUNT, count + 1);
+
+        if (getLong(entries, MAX_ROW) <= row) {
+            putLong(entries, MAX_ROW, row + 1);
+        }
+    }
+
+    @Override
+    public void close() {
+        entries.close();
+        rows.close();
+        slots.close();
+    }
+
+    public void compact() throws JournalException {
+        entries.compact();
+        rows.compact();
+        slots.compact();
+    }
+
+    /**
+     * Cursor over rows of value. Cursor instance is reused by subsequent calls.
+     */
+    public IndexCursor cursor(CharSequence value) {
+        return cursor.of(find(value, hash(value)));
+    }
+
+    public void force() {
+        entries.force();
+        rows.force();
+        slots.force();
+    }
+
+    /**
+     * @return number of distinct values in index
+     */
+    public int getKeyCount() {
+        return (int) getLong(entries, ENTRY_COUNT);
+    }
+
+    public int getValueCount(CharSequence value) {
+        int e = find(value, hash(value));
+        return e == -1 ? 0 : (int) Unsafe.getUnsafe().getLong(entryAddress(e) + COUNT);
+    }
+
+    /**
+     * Checks that index has every row of column. Rows are added in order, so row 0 is first row of first
+     * entry, unless index was created after rows had been appended, by version that did not index strings by
+     * value.
+     *
+     * @param rowCount number of rows in column
+     */
+    public boolean isComplete(long rowCount) {
+        return rowCount == 0 || (getKeyCount() > 0 && Unsafe.getUnsafe().getLong(entryAddress(0) + FIRST_ROW) == 0 && size() >= rowCount);
+    }
+
+    /**
+     * Creates new cursor over rows of value, which is independent of cursors created earlier.
+     */
+    public IndexCursor newCursor(CharSequence value) {
+        return new Cursor().of(find(value, hash(value)));
+    }
+
+    /**
+     * @return max of all row IDs in index + 1
+     */
+    public long size() {
+        return getLong(entries, MAX_ROW);
+    }
+
+    /**
+     * Removes rows, which are equal to or greater than size. Entries of values, which occur first in removed
+     * rows, are removed too. Their slots are left in hash table, lookups skip them.
+     */
+    public void truncate(long size) {
+        int n = getKeyCount();
+        while (n > 0 && Unsafe.getUnsafe().getLong(entryAddress(n - 1) + FIRST_ROW) >= size) {
+            n--;
+        }
+
+        for (int e = 0; e < n; e++) {
+            truncateEntry(entryAddress(e), size);
+        }
+
+        putLong(entries, ENTRY_COUNT, n);
+        entries.setAppendOffset(HEADER_SIZE + (long) n * ENTRY_SIZE);
+        if (size() > size) {
+            putLong(entries, MAX_ROW, size);
+        }
+    }
+
+    private static long hash(CharSequence value) {
+        if (value == null) {
+            return 0;
+        }
+
+        long h = FNV_OFFSET;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long getLong(MemoryFile storage, long offset) {
+        return Unsafe.getUnsafe().getLong(storage.getAddress(offset, 8));
+    }
+
+    private static void putLong(MemoryFile storage, long offset, long value) {
+        Unsafe.getUnsafe().putLong(storage.getAddress(offset, 8), value);
+    }
+
+    private int addEntry(long hash, long row) {
+        int e = getKeyCount();
+        long entry = entryAddress(e);
+        Unsafe.getUnsafe().putLong(entry + HASH, hash);
+        Unsafe.getUnsafe().putLong(entry + FIRST_ROW, row);
+        Unsafe.getUnsafe().putLong(entry + HEAD, 0);
+        Unsafe.getUnsafe().putLong(entry + TAIL, 0);
+        Unsafe.getUnsafe().putLong(entry + COUNT, 0);
+        entries.setAppendOffset(HEADER_SIZE + (long) (e + 1) * ENTRY_SIZE);
+        putLong(entries, ENTRY_COUNT, e + 1);
+
+        putSlot(slots, freeSlot, e);
+        long used = getLong(entries, USED_SLOTS) + 1;
+        putLong(entries, USED_SLOTS, used);
+        if (used * 2 > mask + 1) {
+            rehash();
+        }
+        return e;
+    }
+
+    private long entryAddress(int e) {
+        return entries.getAddress(HEADER_SIZE + (long) e * ENTRY_SIZE, ENTRY_SIZE);
+    }
+
+    private boolean eq(long row, CharSequence value) {
+        if (value == null) {
+            return column.getFlyweightStr(row) == null;
+        }
+        return column.cmpStr(row, value);
+    }
+
+    private File file(String suffix) {
+        return new File(base.getParentFile(), base.getName() + suffix);
+    }
+
+    private int find(CharSequence value, long hash) {
+        if (generation != getLong(entries, GENERATION)) {
+            slots.close();
+            openSlots();
+        }
+
+        int count = getKeyCount();
+        for (int slot = slot(hash); ; slot = (slot + 1) & mask) {
+            int e = Unsafe.getUnsafe().getInt(slots.getAddress(slot * 4L, 4)) - 1;
+            if (e == -1) {
+                freeSlot = slot;
+                return -1;
+            }
+
+            if (e < count) {
+                long entry = entryAddress(e);
+                if (Unsafe.getUnsafe().getLong(entry + HASH) == hash && eq(Unsafe.getUnsafe().getLong(entry + FIRST_ROW), value)) {
+                    return e;
+                }
+            }
+        }
+    }
+
+    private MemoryFile newSlots(long generation, int capacity) throws JournalException {
+        return new MemoryFile(file(".ss" + (generation == 0 ? "" : "." + generation)), ByteBuffers.getBitHint(4, capacity), mode);
+    }
+
+    private void openSlots() {
+        try {
+            this.generation = getLong(entries, GENERATION);
+            int capacity = (int) getLong(entries, SLOT_CAPACITY);
+            this.slots = newSlots(generation, capacity);
+            if (slots.getAppendOffset() < capacity * 4L && (mode == JournalMode.APPEND || mode == JournalMode.BULK_APPEND)) {
+                slots.setAppendOffset(capacity * 4L);
+            }
+            this.mask = capacity - 1;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException(e);
+        }
+    }
+
+    private void putSlot(MemoryFile slots, int slot, int e) {
+        Unsafe.getUnsafe().putInt(slots.getAddress(slot * 4L, 4), e + 1);
+    }
+
+    private void rehash() {
+        int capacity = (mask + 1) * 2;
+        int m = capacity - 1;
+        long g = generation + 1;
+        int count = getKeyCount();
+        try {
+            // slot file might have been left over by rehash, which was not committed
+            Files.delete(file(".ss." + g));
+            MemoryFile s = newSlots(g, capacity);
+            s.setAppendOffset(capacity * 4L);
+            for (int e = 0; e < count; e++) {
+                long hash = Unsafe.getUnsafe().getLong(entryAddress(e) + HASH);
+                int slot = (int) (hash ^ (hash >>> 32)) & m;
+                while (Unsafe.getUnsafe().getInt(s.getAddress(slot * 4L, 4)) != 0) {
+                    slot = (slot + 1) & m;
+                }
+                putSlot(s, slot, e);
+            }
+
+            putLong(entries, SLOT_CAPACITY, capacity);
+            putLong(entries, USED_SLOTS, count);
+            putLong(entries, GENERATION, g);
+            slots.close();
+            slots = s;
+            generation = g;
+            mask = m;
+        } catch (JournalException e) {
+            throw new JournalRuntimeException("Cannot rehash index %s", e, base);
+        }
+    }
+
+    private int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void truncateEntry(long entry, long size) {
+        long count = Unsafe.getUnsafe().getLong(entry + COUNT);
+        long tail = Unsafe.getUnsafe().getLong(entry + TAIL);
+        if (getLong(rows, tail + ((count - 1) % rowBlockLen) * 8) < size) {
+            return;
+        }
+
+        // rows are in ascending order, find first row to remove
+        long block = Unsafe.getUnsafe().getLong(entry + HEAD);
+        long n = 0;
+        long last = block;
+        while (n < count) {
+            int cell = (int) (n % rowBlockLen);
+            if (cell == 0 && n > 0) {
+                block = getLong(rows, block + rowBlockLen * 8);
+            }
+            if (getLong(rows, block + cell * 8) >= size) {
+                break;
+            }
+            last = block;
+            n++;
+        }
+
+        putLong(rows, last + rowBlockLen * 8, 0);
+        Unsafe.getUnsafe().putLong(entry + TAIL, last);
+        Unsafe.getUnsafe().putLong(entry + COUNT, n);
+    }
+
+    private class Cursor implements IndexCursor {
+        private long size;
+        private long n;
+        private long block;
+
+        @Override
+        public boolean hasNext() {
+            return n < size;
+        }
+
+        @Override
+        public long next() {
+            int cell = (int) (n++ % rowBlockLen);
+            if (cell == 0 && n > 1) {
+                block = getLong(rows, block + rowBlockLen * 8);
+            }
+            return getLong(rows, block + cell * 8);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        private Cursor of(int e) {
+            this.n = 0;
+            if (e == -1) {
+                this.size = 0;
+            } else {
+                long entry = entryAddress(e);
+                this.size = Unsafe.getUnsafe().getLong(entry + COUNT);
+                this.block = Unsafe.getUnsafe().getLong(entry + HEAD);
+            }
+            return this;
+        }
+    }
+}
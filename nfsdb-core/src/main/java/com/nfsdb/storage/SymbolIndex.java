@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.storage;
+
+import com.nfsdb.collections.DirectLongList;
+import com.nfsdb.exceptions.JournalException;
+
+import java.io.Closeable;
+
+/**
+ * Index of int keys to ascending row IDs, which is maintained for indexed columns of partition.
+ */
+public interface SymbolIndex extends Closeable {
+
+    void add(int key, long value);
+
+    void close();
+
+    void commit();
+
+    void compact() throws JournalException;
+
+    boolean contains(int key);
+
+    IndexCursor cursor(int key);
+
+    void force();
+
+    IndexCursor fwdCursor(int key);
+
+    long getTxAddress();
+
+    void setTxAddress(long txAddress);
+
+    int getValueCount(int key);
+
+    long getValueQuick(int key, int i);
+
+    DirectLongList getValues(int key);
+
+    void getValues(int key, DirectLongList values);
+
+    long lastValue(int key);
+
+    IndexCursor newFwdCursor(int key);
+
+    long size();
+
+    void truncate(long size);
+}
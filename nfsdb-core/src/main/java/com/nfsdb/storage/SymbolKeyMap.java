@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.storage;
+
+import com.nfsdb.collections.IntList;
+
+/**
+ * Translates keys of one symbol table into keys of another. Translations are resolved lazily and cached
+ * in array indexed by source key, so every distinct value is looked up only once. When target table is
+ * writable, values missing in target table are added to it.
+ */
+public final class SymbolKeyMap {
+    private final SymbolTable from;
+    private final SymbolTable to;
+    private final boolean add;
+    private final IntList keys = new IntList();
+
+    public SymbolKeyMap(SymbolTable from, SymbolTable to, boolean add) {
+        this.from = from;
+        this.to = to;
+        this.add = add;
+    }
+
+    /**
+     * @param key key in source symbol table
+     * @return key in target symbol table or SymbolTable.VALUE_NOT_FOUND if value does not exist in target
+     * table and map is not allowed to add values.
+     */
+    public int get(int key) {
+        if (key < 0) {
+            return key;
+        }
+
+        while (keys.size() <= key) {
+            keys.add(IntList.noEntryValue);
+        }
+
+        int k = keys.getQuick(key);
+        if (k == IntList.noEntryValue) {
+            CharSequence value = from.flyweightValue(key);
+            k = add ? to.put(value) : to.getQuick(value);
+            keys.setQuick(key, k);
+        }
+        return k;
+    }
+}
@@ -18,7 +18,7 @@ package com.nfsdb.storage;
 
 import com.nfsdb.JournalMode;
 import com.nfsdb.collections.AbstractImmutableIterator;
-import com.nfsdb.collections.ObjIntHashMap;
+import com.nfsdb.collections.DirectSymbolCache;
 import com.nfsdb.collections.ObjList;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.exceptions.JournalInvalidSymbolValueException;
@@ -29,6 +29,21 @@ import com.nfsdb.utils.Hash;
 import java.io.Closeable;
 import java.io.File;
 
+/**
+ * Dictionary of symbol values. Values are stored in order of their keys and are looked up by hash index,
+ * which maps hash of value to keys of values with that hash.
+ * <p>
+ * Number of hash keys is derived from distinct count hint of column. When symbol table outgrows hint, so that
+ * there are more than MAX_AVG_CHAIN_LENGTH values per hash key on average, values are rehashed into new index
+ * with twice as many hash keys. Rehash is incremental: every insert moves REHASH_STEP values to new index,
+ * while lookups keep using old index, which has all values, until new index catches up. Each hash key count
+ * has its own index file and current count is recorded in journal transaction, so readers keep using index
+ * their transaction refers to. Inserts do not stall on rehash and lookups stay O(1) regardless of hint.
+ * <p>
+ * Unless column is configured not to cache values, values are cached off-heap for lookups by CharSequence and
+ * for flyweight reads, neither of which allocates objects. String values are cached on heap only once they
+ * have been requested by value().
+ */
 public class SymbolTable implements Closeable {
 
     public static final int VALUE_NOT_FOUND = -2;
@@ -37,19 +52,42 @@ public class SymbolTable implements Closeable {
     private static final String INDEX_FILE_SUFFIX = ".symi";
     private static final String HASH_INDEX_FILE_SUFFIX = ".symr";
     private static final double CACHE_LOAD_FACTOR = 0.2;
-    private final int hashKeyCount;
+    private static final int MAX_AVG_CHAIN_LENGTH = 8;
+    private static final int REHASH_STEP = 4;
+    private final int initialHashKeyCount;
+    private final int keyCount;
+    private final int txCountHint;
+    private final File directory;
+    private final JournalMode mode;
     private final String column;
-    private final ObjIntHashMap<CharSequence> valueCache;
+    private final DirectSymbolCache valueCache;
     private final ObjList<String> keyCache;
     private final boolean noCache;
     private VariableColumn data;
     private KVIndex index;
+    private int hashKeyCount;
     private int size;
+    // index, which values are being moved to, null when there is no rehash in progress
+    private KVIndex rehashIndex;
+    private int rehashKeyCount;
+    private int rehashPos;
 
     public SymbolTable(int keyCount, int avgStringSize, int txCountHint, File directory, String column, JournalMode mode, int size, long indexTxAddress, boolean noCache) throws JournalException {
+        this(keyCount, avgStringSize, txCountHint, directory, column, mode, size, indexTxAddress, 0, noCache);
+    }
+
+    /**
+     * @param hashKeyCount number of hash keys recorded in transaction, 0 when symbol table has not been rehashed
+     */
+    public SymbolTable(int keyCount, int avgStringSize, int txCountHint, File directory, String column, JournalMode mode, int size, long indexTxAddress, int hashKeyCount, boolean noCache) throws JournalException {
         // number of hash keys stored in index
         // assume it is 20% of stated capacity
-        this.hashKeyCount = Math.max(1, (int) (keyCount * CACHE_LOAD_FACTOR));
+        this.initialHashKeyCount = Math.max(1, (int) (keyCount * CACHE_LOAD_FACTOR));
+        this.hashKeyCount = hashKeyCount > 0 ? hashKeyCount : initialHashKeyCount;
+        this.keyCount = keyCount;
+        this.txCountHint = txCountHint;
+        this.directory = directory;
+        this.mode = mode;
         this.column = column;
         this.noCache = noCache;
         JournalMode m;
@@ -71,8 +109,8 @@ public class SymbolTable implements Closeable {
         this.data = new VariableColumn(dataFile, indexFile);
         this.size = size;
 
-        this.index = new KVIndex(new File(directory, column + HASH_INDEX_FILE_SUFFIX), this.hashKeyCount, keyCount, txCountHint, mode, indexTxAddress);
-        this.valueCache = new ObjIntHashMap<>(noCache ? 0 : keyCount, VALUE_NOT_FOUND);
+        this.index = openIndex(this.hashKeyCount, indexTxAddress);
+        this.valueCache = noCache ? null : new DirectSymbolCache(keyCount);
         this.keyCache = new ObjList<>(noCache ? 0 : keyCount);
     }
 
@@ -85,6 +123,21 @@ public class SymbolTable implements Closeable {
         this.index.setTxAddress(indexTxAddress);
     }
 
+    /**
+     * Applies transaction, which might have been committed after symbol table was rehashed.
+     *
+     * @param hashKeyCount number of hash keys recorded in transaction, 0 when unknown
+     */
+    public void applyTx(int size, long indexTxAddress, int hashKeyCount) throws JournalException {
+        if (hashKeyCount > 0 && hashKeyCount != this.hashKeyCount) {
+            KVIndex idx = openIndex(hashKeyCount, indexTxAddress);
+            this.index.close();
+            this.index = idx;
+            this.hashKeyCount = hashKeyCount;
+        }
+        applyTx(size, indexTxAddress);
+    }
+
     public void close() {
         if (data != null) {
             data.close();
@@ -92,7 +145,14 @@ public class SymbolTable implements Closeable {
         if (index != null) {
             index.close();
         }
+        if (rehashIndex != null) {
+            rehashIndex.close();
+        }
+        if (valueCache != null) {
+            valueCache.close();
+        }
         index = null;
+        rehashIndex = null;
         data = null;
     }
 
@@ -119,6 +179,10 @@ public class SymbolTable implements Closeable {
         return data;
     }
 
+    public int getHashKeyCount() {
+        return hashKeyCount;
+    }
+
     public long getIndexTxAddress() {
         return index.getTxAddress();
     }
@@ -130,7 +194,7 @@ public class SymbolTable implements Closeable {
 
         if (!noCache) {
             int key = valueCache.get(value);
-            if (key != VALUE_NOT_FOUND) {
+            if (key != DirectSymbolCache.NO_ENTRY) {
                 return key;
             }
         }
@@ -141,7 +205,7 @@ public class SymbolTable implements Closeable {
     public SymbolTable preLoad() {
         for (int key = 0, size = (int) data.size(); key < size; key++) {
             String value = data.getStr(key);
-            valueCache.putIfAbsent(value, key);
+            cache(key, value);
             keyCache.add(value);
 
         }
@@ -155,7 +219,8 @@ public class SymbolTable implements Closeable {
             data.commit();
             index.add(hashKey(value), key);
             size++;
-            cache(key, value.toString());
+            cache(key, value);
+            rehash(size);
         }
         return key;
     }
@@ -172,6 +237,11 @@ public class SymbolTable implements Closeable {
         if (size() > size) {
             data.truncate(size);
             index.truncate(size);
+            if (rehashIndex != null) {
+                // start over, truncated values might have been moved already
+                rehashIndex.close();
+                rehashIndex = null;
+            }
             data.commit();
             clearCache();
             this.size = size;
@@ -181,7 +251,8 @@ public class SymbolTable implements Closeable {
     public void updateIndex(int oldSize, int newSize) {
         if (oldSize < newSize) {
             for (int i = oldSize; i < newSize; i++) {
-                index.add(hashKey(data.getStr(i)), i);
+                index.add(hashKey(data.getFlyweightStr(i)), i);
+                rehash(i + 1);
             }
         }
     }
@@ -194,7 +265,11 @@ public class SymbolTable implements Closeable {
         if (key < size) {
             String value = key < keyCache.size() ? keyCache.getQuick(key) : null;
             if (value == null) {
-                cache(key, value = data.getStr(key));
+                value = data.getStr(key);
+                if (!noCache) {
+                    cache(key, value);
+                    keyCache.extendAndSet(key, value);
+                }
             }
             return value;
         }
@@ -202,6 +277,29 @@ public class SymbolTable implements Closeable {
 
     }
 
+    /**
+     * Reads value without creating String. Returned sequence is only valid until next call to this symbol table.
+     */
+    public CharSequence flyweightValue(int key) {
+        if (key == VALUE_IS_NULL) {
+            return null;
+        }
+
+        if (key < size) {
+            if (noCache) {
+                return data.getFlyweightStr(key);
+            }
+
+            CharSequence value = valueCache.value(key);
+            if (value == null) {
+                valueCache.put(key, data.getFlyweightStr(key));
+                value = valueCache.value(key);
+            }
+            return value;
+        }
+        throw new JournalRuntimeException("Invalid symbol key: " + key);
+    }
+
     public boolean valueExists(CharSequence value) {
         return getQuick(value) != VALUE_NOT_FOUND;
     }
@@ -225,17 +323,18 @@ public class SymbolTable implements Closeable {
         };
     }
 
-    private void cache(int key, String value) {
+    private void cache(int key, CharSequence value) {
         if (noCache) {
             return;
         }
 
-        valueCache.put(value, key);
-        keyCache.extendAndSet(key, value);
+        valueCache.put(key, value);
     }
 
     private void clearCache() {
-        valueCache.clear();
+        if (!noCache) {
+            valueCache.clear();
+        }
         keyCache.clear();
     }
 
@@ -250,8 +349,7 @@ public class SymbolTable implements Closeable {
         while (cursor.hasNext()) {
             int key;
             if (data.cmpStr((key = (int) cursor.next()), value)) {
-                String s = value.toString();
-                cache(key, s);
+                cache(key, value);
                 return key;
             }
         }
@@ -261,4 +359,52 @@ public class SymbolTable implements Closeable {
     private int hashKey(CharSequence value) {
         return Hash.boundedHash(value, hashKeyCount);
     }
+
+    private KVIndex openIndex(int hashKeyCount, long indexTxAddress) throws JournalException {
+        return new KVIndex(indexFile(hashKeyCount), hashKeyCount, Math.max(keyCount, size), txCountHint, mode, indexTxAddress);
+    }
+
+    private File indexFile(int hashKeyCount) {
+        // index of initial hash key count keeps its original name
+        return new File(directory, column + HASH_INDEX_FILE_SUFFIX + (hashKeyCount == initialHashKeyCount ? "" : "." + hashKeyCount));
+    }
+
+    /**
+     * Moves next REHASH_STEP values to new index with twice as many hash keys, starting rehash when there is
+     * none in progress and table is full. Values are moved in order of their keys, so new index catches up
+     * with inserts. It then replaces old index and becomes visible to readers when writer commits transaction.
+     * Until then transactions refer to old index.
+     *
+     * @param indexed number of values in old index
+     */
+    private void rehash(int indexed) {
+        if (rehashIndex == null) {
+            if (indexed <= (long) hashKeyCount * MAX_AVG_CHAIN_LENGTH || hashKeyCount > Integer.MAX_VALUE / 2) {
+                return;
+            }
+
+            rehashKeyCount = hashKeyCount * 2;
+            rehashPos = 0;
+            try {
+                // index files might have been left over by rehash, which was not committed
+                File file = indexFile(rehashKeyCount);
+                KVIndex.delete(file);
+                rehashIndex = new KVIndex(file, rehashKeyCount, Math.max(keyCount, indexed) * 2L, txCountHint, mode, 0);
+            } catch (JournalException e) {
+                throw new JournalRuntimeException("Cannot rehash symbol table %s", e, column);
+            }
+        }
+
+        for (int hi = Math.min(indexed, rehashPos + REHASH_STEP); rehashPos < hi; rehashPos++) {
+            rehashIndex.add(Hash.boundedHash(data.getFlyweightStr(rehashPos), rehashKeyCount), rehashPos);
+        }
+
+        if (rehashPos == indexed) {
+            rehashIndex.commit();
+            index.close();
+            index = rehashIndex;
+            hashKeyCount = rehashKeyCount;
+            rehashIndex = null;
+        }
+    }
 }
@@ -34,6 +34,7 @@ public class Tx {
     public String lagName;
     public int symbolTableSizes[];
     public long symbolTableIndexPointers[];
+    public int symbolTableHashKeyCounts[];
     public long indexPointers[];
     public long lagIndexPointers[];
 
@@ -52,6 +53,7 @@ public class Tx {
                 ", lagName='" + lagName + '\'' +
                 ", symbolTableSizes=" + Arrays.toString(symbolTableSizes) +
                 ", symbolTableIndexPointers=" + Arrays.toString(symbolTableIndexPointers) +
+                ", symbolTableHashKeyCounts=" + Arrays.toString(symbolTableHashKeyCounts) +
                 ", indexPointers=" + Arrays.toString(indexPointers) +
                 ", lagIndexPointers=" + Arrays.toString(lagIndexPointers) +
                 '}';
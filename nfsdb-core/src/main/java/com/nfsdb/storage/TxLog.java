@@ -24,10 +24,19 @@ import com.nfsdb.utils.Unsafe;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import java.io.File;
+import java.util.Arrays;
 
+/**
+ * Transaction log of journal. Methods are synchronized because writer shares its log with group commit flusher.
+ */
 public class TxLog {
 
     public static final String FILE_NAME = "_tx";
+    /**
+     * Flag bit of command byte, which marks records that end with symbol table hash key counts.
+     * Records written before symbol tables could be rehashed do not have this bit.
+     */
+    private static final byte HASH_KEY_COUNTS = 0x40;
     private final HugeBuffer hb;
     private final Rnd rnd;
     private long headAddress = 0;
@@ -46,7 +55,7 @@ public class TxLog {
     }
 
     @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
-    public long findAddress(long txn, long txPin) {
+    public synchronized long findAddress(long txn, long txPin) {
         long address = getCurrentTxAddress();
         long curr;
         do {
@@ -68,18 +77,18 @@ public class TxLog {
         return -1;
     }
 
-    public void force() {
+    public synchronized void force() {
         hb.force();
     }
 
-    public long getCurrentTxAddress() {
+    public synchronized long getCurrentTxAddress() {
         if (currentAddress == 0) {
             currentAddress = readCurrentTxAddress();
         }
         return currentAddress;
     }
 
-    public final long getCurrentTxn() {
+    public final synchronized long getCurrentTxn() {
         long address = getCurrentTxAddress();
         if (address == 0) {
             return 0L;
@@ -89,7 +98,7 @@ public class TxLog {
         return hb.getLong();
     }
 
-    public long getCurrentTxnPin() {
+    public synchronized long getCurrentTxnPin() {
         long address = getCurrentTxAddress();
         if (address == 0) {
             return 0L;
@@ -98,23 +107,23 @@ public class TxLog {
         return hb.getLong();
     }
 
-    public boolean hasNext() {
+    public synchronized boolean hasNext() {
         return readCurrentTxAddress() > headAddress;
     }
 
-    public boolean head(Tx tx) {
+    public synchronized boolean head(Tx tx) {
         long address = readCurrentTxAddress();
         boolean result = address != headAddress;
         read(headAddress = currentAddress = address, tx);
         return result;
     }
 
-    public boolean isEmpty() {
+    public synchronized boolean isEmpty() {
         return hb.getAppendOffset() < 10 || readCurrentTxAddress() < 1;
     }
 
     @SuppressFBWarnings({"PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS"})
-    public void read(long address, Tx tx) {
+    public synchronized void read(long address, Tx tx) {
         assert address > 0 : "zero headAddress: " + address;
         tx.address = address;
         hb.setPos(address);
@@ -122,7 +131,8 @@ public class TxLog {
         tx.txn = hb.getLong();
         tx.txPin = hb.getLong();
         tx.timestamp = hb.getLong();
-        tx.command = hb.get();
+        byte command = hb.get();
+        tx.command = (byte) (command & ~HASH_KEY_COUNTS);
         tx.journalMaxRowID = hb.getLong();
         tx.lastPartitionTimestamp = hb.getLong();
         tx.lagSize = hb.getLong();
@@ -131,9 +141,14 @@ public class TxLog {
         tx.symbolTableIndexPointers = hb.get(tx.symbolTableIndexPointers);
         tx.indexPointers = hb.get(tx.indexPointers);
         tx.lagIndexPointers = hb.get(tx.lagIndexPointers);
+        if ((command & HASH_KEY_COUNTS) != 0) {
+            tx.symbolTableHashKeyCounts = hb.get(tx.symbolTableHashKeyCounts);
+        } else {
+            clearHashKeyCounts(tx);
+        }
     }
 
-    public long readCurrentTxAddress() {
+    public synchronized long readCurrentTxAddress() {
         long a = hb.getAddress(0, 9);
 
         long address;
@@ -156,7 +171,7 @@ public class TxLog {
         return address;
     }
 
-    public void write(Tx tx, boolean manualTxn) {
+    public synchronized void write(Tx tx, boolean manualTxn) {
         currentAddress = Math.max(9, hb.getAppendOffset());
         hb.setPos(currentAddress);
         hb.put(tx.prevTxAddress);
@@ -164,7 +179,7 @@ public class TxLog {
         txn++;
         hb.put(manualTxn ? tx.txPin : rnd.nextPositiveLong());
         hb.put(System.currentTimeMillis());
-        hb.put(tx.command);
+        hb.put(tx.symbolTableHashKeyCounts == null ? tx.command : (byte) (tx.command | HASH_KEY_COUNTS));
         hb.put(tx.journalMaxRowID);
         hb.put(tx.lastPartitionTimestamp);
         hb.put(tx.lagSize);
@@ -173,13 +188,16 @@ public class TxLog {
         hb.put(tx.symbolTableIndexPointers);
         hb.put(tx.indexPointers);
         hb.put(tx.lagIndexPointers);
+        if (tx.symbolTableHashKeyCounts != null) {
+            hb.put(tx.symbolTableHashKeyCounts);
+        }
         // write out tx address
         headAddress = hb.getPos();
         writeTxAddress(currentAddress);
         hb.setAppendOffset(headAddress);
     }
 
-    public void writeTxAddress(long address) {
+    public synchronized void writeTxAddress(long address) {
 
         // checksum
         byte b0 = (byte) address;
@@ -196,4 +214,16 @@ public class TxLog {
 
         currentAddress = address;
     }
+
+    /**
+     * Symbol tables of old records have initial number of hash keys, which is what zero count means.
+     */
+    private static void clearHashKeyCounts(Tx tx) {
+        int n = tx.symbolTableSizes == null ? 0 : tx.symbolTableSizes.length;
+        if (tx.symbolTableHashKeyCounts == null || tx.symbolTableHashKeyCounts.length != n) {
+            tx.symbolTableHashKeyCounts = new int[n];
+        } else {
+            Arrays.fill(tx.symbolTableHashKeyCounts, 0);
+        }
+    }
 }
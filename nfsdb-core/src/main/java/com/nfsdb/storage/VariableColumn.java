@@ -44,6 +44,26 @@ public class VariableColumn extends AbstractColumn {
         this.indexColumn = new FixedColumn(indexFile, 8);
     }
 
+    /**
+     * Appends rows from lo (inclusive) to hi (exclusive) of another variable length column. Data is copied as
+     * single contiguous range of memory and offsets are shifted to new location.
+     *
+     * @param src source column
+     * @param lo  first row to copy
+     * @param hi  row after last row to copy
+     */
+    public void append(VariableColumn src, long lo, long hi) {
+        if (lo >= hi) {
+            return;
+        }
+        long srcLo = src.getOffset(lo);
+        long srcHi = hi < src.size() ? src.getOffset(hi) : src.getOffset();
+        long appendOffset = getOffset();
+        copyMemory(src.mappedFile, srcLo, mappedFile, appendOffset, srcHi - srcLo);
+        preCommit(appendOffset + srcHi - srcLo);
+        indexColumn.appendLongs(src.indexColumn, lo, hi, appendOffset - srcLo);
+    }
+
     @Override
     public void close() {
         indexColumn.close();
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.storage;
+
+import com.nfsdb.utils.Unsafe;
+
+import java.io.Closeable;
+
+/**
+ * Summary of fixed width column values for every block of BLOCK_ROWS rows. Each block records minimum
+ * and maximum of its values and the number of nulls. Only floating point columns can store nulls (NaN),
+ * NaN values are excluded from minimum and maximum.
+ * <p/>
+ * Entries are only ever widened while rows are appended to the block, so readers can safely use
+ * entries of blocks that are within covered row count.
+ * <p/>
+ * File layout:
+ * <pre>
+ *     long covered row count
+ *     entries: long min, long max, long null count
+ * </pre>
+ * Min and max are stored as raw double bits for DOUBLE and FLOAT columns and as long for the rest.
+ */
+public class ZoneMap implements Closeable {
+    public static final int BLOCK_BITS = 12;
+    public static final int BLOCK_ROWS = 1 << BLOCK_BITS;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 24;
+
+    private final MemoryFile mappedFile;
+    private final ColumnType type;
+    private final boolean floatingPoint;
+
+    public ZoneMap(MemoryFile mappedFile, ColumnType type) {
+        this.mappedFile = mappedFile;
+        this.type = type;
+        this.floatingPoint = type == ColumnType.DOUBLE || type == ColumnType.FLOAT;
+    }
+
+    public static boolean isSupported(ColumnType type) {
+        switch (type) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case DATE:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        mappedFile.close();
+    }
+
+    public void force() {
+        mappedFile.force();
+    }
+
+    public double getMaxDouble(long block) {
+        long v = Unsafe.getUnsafe().getLong(mappedFile.getAddress(entryOffset(block) + 8, 8));
+        return floatingPoint ? Double.longBitsToDouble(v) : (double) v;
+    }
+
+    public long getMaxLong(long block) {
+        long v = Unsafe.getUnsafe().getLong(mappedFile.getAddress(entryOffset(block) + 8, 8));
+        return floatingPoint ? (long) Math.ceil(Double.longBitsToDouble(v)) : v;
+    }
+
+    public double getMinDouble(long block) {
+        long v = Unsafe.getUnsafe().getLong(mappedFile.getAddress(entryOffset(block), 8));
+        return floatingPoint ? Double.longBitsToDouble(v) : (double) v;
+    }
+
+    public long getMinLong(long block) {
+        long v = Unsafe.getUnsafe().getLong(mappedFile.getAddress(entryOffset(block), 8));
+        return floatingPoint ? (long) Math.floor(Double.longBitsToDouble(v)) : v;
+    }
+
+    public long getNullCount(long block) {
+        return Unsafe.getUnsafe().getLong(mappedFile.getAddress(entryOffset(block) + 16, 8));
+    }
+
+    /**
+     * Number of rows summarised by zone map. Entry of block is final when block end is within this count.
+     *
+     * @return number of rows
+     */
+    public long getRowCount() {
+        if (mappedFile.getAppendOffset() < HEADER_SIZE) {
+            return 0;
+        }
+        return Unsafe.getUnsafe().getLong(mappedFile.getAddress(0, 8));
+    }
+
+    /**
+     * Tests if entry of block can be relied on when reading rows up to and including hi.
+     *
+     * @param block block number
+     * @param hi    last row that is going to be read
+     * @return true when entry covers all rows of the block up to hi
+     */
+    public boolean isCovered(long block, long hi) {
+        return Math.min((block + 1) << BLOCK_BITS, hi + 1) <= getRowCount();
+    }
+
+    /**
+     * Discards entries for rows at or above size. Entry of block that contains size is rebuilt by next update.
+     *
+     * @param size new row count of column
+     */
+    public void truncate(long size) {
+        if (size < getRowCount()) {
+            setRowCount((size >>> BLOCK_BITS) << BLOCK_BITS);
+        }
+    }
+
+    /**
+     * Summarises rows of column between covered row count and size.
+     *
+     * @param column column to read values from
+     * @param size   number of rows in column
+     */
+    public void update(FixedColumn column, long size) {
+        long row = getRowCount();
+        if (row >= size) {
+            return;
+        }
+
+        while (row < size) {
+            long block = row >>> BLOCK_BITS;
+            long hi = Math.min((block + 1) << BLOCK_BITS, size);
+            long offset = entryOffset(block);
+            boolean first = (row & (BLOCK_ROWS - 1)) == 0;
+
+            if (floatingPoint) {
+                updateDouble(column, row, hi, offset, first);
+            } else {
+                updateLong(column, row, hi, offset, first);
+            }
+            row = hi;
+        }
+
+        long end = entryOffset((size - 1) >>> BLOCK_BITS) + ENTRY_SIZE;
+        if (mappedFile.getAppendOffset() < end) {
+            mappedFile.setAppendOffset(end);
+        }
+        setRowCount(size);
+    }
+
+    private static long entryOffset(long block) {
+        return HEADER_SIZE + block * ENTRY_SIZE;
+    }
+
+    private double getDouble(FixedColumn column, long row) {
+        return type == ColumnType.FLOAT ? column.getFloat(row) : column.getDouble(row);
+    }
+
+    private long getLong(FixedColumn column, long row) {
+        switch (type) {
+            case BYTE:
+                return column.getByte(row);
+            case SHORT:
+                return column.getShort(row);
+            case INT:
+                return column.getInt(row);
+            default:
+                return column.getLong(row);
+        }
+    }
+
+    private void setRowCount(long count) {
+        Unsafe.getUnsafe().putLong(mappedFile.getAddress(0, 8), count);
+        if (mappedFile.getAppendOffset() < HEADER_SIZE) {
+            mappedFile.setAppendOffset(HEADER_SIZE);
+        }
+    }
+
+    private void updateDouble(FixedColumn column, long lo, long hi, long offset, boolean first) {
+        long address = mappedFile.getAddress(offset, ENTRY_SIZE);
+        double min = first ? Double.POSITIVE_INFINITY : Double.longBitsToDouble(Unsafe.getUnsafe().getLong(address));
+        double max = first ? Double.NEGATIVE_INFINITY : Double.longBitsToDouble(Unsafe.getUnsafe().getLong(address + 8));
+        long nulls = first ? 0 : Unsafe.getUnsafe().getLong(address + 16);
+
+        for (long r = lo; r < hi; r++) {
+            double v = getDouble(column, r);
+            if (v != v) {
+                nulls++;
+            } else {
+                if (v < min) {
+                    min = v;
+                }
+                if (v > max) {
+                    max = v;
+                }
+            }
+        }
+
+        address = mappedFile.getAddress(offset, ENTRY_SIZE);
+        Unsafe.getUnsafe().putLong(address, Double.doubleToRawLongBits(min));
+        Unsafe.getUnsafe().putLong(address + 8, Double.doubleToRawLongBits(max));
+        Unsafe.getUnsafe().putLong(address + 16, nulls);
+    }
+
+    private void updateLong(FixedColumn column, long lo, long hi, long offset, boolean first) {
+        long address = mappedFile.getAddress(offset, ENTRY_SIZE);
+        long min = first ? Long.MAX_VALUE : Unsafe.getUnsafe().getLong(address);
+        long max = first ? Long.MIN_VALUE : Unsafe.getUnsafe().getLong(address + 8);
+
+        for (long r = lo; r < hi; r++) {
+            long v = getLong(column, r);
+            if (v < min) {
+                min = v;
+            }
+            if (v > max) {
+                max = v;
+            }
+        }
+
+        address = mappedFile.getAddress(offset, ENTRY_SIZE);
+        Unsafe.getUnsafe().putLong(address, min);
+        Unsafe.getUnsafe().putLong(address + 8, max);
+        Unsafe.getUnsafe().putLong(address + 16, 0);
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.utils;
+
+import com.nfsdb.collections.ObjIntHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Assembles class files for generated code. There is just enough of class file format here to produce
+ * classes with public methods and no fields: constant pool, method bodies and class header.
+ * <p/>
+ * Class files are Java 5 format, which is verified without stack map frames, so methods can have branches.
+ * Every class is defined by its own class loader and is unloaded once it is no longer referenced.
+ */
+public class BytecodeEmitter {
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final Buf pool = new Buf();
+    private final Buf methods = new Buf();
+    private final Buf code = new Buf();
+    private final ObjIntHashMap<String> poolIndex = new ObjIntHashMap<>();
+    private int poolCount = 1;
+    private int methodCount = 0;
+
+    /**
+     * Emits jump with offset to be patched.
+     *
+     * @return position of jump instruction
+     */
+    public int branch(int opcode) {
+        int p = code.pos;
+        op(opcode);
+        short2(0);
+        return p;
+    }
+
+    public int classRef(String name) {
+        String key = "C" + name;
+        int index = poolIndex.get(key);
+        if (index == -1) {
+            int n = utf8(name);
+            pool.put1(CONSTANT_CLASS);
+            pool.put2(n);
+            poolIndex.put(key, index = poolCount++);
+        }
+        return index;
+    }
+
+    /**
+     * Assembles class and defines it in new class loader.
+     *
+     * @param name       internal name of class
+     * @param superName  internal name of super class
+     * @param interfaces internal names of implemented interfaces
+     * @return defined class
+     */
+    public Class<?> define(String name, String superName, String... interfaces) {
+        byte[] bytes = toByteArray(name, superName, interfaces);
+        return new Loader(BytecodeEmitter.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+    }
+
+    public int doubleConst(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant(CONSTANT_DOUBLE, "D" + bits, bits);
+    }
+
+    public int fieldRef(String owner, String name, String desc) {
+        return memberRef(CONSTANT_FIELD_REF, owner, name, desc);
+    }
+
+    public int intConst(int value) {
+        return constant(CONSTANT_INTEGER, "I" + value, value);
+    }
+
+    public int interfaceMethodRef(String owner, String name, String desc) {
+        return memberRef(CONSTANT_INTERFACE_METHOD_REF, owner, name, desc);
+    }
+
+    public int longConst(long value) {
+        return constant(CONSTANT_LONG, "J" + value, value);
+    }
+
+    /**
+     * Adds public method, body of which is code emitted since previous method.
+     */
+    public void method(String name, String desc, int maxStack, int maxLocals) {
+        if (code.pos > Short.MAX_VALUE) {
+            throw new IllegalStateException("Method is too large: " + name + ", " + code.pos);
+        }
+
+        int n = utf8(name);
+        int d = utf8(desc);
+        int codeAttr = utf8("Code");
+        methods.put2(0x0001);
+        methods.put2(n);
+        methods.put2(d);
+        methods.put2(1);
+        methods.put2(codeAttr);
+        methods.put4(12 + code.pos);
+        methods.put2(maxStack);
+        methods.put2(maxLocals);
+        methods.put4(code.pos);
+        methods.put(code.bytes, code.pos);
+        // exception table and attributes
+        methods.put2(0);
+        methods.put2(0);
+        methodCount++;
+        code.pos = 0;
+    }
+
+    public int methodRef(String owner, String name, String desc) {
+        return memberRef(CONSTANT_METHOD_REF, owner, name, desc);
+    }
+
+    public void op(int b) {
+        code.put1(b);
+    }
+
+    public void op(int opcode, int operand) {
+        code.put1(opcode);
+        code.put2(operand);
+    }
+
+    /**
+     * Points jump at given position to current position.
+     */
+    public void patch(int branch) {
+        int offset = code.pos - branch;
+        code.bytes[branch + 1] = (byte) (offset >> 8);
+        code.bytes[branch + 2] = (byte) offset;
+    }
+
+    /**
+     * Content of class emitted so far, which is constant pool and methods. Classes of equal shape that
+     * differ only in their names compile to the same code.
+     */
+    public ByteBuffer shape() {
+        byte[] b = Arrays.copyOf(pool.bytes, pool.pos + methods.pos);
+        System.arraycopy(methods.bytes, 0, b, pool.pos, methods.pos);
+        return ByteBuffer.wrap(b);
+    }
+
+    public void short2(int value) {
+        code.put2(value);
+    }
+
+    public byte[] toByteArray(String name, String superName, String... interfaces) {
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int[] ifaces = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            ifaces[i] = classRef(interfaces[i]);
+        }
+
+        Buf out = new Buf();
+        out.put4(0xCAFEBABE);
+        out.put2(0);
+        out.put2(49);
+        out.put2(poolCount);
+        out.put(pool.bytes, pool.pos);
+        // public final super
+        out.put2(0x0031);
+        out.put2(thisClass);
+        out.put2(superClass);
+        out.put2(ifaces.length);
+        for (int i = 0; i < ifaces.length; i++) {
+            out.put2(ifaces[i]);
+        }
+        // fields
+        out.put2(0);
+        out.put2(methodCount);
+        out.put(methods.bytes, methods.pos);
+        // attributes
+        out.put2(0);
+        return Arrays.copyOf(out.bytes, out.pos);
+    }
+
+    public int utf8(String value) {
+        String key = "U" + value;
+        int index = poolIndex.get(key);
+        if (index == -1) {
+            pool.put1(CONSTANT_UTF8);
+            pool.putUtf(value);
+            poolIndex.put(key, index = poolCount++);
+        }
+        return index;
+    }
+
+    private int constant(int tag, String key, long bits) {
+        int index = poolIndex.get(key);
+        if (index == -1) {
+            pool.put1(tag);
+            index = poolCount;
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                pool.put4((int) (bits >>> 32));
+                pool.put4((int) bits);
+                // long and double constants take two pool slots
+                poolCount += 2;
+            } else {
+                pool.put4((int) bits);
+                poolCount++;
+            }
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    private int memberRef(int tag, String owner, String name, String desc) {
+        String key = "M" + tag + owner + '.' + name + desc;
+        int index = poolIndex.get(key);
+        if (index == -1) {
+            int c = classRef(owner);
+            int n = utf8(name);
+            int d = utf8(desc);
+            pool.put1(CONSTANT_NAME_AND_TYPE);
+            pool.put2(n);
+            pool.put2(d);
+            int nt = poolCount++;
+            pool.put1(tag);
+            pool.put2(c);
+            pool.put2(nt);
+            poolIndex.put(key, index = poolCount++);
+        }
+        return index;
+    }
+
+    private static class Buf {
+        private byte[] bytes = new byte[256];
+        private int pos;
+
+        private void put(byte[] b, int len) {
+            ensure(len);
+            System.arraycopy(b, 0, bytes, pos, len);
+            pos += len;
+        }
+
+        private void put1(int b) {
+            ensure(1);
+            bytes[pos++] = (byte) b;
+        }
+
+        private void put2(int v) {
+            put1(v >> 8);
+            put1(v);
+        }
+
+        private void put4(int v) {
+            put2(v >> 16);
+            put2(v);
+        }
+
+        /**
+         * Writes string in modified UTF-8 encoding, same as DataOutput.writeUTF().
+         */
+        private void putUtf(String s) {
+            int len = 0;
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                len += c > 0 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+            if (len > 0xffff) {
+                throw new IllegalArgumentException("String is too long: " + len);
+            }
+
+            put2(len);
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                if (c > 0 && c < 0x80) {
+                    put1(c);
+                } else if (c < 0x800) {
+                    put1(0xc0 | (c >> 6));
+                    put1(0x80 | (c & 0x3f));
+                } else {
+                    put1(0xe0 | (c >> 12));
+                    put1(0x80 | ((c >> 6) & 0x3f));
+                    put1(0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        private void ensure(int len) {
+            if (pos + len > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + len));
+            }
+        }
+    }
+
+    private static class Loader extends ClassLoader {
+        private Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.collections.DirectLongList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.storage.BitmapIndex;
+import com.nfsdb.storage.BitmapIndexCursor;
+import com.nfsdb.storage.IndexCursor;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+public class BitmapIndexTest extends AbstractTest {
+    private static final int ROWS = 300000;
+    private File indexFile;
+    private File otherFile;
+
+    @Before
+    public void setup() {
+        indexFile = new File(factory.getConfiguration().getJournalBase(), "bitmap-test");
+        otherFile = new File(factory.getConfiguration().getJournalBase(), "bitmap-other");
+    }
+
+    @Test
+    public void testAndOr() throws JournalException {
+        int a[] = keys(ROWS, 3, 1);
+        int b[] = keys(ROWS, 7, 2);
+        try (BitmapIndex ia = new BitmapIndex(indexFile, 3, ROWS, 1, JournalMode.APPEND, 0);
+             BitmapIndex ib = new BitmapIndex(otherFile, 7, ROWS, 1, JournalMode.APPEND, 0)) {
+            for (int i = 0; i < ROWS; i++) {
+                ia.add(a[i], i);
+                ib.add(b[i], i);
+            }
+            ia.commit();
+            ib.commit();
+
+            BitmapIndexCursor cursor = new BitmapIndexCursor();
+            long lo = 70000;
+            long hi = 250001;
+            cursor.clear().of(ia, 0).and().of(ib, 1).of(ib, 6).prepare(lo, hi);
+
+            int count = 0;
+            long last = -1;
+            while (cursor.hasNext()) {
+                long row = cursor.next();
+                Assert.assertTrue(row > last);
+                Assert.assertTrue(row >= lo && row < hi);
+                Assert.assertTrue(a[(int) row] == 0 && (b[(int) row] == 1 || b[(int) row] == 6));
+                last = row;
+                count++;
+            }
+
+            int expected = 0;
+            for (int i = (int) lo; i < hi; i++) {
+                if (a[i] == 0 && (b[i] == 1 || b[i] == 6)) {
+                    expected++;
+                }
+            }
+            Assert.assertEquals(expected, count);
+
+            // key without rows empties intersection
+            cursor.clear().of(ia, 0).and().of(ib, 100).prepare(0, ROWS);
+            Assert.assertFalse(cursor.hasNext());
+        }
+    }
+
+    @Test
+    public void testReadWrite() throws JournalException {
+        // key 0 has rows in every chunk, key 1 in every 1000th row and key 2 only in last chunk
+        long expected[][] = new long[3][];
+        int k[] = new int[ROWS];
+        int counts[] = new int[3];
+        for (int i = 0; i < ROWS; i++) {
+            k[i] = i > ROWS - 10 ? 2 : i % 1000 == 0 ? 1 : 0;
+            counts[k[i]]++;
+        }
+        for (int i = 0; i < 3; i++) {
+            expected[i] = new long[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < ROWS; i++) {
+            expected[k[i]][counts[k[i]]++] = i;
+        }
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, 3, ROWS, 1, JournalMode.APPEND, 0)) {
+            for (int i = 0; i < ROWS; i++) {
+                index.add(k[i], i);
+            }
+            index.commit();
+            Assert.assertEquals(ROWS, index.size());
+            assertValues(expected, index);
+        }
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, 3, ROWS, 1, JournalMode.READ, 0)) {
+            assertValues(expected, index);
+            Assert.assertEquals(0, index.getValueCount(3));
+            Assert.assertFalse(index.cursor(3).hasNext());
+        }
+    }
+
+    @Test
+    public void testSparseKeys() throws JournalException {
+        // many keys with few rows each keep array containers, some of which are grown and copied
+        int keys = 5000;
+        Rnd rnd = new Rnd();
+        int k[] = new int[ROWS];
+        int counts[] = new int[keys];
+        for (int i = 0; i < ROWS; i++) {
+            k[i] = rnd.nextPositiveInt() % (i % 2 == 0 ? 10 : keys);
+            counts[k[i]]++;
+        }
+        long expected[][] = new long[keys][];
+        for (int i = 0; i < keys; i++) {
+            expected[i] = new long[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < ROWS; i++) {
+            expected[k[i]][counts[k[i]]++] = i;
+        }
+
+        try (BitmapIndex index = new BitmapIndex(indexFile, keys, ROWS, 1, JournalMode.APPEND, 0)) {
+            for (int i = 0; i < ROWS; i++) {
+                index.add(k[i], i);
+            }
+            index.commit();
+            assertValues(expected, index);
+        }
+    }
+
+    @Test
+    public void testTruncate() throws JournalException {
+        int k[] = keys(ROWS, 4, 3);
+        try (BitmapIndex index = new BitmapIndex(indexFile, 4, ROWS, 1, JournalMode.APPEND, 0)) {
+            for (int i = 0; i < ROWS; i++) {
+                index.add(k[i], i);
+            }
+            index.commit();
+
+            long size = 100003;
+            index.truncate(size);
+            Assert.assertTrue(index.size() <= size);
+
+            // rows appended after truncate must not see truncated rows
+            for (int i = (int) size; i < ROWS; i++) {
+                index.add(k[i], i);
+            }
+            index.commit();
+
+            long expected[][] = new long[4][];
+            int counts[] = new int[4];
+            for (int i = 0; i < ROWS; i++) {
+                counts[k[i]]++;
+            }
+            for (int i = 0; i < 4; i++) {
+                expected[i] = new long[counts[i]];
+                counts[i] = 0;
+            }
+            for (int i = 0; i < ROWS; i++) {
+                expected[k[i]][counts[k[i]]++] = i;
+            }
+            assertValues(expected, index);
+        }
+    }
+
+    @Test
+    public void testTxAddress() throws JournalException {
+        try (BitmapIndex index = new BitmapIndex(indexFile, 2, ROWS, 1, JournalMode.APPEND, 0)) {
+            for (int i = 0; i < 10; i++) {
+                index.add(0, i * 2);
+            }
+            index.commit();
+            long txAddress = index.getTxAddress();
+
+            // grow array container past its capacity and into bitmap
+            for (int i = 10; i < 10000; i++) {
+                index.add(0, i * 2);
+            }
+            index.commit();
+
+            try (BitmapIndex reader = new BitmapIndex(indexFile, 2, ROWS, 1, JournalMode.READ, txAddress)) {
+                Assert.assertEquals(10, reader.getValueCount(0));
+                Assert.assertEquals(18, reader.lastValue(0));
+
+                IndexCursor c = reader.fwdCursor(0);
+                int n = 0;
+                while (c.hasNext()) {
+                    Assert.assertEquals(n++ * 2, c.next());
+                }
+                Assert.assertEquals(10, n);
+
+                c = reader.cursor(0);
+                while (c.hasNext()) {
+                    Assert.assertEquals(--n * 2, c.next());
+                }
+                Assert.assertEquals(0, n);
+
+                reader.setTxAddress(0);
+                Assert.assertEquals(10000, reader.getValueCount(0));
+                Assert.assertEquals(19998, reader.lastValue(0));
+            }
+        }
+    }
+
+    private static void assertValues(long expected[][], BitmapIndex index) {
+        for (int i = 0; i < expected.length; i++) {
+            long values[] = expected[i];
+            Assert.assertEquals(values.length, index.getValueCount(i));
+            if (values.length == 0) {
+                continue;
+            }
+            Assert.assertEquals(values[values.length - 1], index.lastValue(i));
+
+            try (DirectLongList list = index.getValues(i)) {
+                Assert.assertEquals(values.length, list.size());
+                for (int n = 0; n < values.length; n++) {
+                    Assert.assertEquals(values[n], list.get(n));
+                }
+            }
+
+            IndexCursor c = index.cursor(i);
+            int n = values.length;
+            while (c.hasNext()) {
+                Assert.assertEquals(values[--n], c.next());
+            }
+            Assert.assertEquals(0, n);
+
+            for (int j = values.length - 1; j > -1; j -= Math.max(1, values.length / 50)) {
+                Assert.assertEquals(values[j], index.getValueQuick(i, j));
+            }
+        }
+    }
+
+    private static int[] keys(int rows, int keyCount, long seed) {
+        Rnd rnd = new Rnd(seed, seed * 31);
+        int k[] = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            k[i] = rnd.nextPositiveInt() % keyCount;
+        }
+        return k;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.model.Band;
+import com.nfsdb.model.Quote;
+import com.nfsdb.query.ResultSet;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class ColumnCopyTest extends AbstractTest {
+
+    @Test
+    public void testAppendJournal() throws Exception {
+        JournalWriter<Quote> origin = factory.writer(Quote.class, "origin");
+        TestUtils.generateQuoteData(origin, 100000, Dates.parseDateTime("2014-01-30T00:11:00Z"), 100000);
+        origin.commit();
+
+        JournalWriter<Quote> w = factory.writer(Quote.class, "quote");
+        w.append(origin);
+        w.commit();
+
+        TestUtils.assertEquals(origin, w);
+    }
+
+    @Test
+    public void testAppendResultSet() throws Exception {
+        JournalWriter<Quote> origin = factory.writer(Quote.class, "origin");
+        TestUtils.generateQuoteData(origin, 20000, Dates.parseDateTime("2014-01-30T00:11:00Z"), 100000);
+        origin.commit();
+
+        // rows that are not consecutive, newest first
+        assertAppendResultSet(origin.query().all().withKeys("LLOY.L").asResultSet(), "1");
+        // consecutive rows
+        assertAppendResultSet(origin.query().all().asResultSet().subset(1000, 15000), "2");
+    }
+
+    @Test
+    public void testAppendToDifferentPartitioning() throws Exception {
+        JournalWriter<Quote> origin = factory.writer(Quote.class, "origin");
+        TestUtils.generateQuoteData(origin, 100000, Dates.parseDateTime("2014-01-30T00:11:00Z"), 100000);
+        origin.commit();
+
+        JournalWriter<Quote> w = factory.writer(new JournalKey<>(Quote.class, "quote", PartitionType.YEAR));
+        w.append(origin);
+        w.commit();
+
+        Assert.assertEquals(1, w.getPartitionCount());
+        TestUtils.assertDataEquals(origin, w);
+        Assert.assertEquals(
+                origin.query().all().withKeys("LLOY.L").asResultSet().size(),
+                w.query().all().withKeys("LLOY.L").asResultSet().size()
+        );
+    }
+
+    @Test
+    public void testOutOfOrder() throws Exception {
+        JournalWriter<Quote> origin = factory.writer(Quote.class, "origin");
+        TestUtils.generateQuoteData(origin, 1000, Dates.parseDateTime("2014-01-30T00:11:00Z"), 1000);
+        origin.commit();
+
+        JournalWriter<Quote> w = factory.writer(Quote.class, "quote");
+        TestUtils.generateQuoteData(w, 10, Dates.parseDateTime("2014-02-10T00:00:00Z"), 1000);
+        w.commit();
+
+        try {
+            w.append(origin);
+            Assert.fail();
+        } catch (JournalException ignore) {
+            // expected
+        }
+        Assert.assertEquals(10, w.size());
+    }
+
+    @Test
+    public void testStringAndBinary() throws Exception {
+        JournalWriter<Band> origin = factory.writer(Band.class, "origin");
+        Band band = new Band();
+        for (int i = 0; i < 1000; i++) {
+            band.setTimestamp(i + 1);
+            band.setName("band" + i);
+            band.setType(i % 3 == 0 ? null : "type" + (i % 7));
+            band.setUrl(i % 5 == 0 ? null : "http://band" + i);
+            if (i % 4 == 0) {
+                band.setImage((ByteBuffer) null);
+            } else {
+                byte[] bytes = new byte[i % 100];
+                for (int k = 0; k < bytes.length; k++) {
+                    bytes[k] = (byte) (k + i);
+                }
+                band.setImage(bytes);
+            }
+            origin.append(band);
+        }
+        origin.commit();
+
+        JournalWriter<Band> w = factory.writer(Band.class, "band");
+        // symbol keys of target journal differ from keys of origin
+        band.setTimestamp(0);
+        band.setType("type6");
+        w.append(band);
+        w.commit();
+
+        w.append(origin);
+        w.commit();
+
+        Assert.assertEquals(1001, w.size());
+        for (int i = 0; i < 1000; i++) {
+            Band e = origin.read(i);
+            Band a = w.read(i + 1);
+            Assert.assertEquals(e.getName(), a.getName());
+            Assert.assertEquals(e.getType(), a.getType());
+            Assert.assertEquals(e.getUrl(), a.getUrl());
+            if (i % 4 != 0) {
+                Assert.assertEquals(e.getImage(), a.getImage());
+            }
+        }
+    }
+
+    private void assertAppendResultSet(ResultSet<Quote> rs, String suffix) throws JournalException {
+        // result set is not in timestamp order, so target journals do not check order
+        JournalWriter<Quote> expected = factory.writer(new JournalKey<>(Quote.class, "expected" + suffix, PartitionType.NONE, false));
+        for (int i = 0, n = rs.size(); i < n; i++) {
+            expected.append(rs.read(i));
+        }
+        expected.commit();
+
+        JournalWriter<Quote> w = factory.writer(new JournalKey<>(Quote.class, "quote" + suffix, PartitionType.NONE, false));
+        w.append(rs);
+        w.commit();
+
+        TestUtils.assertDataEquals(expected, w);
+    }
+}
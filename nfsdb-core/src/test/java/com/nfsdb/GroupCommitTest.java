@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.model.Quote;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitTest extends AbstractTest {
+
+    @Test
+    public void testCommitsAreCoalesced() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setGroupCommitWindow(200);
+
+        int count = 20;
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Void> futures[] = new CompletableFuture[count];
+        long ts = Dates.parseDateTime("2015-01-10T10:00:00.000Z");
+        for (int i = 0; i < count; i++) {
+            TestUtils.generateQuoteData(w, 1000, ts + i * 1000L * Dates.HOUR_MILLIS, Dates.MINUTE_MILLIS);
+            futures[i] = w.commitDurableAsync();
+        }
+
+        for (int i = 0; i < count; i++) {
+            futures[i].get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertTrue(w.getGroupCommitFlusher().getFlushCount() < count);
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(count * 1000, r.size());
+        }
+    }
+
+    @Test
+    public void testCommitDurableWaitsForFlush() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setGroupCommitWindow(0);
+        TestUtils.generateQuoteData(w, 1000, Dates.parseDateTime("2015-01-10T10:00:00.000Z"), Dates.MINUTE_MILLIS);
+        w.commitDurable();
+        Assert.assertEquals(1, w.getGroupCommitFlusher().getFlushCount());
+
+        CompletableFuture<Void> f = w.commitDurableAsync();
+        w.close();
+        // outstanding flush completes on close
+        Assert.assertTrue(f.isDone());
+        Assert.assertFalse(f.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testFailedFlush() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setGroupCommitWindow(0);
+        long ts = Dates.parseDateTime("2015-01-10T10:00:00.000Z");
+        TestUtils.generateQuoteData(w, 1000, ts, Dates.MINUTE_MILLIS);
+        w.commitDurable();
+
+        w.getGroupCommitFlusher().injectFailure(new IOException("disk failure"));
+        TestUtils.generateQuoteData(w, 500, ts + 1000 * Dates.MINUTE_MILLIS, Dates.MINUTE_MILLIS);
+        CompletableFuture<Void> f = w.commitDurableAsync();
+        try {
+            f.get(10, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("disk failure", e.getCause().getMessage());
+        }
+
+        // later commit must not make failed rows durable
+        try {
+            TestUtils.generateQuoteData(w, 100, ts + 2000 * Dates.MINUTE_MILLIS, Dates.MINUTE_MILLIS);
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+        try {
+            w.commit();
+            Assert.fail();
+        } catch (JournalException ignore) {
+        }
+
+        w.rollback();
+        Assert.assertEquals(1000, w.size());
+
+        TestUtils.generateQuoteData(w, 100, ts + 2000 * Dates.MINUTE_MILLIS, Dates.MINUTE_MILLIS);
+        w.commitDurable();
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(1100, r.size());
+        }
+    }
+
+    @Test
+    public void testFailedFlushIsDiscardedOnClose() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setGroupCommitWindow(0);
+        long ts = Dates.parseDateTime("2015-01-10T10:00:00.000Z");
+        TestUtils.generateQuoteData(w, 1000, ts, Dates.MINUTE_MILLIS);
+        w.commitDurable();
+
+        w.getGroupCommitFlusher().injectFailure(new IOException("disk failure"));
+        TestUtils.generateQuoteData(w, 500, ts + 1000 * Dates.MINUTE_MILLIS, Dates.MINUTE_MILLIS);
+        Assert.assertTrue(w.commitDurableAsync().handle((v, e) -> e != null).get(10, TimeUnit.SECONDS));
+        w.close();
+
+        try (JournalWriter<Quote> w2 = factory.writer(Quote.class)) {
+            Assert.assertEquals(1000, w2.size());
+            TestUtils.generateQuoteData(w2, 100, ts + 2000 * Dates.MINUTE_MILLIS, Dates.MINUTE_MILLIS);
+            w2.commit();
+            Assert.assertEquals(1100, w2.size());
+        }
+    }
+
+    @Test
+    public void testTxIsWrittenAfterFlush() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setGroupCommitWindow(500);
+        TestUtils.generateQuoteData(w, 1000, Dates.parseDateTime("2015-01-10T10:00:00.000Z"), Dates.MINUTE_MILLIS);
+        CompletableFuture<Void> f = w.commitDurableAsync();
+
+        // transaction record is not written until data is on disk
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertFalse(f.isDone());
+            Assert.assertEquals(0, r.size());
+            f.get(10, TimeUnit.SECONDS);
+            r.refresh();
+            Assert.assertEquals(1000, r.size());
+        }
+    }
+
+    @Test
+    public void testCommitWaitsForPendingTx() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setGroupCommitWindow(10000);
+        long ts = Dates.parseDateTime("2015-01-10T10:00:00.000Z");
+        TestUtils.generateQuoteData(w, 1000, ts, Dates.MINUTE_MILLIS);
+        CompletableFuture<Void> f = w.commitDurableAsync();
+        TestUtils.generateQuoteData(w, 500, ts + 1000 * Dates.MINUTE_MILLIS, Dates.MINUTE_MILLIS);
+        // synchronous commit cuts commit window short and keeps transaction log in order
+        w.commit();
+        Assert.assertTrue(f.isDone());
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(1500, r.size());
+        }
+    }
+
+    @Test
+    public void testWithoutGroupCommit() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100, Dates.parseDateTime("2015-01-10T10:00:00.000Z"), Dates.MINUTE_MILLIS);
+        CompletableFuture<Void> f = w.commitDurableAsync();
+        Assert.assertTrue(f.isDone());
+        Assert.assertNull(w.getGroupCommitFlusher());
+
+        w.setGroupCommitWindow(10);
+        Assert.assertNotNull(w.getGroupCommitFlusher());
+        w.setGroupCommitWindow(-1);
+        Assert.assertNull(w.getGroupCommitFlusher());
+    }
+}
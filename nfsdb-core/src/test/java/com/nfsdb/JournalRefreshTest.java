@@ -19,6 +19,7 @@ package com.nfsdb;
 import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.model.Quote;
 import com.nfsdb.query.ResultSet;
+import com.nfsdb.storage.SymbolTable;
 import com.nfsdb.test.tools.AbstractTest;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
@@ -201,4 +202,45 @@ public class JournalRefreshTest extends AbstractTest {
         Assert.assertEquals(0, r.getSymbolTable("sym").size());
     }
 
+
+    @Test
+    public void testSymbolTableRehash() throws Exception {
+        Journal<Quote> reader = factory.reader(Quote.class);
+        long timestamp = Dates.parseDateTime("2014-02-10T02:00:00.000Z");
+
+        rw.append(new Quote().setSym("S0").setEx("E1").setTimestamp(timestamp));
+        rw.commit();
+        reader.refresh();
+        int hashKeyCount = reader.getSymbolTable("sym").getHashKeyCount();
+
+        // "sym" is hinted at 15 distinct values
+        for (int i = 1; i < 1000; i++) {
+            rw.append(new Quote().setSym("S" + i).setEx("E1").setTimestamp(timestamp + i));
+        }
+        rw.commit();
+        Assert.assertTrue(rw.getSymbolTable("sym").getHashKeyCount() > hashKeyCount);
+
+        reader.refresh();
+        assertSymbols(reader, 1000);
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            assertSymbols(r, 1000);
+        }
+
+        rw.close();
+        rw = factory.writer(Quote.class);
+        rw.append(new Quote().setSym("S1000").setEx("E1").setTimestamp(timestamp + 1000));
+        rw.commit();
+        reader.refresh();
+        assertSymbols(reader, 1001);
+        reader.close();
+    }
+
+    private static void assertSymbols(Journal<Quote> reader, int count) {
+        SymbolTable tab = reader.getSymbolTable("sym");
+        Assert.assertEquals(count, tab.size());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i, tab.getQuick("S" + i));
+        }
+    }
 }
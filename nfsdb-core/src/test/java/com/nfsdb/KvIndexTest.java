@@ -57,6 +57,32 @@ public class KvIndexTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testCompact() throws JournalException {
+        long expected[][] = skewedValues(3000, 5);
+        try (KVIndex index = new KVIndex(indexFile, expected.length, 3000, 1, JournalMode.APPEND, 0)) {
+            putValues(expected, index);
+            index.commit();
+            long txAddress = index.getTxAddress();
+
+            index.compact();
+            assertValues(expected, index);
+
+            // reader of transaction before compaction still sees its row blocks
+            try (KVIndex reader = new KVIndex(indexFile, expected.length, 3000, 1, JournalMode.READ, txAddress)) {
+                assertValues(expected, reader);
+            }
+
+            index.add(0, 5000);
+            index.add(0, 5001);
+            index.commit();
+            Assert.assertEquals(5001, index.lastValue(0));
+            Assert.assertEquals(expected[0].length + 2, index.getValueCount(0));
+            Assert.assertEquals(5000, index.getValueQuick(0, expected[0].length));
+            Assert.assertEquals(expected[0][expected[0].length - 1], index.getValueQuick(0, expected[0].length - 1));
+        }
+    }
+
     @Test
     public void testGetValueQuick() throws Exception {
         long expected[][] = {
@@ -216,6 +242,32 @@ public class KvIndexTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testSkewedKeys() throws JournalException {
+        long expected[][] = skewedValues(10000, 10);
+        try (KVIndex index = new KVIndex(indexFile, expected.length, 1000, 1, JournalMode.APPEND, 0)) {
+            putValues(expected, index);
+            index.commit();
+            assertValues(expected, index);
+
+            for (int i = 0; i < expected.length; i++) {
+                for (int k = 0; k < expected[i].length; k++) {
+                    Assert.assertEquals(expected[i][k], index.getValueQuick(i, k));
+                }
+            }
+
+            index.truncate(5000);
+            Assert.assertEquals(5000, index.getValueCount(0));
+            Assert.assertEquals(4999, index.lastValue(0));
+            Assert.assertEquals(4999, index.getValueQuick(0, 4999));
+            Assert.assertEquals(0, index.getValueCount(1));
+
+            index.add(0, 6000);
+            Assert.assertEquals(6000, index.lastValue(0));
+            Assert.assertEquals(5001, index.getValueCount(0));
+        }
+    }
+
     @Test
     public void testTruncateAtTail() throws JournalException {
         try (KVIndex index = new KVIndex(indexFile, totalKeys, totalValues, 1, JournalMode.APPEND, 0)) {
@@ -352,4 +404,22 @@ public class KvIndexTest extends AbstractTest {
             }
         }
     }
+
+    /**
+     * Key 0 gets first n values, other keys get a few values each after that.
+     */
+    private long[][] skewedValues(int n, int keys) {
+        long values[][] = new long[keys][];
+        values[0] = new long[n];
+        for (int i = 0; i < n; i++) {
+            values[0][i] = i;
+        }
+        for (int k = 1; k < keys; k++) {
+            values[k] = new long[k];
+            for (int i = 0; i < k; i++) {
+                values[k][i] = n + i * keys + k;
+            }
+        }
+        return values;
+    }
 }
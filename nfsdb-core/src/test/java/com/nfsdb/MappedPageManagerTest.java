@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.storage.FixedColumn;
+import com.nfsdb.storage.MappedPageManager;
+import com.nfsdb.storage.MemoryFile;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class MappedPageManagerTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        MappedPageManager.setBudget(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testBudgetIsEnforced() throws Exception {
+        File f = new File(temporaryFolder.getRoot(), "col.d");
+        createColumn(f, 100000);
+
+        MappedPageManager.setBudget(4 * 4096);
+        long mapped = MappedPageManager.getMappedBytes();
+        long unmapped = MappedPageManager.getUnmapCount();
+
+        try (FixedColumn col = new FixedColumn(new MemoryFile(f, 12, JournalMode.READ), 8)) {
+            for (int k = 0; k < 2; k++) {
+                for (long i = 0; i < 100000; i++) {
+                    Assert.assertEquals(i, col.getLong(i));
+                    Assert.assertTrue(MappedPageManager.getMappedBytes() - mapped <= 4 * 4096);
+                }
+            }
+            // random access
+            for (long i = 99999; i > -1; i -= 997) {
+                Assert.assertEquals(i, col.getLong(i));
+            }
+        }
+
+        Assert.assertTrue(MappedPageManager.getUnmapCount() - unmapped > 100);
+        Assert.assertEquals(mapped, MappedPageManager.getMappedBytes());
+    }
+
+    @Test
+    public void testEvictionOfPagesOwnedByOtherThread() throws Exception {
+        File f1 = new File(temporaryFolder.getRoot(), "col1.d");
+        File f2 = new File(temporaryFolder.getRoot(), "col2.d");
+        createColumn(f1, 10000);
+        createColumn(f2, 10000);
+
+        final FixedColumn col1 = new FixedColumn(new MemoryFile(f1, 12, JournalMode.READ), 8);
+        try (FixedColumn col2 = new FixedColumn(new MemoryFile(f2, 12, JournalMode.READ), 8)) {
+            final long mapped = MappedPageManager.getMappedBytes();
+            // map all pages of first column in another thread
+            runInThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = 0; i < 10000; i++) {
+                        Assert.assertEquals(i, col1.getLong(i));
+                    }
+                }
+            });
+            long col1Bytes = MappedPageManager.getMappedBytes() - mapped;
+
+            MappedPageManager.setBudget(col1Bytes);
+            long unmapped = MappedPageManager.getUnmapCount();
+            for (long i = 0; i < 10000; i++) {
+                Assert.assertEquals(i, col2.getLong(i));
+            }
+            // pages of first column cannot be unmapped by this thread
+            long overBudget = MappedPageManager.getMappedBytes() - mapped;
+            Assert.assertTrue(overBudget > col1Bytes);
+
+            // owner thread releases evicted pages next time it switches page
+            runInThread(new Runnable() {
+                @Override
+                public void run() {
+                    Assert.assertEquals(0, col1.getLong(0));
+                    Assert.assertEquals(9999, col1.getLong(9999));
+                }
+            });
+            Assert.assertTrue(MappedPageManager.getUnmapCount() > unmapped);
+            Assert.assertTrue(MappedPageManager.getMappedBytes() - mapped < overBudget);
+        } finally {
+            col1.close();
+        }
+    }
+
+    @Test
+    public void testReferencedPageGetsSecondChance() throws Exception {
+        File f = new File(temporaryFolder.getRoot(), "col.d");
+        createColumn(f, 2048);
+
+        long mapped = MappedPageManager.getMappedBytes();
+        MappedPageManager.setBudget(mapped + 3 * 4096);
+
+        // 512 values per page
+        try (FixedColumn col = new FixedColumn(new MemoryFile(f, 12, JournalMode.READ), 8)) {
+            Assert.assertEquals(0, col.getLong(0));
+            Assert.assertEquals(512, col.getLong(512));
+            Assert.assertEquals(1024, col.getLong(1024));
+            // page 0 is referenced again, page 1 is not
+            Assert.assertEquals(1, col.getLong(1));
+            Assert.assertEquals(1025, col.getLong(1025));
+
+            long maps = MappedPageManager.getMapCount();
+            long evictions = MappedPageManager.getEvictionCount();
+            Assert.assertEquals(1536, col.getLong(1536));
+            Assert.assertEquals(evictions + 1, MappedPageManager.getEvictionCount());
+
+            // page 0 survived eviction
+            Assert.assertEquals(2, col.getLong(2));
+            Assert.assertEquals(maps + 1, MappedPageManager.getMapCount());
+            Assert.assertEquals(513, col.getLong(513));
+            Assert.assertEquals(maps + 2, MappedPageManager.getMapCount());
+        }
+    }
+
+    private static void createColumn(File f, int count) throws JournalException {
+        try (FixedColumn col = new FixedColumn(new MemoryFile(f, 12, JournalMode.APPEND), 8)) {
+            for (long i = 0; i < count; i++) {
+                col.putLong(i);
+                col.commit();
+            }
+        }
+    }
+
+    private static void runInThread(Runnable runnable) throws InterruptedException {
+        final Throwable[] error = new Throwable[1];
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        });
+        t.start();
+        t.join();
+        Assert.assertNull(error[0]);
+    }
+}
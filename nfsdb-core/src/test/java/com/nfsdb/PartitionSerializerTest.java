@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.logging.Logger;
+import com.nfsdb.model.Band;
+import com.nfsdb.model.Quote;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class PartitionSerializerTest extends AbstractTest {
+
+    private static final Logger LOGGER = Logger.getLogger(PartitionSerializerTest.class);
+    private static final int TEST_DATA_SIZE = 1000000;
+
+    @After
+    public void tearDown2() {
+        PartitionSerializerGenerator.setEnabled(true);
+    }
+
+    @Test
+    public void testAppendPerformance() throws Exception {
+        PartitionSerializerGenerator.setEnabled(false);
+        long defaultTime = appendQuotes("quote-default");
+
+        PartitionSerializerGenerator.setEnabled(true);
+        long generatedTime = appendQuotes("quote-generated");
+
+        LOGGER.info("append (1M), default: " + defaultTime + "ms, generated: " + generatedTime + "ms");
+
+        Journal<Quote> expected = factory.reader(Quote.class, "quote-default");
+        Journal<Quote> actual = factory.reader(Quote.class, "quote-generated");
+
+        long t = System.nanoTime();
+        for (Quote q : expected) {
+            Assert.assertNotNull(q);
+        }
+        long defaultRead = System.nanoTime() - t;
+
+        t = System.nanoTime();
+        for (Quote q : actual) {
+            Assert.assertNotNull(q);
+        }
+        long generatedRead = System.nanoTime() - t;
+
+        LOGGER.info("read (1M), default: " + TimeUnit.NANOSECONDS.toMillis(defaultRead) + "ms, generated: " + TimeUnit.NANOSECONDS.toMillis(generatedRead) + "ms");
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        JournalWriter<Band> w = factory.writer(Band.class);
+        Assert.assertNotNull(w.getMetadata().getSerializer());
+
+        Band band = new Band();
+        for (int i = 0; i < 100; i++) {
+            band.setTimestamp(i);
+            band.setName("band" + i);
+            band.setType(i % 2 == 0 ? "jazz" : null);
+            band.setUrl("http://band" + i);
+            if (i % 3 == 0) {
+                band.setImage((ByteBuffer) null);
+            } else {
+                byte[] bytes = new byte[i];
+                for (int k = 0; k < i; k++) {
+                    bytes[k] = (byte) k;
+                }
+                band.setImage(bytes);
+            }
+            w.append(band);
+        }
+        w.commit();
+
+        Journal<Band> r = factory.reader(Band.class);
+        int i = 0;
+        for (Band b : r) {
+            Assert.assertEquals(i, b.getTimestamp());
+            Assert.assertEquals("band" + i, b.getName());
+            Assert.assertEquals(i % 2 == 0 ? "jazz" : null, b.getType());
+            Assert.assertEquals("http://band" + i, b.getUrl());
+            if (i % 3 != 0) {
+                ByteBuffer buf = b.getImage();
+                Assert.assertEquals(i, buf.remaining());
+                for (int k = 0; k < i; k++) {
+                    Assert.assertEquals((byte) k, buf.get());
+                }
+            }
+            i++;
+        }
+        Assert.assertEquals(100, i);
+    }
+
+    @Test
+    public void testSerializerIsShared() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "quote1");
+        int count = PartitionSerializerGenerator.getCachedCount();
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "quote2");
+        Journal<Quote> r = factory.reader(Quote.class, "quote1");
+
+        Assert.assertNotNull(w1.getMetadata().getSerializer());
+        Assert.assertSame(w1.getMetadata().getSerializer(), w2.getMetadata().getSerializer());
+        Assert.assertSame(w1.getMetadata().getSerializer(), r.getMetadata().getSerializer());
+        Assert.assertEquals(count, PartitionSerializerGenerator.getCachedCount());
+    }
+
+    @Test
+    public void testGeneratedMatchesDefault() throws Exception {
+        PartitionSerializerGenerator.setEnabled(false);
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "quote-default");
+        Assert.assertNull(w1.getMetadata().getSerializer());
+        TestUtils.generateQuoteData(w1, 10000, Dates.parseDateTime("2013-10-05T10:00:00.000Z"), 1000);
+        w1.commit();
+
+        PartitionSerializerGenerator.setEnabled(true);
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "quote-generated");
+        Assert.assertNotNull(w2.getMetadata().getSerializer());
+        TestUtils.generateQuoteData(w2, 10000, Dates.parseDateTime("2013-10-05T10:00:00.000Z"), 1000);
+        w2.commit();
+
+        // cross check: data written by generated serializer is read back by default path and vice versa
+        PartitionSerializerGenerator.setEnabled(false);
+        Journal<Quote> r2 = factory.reader(Quote.class, "quote-generated");
+        PartitionSerializerGenerator.setEnabled(true);
+        Journal<Quote> r1 = factory.reader(Quote.class, "quote-default");
+
+        TestUtils.assertDataEquals(r1, r2);
+    }
+
+    private long appendQuotes(String location) throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, location, TEST_DATA_SIZE);
+        long t = System.nanoTime();
+        TestUtils.generateQuoteData(w, TEST_DATA_SIZE, Dates.parseDateTime("2013-10-05T10:00:00.000Z"), 1000);
+        w.commit();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb;
+
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.model.Quote;
+import com.nfsdb.storage.ColumnType;
+import com.nfsdb.storage.FixedColumn;
+import com.nfsdb.storage.MemoryFile;
+import com.nfsdb.storage.SealedColumn;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SealedColumnTest extends AbstractTest {
+    private static final int N = 10000;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBool() throws Exception {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 1)) {
+            for (int i = 0; i < N; i++) {
+                col.putBool(rnd.nextBoolean());
+                col.commit();
+            }
+
+            try (SealedColumn sealed = seal(col, ColumnType.BOOLEAN)) {
+                rnd = new Rnd();
+                for (int i = 0; i < N; i++) {
+                    Assert.assertEquals(rnd.nextBoolean(), sealed.getBool(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDouble() throws Exception {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 8)) {
+            double price = 100;
+            for (int i = 0; i < N; i++) {
+                // mix of repeated, slowly changing and random values
+                if (i % 3 == 0) {
+                    price += 0.25;
+                } else if (i % 7 == 0) {
+                    price = rnd.nextDouble();
+                }
+                col.putDouble(price);
+                col.commit();
+            }
+
+            try (SealedColumn sealed = seal(col, ColumnType.DOUBLE)) {
+                assertSmaller(col, sealed);
+                for (int i = 0; i < N; i++) {
+                    Assert.assertEquals(col.getDouble(i), sealed.getDouble(i), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFloat() throws Exception {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 4)) {
+            for (int i = 0; i < N; i++) {
+                col.putFloat(i % 5 == 0 ? rnd.nextFloat() : i / 4);
+                col.commit();
+            }
+
+            try (SealedColumn sealed = seal(col, ColumnType.FLOAT)) {
+                for (int i = 0; i < N; i++) {
+                    Assert.assertEquals(col.getFloat(i), sealed.getFloat(i), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInt() throws Exception {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 4)) {
+            for (int i = 0; i < N; i++) {
+                // last block has values spanning entire int range
+                col.putInt(i < 8192 ? Math.abs(rnd.nextInt()) % 100 - 50 : rnd.nextInt());
+                col.commit();
+            }
+
+            try (SealedColumn sealed = seal(col, ColumnType.INT)) {
+                assertSmaller(col, sealed);
+                for (int i = N - 1; i > -1; i--) {
+                    Assert.assertEquals(col.getInt(i), sealed.getInt(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLong() throws Exception {
+        Rnd rnd = new Rnd();
+        try (FixedColumn col = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 8)) {
+            long ts = Dates.parseDateTime("2015-01-10T10:00:00.000Z");
+            for (int i = 0; i < N; i++) {
+                switch (i % 4) {
+                    case 0:
+                        ts += 1000;
+                        break;
+                    case 1:
+                        ts += Math.abs(rnd.nextInt()) % 5000;
+                        break;
+                    case 2:
+                        ts += rnd.nextLong() >>> 20;
+                        break;
+                    default:
+                        ts = i == 4003 ? Long.MIN_VALUE : i == 4007 ? Long.MAX_VALUE : ts;
+                        break;
+                }
+                col.putLong(ts);
+                col.commit();
+            }
+
+            try (SealedColumn sealed = seal(col, ColumnType.LONG)) {
+                Assert.assertEquals(N, sealed.size());
+                for (int i = 0; i < N; i++) {
+                    Assert.assertEquals(col.getLong(i), sealed.getLong(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShortAndByte() throws Exception {
+        try (
+                FixedColumn shorts = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 2);
+                FixedColumn bytes = new FixedColumn(new MemoryFile(temporaryFolder.newFile(), 16, JournalMode.APPEND), 1)
+        ) {
+            for (int i = 0; i < N; i++) {
+                shorts.putShort((short) (i * 7));
+                shorts.commit();
+                bytes.putByte((byte) i);
+                bytes.commit();
+            }
+
+            try (
+                    SealedColumn sealedShorts = seal(shorts, ColumnType.SHORT);
+                    SealedColumn sealedBytes = seal(bytes, ColumnType.BYTE)
+            ) {
+                for (int i = 0; i < N; i++) {
+                    Assert.assertEquals(shorts.getShort(i), sealedShorts.getShort(i));
+                    Assert.assertEquals(bytes.getByte(i), sealedBytes.getByte(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadSealedPartitions() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2015-01-10T10:00:00.000Z"), 80000);
+        w.commit();
+        Assert.assertTrue(w.getPartitionCount() > 2);
+
+        List<Quote> expected = new ArrayList<>();
+        for (Quote q : w) {
+            expected.add(q);
+        }
+
+        for (int i = 0, n = w.getPartitionCount() - 1; i < n; i++) {
+            Partition<Quote> p = w.getPartition(i, false);
+            PartitionSealer.seal(p.getPartitionDir(), w.getMetadata());
+            Assert.assertTrue(new File(p.getPartitionDir(), "timestamp.z").exists());
+            // writer still has original column open
+            Assert.assertFalse(p.isSealed());
+            Assert.assertTrue(new File(p.getPartitionDir(), "timestamp.d").exists());
+
+            p.close();
+            Assert.assertTrue(w.getPartition(i, true).isSealed());
+            Assert.assertFalse(new File(p.getPartitionDir(), "timestamp.d").exists());
+        }
+        Assert.assertFalse(w.getPartition(w.getPartitionCount() - 1, true).isSealed());
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            TestUtils.assertEquals(expected.iterator(), r.iterator());
+            Assert.assertEquals(expected.size(), r.query().all().asResultSet().size());
+        }
+    }
+
+    @Test
+    public void testWriterSealsPartitions() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        w.setSealPartitions(true);
+        TestUtils.generateQuoteData(w, 10000, Dates.parseDateTime("2015-01-10T10:00:00.000Z"), 800000);
+        w.commit();
+
+        File sealed = new File(w.getPartition(0, false).getPartitionDir(), "bid.z");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!sealed.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(sealed.exists());
+        Assert.assertFalse(new File(w.getPartition(w.getPartitionCount() - 1, false).getPartitionDir(), "bid.z").exists());
+    }
+
+    @Test
+    public void testRollbackIntoSealedPartition() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2015-01-10T10:00:00.000Z"), 80000);
+        w.commit();
+        long txn = w.getTxn();
+        long txPin = w.getTxPin();
+        int partitionCount = w.getPartitionCount();
+        long size = w.size();
+
+        List<Quote> expected = new ArrayList<>();
+        for (Quote q : w) {
+            expected.add(q);
+        }
+
+        TestUtils.generateQuoteData(w, 50000, w.getMaxTimestamp() + 80000, 80000);
+        w.commit();
+        Assert.assertTrue(w.getPartitionCount() > partitionCount);
+
+        for (int i = 0, n = w.getPartitionCount() - 1; i < n; i++) {
+            PartitionSealer.seal(w.getPartition(i, false).getPartitionDir(), w.getMetadata());
+            w.getPartition(i, false).close();
+            Assert.assertTrue(w.getPartition(i, true).isSealed());
+        }
+
+        w.rollback(txn, txPin);
+        Assert.assertEquals(size, w.size());
+        Assert.assertFalse(w.getPartition(partitionCount - 1, true).isSealed());
+        Assert.assertFalse(new File(w.getPartition(partitionCount - 1, false).getPartitionDir(), "bid.z").exists());
+
+        // partition that was sealed is appended to again
+        TestUtils.generateQuoteData(w, 10, w.getMaxTimestamp() + 1, 1);
+        w.commit();
+
+        try (Journal<Quote> r = factory.reader(Quote.class)) {
+            Assert.assertEquals(size + 10, r.size());
+            TestUtils.assertEquals(expected.iterator(), r.query().all().asResultSet().subset(0, (int) size).bufferedIterator());
+        }
+    }
+
+    private static void assertSmaller(FixedColumn col, SealedColumn sealed) {
+        Assert.assertEquals(col.size(), sealed.size());
+        Assert.assertTrue(sealed.getCompressedSize() < col.getOffset());
+    }
+
+    private SealedColumn seal(FixedColumn col, ColumnType type) throws JournalException, IOException {
+        File f = temporaryFolder.newFile();
+        try (MemoryFile mf = new MemoryFile(f, 16, JournalMode.APPEND)) {
+            SealedColumn.seal(col, type, mf, SealedColumn.DEFAULT_BLOCK_ROWS);
+        }
+        return new SealedColumn(new MemoryFile(f, 16, JournalMode.READ));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb;
+
+import com.nfsdb.collections.LongList;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.storage.IndexCursor;
+import com.nfsdb.storage.MemoryFile;
+import com.nfsdb.storage.StringIndex;
+import com.nfsdb.storage.VariableColumn;
+import com.nfsdb.test.tools.AbstractTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public class StringIndexTest extends AbstractTest {
+    private File indexFile;
+    private VariableColumn column;
+
+    @Before
+    public void setup() throws JournalException {
+        File base = factory.getConfiguration().getJournalBase();
+        indexFile = new File(base, "index-test");
+        column = openColumn(JournalMode.APPEND);
+    }
+
+    @After
+    public void tearDown() {
+        column.close();
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        // many more distinct values than hint makes hash table grow
+        Map<String, LongList> expected = new HashMap<>();
+        try (StringIndex index = new StringIndex(indexFile, column, 4, 100, JournalMode.APPEND)) {
+            append(index, expected, 0, 5000);
+
+            Assert.assertEquals(expected.size(), index.getKeyCount());
+            Assert.assertEquals(5000, index.size());
+            assertIndex(index, expected);
+
+            Assert.assertFalse(index.cursor("nope").hasNext());
+            Assert.assertEquals(0, index.getValueCount("nope"));
+        }
+
+        // reopen
+        try (StringIndex index = new StringIndex(indexFile, column, 4, 100, JournalMode.READ)) {
+            assertIndex(index, expected);
+        }
+    }
+
+    @Test
+    public void testPartitionWithoutStringIndex() throws Exception {
+        File dir;
+        try (JournalWriter w = createJournal()) {
+            append(w, 0, 30);
+            dir = w.getPartition(0, true).getPartitionDir();
+        }
+        // partition written before strings were indexed by value does not have string index files
+        StringIndex.delete(new File(dir, "id"));
+
+        // reader indexes column in its own directory
+        try (Journal r = factory.reader("str")) {
+            StringIndex index = r.getPartition(0, true).getStringIndexForColumn(0);
+            Assert.assertEquals(10, index.getValueCount("A"));
+            Assert.assertEquals(30, index.size());
+            Assert.assertFalse(new File(dir, "id.sk").exists());
+        }
+
+        // writer indexes column in partition directory when it opens partition
+        try (JournalWriter w = factory.writer("str")) {
+            w.getPartition(0, true);
+            Assert.assertTrue(new File(dir, "id.sk").exists());
+            append(w, 30, 60);
+        }
+
+        try (Journal r = factory.reader("str")) {
+            StringIndex index = r.getPartition(0, true).getStringIndexForColumn(0);
+            Assert.assertTrue(index.isComplete(60));
+            Assert.assertEquals(20, index.getValueCount("A"));
+        }
+    }
+
+    @Test
+    public void testReaderSkipsRowsPastTx() throws Exception {
+        try (JournalWriter w = createJournal()) {
+            append(w, 0, 30);
+            try (Journal r = factory.reader("str")) {
+                Partition p = r.getPartition(0, true);
+                StringIndex index = p.getStringIndexForColumn(0);
+                long pointers[] = new long[2];
+                p.getIndexPointers(pointers);
+                // string index does not have transaction address
+                Assert.assertEquals(0, pointers[0]);
+
+                append(w, 30, 60);
+
+                // rows of new transaction are in index, reader skips them by size of its partition
+                Assert.assertEquals(20, index.getValueCount("A"));
+                Assert.assertEquals(30, p.size());
+                int count = 0;
+                IndexCursor cursor = index.cursor("A");
+                while (cursor.hasNext()) {
+                    if (cursor.next() < p.size()) {
+                        count++;
+                    }
+                }
+                Assert.assertEquals(10, count);
+            }
+        }
+    }
+
+    @Test
+    public void testReaderFollowsRehash() throws Exception {
+        Map<String, LongList> expected = new HashMap<>();
+        try (StringIndex writer = new StringIndex(indexFile, column, 4, 100, JournalMode.APPEND)) {
+            append(writer, expected, 0, 10);
+            try (VariableColumn c = openColumn(JournalMode.READ); StringIndex reader = new StringIndex(indexFile, c, 4, 100, JournalMode.READ)) {
+                assertIndex(reader, expected);
+                append(writer, expected, 10, 3000);
+                assertIndex(reader, expected);
+            }
+        }
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        Map<String, LongList> expected = new HashMap<>();
+        try (StringIndex index = new StringIndex(indexFile, column, 4, 100, JournalMode.APPEND)) {
+            append(index, new HashMap<String, LongList>(), 0, 1000);
+
+            index.truncate(500);
+            column.truncate(500);
+            column.commit();
+            Assert.assertEquals(500, index.size());
+
+            for (int i = 0; i < 500; i++) {
+                add(expected, value(i), i);
+            }
+            assertIndex(index, expected);
+
+            // values of removed rows are added again as new values
+            append(index, expected, 500, 1500);
+            Assert.assertEquals(expected.size(), index.getKeyCount());
+            assertIndex(index, expected);
+        }
+    }
+
+    private static void add(Map<String, LongList> expected, String value, long row) {
+        LongList rows = expected.get(value);
+        if (rows == null) {
+            expected.put(value, rows = new LongList());
+        }
+        rows.add(row);
+    }
+
+    private static void assertIndex(StringIndex index, Map<String, LongList> expected) {
+        for (Map.Entry<String, LongList> e : expected.entrySet()) {
+            LongList rows = e.getValue();
+            IndexCursor cursor = index.cursor(e.getKey());
+            Assert.assertEquals(rows.size(), index.getValueCount(e.getKey()));
+            for (int i = 0, n = rows.size(); i < n; i++) {
+                Assert.assertTrue(cursor.hasNext());
+                Assert.assertEquals(rows.getQuick(i), cursor.next());
+            }
+            Assert.assertFalse(cursor.hasNext());
+        }
+    }
+
+    private static String value(int row) {
+        // every 7th row is null, value of row changes every 3 rows and repeats after 1300 rows
+        return row % 7 == 0 ? null : "V" + (row / 3) % 433;
+    }
+
+    private static void append(JournalWriter w, int lo, int hi) throws JournalException {
+        String values[] = {"A", "B", "C"};
+        for (int i = lo; i < hi; i++) {
+            JournalEntryWriter ew = w.entryWriter(i * 1000L);
+            ew.putStr(0, values[i % values.length]);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    private void append(StringIndex index, Map<String, LongList> expected, int lo, int hi) {
+        for (int i = lo; i < hi; i++) {
+            String value = value(i);
+            long row = column.putStr(value);
+            column.commit();
+            index.add(value, row);
+            add(expected, value, row);
+        }
+    }
+
+    private JournalWriter createJournal() throws JournalException {
+        return factory.writer(new JournalStructure("str").$str("id").index().$ts());
+    }
+
+    private VariableColumn openColumn(JournalMode mode) throws JournalException {
+        File base = factory.getConfiguration().getJournalBase();
+        return new VariableColumn(
+                new MemoryFile(new File(base, "col.d"), 16, mode),
+                new MemoryFile(new File(base, "col.i"), 16, mode)
+        );
+    }
+}
@@ -24,6 +24,8 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+
 public class SymbolTableTest extends AbstractTest {
 
     private static final int DATA_SIZE = 500;
@@ -48,6 +50,21 @@ public class SymbolTableTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testFlyweightValue() throws Exception {
+        String data[] = createData();
+        createTestTable(data);
+
+        try (SymbolTable tab = getReader()) {
+            for (int i = 0; i < data.length; i++) {
+                CharSequence cs = tab.flyweightValue(i);
+                Assert.assertEquals(data[i], cs.toString());
+                Assert.assertEquals(i, tab.getQuick(cs));
+            }
+            Assert.assertNull(tab.flyweightValue(SymbolTable.VALUE_IS_NULL));
+        }
+    }
+
     @Test
     public void testKeyValueMatch() throws Exception {
 
@@ -128,6 +145,74 @@ public class SymbolTableTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testRehash() throws Exception {
+        String data[] = createData();
+        tab = new SymbolTable(10, 256, 1, factory.getConfiguration().getJournalBase(), "test", JournalMode.APPEND, 0, 0, false);
+        createTestTable(new String[]{data[0]});
+
+        // reader of transaction before rehash
+        try (SymbolTable tab = getReader(this.tab.getHashKeyCount())) {
+            Assert.assertEquals(2, this.tab.getHashKeyCount());
+
+            createTestTable(data);
+            Assert.assertEquals(data.length, this.tab.size());
+            // rehash in progress lags behind inserts by third of table at most
+            Assert.assertTrue(this.tab.getHashKeyCount() * 16 >= data.length);
+
+            Assert.assertEquals(1, tab.size());
+            Assert.assertEquals(0, tab.getQuick(data[0]));
+
+            tab.applyTx(this.tab.size(), this.tab.getIndexTxAddress(), this.tab.getHashKeyCount());
+            Assert.assertEquals(this.tab.getHashKeyCount(), tab.getHashKeyCount());
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals(i, tab.getQuick(data[i]));
+            }
+            Assert.assertEquals(SymbolTable.VALUE_NOT_FOUND, tab.getQuick("ABC"));
+        }
+
+        try (SymbolTable tab = getReader(this.tab.getHashKeyCount())) {
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals(i, tab.getQuick(data[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testRehashIsIncremental() throws Exception {
+        tab = new SymbolTable(10, 256, 1, factory.getConfiguration().getJournalBase(), "test", JournalMode.APPEND, 0, 0, false);
+        for (int i = 0; i <= 16; i++) {
+            tab.put("TEST" + i);
+        }
+
+        // table is full, values are being moved to new index, but lookups and transactions use old one
+        Assert.assertTrue(new File(factory.getConfiguration().getJournalBase(), "test.symr.4.k").exists());
+        Assert.assertEquals(2, tab.getHashKeyCount());
+        tab.commit();
+        try (SymbolTable tab = getReader(this.tab.getHashKeyCount())) {
+            for (int i = 0; i <= 16; i++) {
+                Assert.assertEquals(i, tab.getQuick("TEST" + i));
+            }
+        }
+
+        int n = 17;
+        while (tab.getHashKeyCount() == 2) {
+            Assert.assertEquals(n, tab.put("TEST" + n));
+            n++;
+        }
+        // every insert moves 4 values, new index catches up with 17 values and inserts made meanwhile
+        Assert.assertEquals(22, n);
+        tab.commit();
+
+        try (SymbolTable tab = getReader(this.tab.getHashKeyCount())) {
+            Assert.assertEquals(4, tab.getHashKeyCount());
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(i, tab.getQuick("TEST" + i));
+            }
+            Assert.assertEquals(SymbolTable.VALUE_NOT_FOUND, tab.getQuick("TEST" + n));
+        }
+    }
+
     @Test
     public void testRepeatedValues() throws Exception {
         String data[] = {"VAL1", null, "VAL2", "", "VAL2", "", null, "VAL1", "VAL3"};
@@ -207,6 +292,10 @@ public class SymbolTableTest extends AbstractTest {
         return new SymbolTable(DATA_SIZE, 256, 1, factory.getConfiguration().getJournalBase(), "test", JournalMode.READ, tab.size(), tab.getIndexTxAddress(), false);
     }
 
+    private SymbolTable getReader(int hashKeyCount) throws JournalException {
+        return new SymbolTable(10, 256, 1, factory.getConfiguration().getJournalBase(), "test", JournalMode.READ, tab.size(), tab.getIndexTxAddress(), hashKeyCount, false);
+    }
+
     private SymbolTable getWriter() throws JournalException {
         return new SymbolTable(DATA_SIZE, 256, 1, factory.getConfiguration().getJournalBase(), "test", JournalMode.APPEND, tab.size(), tab.getIndexTxAddress(), false);
     }
@@ -46,6 +46,43 @@ public class TxLogTest extends AbstractTest {
         System.out.println(server.getCurrentTxnPin());
     }
 
+    @Test
+    public void testHashKeyCounts() throws Exception {
+        File dir = temp.newFolder();
+        TxLog txLog = new TxLog(dir, JournalMode.APPEND);
+        TxLog r = new TxLog(dir, JournalMode.READ);
+
+        Tx tx = new Tx();
+        tx.command = Tx.TX_FORCE;
+        tx.symbolTableSizes = new int[]{10, 12};
+        tx.symbolTableIndexPointers = new long[]{2, 15};
+        tx.symbolTableHashKeyCounts = new int[]{4, 0};
+        tx.indexPointers = new long[]{36, 48};
+        txLog.write(tx, false);
+
+        Tx tx1 = new Tx();
+        r.head(tx1);
+        Assert.assertEquals(Tx.TX_FORCE, tx1.command);
+        Assert.assertArrayEquals(new long[]{2, 15}, tx1.symbolTableIndexPointers);
+        Assert.assertArrayEquals(new int[]{4, 0}, tx1.symbolTableHashKeyCounts);
+        Assert.assertArrayEquals(new long[]{36, 48}, tx1.indexPointers);
+
+        // record written without hash key counts, same as record of older version
+        tx.prevTxAddress = tx1.address;
+        tx.command = Tx.TX_NORMAL;
+        tx.symbolTableIndexPointers = new long[]{2, 15, 18, 20};
+        tx.symbolTableHashKeyCounts = null;
+        txLog.write(tx, false);
+
+        r.head(tx1);
+        Assert.assertEquals(Tx.TX_NORMAL, tx1.command);
+        Assert.assertArrayEquals(new long[]{2, 15, 18, 20}, tx1.symbolTableIndexPointers);
+        Assert.assertArrayEquals(new int[]{0, 0}, tx1.symbolTableHashKeyCounts);
+
+        txLog.close();
+        r.close();
+    }
+
     @Test
     public void testTx() throws Exception {
         File dir = temp.newFolder();
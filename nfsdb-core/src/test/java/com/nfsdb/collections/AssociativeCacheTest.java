@@ -77,8 +77,10 @@ public class AssociativeCacheTest {
         assertNull(cache.put(key3, "v3"));
         Key key4 = new Key(1, "key4");
         assertNull(cache.put(key4, "v4"));
+        assertNull(cache.getEvictedValue());
         Key key5 = new Key(1, "key5");
         assertEquals(key1, cache.put(key5, "v5"));
+        assertEquals("v1", cache.getEvictedValue());
 
         Assert.assertEquals(16, cache.capacity());
     }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.collections;
+
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class DirectSymbolCacheTest {
+
+    @Test
+    public void testClear() throws Exception {
+        try (DirectSymbolCache cache = new DirectSymbolCache(4)) {
+            cache.put(0, "ABC");
+            cache.put(1, "");
+            Assert.assertEquals(2, cache.size());
+
+            cache.clear();
+            Assert.assertEquals(0, cache.size());
+            Assert.assertEquals(DirectSymbolCache.NO_ENTRY, cache.get("ABC"));
+            Assert.assertNull(cache.value(0));
+
+            cache.put(0, "XYZ");
+            Assert.assertEquals(0, cache.get("XYZ"));
+            Assert.assertEquals("XYZ", cache.value(0).toString());
+        }
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        Rnd rnd = new Rnd();
+        Map<String, Integer> expected = new HashMap<>();
+        // start small to make cache grow
+        try (DirectSymbolCache cache = new DirectSymbolCache(4)) {
+            for (int i = 0; i < 10000; i++) {
+                String s = rnd.nextString(rnd.nextPositiveInt() % 20);
+                if (!expected.containsKey(s)) {
+                    // keys are sparse
+                    int key = expected.size() * 3;
+                    expected.put(s, key);
+                    cache.put(key, s);
+                }
+            }
+
+            Assert.assertEquals(expected.size(), cache.size());
+            for (Map.Entry<String, Integer> e : expected.entrySet()) {
+                Assert.assertEquals(e.getValue().intValue(), cache.get(e.getKey()));
+                Assert.assertEquals(e.getKey(), cache.value(e.getValue()).toString());
+                Assert.assertNull(cache.value(e.getValue() + 1));
+            }
+            Assert.assertEquals(DirectSymbolCache.NO_ENTRY, cache.get("not-there"));
+            Assert.assertNull(cache.value(-1));
+            Assert.assertNull(cache.value(Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void testValueIsFlyweight() throws Exception {
+        try (DirectSymbolCache cache = new DirectSymbolCache(4)) {
+            cache.put(0, "ABC");
+            cache.put(1, "DE");
+            CharSequence cs = cache.value(0);
+            Assert.assertSame(cs, cache.value(1));
+            Assert.assertEquals("DE", cs.toString());
+            // flyweight can be used to look up
+            Assert.assertEquals(1, cache.get(cs));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.collections;
+
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ExternalSortTest {
+
+    @Test
+    public void testInMemory() throws Exception {
+        assertSort(10000, 16 * 1024 * 1024, 0);
+    }
+
+    @Test
+    public void testMultipleKeys() throws Exception {
+        Rnd rnd = new Rnd();
+        int n = 50000;
+        long expected[] = new long[n];
+        try (ExternalSort sort = new ExternalSort(2, 64 * 1024, null, null)) {
+            long keys[] = new long[2];
+            for (int i = 0; i < n; i++) {
+                int hi = rnd.nextPositiveInt() % 100;
+                int lo = rnd.nextPositiveInt();
+                keys[0] = ExternalSort.signedKey(hi);
+                keys[1] = ExternalSort.signedKey(lo);
+                expected[i] = ((long) hi << 32) | lo;
+                sort.add(keys, expected[i]);
+            }
+            sort.sort();
+            Assert.assertTrue(sort.getRunCount() > 1);
+            Arrays.sort(expected);
+            for (int i = 0; i < n; i++) {
+                Assert.assertTrue(sort.hasNext());
+                Assert.assertEquals(expected[i], sort.next());
+            }
+            Assert.assertFalse(sort.hasNext());
+        }
+    }
+
+    @Test
+    public void testSignedKeys() throws Exception {
+        double values[] = {3.5, -1.25, 0, Double.NEGATIVE_INFINITY, -1000, 1e10, Double.MAX_VALUE, -0.5};
+        try (ExternalSort sort = new ExternalSort(1)) {
+            long keys[] = new long[1];
+            for (int i = 0; i < values.length; i++) {
+                keys[0] = ExternalSort.doubleKey(values[i]);
+                sort.add(keys, i);
+            }
+            sort.sort();
+            double sorted[] = values.clone();
+            Arrays.sort(sorted);
+            for (double d : sorted) {
+                Assert.assertEquals(d, values[(int) sort.next()], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        assertSort(100000, 64 * 1024, 2);
+    }
+
+    @Test
+    public void testTieBreaker() throws Exception {
+        final long values[] = new long[20000];
+        Rnd rnd = new Rnd();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rnd.nextLong();
+        }
+
+        // keys only hold top bits of values, remaining bits are compared by tie breaker
+        ExternalSort.TieBreaker tieBreaker = new ExternalSort.TieBreaker() {
+            @Override
+            public int compare(long payloadA, long payloadB) {
+                return Long.compare(values[(int) payloadA], values[(int) payloadB]);
+            }
+        };
+
+        try (ExternalSort sort = new ExternalSort(1, 32 * 1024, null, tieBreaker)) {
+            long keys[] = new long[1];
+            for (int i = 0; i < values.length; i++) {
+                keys[0] = ExternalSort.signedKey(values[i] >> 56);
+                sort.add(keys, i);
+            }
+            sort.sort();
+
+            long sorted[] = values.clone();
+            Arrays.sort(sorted);
+            for (long v : sorted) {
+                Assert.assertEquals(v, values[(int) sort.next()]);
+            }
+            Assert.assertFalse(sort.hasNext());
+        }
+    }
+
+    private void assertSort(int n, long memoryBudget, int minRuns) {
+        Rnd rnd = new Rnd();
+        long expected[] = new long[n];
+        try (ExternalSort sort = new ExternalSort(1, memoryBudget, null, null)) {
+            long keys[] = new long[1];
+            for (int i = 0; i < n; i++) {
+                long v = rnd.nextLong();
+                keys[0] = ExternalSort.signedKey(v);
+                sort.add(keys, v);
+                expected[i] = v;
+            }
+            sort.sort();
+            Assert.assertTrue(sort.getRunCount() >= minRuns);
+            Assert.assertEquals(n, sort.size());
+
+            Arrays.sort(expected);
+            for (int i = 0; i < n; i++) {
+                Assert.assertTrue(sort.hasNext());
+                Assert.assertEquals(expected[i], sort.next());
+            }
+            Assert.assertFalse(sort.hasNext());
+        }
+    }
+}
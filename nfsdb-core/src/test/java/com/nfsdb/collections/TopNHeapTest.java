@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.collections;
+
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TopNHeapTest {
+
+    @Test
+    public void testDuplicateKeys() throws Exception {
+        try (TopNHeap heap = new TopNHeap(1, 5, null)) {
+            long keys[] = new long[1];
+            for (int i = 99; i >= 0; i--) {
+                keys[0] = ExternalSort.signedKey(i % 3);
+                heap.add(keys, i);
+            }
+            heap.sort();
+            // equal keys are ordered by payload
+            long expected[] = {0, 3, 6, 9, 12};
+            for (long e : expected) {
+                Assert.assertTrue(heap.hasNext());
+                Assert.assertEquals(e, heap.next());
+            }
+            Assert.assertFalse(heap.hasNext());
+        }
+    }
+
+    @Test
+    public void testLimitExceedsInput() throws Exception {
+        assertTop(100, 5000);
+    }
+
+    @Test
+    public void testTop() throws Exception {
+        assertTop(100000, 100);
+        assertTop(100000, 1);
+        assertTop(100000, 3000);
+    }
+
+    @Test
+    public void testZeroLimit() throws Exception {
+        try (TopNHeap heap = new TopNHeap(1, 0, null)) {
+            heap.add(new long[]{1}, 1);
+            heap.sort();
+            Assert.assertFalse(heap.hasNext());
+        }
+    }
+
+    private void assertTop(int n, int limit) {
+        Rnd rnd = new Rnd();
+        long values[] = new long[n];
+        try (TopNHeap heap = new TopNHeap(1, limit, null)) {
+            long keys[] = new long[1];
+            for (int pass = 0; pass < 2; pass++) {
+                heap.clear();
+                for (int i = 0; i < n; i++) {
+                    values[i] = rnd.nextLong();
+                    keys[0] = ExternalSort.signedKey(values[i]);
+                    heap.add(keys, values[i]);
+                }
+                heap.sort();
+                Assert.assertEquals(Math.min(n, limit), heap.size());
+                Arrays.sort(values);
+                for (int i = 0, k = Math.min(n, limit); i < k; i++) {
+                    Assert.assertTrue(heap.hasNext());
+                    Assert.assertEquals(values[i], heap.next());
+                }
+                Assert.assertFalse(heap.hasNext());
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import com.nfsdb.model.Quote;
 import com.nfsdb.ql.impl.AllRowSource;
 import com.nfsdb.ql.impl.JournalPartitionSource;
 import com.nfsdb.ql.impl.JournalSource;
+import com.nfsdb.ql.impl.MillisTimestampSampler;
 import com.nfsdb.ql.impl.ResampledSource;
 import com.nfsdb.ql.ops.*;
 import com.nfsdb.test.tools.AbstractTest;
@@ -344,7 +345,7 @@ public class AggregationFunctionTest extends AbstractTest {
                     add(func);
                 }}
                 , r.getMetadata().getTimestampMetadata()
-                , ResampledSource.SampleBy.MINUTE
+                , new MillisTimestampSampler(Dates.MINUTE_MILLIS)
         );
 
         StringSink sink = new StringSink();
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql;
+
+import com.nfsdb.JournalWriter;
+import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.io.RecordSourcePrinter;
+import com.nfsdb.io.sink.StringSink;
+import com.nfsdb.model.Quote;
+import com.nfsdb.ql.impl.*;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+public class GraceHashJoinRecordSourceTest extends AbstractTest {
+    @Rule
+    public final TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testInMemory() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 300);
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        TestUtils.generateQuoteData(w2, 200);
+
+        GraceHashJoinRecordSource join = createJoin(w1, w2, GraceHashJoinRecordSource.DEFAULT_MEMORY_BUDGET);
+        Assert.assertEquals(print(createExpected(w1, w2)), print(join));
+        Assert.assertEquals(0, join.getSpillBytes());
+        join.close();
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 1000);
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        TestUtils.generateQuoteData(w2, 500);
+
+        // records of one symbol fit budget, partitions that have two symbols are split again
+        GraceHashJoinRecordSource join = createJoin(w1, w2, 8192);
+        String actual = print(join);
+        Assert.assertTrue(join.getSpillBytes() > 0);
+        Assert.assertEquals(sort(print(createExpected(w1, w2))), sort(actual));
+
+        // cursor can be prepared again after reset
+        join.reset();
+        Assert.assertEquals(actual, print(join));
+        join.close();
+    }
+
+    @Test
+    public void testSkewedKey() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 1000);
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        TestUtils.generateQuoteData(w2, 500);
+
+        // records of single symbol do not fit budget and cannot be split
+        GraceHashJoinRecordSource join = createJoin(w1, w2, 4096);
+        try {
+            print(join);
+            Assert.fail();
+        } catch (JournalRuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("same key hash"));
+        }
+        join.close();
+    }
+
+    private static String sort(String lines) {
+        String[] s = lines.split("\n");
+        Arrays.sort(s);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < s.length; i++) {
+            b.append(s[i]).append('\n');
+        }
+        return b.toString();
+    }
+
+    private GraceHashJoinRecordSource createJoin(JournalWriter<Quote> w1, JournalWriter<Quote> w2, long memoryBudget) {
+        return new GraceHashJoinRecordSource(
+                new JournalSource(new JournalPartitionSource(w1, false), new AllRowSource()),
+                new ObjList<String>() {{
+                    add("sym");
+                }},
+                new JournalSource(new JournalPartitionSource(w2, false), new AllRowSource()),
+                new ObjList<String>() {{
+                    add("sym");
+                }},
+                memoryBudget,
+                temp.getRoot()
+        );
+    }
+
+    private HashJoinRecordSource createExpected(JournalWriter<Quote> w1, JournalWriter<Quote> w2) {
+        return new HashJoinRecordSource(
+                new JournalSource(new JournalPartitionSource(w1, false), new AllRowSource()),
+                new ObjList<String>() {{
+                    add("sym");
+                }},
+                new JournalSource(new JournalPartitionSource(w2, false), new AllRowSource()),
+                new ObjList<String>() {{
+                    add("sym");
+                }}
+        );
+    }
+
+    private String print(RecordSource<? extends Record> rs) throws Exception {
+        StringSink sink = new StringSink();
+        new RecordSourcePrinter(sink).print(rs.prepareCursor(factory), rs.getMetadata());
+        return sink.toString();
+    }
+}
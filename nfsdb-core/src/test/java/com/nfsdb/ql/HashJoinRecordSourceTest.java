@@ -44,6 +44,7 @@ public class HashJoinRecordSourceTest {
                     new JournalConfigurationBuilder() {{
                         $(Band.class).$ts();
                         $(Album.class).$ts("releaseDate");
+                        $(Quote.class).$sym("sym").$ts();
 
                     }}.build(Files.makeTempDir())
             );
@@ -94,6 +95,50 @@ public class HashJoinRecordSourceTest {
         Assert.assertEquals("rock\npop\nmetal\nrock\npop\n", sink.toString());
     }
 
+    @Test
+    public void testSymbolJoin() throws Exception {
+        JournalWriter<Quote> w1 = factory.writer(Quote.class, "q1");
+        TestUtils.generateQuoteData(w1, 200);
+
+        // slave symbol keys are in different order and include values unknown to master
+        JournalWriter<Quote> w2 = factory.writer(Quote.class, "q2");
+        String symbols[] = {"XYZ.L", "HSBA.L", "GKN.L", "BP.L", "AGK.L", "ABC.L", "GKN.L"};
+        for (int i = 0; i < symbols.length; i++) {
+            w2.append(new Quote().setSym(symbols[i]).setBid(i).setTimestamp(i));
+        }
+        w2.commit();
+
+        StringSink expected = new StringSink();
+        new RecordSourcePrinter(expected).print(
+                new GraceHashJoinRecordSource(
+                        new JournalSource(new JournalPartitionSource(w1, false), new AllRowSource()),
+                        new ObjList<String>() {{
+                            add("sym");
+                        }},
+                        new JournalSource(new JournalPartitionSource(w2, false), new AllRowSource()),
+                        new ObjList<String>() {{
+                            add("sym");
+                        }}
+                )
+        );
+
+        StringSink sink = new StringSink();
+        new RecordSourcePrinter(sink).print(
+                new HashJoinRecordSource(
+                        new JournalSource(new JournalPartitionSource(w1, false), new AllRowSource()),
+                        new ObjList<String>() {{
+                            add("sym");
+                        }},
+                        new JournalSource(new JournalPartitionSource(w2, false), new AllRowSource()),
+                        new ObjList<String>() {{
+                            add("sym");
+                        }}
+                )
+        );
+        Assert.assertTrue(sink.length() > 0);
+        TestUtils.assertEquals(expected.toString(), sink.toString());
+    }
+
     @Test
     @Ignore
     public void testHashJoinPerformance() throws Exception {
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql;
+
+import com.nfsdb.JournalEntryWriter;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.collections.ObjHashSet;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.model.Quote;
+import com.nfsdb.ql.impl.AllRowSource;
+import com.nfsdb.ql.impl.JournalPartitionSource;
+import com.nfsdb.ql.impl.JournalSource;
+import com.nfsdb.ql.impl.KvIndexLookupRowSource;
+import com.nfsdb.ql.impl.KvIndexMergingRowSource;
+import com.nfsdb.ql.ops.StringConstant;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.test.tools.TestUtils;
+import com.nfsdb.utils.Dates;
+import com.nfsdb.utils.Rnd;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KvIndexMergingRowSourceTest extends AbstractTest {
+
+    @Test
+    public void testStrings() throws Exception {
+        JournalWriter w = factory.writer(new JournalStructure("tab").$str("id").index().buckets(4).$ts());
+        Rnd rnd = new Rnd();
+        String ids[] = new String[64];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rnd.nextString(5);
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            JournalEntryWriter ew = w.entryWriter(i);
+            ew.putStr(0, ids[rnd.nextPositiveInt() % ids.length]);
+            ew.append();
+        }
+        w.commit();
+
+        ObjHashSet<String> values = new ObjHashSet<>();
+        for (int i = 0; i < 10; i++) {
+            values.add(ids[i]);
+        }
+        values.add("none");
+
+        StringBuilder expected = new StringBuilder();
+        RecordCursor<? extends Record> c = new JournalSource(new JournalPartitionSource(w, true), new AllRowSource()).prepareCursor(null);
+        while (c.hasNext()) {
+            Record r = c.next();
+            if (values.contains(r.getStr(0).toString())) {
+                expected.append(r.getStr(0)).append(r.getDate(1)).append('\n');
+            }
+        }
+
+        StringBuilder actual = new StringBuilder();
+        c = new JournalSource(new JournalPartitionSource(w, true), new KvIndexMergingRowSource("id", values)).prepareCursor(null);
+        while (c.hasNext()) {
+            Record r = c.next();
+            actual.append(r.getStr(0)).append(r.getDate(1)).append('\n');
+        }
+        Assert.assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testSymbols() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2014-02-11T00:00:00.000Z"), Dates.MINUTE_MILLIS);
+        Assert.assertTrue(w.getPartitionCount() > 1);
+
+        ObjHashSet<String> values = new ObjHashSet<>();
+        values.add("BP.L");
+        values.add("WTB.L");
+        values.add("AGK.L");
+        values.add("NONE");
+
+        int expected = 0;
+        for (int i = 0, n = values.size(); i < n; i++) {
+            expected += count(new JournalSource(new JournalPartitionSource(w, true), new KvIndexLookupRowSource("sym", new StringConstant(values.get(i)), true)));
+        }
+        Assert.assertTrue(expected > 0);
+
+        RecordSource<? extends Record> rs = new JournalSource(new JournalPartitionSource(w, true), new KvIndexMergingRowSource("sym", values));
+        int sym = rs.getMetadata().getColumnIndex("sym");
+        int ts = rs.getMetadata().getColumnIndex("timestamp");
+        for (int pass = 0; pass < 2; pass++) {
+            long last = 0;
+            int count = 0;
+            RecordCursor<? extends Record> c = rs.prepareCursor(null);
+            while (c.hasNext()) {
+                Record r = c.next();
+                Assert.assertTrue(values.contains(r.getSym(sym)));
+                long t = r.getDate(ts);
+                Assert.assertTrue(t > last);
+                last = t;
+                count++;
+            }
+            Assert.assertEquals(expected, count);
+            rs.reset();
+        }
+    }
+
+    private static int count(RecordSource<? extends Record> rs) throws JournalException {
+        int count = 0;
+        RecordCursor<? extends Record> c = rs.prepareCursor(null);
+        while (c.hasNext()) {
+            c.next();
+            count++;
+        }
+        return count;
+    }
+}
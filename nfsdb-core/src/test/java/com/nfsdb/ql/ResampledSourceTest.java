@@ -19,17 +19,13 @@ package com.nfsdb.ql;
 import com.nfsdb.Journal;
 import com.nfsdb.JournalWriter;
 import com.nfsdb.collections.ObjList;
+import com.nfsdb.exceptions.JournalException;
 import com.nfsdb.factory.configuration.ColumnMetadata;
 import com.nfsdb.io.RecordSourcePrinter;
 import com.nfsdb.io.sink.StringSink;
 import com.nfsdb.model.Quote;
-import com.nfsdb.ql.impl.AllRowSource;
-import com.nfsdb.ql.impl.JournalPartitionSource;
-import com.nfsdb.ql.impl.JournalSource;
-import com.nfsdb.ql.impl.ResampledSource;
-import com.nfsdb.ql.ops.CountIntAggregatorFunction;
-import com.nfsdb.ql.ops.FirstDoubleAggregationFunction;
-import com.nfsdb.ql.ops.LastDoubleAggregationFunction;
+import com.nfsdb.ql.impl.*;
+import com.nfsdb.ql.ops.*;
 import com.nfsdb.test.tools.AbstractTest;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
@@ -38,6 +34,32 @@ import org.junit.Test;
 
 public class ResampledSourceTest extends AbstractTest {
 
+    @Test
+    public void testParallelResample() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class);
+        TestUtils.generateQuoteData(w, 100000, Dates.toMillis(2014, 1, 1), 10 * Dates.MINUTE_MILLIS);
+        w.commit();
+
+        final Journal r = factory.reader(Quote.class.getName());
+        Assert.assertTrue(r.getPartitionCount() > 4);
+
+        ObjList<RowSource> rowSources = new ObjList<>();
+        for (int i = 0; i < 4; i++) {
+            rowSources.add(new AllRowSource());
+        }
+
+        String expected = print(resample(r, new JournalSource(new JournalPartitionSource(r, false), new AllRowSource())));
+        ParallelJournalSource parallel = new ParallelJournalSource(new JournalPartitionSource(r, false), rowSources, true);
+        try {
+            ResampledSource resampledSource = resample(r, parallel);
+            Assert.assertEquals(expected, print(resampledSource));
+            // cursor can be prepared again
+            Assert.assertEquals(expected, print(resampledSource));
+        } finally {
+            parallel.close();
+        }
+    }
+
     @Test
     public void testResampleWithCount() throws Exception {
 
@@ -237,7 +259,7 @@ public class ResampledSourceTest extends AbstractTest {
                         add(new LastDoubleAggregationFunction(r.getMetadata().getColumn("ask")));
                 }}
                 , r.getMetadata().getTimestampMetadata()
-                , ResampledSource.SampleBy.MINUTE
+                , new MillisTimestampSampler(Dates.MINUTE_MILLIS)
         );
 
         StringSink sink = new StringSink();
@@ -245,4 +267,34 @@ public class ResampledSourceTest extends AbstractTest {
         out.print(resampledSource);
         Assert.assertEquals(expected, sink.toString());
     }
-}
\ No newline at end of file
+
+    private static String print(ResampledSource source) throws JournalException {
+        StringSink sink = new StringSink();
+        RecordSourcePrinter out = new RecordSourcePrinter(sink);
+        out.print(source);
+        return sink.toString();
+    }
+
+    private static ResampledSource resample(final Journal r, RecordSource<? extends Record> source) {
+        // select count(), sum(askSize), first(bid), last(bid), first(ts), last(ts), avg(ask), sym, ts sample by sym, 1d
+        return new ResampledSource(
+                source
+                ,
+                new ObjList<ColumnMetadata>() {{
+                    add(r.getMetadata().getColumn("sym"));
+                }}
+                ,
+                new ObjList<AggregatorFunction>() {{
+                    add(new CountLongAggregatorFunction("count"));
+                    add(new SumIntToLongAggregationFunction(r.getMetadata().getColumn("askSize")));
+                    add(new FirstDoubleAggregationFunction(r.getMetadata().getColumn("bid")));
+                    add(new LastDoubleAggregationFunction(r.getMetadata().getColumn("bid")));
+                    add(new FirstLongAggregationFunction(r.getMetadata().getColumn("timestamp")));
+                    add(new LastLongAggregationFunction(r.getMetadata().getColumn("timestamp")));
+                    add(new AvgDoubleAggregationFunction(r.getMetadata().getColumn("ask")));
+                }}
+                , r.getMetadata().getTimestampMetadata()
+                , new MillisTimestampSampler(Dates.DAY_MILLIS)
+        );
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.JournalEntryWriter;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.Partition;
+import com.nfsdb.PartitionType;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordSourceState;
+import com.nfsdb.ql.ops.*;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FilterCompilerTest extends AbstractTest {
+
+    private static final int ROWS_PER_PARTITION = 5000;
+    private JournalWriter w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(
+                new JournalStructure("fc").
+                        $int("i").
+                        $double("d").
+                        $str("s").
+                        $ts().
+                        partitionBy(PartitionType.MONTH)
+        );
+
+        long step = Dates.DAY_MILLIS * 20 / ROWS_PER_PARTITION;
+        for (int i = 0; i < ROWS_PER_PARTITION * 2; i++) {
+            long t = Dates.addMonths(Dates.parseDateTime("2015-01-01T00:00:00.000Z"), i / ROWS_PER_PARTITION) + (i % ROWS_PER_PARTITION) * step;
+            JournalEntryWriter ew = w.entryWriter(t);
+            ew.putInt(0, i % 1000);
+            // every 7th value is null
+            ew.putDouble(1, i % 7 == 0 ? Double.NaN : (i % 3000) / 3.0);
+            ew.putStr(2, "s" + (i % 3));
+            ew.append();
+        }
+        w.commit();
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        // (d + 1.5) * 2 - d / 3 > 100
+        AddDoubleOperator add = new AddDoubleOperator();
+        add.setLhs(column("d"));
+        add.setRhs(new DoubleConstant(1.5));
+
+        MultDoubleOperator mult = new MultDoubleOperator();
+        mult.setLhs(add);
+        mult.setRhs(new IntConstant(2));
+
+        DivDoubleOperator div = new DivDoubleOperator();
+        div.setLhs(column("d"));
+        div.setRhs(new IntConstant(3));
+
+        MinusDoubleOperator minus = new MinusDoubleOperator();
+        minus.setLhs(mult);
+        minus.setRhs(div);
+
+        assertSameResults(binary(new DoubleGreaterThanOperator(), minus, new DoubleConstant(100)));
+        // NaN never compares
+        assertSameResults(binary(new DoubleLessThanOperator(), column("d"), new DoubleConstant(Double.NaN)));
+    }
+
+    @Test
+    public void testConstantFolding() throws Exception {
+        AddIntOperator add = new AddIntOperator();
+        add.setLhs(new IntConstant(400));
+        add.setRhs(new IntConstant(90));
+        assertSameResults(binary(new IntGreaterThanOperator(), column("i"), add));
+
+        AddIntOperator overflow = new AddIntOperator();
+        overflow.setLhs(column("i"));
+        overflow.setRhs(new IntConstant(Integer.MAX_VALUE - 500));
+        assertSameResults(binary(new IntGreaterThanOperator(), new IntConstant(0), overflow));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        FilterCompiler.setEnabled(false);
+        try {
+            Assert.assertNull(FilterCompiler.compile(binary(new IntEqualsOperator(), column("i"), new IntConstant(1))));
+        } finally {
+            FilterCompiler.setEnabled(true);
+        }
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        StringEqualsOperator eq = new StringEqualsOperator();
+        eq.setLhs(column("s"));
+        eq.setRhs(new StringConstant("s1"));
+
+        OrOperator or = new OrOperator();
+        or.setLhs(eq);
+        or.setRhs(binary(new IntEqualsOperator(), column("i"), new IntConstant(17)));
+
+        AndOperator and = new AndOperator();
+        and.setLhs(or);
+        and.setRhs(binary(new DoubleLessThanOperator(), column("d"), new DoubleConstant(700)));
+        assertSameResults(and);
+
+        // there is nothing to compile in expression that is evaluated by interpreter entirely
+        Assert.assertNull(FilterCompiler.compile(eq));
+    }
+
+    @Test
+    public void testSameShapeSharesClass() throws Exception {
+        CompiledFilter f1 = FilterCompiler.compile(binary(new DoubleGreaterThanOperator(), column("d"), new DoubleConstant(100)));
+        CompiledFilter f2 = FilterCompiler.compile(binary(new DoubleGreaterThanOperator(), column("d"), new DoubleConstant(100)));
+        CompiledFilter f3 = FilterCompiler.compile(binary(new DoubleGreaterThanOperator(), column("d"), new DoubleConstant(200)));
+        Assert.assertNotNull(f1);
+        Assert.assertNotSame(f1, f2);
+        Assert.assertSame(f1.getClass(), f2.getClass());
+        Assert.assertNotSame(f1.getClass(), f3.getClass());
+
+        // fallback columns belong to instance, class is shared
+        IntParameter p1 = new IntParameter();
+        IntParameter p2 = new IntParameter();
+        VirtualColumn e1 = binary(new IntGreaterThanOperator(), column("i"), p1);
+        VirtualColumn e2 = binary(new IntGreaterThanOperator(), column("i"), p2);
+        CompiledFilter c1 = FilterCompiler.compile(e1);
+        CompiledFilter c2 = FilterCompiler.compile(e2);
+        Assert.assertNotNull(c1);
+        Assert.assertSame(c1.getClass(), c2.getClass());
+        p1.setValue(990);
+        p2.setValue(10);
+        assertSameResults(e1, c1);
+        assertSameResults(e2, c2);
+    }
+
+    @Test
+    public void testParameter() throws Exception {
+        IntParameter p = new IntParameter();
+        VirtualColumn filter = binary(new IntGreaterThanOperator(), column("i"), p);
+        CompiledFilter compiled = FilterCompiler.compile(filter);
+        Assert.assertNotNull(compiled);
+        p.setValue(990);
+        assertSameResults(filter, compiled);
+        p.setValue(10);
+        assertSameResults(filter, compiled);
+    }
+
+    private static VirtualColumn binary(AbstractBinaryOperator op, VirtualColumn lhs, VirtualColumn rhs) {
+        op.setLhs(lhs);
+        op.setRhs(rhs);
+        return op;
+    }
+
+    private void assertSameResults(VirtualColumn filter) throws Exception {
+        CompiledFilter compiled = FilterCompiler.compile(filter);
+        Assert.assertNotNull(compiled);
+        assertSameResults(filter, compiled);
+    }
+
+    private void assertSameResults(VirtualColumn filter, CompiledFilter compiled) throws Exception {
+        final JournalRecord rec = new JournalRecord(w.getMetadata());
+        filter.configureSource(new RecordSourceState() {
+            @Override
+            public Record currentRecord() {
+                return rec;
+            }
+        });
+
+        for (int i = 0, n = w.getPartitionCount(); i < n; i++) {
+            Partition p = w.getPartition(i, true);
+            rec.partition = p;
+            for (long row = 0, size = p.size(); row < size; row++) {
+                rec.rowid = row;
+                Assert.assertEquals(filter.getBool(), compiled.eval(p, row));
+            }
+        }
+    }
+
+    private RecordSourceColumn column(String name) {
+        return new RecordSourceColumn(name, w.getMetadata());
+    }
+}
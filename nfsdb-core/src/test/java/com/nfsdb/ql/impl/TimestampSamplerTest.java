@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TimestampSamplerTest {
+
+    @Test
+    public void testInvalid() throws Exception {
+        Assert.assertNull(TimestampSamplerFactory.getInstance(""));
+        Assert.assertNull(TimestampSamplerFactory.getInstance("x"));
+        Assert.assertNull(TimestampSamplerFactory.getInstance("0m"));
+        Assert.assertNull(TimestampSamplerFactory.getInstance("-1m"));
+        Assert.assertNull(TimestampSamplerFactory.getInstance("1.5h"));
+        Assert.assertNull(TimestampSamplerFactory.getInstance("10w"));
+    }
+
+    @Test
+    public void testMillis() throws Exception {
+        assertSampler("2015-03-12T10:15:20.000Z", "2015-03-12T10:15:20.000Z", "2015-03-12T10:15:21.000Z", "1s");
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-03-12T10:15:20.000Z", "2015-03-12T10:15:21.000Z", "s");
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-03-12T10:15:00.000Z", "2015-03-12T10:15:30.000Z", "30s");
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-03-12T10:00:00.000Z", "2015-03-12T10:20:00.000Z", "20m");
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-03-12T06:00:00.000Z", "2015-03-12T12:00:00.000Z", "6h");
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-03-12T00:00:00.000Z", "2015-03-13T00:00:00.000Z", "1d");
+        assertSampler("1969-12-31T23:59:59.500Z", "1969-12-31T23:59:59.000Z", "1970-01-01T00:00:00.000Z", "1s");
+    }
+
+    @Test
+    public void testMonths() throws Exception {
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-03-01T00:00:00.000Z", "2015-04-01T00:00:00.000Z", "M");
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-01-01T00:00:00.000Z", "2015-04-01T00:00:00.000Z", "3M");
+        assertSampler("2016-02-29T23:59:59.999Z", "2016-01-01T00:00:00.000Z", "2016-07-01T00:00:00.000Z", "6M");
+        assertSampler("1969-11-12T10:15:20.750Z", "1969-10-01T00:00:00.000Z", "1970-01-01T00:00:00.000Z", "3M");
+    }
+
+    @Test
+    public void testYears() throws Exception {
+        assertSampler("2015-03-12T10:15:20.750Z", "2015-01-01T00:00:00.000Z", "2016-01-01T00:00:00.000Z", "1y");
+        assertSampler("2015-03-12T10:15:20.750Z", "2010-01-01T00:00:00.000Z", "2020-01-01T00:00:00.000Z", "10y");
+        assertSampler("1965-03-12T10:15:20.750Z", "1960-01-01T00:00:00.000Z", "1970-01-01T00:00:00.000Z", "10y");
+    }
+
+    private static void assertSampler(String timestamp, String expectedLo, String expectedHi, String interval) {
+        TimestampSampler sampler = TimestampSamplerFactory.getInstance(interval);
+        Assert.assertNotNull(sampler);
+        long lo = sampler.round(Dates.parseDateTime(timestamp));
+        Assert.assertEquals(expectedLo, Dates.toString(lo));
+        Assert.assertEquals(expectedHi, Dates.toString(sampler.nextTimestamp(lo)));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Journal;
+import com.nfsdb.JournalEntryWriter;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.PartitionType;
+import com.nfsdb.collections.LongList;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.RecordSourceState;
+import com.nfsdb.ql.ops.*;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+public class VectorFilterTest extends AbstractTest {
+
+    private static final int ROWS_PER_PARTITION = 20000;
+    private JournalWriter w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(
+                new JournalStructure("vf").
+                        $int("i").
+                        $double("d").
+                        $str("s").
+                        $ts().
+                        partitionBy(PartitionType.MONTH)
+        );
+        w.setSealPartitions(true);
+
+        long step = Dates.DAY_MILLIS * 20 / ROWS_PER_PARTITION;
+        for (int i = 0; i < ROWS_PER_PARTITION * 3; i++) {
+            long t = Dates.addMonths(Dates.parseDateTime("2015-01-01T00:00:00.000Z"), i / ROWS_PER_PARTITION) + (i % ROWS_PER_PARTITION) * step;
+            JournalEntryWriter ew = w.entryWriter(t);
+            ew.putInt(0, i % 1000);
+            // every 7th value is null
+            ew.putDouble(1, i % 7 == 0 ? Double.NaN : (i % 5000) / 3.0);
+            ew.putStr(2, "s" + (i % 3));
+            ew.append();
+        }
+        w.commit();
+
+        File sealed = new File(w.getPartition(0, false).getPartitionDir(), "d.z");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!sealed.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(sealed.exists());
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        // d * 2 - d / 3 > 100
+        MultDoubleOperator mult = new MultDoubleOperator();
+        mult.setLhs(column("d"));
+        mult.setRhs(new DoubleConstant(2));
+
+        DivDoubleOperator div = new DivDoubleOperator();
+        div.setLhs(column("d"));
+        div.setRhs(new IntConstant(3));
+
+        MinusDoubleOperator minus = new MinusDoubleOperator();
+        minus.setLhs(mult);
+        minus.setRhs(div);
+
+        assertSameResults(compare(new DoubleGreaterThanOperator(), minus, new DoubleConstant(100)));
+    }
+
+    @Test
+    public void testDefaultPathIsVectorized() throws Exception {
+        Assert.assertTrue(FilterCompiler.isEnabled());
+        VirtualColumn filter = compare(new DoubleGreaterThanOperator(), column("d"), new DoubleConstant(100));
+        FilteredRowSource src = new FilteredRowSource(new AllRowSource(), filter);
+        src.configure(w.getMetadata());
+        // compiler is not used for filters that can be vectorized
+        Assert.assertTrue(src.isVectorized());
+        Assert.assertNotNull(FilterCompiler.compile(filter));
+
+        StringEqualsOperator eq = new StringEqualsOperator();
+        eq.setLhs(column("s"));
+        eq.setRhs(new StringConstant("s1"));
+        src = new FilteredRowSource(new AllRowSource(), eq);
+        src.configure(w.getMetadata());
+        Assert.assertFalse(src.isVectorized());
+    }
+
+    @Test
+    public void testIntAddition() throws Exception {
+        AddIntOperator add = new AddIntOperator();
+        add.setLhs(column("i"));
+        add.setRhs(new IntConstant(Integer.MAX_VALUE - 500));
+        // overflow has to be the same as in scalar operator
+        assertSameResults(compare(new IntGreaterThanOperator(), new IntConstant(0), add));
+    }
+
+    @Test
+    public void testMixedWithRowByRow() throws Exception {
+        StringEqualsOperator eq = new StringEqualsOperator();
+        eq.setLhs(column("s"));
+        eq.setRhs(new StringConstant("s1"));
+
+        OrOperator or = new OrOperator();
+        or.setLhs(eq);
+        or.setRhs(compare(new IntEqualsOperator(), column("i"), new IntConstant(17)));
+
+        AndOperator and = new AndOperator();
+        and.setLhs(or);
+        and.setRhs(compare(new DoubleLessThanOperator(), column("d"), new DoubleConstant(700)));
+
+        assertSameResults(and);
+        // top level string operator is evaluated row by row
+        Assert.assertNull(VectorFilter.create(eq, new JournalRecord(w.getMetadata())));
+    }
+
+    @Test
+    public void testParameter() throws Exception {
+        IntParameter p = new IntParameter();
+        VirtualColumn filter = compare(new IntGreaterThanOperator(), column("i"), p);
+        p.setValue(990);
+        assertSameResults(filter);
+        p.setValue(10);
+        assertSameResults(filter);
+    }
+
+    @Test
+    public void testZoneMapsAndSealedColumns() throws Exception {
+        AndOperator and = new AndOperator();
+        and.setLhs(compare(new DoubleGreaterThanOperator(), column("d"), new DoubleConstant(1500)));
+        and.setRhs(compare(new IntGreaterThanOperator(), column("i"), new IntConstant(500)));
+        assertSameResults(and);
+    }
+
+    private static VirtualColumn compare(AbstractBinaryOperator op, VirtualColumn lhs, VirtualColumn rhs) {
+        op.setLhs(lhs);
+        op.setRhs(rhs);
+        return op;
+    }
+
+    private void assertSameResults(VirtualColumn filter) throws Exception {
+        try (Journal r = factory.reader("vf")) {
+            Assert.assertNotNull(VectorFilter.create(filter, new JournalRecord(r.getMetadata())));
+            LongList expected = rows(r, new ScalarFilter(filter));
+            LongList actual = rows(r, filter);
+            Assert.assertTrue(expected.size() > 0);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    private RecordSourceColumn column(String name) {
+        return new RecordSourceColumn(name, w.getMetadata());
+    }
+
+    private LongList rows(Journal journal, VirtualColumn filter) throws Exception {
+        JournalSource src = new JournalSource(new JournalPartitionSource(journal.getMetadata(), true), new FilteredRowSource(new AllRowSource(), filter));
+        RecordCursor<? extends Record> c = src.prepareCursor(factory);
+        LongList rows = new LongList();
+        while (c.hasNext()) {
+            rows.add(c.next().getRowId());
+        }
+        return rows;
+    }
+
+    /**
+     * Hides filter from vectorizer, so that rows are filtered one by one.
+     */
+    private static class ScalarFilter extends AbstractVirtualColumn {
+        private final VirtualColumn filter;
+
+        private ScalarFilter(VirtualColumn filter) {
+            super(filter.getType());
+            this.filter = filter;
+        }
+
+        @Override
+        public void configureSource(RecordSourceState state) {
+            filter.configureSource(state);
+        }
+
+        @Override
+        public boolean getBool() {
+            return filter.getBool();
+        }
+
+        @Override
+        public boolean isConstant() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.nfsdb.ql.impl;
+
+import com.nfsdb.Journal;
+import com.nfsdb.JournalEntryWriter;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.Partition;
+import com.nfsdb.PartitionType;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.ql.RecordCursor;
+import com.nfsdb.ql.ops.*;
+import com.nfsdb.storage.ZoneMap;
+import com.nfsdb.test.tools.AbstractTest;
+import com.nfsdb.utils.Dates;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZoneMapFilterTest extends AbstractTest {
+
+    private static final int ROWS_PER_PARTITION = 50000;
+    private JournalWriter w;
+
+    @Before
+    public void setUp() throws Exception {
+        w = factory.writer(
+                new JournalStructure("zm").
+                        $int("i").
+                        $double("d").
+                        $ts().
+                        partitionBy(PartitionType.MONTH)
+        );
+
+        long step = Dates.DAY_MILLIS * 20 / ROWS_PER_PARTITION;
+        for (int i = 0; i < ROWS_PER_PARTITION * 3; i++) {
+            long t = Dates.addMonths(Dates.parseDateTime("2015-01-01T00:00:00.000Z"), i / ROWS_PER_PARTITION) + (i % ROWS_PER_PARTITION) * step;
+            JournalEntryWriter ew = w.entryWriter(t);
+            ew.putInt(0, i);
+            ew.putDouble(1, d(i));
+            ew.append();
+        }
+        w.commit();
+    }
+
+    @Test
+    public void testBlocksAreSkipped() throws Exception {
+        ZoneMapFilter zf = ZoneMapFilter.create(doubleGreater("d", ROWS_PER_PARTITION * 2.5 / 2));
+        Assert.assertNotNull(zf);
+
+        Assert.assertEquals(3, w.getPartitionCount());
+        Assert.assertFalse(matchesAny(zf, w.getPartition(0, true)));
+        Assert.assertFalse(matchesAny(zf, w.getPartition(1, true)));
+        Assert.assertTrue(matchesAny(zf, w.getPartition(2, true)));
+
+        Partition p = w.getPartition(2, true);
+        zf.of(p);
+        long hi = p.size() - 1;
+        int matching = 0;
+        for (long b = 0, n = hi >>> ZoneMap.BLOCK_BITS; b <= n; b++) {
+            if (zf.matches(b, hi)) {
+                matching++;
+            }
+        }
+        // half of the partition rows match
+        Assert.assertTrue(matching <= ((ROWS_PER_PARTITION / 2) >>> ZoneMap.BLOCK_BITS) + 2);
+    }
+
+    @Test
+    public void testConstantOnLeft() throws Exception {
+        IntGreaterThanOperator op = new IntGreaterThanOperator();
+        op.setLhs(new IntConstant(10));
+        op.setRhs(new RecordSourceColumn("i", w.getMetadata()));
+
+        ZoneMapFilter zf = ZoneMapFilter.create(op);
+        Assert.assertNotNull(zf);
+        Assert.assertTrue(matchesAny(zf, w.getPartition(0, true)));
+        Assert.assertFalse(matchesAny(zf, w.getPartition(1, true)));
+    }
+
+    @Test
+    public void testNoUsableTerms() throws Exception {
+        OrOperator or = new OrOperator();
+        or.setLhs(doubleGreater("d", 10));
+        or.setRhs(doubleGreater("d", 20));
+        Assert.assertNull(ZoneMapFilter.create(or));
+    }
+
+    @Test
+    public void testResultsAreSame() throws Exception {
+        assertCount(w, intEquals("i", ROWS_PER_PARTITION + 5), 1);
+
+        AndOperator and = new AndOperator();
+        and.setLhs(doubleGreater("d", 1000));
+        and.setRhs(intGreater("i", ROWS_PER_PARTITION * 3 - 100));
+        assertCount(w, and, countGreater(ROWS_PER_PARTITION * 3 - 100, 1000));
+
+        try (Journal r = factory.reader("zm")) {
+            assertCount(r, doubleGreater("d", ROWS_PER_PARTITION), countGreater(-1, ROWS_PER_PARTITION));
+            assertCount(r, doubleGreater("d", Double.NaN), 0);
+        }
+    }
+
+    private static int countGreater(int i, double d) {
+        int count = 0;
+        for (int k = i + 1; k < ROWS_PER_PARTITION * 3; k++) {
+            if (d(k) > d) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double d(int i) {
+        // every 7th value is null
+        return i % 7 == 0 ? Double.NaN : i / 2.0;
+    }
+
+    private static boolean matchesAny(ZoneMapFilter zf, Partition p) throws Exception {
+        zf.of(p);
+        return zf.matchesAny(0, p.size() - 1);
+    }
+
+    private void assertCount(Journal journal, VirtualColumn filter, int expected) throws Exception {
+        JournalSource src = new JournalSource(new JournalPartitionSource(journal.getMetadata(), true), new FilteredRowSource(new AllRowSource(), filter));
+        RecordCursor c = src.prepareCursor(factory);
+        int count = 0;
+        while (c.hasNext()) {
+            c.next();
+            count++;
+        }
+        Assert.assertEquals(expected, count);
+    }
+
+    private VirtualColumn doubleGreater(String column, double value) {
+        DoubleGreaterThanOperator op = new DoubleGreaterThanOperator();
+        op.setLhs(new RecordSourceColumn(column, w.getMetadata()));
+        op.setRhs(new DoubleConstant(value));
+        return op;
+    }
+
+    private VirtualColumn intEquals(String column, int value) {
+        IntEqualsOperator op = new IntEqualsOperator();
+        op.setLhs(new RecordSourceColumn(column, w.getMetadata()));
+        op.setRhs(new IntConstant(value));
+        return op;
+    }
+
+    private VirtualColumn intGreater(String column, int value) {
+        IntGreaterThanOperator op = new IntGreaterThanOperator();
+        op.setLhs(new RecordSourceColumn(column, w.getMetadata()));
+        op.setRhs(new IntConstant(value));
+        return op;
+    }
+}
@@ -538,6 +538,21 @@ public class IntrinsicExtractorTest extends AbstractTest {
 
     }
 
+    @Test
+    public void testParameterKey() throws Exception {
+        IntrinsicModel m = modelOf("sym = :sym and bid > 10");
+        assertFilter(m, "bid10>");
+        Assert.assertEquals("sym", m.keyColumn);
+        Assert.assertEquals(":sym", m.keyParameter);
+
+        // constant key takes over parameter
+        m = modelOf("sym = :sym and sym = 'X'");
+        assertFilter(m, "sym:sym=");
+        Assert.assertEquals("sym", m.keyColumn);
+        Assert.assertNull(m.keyParameter);
+        Assert.assertEquals("[X]", m.keyValues.toString());
+    }
+
     @Test
     public void testPreferredColumn() throws Exception {
         IntrinsicModel m;
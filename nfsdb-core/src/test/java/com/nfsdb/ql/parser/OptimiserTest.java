@@ -26,7 +26,11 @@ import com.nfsdb.io.RecordSourcePrinter;
 import com.nfsdb.io.sink.StringSink;
 import com.nfsdb.model.Quote;
 import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordCursor;
 import com.nfsdb.ql.RecordSource;
+import com.nfsdb.ql.model.Statement;
+import com.nfsdb.ql.model.StatementType;
+import com.nfsdb.storage.IndexType;
 import com.nfsdb.test.tools.AbstractTest;
 import com.nfsdb.test.tools.TestUtils;
 import com.nfsdb.utils.Dates;
@@ -54,9 +58,117 @@ public class OptimiserTest extends AbstractTest {
 
     @After
     public void tearDown() {
+        optimiser.close();
         f.close();
     }
 
+    @Test
+    public void testAccessPathByCost() throws Exception {
+        createStats();
+        Assert.assertTrue(explain("select sym, size from stats where sym = 'A'").contains("access path: scan"));
+        Assert.assertTrue(explain("select sym, size from stats where sym = 'Z'").contains("access path: index"));
+        // most rows are read either way
+        Assert.assertTrue(explain("select sym, size from stats where sym in ('A', 'Z')").contains("access path: scan"));
+
+        Assert.assertEquals(96, count(compile("select sym, size from stats where sym = 'A'")));
+        Assert.assertEquals(100, count(compile("select sym, size from stats where sym in ('A', 'Z')")));
+        assertThat("Z\t0\nZ\t25\nZ\t50\nZ\t75\n", "select sym, size from stats where sym = 'Z'");
+        assertThat("A\t99\n", "select sym, size from stats where sym = 'A' and size > 98");
+    }
+
+    @Test
+    public void testAsOfJoin() throws Exception {
+        createQuotesAndTrades();
+
+        final String expected = "1970-01-01T00:00:01.000Z\tA\t1.000000000000\tA\t10.000000000000\n" +
+                "1970-01-01T00:00:02.000Z\tB\t2.000000000000\tB\t21.000000000000\n" +
+                "1970-01-01T00:00:03.000Z\tA\t3.000000000000\tA\t11.000000000000\n" +
+                "1970-01-01T00:00:05.000Z\tB\t4.000000000000\tB\t21.000000000000\n" +
+                "1970-01-01T00:00:09.000Z\tA\t5.000000000000\tA\t12.000000000000\n";
+
+        assertThat(expected, "select quotes.timestamp, sym, bid, trades.sym, price from quotes asof join trades on sym");
+    }
+
+    @Test
+    public void testAsOfJoinInvalid() throws Exception {
+        createQuotesAndTrades();
+        assertError("select sym from quotes asof join trades on bid", 43, "Invalid column");
+        assertError("select sym from quotes asof join trades on sym within x", 54, "Window in milliseconds expected");
+        assertError("select sym from quotes asof join trades on sym order by bid", 56, "Order by is not supported");
+        assertError("select sym, count() from quotes asof join trades sample by 1m", 42, "Asof join is not supported");
+    }
+
+    @Test
+    public void testAsOfJoinNoKeys() throws Exception {
+        createQuotesAndTrades();
+
+        final String expected = "1970-01-01T00:00:01.000Z\tA\t10.000000000000\n" +
+                "1970-01-01T00:00:02.000Z\tB\t21.000000000000\n" +
+                "1970-01-01T00:00:03.000Z\tA\t11.000000000000\n" +
+                "1970-01-01T00:00:05.000Z\tC\t30.000000000000\n" +
+                "1970-01-01T00:00:09.000Z\tA\t12.000000000000\n";
+
+        assertThat(expected, "select timestamp, trades.sym, price from quotes asof join trades");
+    }
+
+    @Test
+    public void testAsOfJoinWindow() throws Exception {
+        createQuotesAndTrades();
+
+        final String expected = "1970-01-01T00:00:01.000Z\tA\t10.000000000000\n" +
+                "1970-01-01T00:00:02.000Z\tB\t21.000000000000\n" +
+                "1970-01-01T00:00:03.000Z\tA\t11.000000000000\n" +
+                "1970-01-01T00:00:05.000Z\tB\t0.000000000000\n" +
+                "1970-01-01T00:00:09.000Z\tA\t0.000000000000\n";
+
+        assertThat(expected, "select timestamp, sym, price from quotes asof join trades on sym within 1000 where bid > 0");
+    }
+
+    @Test
+    public void testBitmapIndexIntersection() throws Exception {
+        JournalWriter w = factory.writer(new JournalStructure("orders").
+                $sym("side").index(IndexType.BITMAP).
+                $sym("venue").index(IndexType.BITMAP).
+                $int("qty").
+                $ts()
+        );
+
+        String sides[] = {"B", "S", "BS", "SS"};
+        String venues[] = {"A", "C", "D", "E", "F", "G", "H", "K", "X", "Y"};
+        Rnd rnd = new Rnd();
+        StringSink expected = new StringSink();
+        StringSink expectedQty = new StringSink();
+        for (int i = 0; i < 50000; i++) {
+            String side = sides[rnd.nextPositiveInt() % sides.length];
+            String venue = venues[rnd.nextPositiveInt() % venues.length];
+            int qty = rnd.nextPositiveInt() % 1000;
+            JournalEntryWriter ew = w.entryWriter(i * 1000L);
+            ew.putSym(0, side);
+            ew.putSym(1, venue);
+            ew.putInt(2, qty);
+            ew.append();
+
+            if ("B".equals(side) && ("X".equals(venue) || "Y".equals(venue))) {
+                expected.put(side).put('\t').put(venue).put('\t').put(qty).put('\n');
+                if (qty > 500) {
+                    expectedQty.put(side).put('\t').put(venue).put('\t').put(qty).put('\n');
+                }
+            }
+        }
+        w.commit();
+
+        String query = "select side, venue, qty from orders where side = 'B' and venue in ('X','Y')";
+        String plan = explain(query);
+        Assert.assertTrue(plan.contains("bitmap: "));
+        Assert.assertTrue(plan.contains("access path: index"));
+        Assert.assertTrue(compile(query).toString().contains("BitmapIndexRowSource"));
+
+        assertThat(expected.toString(), query);
+        assertThat(expected.toString(), "select side, venue, qty from orders where venue in ('Y', 'X') and side = 'B'");
+        assertThat(expectedQty.toString(), query + " and qty > 500");
+        assertThat("", "select side, venue, qty from orders where side = 'B' and venue = 'Z'");
+    }
+
     @Test
     public void testConstantCondition1() throws Exception {
         createTab();
@@ -80,6 +192,66 @@ public class OptimiserTest extends AbstractTest {
         Assert.assertTrue(plan.contains("NoOpJournalPartitionSource"));
     }
 
+    @Test
+    public void testExplain() throws Exception {
+        createStats();
+        Assert.assertEquals("journal: stats, partitions: 1, rows: 100\n" +
+                        "index: sym in [Z], estimated rows: 4, cost: 16\n" +
+                        "scan: estimated rows: 100, cost: 100\n" +
+                        "access path: index\n" +
+                        "filter: selectivity: 0.333, estimated rows: 1\n",
+                explain("select sym, size from stats where sym = 'Z' and size > 10"));
+
+        Assert.assertEquals("journal: stats, partitions: 1, rows: 100\n" +
+                        "interval: estimated rows: 50\n" +
+                        "access path: scan\n",
+                explain("select sym, size from stats where timestamp >= '1970-01-01T00:00:49.500Z'"));
+    }
+
+    @Test
+    public void testExplainFollowsCommits() throws Exception {
+        JournalWriter w = createStats();
+        Assert.assertTrue(explain("select sym, size from stats where sym = 'Z'").startsWith("journal: stats, partitions: 1, rows: 100\n" +
+                "index: sym in [Z], estimated rows: 4"));
+
+        // statistics are cached by transaction, new commit is picked up
+        appendStats(w, 100, 200);
+        Assert.assertTrue(explain("select sym, size from stats where sym = 'Z'").startsWith("journal: stats, partitions: 1, rows: 200\n" +
+                "index: sym in [Z], estimated rows: 8"));
+    }
+
+    @Test
+    public void testParameterKey() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 10000, Dates.parseDateTime("2015-02-12T03:00:00.000Z"), Dates.SECOND_MILLIS);
+        w.commit();
+
+        // key value is not known until execution, rows are estimated as average per symbol
+        String plan = explain("select sym, bid from q where sym = :sym and bid > 500");
+        Assert.assertTrue(plan.contains("index: sym = :sym, estimated rows: 1000, cost: 4000\n"));
+        Assert.assertTrue(plan.contains("access path: index\n"));
+
+        try (PreparedQuery q = prepare("select sym, bid from q where sym = :sym and bid > 500")) {
+            q.setParameter(":sym", "BP.L");
+            assertThat(q, "select sym, bid from q where sym = 'BP.L' and bid > 500");
+            q.setParameter(":sym", "ADM.L");
+            assertThat(q, "select sym, bid from q where sym = 'ADM.L' and bid > 500");
+        }
+    }
+
+    @Test
+    public void testParameterKeyScan() throws Exception {
+        createStats();
+        Assert.assertTrue(explain("select sym, size from stats where sym = ?").contains("access path: scan"));
+
+        try (PreparedQuery q = prepare("select sym, size from stats where sym = ?")) {
+            q.setParameter(1, "Z");
+            assertThat(q, "select sym, size from stats where sym = 'Z'");
+            q.setParameter(1, "A");
+            assertThat(q, "select sym, size from stats where sym = 'A'");
+        }
+    }
+
     @Test
     public void testIntervalAndIndexSearch() throws Exception {
         JournalWriter<Quote> w = factory.writer(Quote.class, "q");
@@ -242,6 +414,234 @@ public class OptimiserTest extends AbstractTest {
         }
     }
 
+    @Test
+    public void testOrKeys() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 10000, Dates.parseDateTime("2015-02-12T03:00:00.000Z"), Dates.MINUTE_MILLIS);
+        w.commit();
+
+        sink.clear();
+        RecordSource<? extends Record> rs = compile("select sym, bid, timestamp from q where sym in ('BP.L', 'WTB.L')");
+        printer.print(rs.prepareCursor(f), rs.getMetadata());
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+        Assert.assertTrue(rs.toString().contains("KvIndexMergingRowSource"));
+
+        assertThat(expected, "select sym, bid, timestamp from q where sym = 'BP.L' or sym = 'WTB.L' or sym = 'BP.L'");
+        assertThat(expected, "select sym, bid, timestamp from q where sym = 'BP.L' or sym in ('WTB.L')");
+        String plan = explain("select sym, bid from q where sym = 'BP.L' or 'WTB.L' = sym");
+        Assert.assertTrue(plan, plan.contains("access path: index"));
+        // OR with other columns is a filter
+        Assert.assertTrue(explain("select sym, bid from q where sym = 'BP.L' or bid > 10").contains("access path: scan"));
+    }
+
+    @Test
+    public void testOrderBy() throws Exception {
+        createTab();
+        RecordSource<? extends Record> rs = compile("select id, x from tab where x > 0.5 order by id, x desc");
+        for (int pass = 0; pass < 2; pass++) {
+            RecordCursor<? extends Record> cursor = rs.prepareCursor(f);
+            String lastId = null;
+            double lastX = 0;
+            int count = 0;
+            while (cursor.hasNext()) {
+                Record r = cursor.next();
+                String id = r.getStr(0).toString();
+                double x = r.getDouble(1);
+                Assert.assertTrue(x > 0.5);
+                if (lastId != null) {
+                    int c = lastId.compareTo(id);
+                    Assert.assertTrue(c <= 0);
+                    Assert.assertTrue(c < 0 || lastX >= x);
+                }
+                lastId = id;
+                lastX = x;
+                count++;
+            }
+            Assert.assertEquals(count(compile("select id, x from tab where x > 0.5")), count);
+            rs.reset();
+        }
+    }
+
+    @Test
+    public void testOrderByInvalidColumn() throws Exception {
+        createTab();
+        try {
+            compile("select id, x from tab order by x, z desc");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(34, e.getPosition());
+            Assert.assertTrue(e.getMessage().contains("nvalid column"));
+        }
+    }
+
+    @Test
+    public void testOrderByLimit() throws Exception {
+        createTab();
+        assertLimit("select id, x from tab where x > 0.5 order by id, x desc", 15);
+        assertLimit("select id, x, y from tab order by x desc", 10);
+        assertLimit("select id, x from tab order by id", 0);
+
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 10000, Dates.parseDateTime("2015-02-12T03:00:00.000Z"), Dates.SECOND_MILLIS);
+        w.commit();
+        assertLimit("select sym, bid, timestamp from q order by sym desc, bid", 25);
+        assertLimit("select sym, bid, timestamp from q order by bid desc", 20000);
+
+        assertThat("AGK.L\t2015-02-12T03:00:00.000Z\n" +
+                "BP.L\t2015-02-12T03:00:01.000Z\n", "select sym, timestamp from q limit 2");
+        assertError("select sym, timestamp from q order by sym limit x", 48, "Row count expected");
+        Assert.assertTrue(explain("select sym, bid from q order by bid desc limit 10").endsWith("top: 10\n"));
+    }
+
+    @Test
+    public void testOrderBySym() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 1000, Dates.parseDateTime("2015-02-12T03:00:00.000Z"), Dates.SECOND_MILLIS);
+        w.commit();
+
+        final String expected = "WTB.L\t2015-02-12T03:16:37.000Z\n" +
+                "WTB.L\t2015-02-12T03:16:33.000Z\n" +
+                "WTB.L\t2015-02-12T03:16:31.000Z\n" +
+                "TLW.L\t2015-02-12T03:16:22.000Z\n" +
+                "TLW.L\t2015-02-12T03:16:11.000Z\n" +
+                "TLW.L\t2015-02-12T03:16:09.000Z\n" +
+                "TLW.L\t2015-02-12T03:16:07.000Z\n" +
+                "TLW.L\t2015-02-12T03:16:03.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:38.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:36.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:35.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:34.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:32.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:30.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:26.000Z\n" +
+                "RRS.L\t2015-02-12T03:16:14.000Z\n" +
+                "LLOY.L\t2015-02-12T03:16:27.000Z\n" +
+                "LLOY.L\t2015-02-12T03:16:24.000Z\n" +
+                "LLOY.L\t2015-02-12T03:16:15.000Z\n" +
+                "GKN.L\t2015-02-12T03:16:18.000Z\n" +
+                "GKN.L\t2015-02-12T03:16:06.000Z\n" +
+                "GKN.L\t2015-02-12T03:16:05.000Z\n" +
+                "GKN.L\t2015-02-12T03:16:04.000Z\n" +
+                "BT-A.L\t2015-02-12T03:16:39.000Z\n" +
+                "BT-A.L\t2015-02-12T03:16:28.000Z\n" +
+                "BT-A.L\t2015-02-12T03:16:25.000Z\n" +
+                "BT-A.L\t2015-02-12T03:16:17.000Z\n" +
+                "BP.L\t2015-02-12T03:16:21.000Z\n" +
+                "BP.L\t2015-02-12T03:16:20.000Z\n" +
+                "BP.L\t2015-02-12T03:16:19.000Z\n" +
+                "BP.L\t2015-02-12T03:16:13.000Z\n" +
+                "BP.L\t2015-02-12T03:16:10.000Z\n" +
+                "BP.L\t2015-02-12T03:16:01.000Z\n" +
+                "BP.L\t2015-02-12T03:16:00.000Z\n" +
+                "AGK.L\t2015-02-12T03:16:29.000Z\n" +
+                "AGK.L\t2015-02-12T03:16:23.000Z\n" +
+                "AGK.L\t2015-02-12T03:16:08.000Z\n" +
+                "AGK.L\t2015-02-12T03:16:02.000Z\n" +
+                "ABF.L\t2015-02-12T03:16:16.000Z\n" +
+                "ABF.L\t2015-02-12T03:16:12.000Z\n";
+        assertThat(expected, "select sym, timestamp from q where timestamp = '2015-02-12T03:16;30s' order by sym desc, timestamp desc");
+    }
+
+    @Test
+    public void testParallelScan() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2014-01-01T00:00:00.000Z"), 10 * Dates.MINUTE_MILLIS);
+        w.commit();
+        Assert.assertTrue(w.getPartitionCount() > 10);
+
+        assertParallel("select sym, bid, ask, timestamp from q where bid > ask");
+        assertParallel("select sym, bid, timestamp from q where sym in ('BP.L', 'ADM.L') and bid > 500");
+        assertParallel("select sym, bid, timestamp from q where timestamp = '2014-03;2M' and ask < 100");
+        assertParallel("select sym, ask, timestamp from q where bid > 100 order by sym, ask, timestamp desc");
+    }
+
+    @Test
+    public void testParallelScanSeesReaderSnapshot() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2014-01-01T00:00:00.000Z"), 10 * Dates.MINUTE_MILLIS);
+        w.commit();
+
+        RecordSource<? extends Record> rs = compile("select sym, bid from q parallel 4");
+        Assert.assertEquals(100000, count(rs));
+
+        // reader of caching factory is not refreshed, workers must not return rows it cannot see
+        TestUtils.generateQuoteData(w, 1000, w.getMaxTimestamp() + 1, Dates.MINUTE_MILLIS);
+        w.commit();
+        Assert.assertEquals(100000, count(rs));
+        Assert.assertEquals(100000, count(rs));
+
+        f.refresh();
+        Assert.assertEquals(101000, count(rs));
+    }
+
+    @Test
+    public void testSampleBy() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 30, Dates.parseDateTime("2015-02-12T03:00:10.000Z"), 10 * Dates.SECOND_MILLIS);
+        w.commit();
+
+        final String expected = "2015-02-12T03:00:00.000Z\tAGK.L\t1\t0.000001189157\t0.000001189157\t1.050231933594\n" +
+                "2015-02-12T03:00:00.000Z\tBP.L\t3\t104.021850585938\t512.000000000000\t464.271069097682\n" +
+                "2015-02-12T03:00:00.000Z\tRRS.L\t1\t768.000000000000\t768.000000000000\t0.000020634160\n" +
+                "2015-02-12T03:00:00.000Z\tBT-A.L\t2\t256.000000000000\t384.000000000000\t0.000000027748\n" +
+                "2015-02-12T03:00:00.000Z\tGKN.L\t1\t920.625000000000\t920.625000000000\t0.040750414133\n" +
+                "2015-02-12T03:00:00.000Z\tLLOY.L\t2\t12.923866510391\t0.000000017324\t360.016189871356\n" +
+                "2015-02-12T03:00:00.000Z\tABF.L\t1\t0.006530375686\t0.006530375686\t0.000000000000\n" +
+                "2015-02-12T03:02:00.000Z\tABF.L\t2\t0.001165474765\t186.000000000000\t0.000010933725\n" +
+                "2015-02-12T03:02:00.000Z\tWTB.L\t1\t1.507822513580\t1.507822513580\t695.796875000000\n" +
+                "2015-02-12T03:02:00.000Z\tAGK.L\t2\t172.796875000000\t0.000000009901\t1.010149042122\n" +
+                "2015-02-12T03:02:00.000Z\tLLOY.L\t2\t0.000000006081\t0.003103211522\t607.294372558594\n" +
+                "2015-02-12T03:02:00.000Z\tTLW.L\t2\t424.828125000000\t632.921875000000\t686.087890625000\n" +
+                "2015-02-12T03:02:00.000Z\tADM.L\t1\t153.473033905029\t153.473033905029\t0.000355183205\n" +
+                "2015-02-12T03:02:00.000Z\tBT-A.L\t2\t0.015470010694\t770.359375000000\t335.721069343259\n" +
+                "2015-02-12T03:04:00.000Z\tTLW.L\t1\t1.229880273342\t1.229880273342\t4.852988362312\n" +
+                "2015-02-12T03:04:00.000Z\tWTB.L\t1\t0.000001305853\t0.000001305853\t767.380859375000\n" +
+                "2015-02-12T03:04:00.000Z\tBT-A.L\t2\t0.000000776007\t364.462486267090\t0.000243297653\n" +
+                "2015-02-12T03:04:00.000Z\tABF.L\t1\t583.609375000000\t583.609375000000\t0.555824235082\n" +
+                "2015-02-12T03:04:00.000Z\tGKN.L\t1\t296.544433593750\t296.544433593750\t174.774871826172\n" +
+                "2015-02-12T03:04:00.000Z\tAGK.L\t1\t842.000000000000\t842.000000000000\t100.000000000000\n";
+
+        assertThat(expected, "select timestamp, sym, count(), first(bid) f, last(bid) l, avg(ask) a from q sample by 2m");
+    }
+
+    @Test
+    public void testSampleByInvalid() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 30, Dates.parseDateTime("2015-02-12T03:00:10.000Z"), 10 * Dates.SECOND_MILLIS);
+        w.commit();
+
+        assertError("select sym, count() from q sample by 2x", 37, "Invalid sample interval");
+        assertError("select sym, count() from q sample by 1m order by sym", 49, "Order by is not supported");
+        assertError("select sym, avg(sym) from q sample by 1m", 16, "Unsupported column type");
+        assertError("select sym, median(bid) from q sample by 1m", 12, "No such aggregate function");
+        assertError("select sym, bid from q sample by 1m", 12, "Unsupported key column type");
+    }
+
+    @Test
+    public void testSampleByParallel() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 100000, Dates.parseDateTime("2014-01-01T00:00:00.000Z"), 10 * Dates.MINUTE_MILLIS);
+        w.commit();
+
+        assertParallel("select timestamp, sym, count(), sum(askSize), first(bid), last(bid), avg(ask) from q sample by 1d");
+        assertParallel("select timestamp, count() c, first(timestamp) f from q where bid > 100 sample by 1M");
+    }
+
+    @Test
+    public void testSampleBySeconds() throws Exception {
+        JournalWriter<Quote> w = factory.writer(Quote.class, "q");
+        TestUtils.generateQuoteData(w, 10, Dates.parseDateTime("2015-02-12T03:00:00.000Z"), 700);
+        w.commit();
+
+        final String expected = "2015-02-12T03:00:00.000Z\t3\t2015-02-12T03:00:00.000Z\t2015-02-12T03:00:01.400Z\n" +
+                "2015-02-12T03:00:02.000Z\t3\t2015-02-12T03:00:02.100Z\t2015-02-12T03:00:03.500Z\n" +
+                "2015-02-12T03:00:04.000Z\t3\t2015-02-12T03:00:04.200Z\t2015-02-12T03:00:05.600Z\n" +
+                "2015-02-12T03:00:06.000Z\t1\t2015-02-12T03:00:06.300Z\t2015-02-12T03:00:06.300Z\n";
+
+        assertThat(expected, "select timestamp, count(), first(timestamp) f, last(timestamp) l from q sample by 2s");
+    }
+
     @Test
     public void testSearchByIntIdUnindexed() throws Exception {
 
@@ -628,6 +1028,22 @@ public class OptimiserTest extends AbstractTest {
         assertThat(expected, "select id, x, y, timestamp from tab where id = 'XTPNHTDCEBYWXBB'");
     }
 
+    @Test
+    public void testSymbolPredicate() throws Exception {
+        JournalWriter w = factory.writer(new JournalStructure("syms").$sym("sym").$int("size").$ts());
+        appendSyms(w, 0, 100, 7);
+
+        RecordSource<? extends Record> rs = compile("select sym, size from syms where sym in ('S1', 'S3') or size = 0");
+        assertSymbols(rs, 100, 7);
+        assertThat(expectedSyms(100, 7, "S2"), "select sym, size from syms where sym = 'S2'");
+
+        // symbols added after query was compiled are evaluated as they are found
+        appendSyms(w, 100, 200, 10);
+        f.refresh();
+        rs.reset();
+        assertSymbols(rs, 200, 10);
+    }
+
     @Test
     public void testVirtualColumnQuery() throws Exception {
         JournalWriter<Quote> w = factory.writer(Quote.class, "q");
@@ -737,6 +1153,39 @@ public class OptimiserTest extends AbstractTest {
         assertThat(expected, "select sym, 1-(bid+ask)/2 mid, bid, ask from q");
     }
 
+    private void appendSyms(JournalWriter w, int lo, int hi, int distinct) throws JournalException {
+        for (int i = lo; i < hi; i++) {
+            JournalEntryWriter ew = w.entryWriter(i * 1000);
+            ew.putSym(0, i % 10 == 0 ? null : "S" + (i % distinct));
+            ew.putInt(1, i);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    private void assertSymbols(RecordSource<? extends Record> rs, int rows, int distinct) throws JournalException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            String sym = i % 10 == 0 ? null : "S" + (i < 100 ? i % 7 : i % distinct);
+            if ("S1".equals(sym) || "S3".equals(sym) || i == 0) {
+                expected.append(sym).append('\t').append(i).append('\n');
+            }
+        }
+        sink.clear();
+        printer.print(rs.prepareCursor(f), rs.getMetadata());
+        Assert.assertEquals(expected.toString(), sink.toString());
+    }
+
+    private String expectedSyms(int rows, int distinct, String sym) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            if (i % 10 != 0 && sym.equals("S" + (i % distinct))) {
+                b.append(sym).append('\t').append(i).append('\n');
+            }
+        }
+        return b.toString();
+    }
+
     private void assertThat(String expected, String query) throws JournalException, ParserException {
         RecordSource<? extends Record> rs = compile(query);
 
@@ -750,11 +1199,121 @@ public class OptimiserTest extends AbstractTest {
         Assert.assertEquals(expected, sink.toString());
     }
 
+    private void assertThat(PreparedQuery q, String query) throws JournalException, ParserException {
+        RecordSource<? extends Record> rs = compile(query);
+        sink.clear();
+        printer.print(rs.prepareCursor(f), rs.getMetadata());
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        sink.clear();
+        printer.print(q.execute(f), q.getRecordSource().getMetadata());
+        Assert.assertEquals(expected, sink.toString());
+    }
+
+    private void assertLimit(String query, int limit) throws JournalException, ParserException {
+        RecordSource<? extends Record> rs = compile(query);
+        sink.clear();
+        printer.print(rs.prepareCursor(f), rs.getMetadata());
+        String expected = sink.toString();
+        int p = 0;
+        for (int i = 0; i < limit && p < expected.length(); i++) {
+            p = expected.indexOf('\n', p) + 1;
+        }
+        assertThat(expected.substring(0, p), query + " limit " + limit);
+    }
+
+    private void assertError(String query, int position, String message) throws JournalException {
+        try {
+            compile(query);
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(position, e.getPosition());
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private int count(RecordSource<? extends Record> rs) throws JournalException {
+        int count = 0;
+        RecordCursor<? extends Record> cursor = rs.prepareCursor(f);
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        return count;
+    }
+
+    private void assertParallel(String query) throws JournalException, ParserException {
+        RecordSource<? extends Record> rs = compile(query);
+        sink.clear();
+        printer.print(rs.prepareCursor(f), rs.getMetadata());
+        String expected = sink.toString();
+        Assert.assertTrue(expected.length() > 0);
+
+        String parallelQuery = query.replace(" from q ", " from q parallel 4 ");
+        RecordSource<? extends Record> prs = compile(parallelQuery);
+        Assert.assertTrue(prs.toString().contains("ParallelJournalSource"));
+        assertThat(expected, parallelQuery);
+    }
+
+    private PreparedQuery prepare(CharSequence query) throws ParserException, JournalException {
+        parser.setContent(query);
+        return optimiser.prepare(parser.parse().getQueryModel());
+    }
+
     private RecordSource<? extends Record> compile(CharSequence query) throws ParserException, JournalException {
         parser.setContent(query);
         return optimiser.compile(parser.parse().getQueryModel());
     }
 
+    private JournalWriter createStats() throws JournalException {
+        JournalWriter w = factory.writer(new JournalStructure("stats").$sym("sym").index().$int("size").$ts());
+        appendStats(w, 0, 100);
+        return w;
+    }
+
+    private static void appendStats(JournalWriter w, int lo, int hi) throws JournalException {
+        for (int i = lo; i < hi; i++) {
+            JournalEntryWriter ew = w.entryWriter(i * 1000);
+            ew.putSym(0, i % 25 == 0 ? "Z" : "A");
+            ew.putInt(1, i);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    private String explain(CharSequence query) throws ParserException, JournalException {
+        parser.setContent("explain " + query);
+        Statement statement = parser.parse();
+        Assert.assertEquals(StatementType.EXPLAIN, statement.getType());
+        return optimiser.explain(statement.getQueryModel());
+    }
+
+    private void createQuotesAndTrades() throws JournalException {
+        JournalWriter quotes = factory.writer(new JournalStructure("quotes").$sym("sym").$double("bid").$ts());
+        String quoteSyms[] = {"A", "B", "A", "B", "A"};
+        long quoteTimestamps[] = {1000, 2000, 3000, 5000, 9000};
+        for (int i = 0; i < quoteSyms.length; i++) {
+            JournalEntryWriter ew = quotes.entryWriter(quoteTimestamps[i]);
+            ew.putSym(0, quoteSyms[i]);
+            ew.putDouble(1, i + 1);
+            ew.append();
+        }
+        quotes.commit();
+
+        JournalWriter trades = factory.writer(new JournalStructure("trades").$sym("sym").$double("price").$ts());
+        String tradeSyms[] = {"A", "B", "B", "A", "C", "A"};
+        long tradeTimestamps[] = {500, 1500, 2000, 2500, 4000, 6000};
+        double prices[] = {10, 20, 21, 11, 30, 12};
+        for (int i = 0; i < tradeSyms.length; i++) {
+            JournalEntryWriter ew = trades.entryWriter(tradeTimestamps[i]);
+            ew.putSym(0, tradeSyms[i]);
+            ew.putDouble(1, prices[i]);
+            ew.append();
+        }
+        trades.commit();
+    }
+
     private void createTab() throws JournalException {
         JournalWriter w = factory.writer(
                 new JournalStructure("tab").
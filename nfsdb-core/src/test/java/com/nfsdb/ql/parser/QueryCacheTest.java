@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2014-2015. Vlad Ilyushchenko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nfsdb.ql.parser;
+
+import com.nfsdb.JournalEntryWriter;
+import com.nfsdb.JournalWriter;
+import com.nfsdb.exceptions.JournalException;
+import com.nfsdb.exceptions.JournalRuntimeException;
+import com.nfsdb.factory.JournalCachingFactory;
+import com.nfsdb.factory.configuration.JournalStructure;
+import com.nfsdb.io.RecordSourcePrinter;
+import com.nfsdb.io.sink.StringSink;
+import com.nfsdb.ql.Record;
+import com.nfsdb.ql.RecordSource;
+import com.nfsdb.test.tools.AbstractTest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+
+public class QueryCacheTest extends AbstractTest {
+    private final StringSink sink = new StringSink();
+    private final RecordSourcePrinter printer = new RecordSourcePrinter(sink);
+    private JournalCachingFactory f;
+    private QueryCache cache;
+
+    @Before
+    public void setUp() throws JournalException {
+        f = new JournalCachingFactory(factory.getConfiguration());
+        cache = new QueryCache(factory, 16);
+
+        JournalWriter w = factory.writer(new JournalStructure("q").$sym("sym").$double("bid").$int("size").$ts());
+        String syms[] = {"A", "B", "C"};
+        for (int i = 0; i < 30; i++) {
+            JournalEntryWriter ew = w.entryWriter(i * 1000);
+            ew.putSym(0, syms[i % syms.length]);
+            ew.putDouble(1, i * 0.5);
+            ew.putInt(2, i);
+            ew.append();
+        }
+        w.commit();
+    }
+
+    @After
+    public void tearDown() {
+        f.close();
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        PreparedQuery q = cache.prepare("select sym, bid from q where bid > :bid");
+        Assert.assertSame(q, cache.prepare("select  sym,\n bid from q  where bid > :bid "));
+        Assert.assertNotSame(q, cache.prepare("select sym, bid from q where bid < :bid"));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testCloseQueries() throws Exception {
+        final int[] closed = {0};
+        Closeable counter = new Closeable() {
+            @Override
+            public void close() {
+                closed[0]++;
+            }
+        };
+
+        int n = 200;
+        for (int i = 0; i < n; i++) {
+            cache.prepare("select sym from q where size > " + i).addCloseable(counter);
+        }
+        // there is room for 128 queries at most, evicted queries are closed
+        Assert.assertTrue(closed[0] >= n - 128);
+
+        cache.close();
+        Assert.assertEquals(n, closed[0]);
+        Assert.assertEquals(n, cache.getMissCount());
+    }
+
+    @Test
+    public void testCannotInferType() throws Exception {
+        assertError("select :x from q", 7, "Cannot infer parameter type");
+        assertError("select sym from q where :x = :y", 24, "Cannot infer parameter type");
+    }
+
+    @Test
+    public void testNamedParameters() throws Exception {
+        PreparedQuery q = cache.prepare("select sym, bid, size from q where bid > :bid and sym = :sym and size > :size");
+        q.setParameter(":bid", 3.0).setParameter(":sym", "B").setParameter(":size", 10);
+        Assert.assertEquals(literal("select sym, bid, size from q where bid > 3.0 and sym = 'B' and size > 10"), print(q));
+
+        q.setParameter(":bid", 10).setParameter(":sym", "C").setParameter(":size", 25);
+        Assert.assertEquals(literal("select sym, bid, size from q where bid > 10 and sym = 'C' and size > 25"), print(q));
+
+        // plan is taken from cache and executed again
+        q = cache.prepare("select sym, bid, size from q where bid > :bid and sym = :sym and size > :size");
+        q.setParameter(":sym", "A");
+        Assert.assertEquals(literal("select sym, bid, size from q where bid > 10 and sym = 'A' and size > 25"), print(q));
+    }
+
+    @Test
+    public void testParameterInExpression() throws Exception {
+        PreparedQuery q = cache.prepare("select sym, bid + :x b from q where size > :x + 20");
+        q.setParameter(":x", 5);
+        Assert.assertEquals(literal("select sym, bid + 5 b from q where size > 25"), print(q));
+
+        q.setParameter(":x", 7);
+        Assert.assertEquals(literal("select sym, bid + 7 b from q where size > 27"), print(q));
+    }
+
+    @Test
+    public void testPositionalParameters() throws Exception {
+        PreparedQuery q = cache.prepare("select sym, size from q where size > ? and sym = ?");
+        q.setParameter(1, 20).setParameter(2, "A");
+        Assert.assertEquals(literal("select sym, size from q where size > 20 and sym = 'A'"), print(q));
+    }
+
+    @Test
+    public void testWrongParameter() throws Exception {
+        PreparedQuery q = cache.prepare("select sym from q where sym = :sym");
+        try {
+            q.setParameter(":x", "A");
+            Assert.fail();
+        } catch (JournalRuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("No such parameter"));
+        }
+
+        try {
+            q.setParameter(":sym", 10);
+            Assert.fail();
+        } catch (JournalRuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("STRING"));
+        }
+    }
+
+    private void assertError(String query, int position, String message) throws JournalException {
+        try {
+            cache.prepare(query);
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertEquals(position, e.getPosition());
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private String literal(String query) throws Exception {
+        QueryParser parser = new QueryParser();
+        parser.setContent(query);
+        RecordSource<? extends Record> rs = new Optimiser(factory).compile(parser.parse().getQueryModel());
+        sink.clear();
+        printer.print(rs.prepareCursor(f), rs.getMetadata());
+        String result = sink.toString();
+        Assert.assertTrue(result.length() > 0);
+        return result;
+    }
+
+    private String print(PreparedQuery q) throws JournalException {
+        sink.clear();
+        printer.print(q.execute(f), q.getRecordSource().getMetadata());
+        return sink.toString();
+    }
+}
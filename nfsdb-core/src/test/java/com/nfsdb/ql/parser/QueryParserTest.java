@@ -17,6 +17,7 @@
 package com.nfsdb.ql.parser;
 
 import com.nfsdb.ql.model.ExprNode;
+import com.nfsdb.ql.model.QueryModel;
 import com.nfsdb.ql.model.Statement;
 import com.nfsdb.ql.model.StatementType;
 import com.nfsdb.test.tools.AbstractTest;
@@ -58,6 +59,68 @@ public class QueryParserTest extends AbstractTest {
         Assert.assertEquals("ohoh", statement.getQueryModel().getColumns().get(1).getName());
     }
 
+    @Test
+    public void testOrderBy() throws Exception {
+        Statement statement = parse("select a, b, c from t where a > 10 order by b desc, c, a asc");
+        Assert.assertEquals("a10>", TestUtils.toRpn(statement.getQueryModel().getWhereClause()));
+        Assert.assertEquals(3, statement.getQueryModel().getOrderBy().size());
+        Assert.assertEquals("b", statement.getQueryModel().getOrderBy().get(0).token);
+        Assert.assertEquals("c", statement.getQueryModel().getOrderBy().get(1).token);
+        Assert.assertEquals("a", statement.getQueryModel().getOrderBy().get(2).token);
+        Assert.assertEquals(QueryModel.ORDER_DIRECTION_DESCENDING, statement.getQueryModel().getOrderByDirection().get(0));
+        Assert.assertEquals(QueryModel.ORDER_DIRECTION_ASCENDING, statement.getQueryModel().getOrderByDirection().get(1));
+        Assert.assertEquals(QueryModel.ORDER_DIRECTION_ASCENDING, statement.getQueryModel().getOrderByDirection().get(2));
+    }
+
+    @Test
+    public void testOrderByUnexpectedToken() throws Exception {
+        try {
+            parse("select a from t order by a desc b");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertTrue(e.getMessage().contains("Unexpected token"));
+        }
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        Statement statement = parse("select a, b from t parallel 8 where a > 10");
+        Assert.assertEquals(8, statement.getQueryModel().getParallelism());
+        Assert.assertEquals("a10>", TestUtils.toRpn(statement.getQueryModel().getWhereClause()));
+        Assert.assertEquals(1, parse("select a, b from t where a > 10").getQueryModel().getParallelism());
+    }
+
+    @Test
+    public void testParallelInvalid() throws Exception {
+        try {
+            parse("select a, b from t parallel x where a > 10");
+            Assert.fail("Exception expected");
+        } catch (ParserException e) {
+            Assert.assertTrue(e.getMessage().contains("parallelism"));
+        }
+    }
+
+    @Test
+    public void testAsOfJoin() throws Exception {
+        QueryModel model = parse("select sym, bid, price from quotes asof join trades on sym, ex within 500 where bid > 1").getQueryModel();
+        Assert.assertEquals("quotes", model.getJournalName().token);
+        Assert.assertEquals("trades", model.getJoinJournalName().token);
+        Assert.assertEquals(2, model.getJoinColumns().size());
+        Assert.assertEquals("ex", model.getJoinColumns().getQuick(1).token);
+        Assert.assertEquals("500", model.getJoinWindow().token);
+        Assert.assertEquals("bid1>", TestUtils.toRpn(model.getWhereClause()));
+        Assert.assertNull(parse("select a from t asof join u").getQueryModel().getJoinWindow());
+    }
+
+    @Test
+    public void testSampleBy() throws Exception {
+        Statement statement = parse("select sym, count(), last(ask) x from q where bid > 1 sample by 15m");
+        Assert.assertEquals("15m", statement.getQueryModel().getSampleBy().token);
+        Assert.assertEquals("bid1>", TestUtils.toRpn(statement.getQueryModel().getWhereClause()));
+        Assert.assertEquals("x", statement.getQueryModel().getColumns().getQuick(2).getName());
+        Assert.assertNull(parse("select a, b from t").getQueryModel().getSampleBy());
+    }
+
     @Test
     public void testSelectPlainColumns() throws Exception {
         Statement statement = parse("select a,b,c from t");
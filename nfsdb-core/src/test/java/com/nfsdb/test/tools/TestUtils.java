@@ -34,7 +34,8 @@ import com.nfsdb.ql.model.ExprNode;
 import com.nfsdb.query.ResultSet;
 import com.nfsdb.query.iterator.JournalIterator;
 import com.nfsdb.storage.ColumnType;
-import com.nfsdb.storage.KVIndex;
+import com.nfsdb.storage.StringIndex;
+import com.nfsdb.storage.SymbolIndex;
 import com.nfsdb.storage.SymbolTable;
 import com.nfsdb.utils.*;
 import org.junit.Assert;
@@ -136,9 +137,18 @@ public final class TestUtils {
             }
 
             for (int k = 0; k < expected.getMetadata().getColumnCount(); k++) {
-                if (expected.getMetadata().getColumn(k).indexed) {
-                    KVIndex ei = ep.getIndexForColumn(k);
-                    KVIndex ai = ap.getIndexForColumn(k);
+                if (expected.getMetadata().getColumn(k).indexed && expected.getMetadata().getColumn(k).type == ColumnType.STRING) {
+                    StringIndex ei = ep.getStringIndexForColumn(k);
+                    StringIndex ai = ap.getStringIndexForColumn(k);
+
+                    Assert.assertEquals(ei.getKeyCount(), ai.getKeyCount());
+                    for (long r = 0, n = ep.size(); r < n; r++) {
+                        String v = ep.getStr(r, k);
+                        Assert.assertEquals("Values mismatch. partition=" + i + ",column=" + expected.getMetadata().getColumn(k).name + ", value=" + v + ": ", ei.getValueCount(v), ai.getValueCount(v));
+                    }
+                } else if (expected.getMetadata().getColumn(k).indexed) {
+                    SymbolIndex ei = ep.getIndexForColumn(k);
+                    SymbolIndex ai = ap.getIndexForColumn(k);
 
                     int count = colKeyCount.getQuick(k);
 